@@ -0,0 +1,145 @@
+package cn.uncode.schedule.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.Op;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cn.uncode.schedule.assign.AssignStrategyFactory;
+import cn.uncode.schedule.assign.IAssignStrategy;
+import cn.uncode.schedule.zk.EmbeddedZooKeeper;
+import cn.uncode.schedule.zk.ScheduleDataManager4ZK;
+import cn.uncode.schedule.zk.ScheduleServer;
+import cn.uncode.schedule.zk.ZKManager;
+import cn.uncode.schedule.zk.ZKTools;
+
+/**
+ * Leader的任务分配：分配结果不变时的稳态开销，以及服务器离开、加入时的重新分配
+ * 
+ * @author juny.ye
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssignTaskBenchmark {
+
+	private static final int SERVERS = 3;
+
+	private static final long LEADER_TIMEOUT = 30000;
+
+	@Param({ "100", "1000", "10000" })
+	public int tasks;
+
+	private EmbeddedZooKeeper zooKeeper;
+
+	private List<ZKManager> zkManagers = new ArrayList<ZKManager>();
+
+	private ScheduleDataManager4ZK leader;
+
+	private String leaderUuid;
+
+	private List<String> allServers;
+
+	private List<String> withoutLast;
+
+	private boolean shrunk;
+
+	private IAssignStrategy assignStrategy;
+
+	@Setup
+	public void setup() throws Exception {
+		this.zooKeeper = new EmbeddedZooKeeper();
+		String rootPath = this.zooKeeper.newRootPath();
+		List<ScheduleDataManager4ZK> dataManagers = new ArrayList<ScheduleDataManager4ZK>();
+		List<ScheduleServer> servers = new ArrayList<ScheduleServer>();
+		for (int i = 0; i < SERVERS; i++) {
+			ZKManager zkManager = this.zooKeeper.newZKManager(rootPath, new HashMap<String, String>());
+			this.zkManagers.add(zkManager);
+			ScheduleDataManager4ZK dataManager = new ScheduleDataManager4ZK(zkManager);
+			ScheduleServer server = ScheduleServer.createScheduleServer(null);
+			dataManager.registerScheduleServer(server);
+			dataManagers.add(dataManager);
+			servers.add(server);
+		}
+		createTasks(this.zkManagers.get(0), rootPath + "/task", this.tasks);
+		// 第一个注册的服务器序号最小，成为Leader
+		this.leader = dataManagers.get(0);
+		this.leaderUuid = servers.get(0).getUuid();
+		long deadline = System.currentTimeMillis() + LEADER_TIMEOUT;
+		while (!this.leader.hasLeadership()) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new IllegalStateException("Leader is not elected in " + LEADER_TIMEOUT + "ms.");
+			}
+			Thread.sleep(50);
+		}
+		this.allServers = this.leader.loadScheduleServerNames();
+		this.withoutLast = new ArrayList<String>(this.allServers);
+		this.withoutLast.remove(this.withoutLast.size() - 1);
+		this.assignStrategy = AssignStrategyFactory.createAssignStrategy(null, 0);
+		this.leader.assignTask(this.leaderUuid, this.allServers, this.assignStrategy);
+	}
+
+	/**
+	 * 批量创建任务节点，任务名称为 bench#task{序号}
+	 * 
+	 * @param zkManager
+	 * @param taskPath 任务根节点
+	 * @param count 任务数量
+	 * @throws Exception
+	 */
+	private static void createTasks(ZKManager zkManager, String taskPath, int count) throws Exception {
+		if (zkManager.getZooKeeper().exists(taskPath, false) == null) {
+			ZKTools.createPath(zkManager.getZooKeeper(), taskPath, CreateMode.PERSISTENT, zkManager.getAcl());
+		}
+		List<Op> ops = new ArrayList<Op>(count);
+		for (int i = 0; i < count; i++) {
+			String name = String.format("bench#task%05d", i);
+			ops.add(Op.create(taskPath + "/" + name, null, zkManager.getAcl(), CreateMode.PERSISTENT));
+		}
+		ZKTools.multiInBatches(zkManager.getZooKeeper(), ops, 500);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		for (ZKManager zkManager : this.zkManagers) {
+			zkManager.close();
+		}
+		this.zooKeeper.close();
+	}
+
+	@Benchmark
+	public int steadyState() throws Exception {
+		this.leader.assignTask(this.leaderUuid, this.allServers, this.assignStrategy);
+		return this.leader.getLastAssignChanges();
+	}
+
+	/**
+	 * 交替去掉、加回最后一台服务器，每次约三分之一的任务迁移
+	 */
+	@Benchmark
+	public int serverLeaveAndJoin() throws Exception {
+		this.shrunk = !this.shrunk;
+		this.leader.assignTask(this.leaderUuid, this.shrunk ? this.withoutLast : this.allServers, this.assignStrategy);
+		return this.leader.getLastAssignChanges();
+	}
+
+}
@@ -0,0 +1,21 @@
+package cn.uncode.schedule.benchmark;
+
+/**
+ * 基准测试使用的任务bean
+ * 
+ * @author juny.ye
+ * 
+ */
+public class BenchmarkJob {
+
+	private volatile long count;
+
+	public void run() {
+		this.count++;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+}
@@ -0,0 +1,48 @@
+package cn.uncode.schedule.benchmark;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 运行基准测试，参数与JMH命令行相同；未指定结果格式时以JSON写入 results/jmh-{版本}.json，便于不同版本之间对比
+ * 
+ * @author juny.ye
+ * 
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()
+				|| commandLine.shouldListResultFormats() || commandLine.shouldListWithParams()) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+		if (!commandLine.getResultFormat().hasValue()) {
+			File result = new File("results", "jmh-" + version() + ".json");
+			result.getParentFile().mkdirs();
+			options.resultFormat(ResultFormatType.JSON).result(result.getPath());
+		}
+		new Runner(options.build()).run();
+	}
+
+	private static String version() throws Exception {
+		Properties properties = new Properties();
+		InputStream in = BenchmarkRunner.class.getResourceAsStream("/benchmark.properties");
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		return properties.getProperty("version", "unknown");
+	}
+
+}
@@ -0,0 +1,89 @@
+package cn.uncode.schedule.benchmark;
+
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.scheduling.support.CronSequenceGenerator;
+
+import cn.uncode.schedule.cron.CompiledCron;
+import cn.uncode.schedule.cron.CronSchedule;
+
+/**
+ * cron下次触发时间的计算：spring的CronSequenceGenerator、编译后的位图、共享预计算窗口
+ * 
+ * @author juny.ye
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CronBenchmark {
+
+	/**
+	 * 查询时间的数量，按秒递增，模拟调度线程不断推进的当前时间
+	 */
+	private static final int INSTANTS = 1024;
+
+	@Param({ "0 * * * * ?", "*/15 * * * * ?", "0 0 9-17 * * MON-FRI", "0 0 12 1,15 * ?" })
+	public String expression;
+
+	private TimeZone timeZone;
+
+	private CronSequenceGenerator generator;
+
+	private CompiledCron compiled;
+
+	private CronSchedule schedule;
+
+	private long[] instants;
+
+	private int index;
+
+	@Setup
+	public void setup() {
+		this.timeZone = TimeZone.getDefault();
+		this.generator = new CronSequenceGenerator(this.expression, this.timeZone);
+		this.compiled = new CompiledCron(this.expression);
+		this.schedule = CronSchedule.forExpression(this.expression, this.timeZone);
+		this.instants = new long[INSTANTS];
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < INSTANTS; i++) {
+			this.instants[i] = now + i * 1000L;
+		}
+	}
+
+	private long nextInstant() {
+		return this.instants[this.index++ & (INSTANTS - 1)];
+	}
+
+	@Benchmark
+	public Date springSequenceGenerator() {
+		return this.generator.next(new Date(nextInstant()));
+	}
+
+	@Benchmark
+	public long compiledCron() {
+		return this.compiled.next(nextInstant(), this.timeZone);
+	}
+
+	@Benchmark
+	public long sharedSchedule() {
+		return this.schedule.next(nextInstant());
+	}
+
+}
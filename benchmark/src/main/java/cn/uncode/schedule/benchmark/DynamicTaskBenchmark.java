@@ -0,0 +1,64 @@
+package cn.uncode.schedule.benchmark;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cn.uncode.schedule.local.DynamicTaskManager;
+
+/**
+ * 动态任务的启动和清理：每次调用启动一批cron任务后全部清理
+ * 
+ * @author juny.ye
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DynamicTaskBenchmark {
+
+	/**
+	 * 每年触发一次，测试期间不会执行
+	 */
+	private static final String CRON_EXPRESSION = "0 0 0 1 1 ?";
+
+	@Param({ "100" })
+	public int tasks;
+
+	private ScheduleManagerFixture fixture;
+
+	@Setup
+	public void setup() throws Exception {
+		this.fixture = new ScheduleManagerFixture(this.tasks);
+	}
+
+	@TearDown
+	public void tearDown() {
+		DynamicTaskManager.clearLocalTask(Collections.<String> emptyList());
+		this.fixture.close();
+	}
+
+	@Benchmark
+	public void scheduleAndClear() {
+		for (int i = 0; i < this.tasks; i++) {
+			DynamicTaskManager.scheduleTask("job" + i, "run", CRON_EXPRESSION, null, 0);
+		}
+		DynamicTaskManager.clearLocalTask(Collections.<String> emptyList());
+	}
+
+}
@@ -0,0 +1,85 @@
+package cn.uncode.schedule.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cn.uncode.schedule.executor.ExecutorGroup;
+
+/**
+ * 执行组处理一批同时触发的阻塞任务（模拟HTTP/JDBC调用）的总耗时：CPU核数的线程池、200线程的线程池、虚拟线程
+ * 
+ * @author juny.ye
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExecutorGroupBenchmark {
+
+	@Param({ "cpus", "200", "virtual" })
+	public String threads;
+
+	@Param({ "1000" })
+	public int jobs;
+
+	/**
+	 * 每个任务阻塞的时间（毫秒）
+	 */
+	@Param({ "100" })
+	public long blockMs;
+
+	private ExecutorGroup group;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		int cpus = Runtime.getRuntime().availableProcessors();
+		if ("virtual".equals(this.threads)) {
+			this.group = new ExecutorGroup("virtual", cpus, this.jobs);
+			this.group.setVirtualThreads(true);
+		} else {
+			int threadNum = "cpus".equals(this.threads) ? cpus : Integer.parseInt(this.threads);
+			this.group = new ExecutorGroup("platform", threadNum, this.jobs);
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		this.group.shutdown();
+	}
+
+	@Benchmark
+	public void burst() throws Exception {
+		final CountDownLatch done = new CountDownLatch(this.jobs);
+		for (int i = 0; i < this.jobs; i++) {
+			this.group.execute("job" + i + "#run", new Runnable() {
+				public void run() {
+					try {
+						Thread.sleep(blockMs);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					done.countDown();
+				}
+			});
+		}
+		done.await(10, TimeUnit.MINUTES);
+	}
+
+}
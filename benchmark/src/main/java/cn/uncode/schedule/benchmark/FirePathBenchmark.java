@@ -0,0 +1,77 @@
+package cn.uncode.schedule.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+
+import cn.uncode.schedule.ZKScheduleManager;
+
+/**
+ * 任务触发路径：调度线程的分发（taskWrapper包装后的任务）、归属判断和防护令牌
+ * 
+ * @author juny.ye
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FirePathBenchmark {
+
+	private static final String TASK_NAME = "job0#run";
+
+	private ScheduleManagerFixture fixture;
+
+	private ZKScheduleManager scheduleManager;
+
+	/**
+	 * 调度线程每次触发执行的任务
+	 */
+	private Runnable firedTask;
+
+	@Setup
+	public void setup() throws Exception {
+		this.fixture = new ScheduleManagerFixture(1);
+		this.scheduleManager = this.fixture.getScheduleManager();
+		Method taskWrapper = ZKScheduleManager.class.getDeclaredMethod("taskWrapper", Runnable.class);
+		taskWrapper.setAccessible(true);
+		this.firedTask = (Runnable) taskWrapper.invoke(this.scheduleManager,
+				new ScheduledMethodRunnable(this.fixture.getJob(0), "run"));
+		this.fixture.awaitOwner(TASK_NAME);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.fixture.close();
+	}
+
+	@Benchmark
+	public void dispatch() {
+		this.firedTask.run();
+	}
+
+	@Benchmark
+	public boolean isOwner() {
+		return this.scheduleManager.isOwner(TASK_NAME);
+	}
+
+	@Benchmark
+	public long fencingToken() {
+		return this.scheduleManager.getFencingToken(TASK_NAME);
+	}
+
+}
@@ -0,0 +1,78 @@
+package cn.uncode.schedule.benchmark;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cn.uncode.schedule.zk.EmbeddedZooKeeper;
+import cn.uncode.schedule.zk.ScheduleDataManager4ZK;
+import cn.uncode.schedule.zk.ScheduleServer;
+import cn.uncode.schedule.zk.ScheduleServerCodec;
+import cn.uncode.schedule.zk.ZKManager;
+
+/**
+ * 心跳：心跳数据的序列化，以及refreshScheduleServer的完整开销（持久节点每次写入，临时节点状态不变时跳过写入）
+ * 
+ * @author juny.ye
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeartbeatBenchmark {
+
+	@Param({ "false", "true" })
+	public String ephemeralServer;
+
+	private EmbeddedZooKeeper zooKeeper;
+
+	private ZKManager zkManager;
+
+	private ScheduleDataManager4ZK dataManager;
+
+	private ScheduleServer server;
+
+	@Setup
+	public void setup() throws Exception {
+		this.zooKeeper = new EmbeddedZooKeeper();
+		this.zkManager = this.zooKeeper.newZKManager(this.zooKeeper.newRootPath(),
+				Collections.singletonMap("ephemeralServer", this.ephemeralServer));
+		this.dataManager = new ScheduleDataManager4ZK(this.zkManager);
+		this.server = ScheduleServer.createScheduleServer(null);
+		this.server.setDealInfoDesc("Fetch 1024 batches, deal 102400 items, 35 items/s.");
+		this.dataManager.registerScheduleServer(this.server);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		this.zkManager.close();
+		this.zooKeeper.close();
+	}
+
+	@Benchmark
+	public byte[] encode() {
+		this.server.setVersion(this.server.getVersion() + 1);
+		return ScheduleServerCodec.encodeHeartBeat(this.server);
+	}
+
+	@Benchmark
+	public boolean refreshScheduleServer() throws Exception {
+		return this.dataManager.refreshScheduleServer(this.server);
+	}
+
+}
@@ -0,0 +1,76 @@
+package cn.uncode.schedule.benchmark;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.context.support.GenericApplicationContext;
+
+import cn.uncode.schedule.ZKScheduleManager;
+import cn.uncode.schedule.zk.EmbeddedZooKeeper;
+
+/**
+ * 单节点的完整调度器：spring容器 + ZKScheduleManager + 进程内zookeeper
+ * 
+ * @author juny.ye
+ * 
+ */
+public class ScheduleManagerFixture {
+
+	private static final long START_TIMEOUT = 30000;
+
+	private final EmbeddedZooKeeper zooKeeper;
+
+	private final GenericApplicationContext context;
+
+	private final ZKScheduleManager scheduleManager;
+
+	/**
+	 * @param jobs 注册的任务bean数量，名称为 job{序号}
+	 * @throws Exception
+	 */
+	public ScheduleManagerFixture(int jobs) throws Exception {
+		this.zooKeeper = new EmbeddedZooKeeper();
+		Map<String, String> zkConfig = this.zooKeeper.zkConfig(this.zooKeeper.newRootPath());
+		zkConfig.put("autoRegisterTask", "true");
+		this.context = new GenericApplicationContext();
+		this.context.registerBeanDefinition("zkScheduleManager", BeanDefinitionBuilder
+				.genericBeanDefinition(ZKScheduleManager.class).addPropertyValue("zkConfig", zkConfig)
+				.setInitMethodName("init").getBeanDefinition());
+		for (int i = 0; i < jobs; i++) {
+			this.context.getBeanFactory().registerSingleton("job" + i, new BenchmarkJob());
+		}
+		this.context.refresh();
+		this.scheduleManager = this.context.getBean(ZKScheduleManager.class);
+	}
+
+	/**
+	 * 等待任务分配给当前节点
+	 * 
+	 * @param name 任务名称
+	 * @throws Exception
+	 */
+	public void awaitOwner(String name) throws Exception {
+		long deadline = System.currentTimeMillis() + START_TIMEOUT;
+		// 连接zookeeper并初始化数据管理器之后才能判断归属
+		while (this.scheduleManager.getScheduleDataManager() == null || !this.scheduleManager.isOwner(name)) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new IllegalStateException("Task " + name + " is not assigned in " + START_TIMEOUT + "ms.");
+			}
+			Thread.sleep(100);
+		}
+	}
+
+	public BenchmarkJob getJob(int index) {
+		return (BenchmarkJob) this.context.getBean("job" + index);
+	}
+
+	public ZKScheduleManager getScheduleManager() {
+		return scheduleManager;
+	}
+
+	public void close() {
+		this.context.close();
+		this.zooKeeper.close();
+	}
+
+}
@@ -0,0 +1,84 @@
+package cn.uncode.schedule.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+
+import cn.uncode.schedule.local.TaskDescriptor;
+import cn.uncode.schedule.local.TaskRegistry;
+import cn.uncode.schedule.util.ScheduleUtil;
+
+/**
+ * 每次触发的开销：按类型扫描bean得到任务名后反射调用，与使用调度时解析好的任务信息对比
+ * 
+ * @author juny.ye
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskRegistryBenchmark {
+
+	/**
+	 * 容器中其他bean的数量
+	 */
+	@Param({ "500" })
+	public int beans;
+
+	private GenericApplicationContext context;
+
+	private ScheduledMethodRunnable task;
+
+	private TaskDescriptor descriptor;
+
+	@Setup
+	public void setup() throws Exception {
+		this.context = new GenericApplicationContext();
+		for (int i = 0; i < this.beans; i++) {
+			this.context.getBeanFactory().registerSingleton("other" + i, new Object());
+		}
+		this.context.getBeanFactory().registerSingleton("job", new BenchmarkJob());
+		this.context.refresh();
+		this.task = new ScheduledMethodRunnable(this.context.getBean("job"), "run");
+		this.descriptor = new TaskRegistry(this.context).register(this.task);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.context.close();
+	}
+
+	@Benchmark
+	public String lookupPerFire() {
+		Method targetMethod = this.task.getMethod();
+		String[] beanNames = this.context.getBeanNamesForType(targetMethod.getDeclaringClass());
+		String name = ScheduleUtil.getTaskNameFormBean(beanNames[0], targetMethod.getName());
+		this.task.run();
+		return name;
+	}
+
+	@Benchmark
+	public String registered() {
+		String name = this.descriptor.getName();
+		this.descriptor.getTask().run();
+		return name;
+	}
+
+}
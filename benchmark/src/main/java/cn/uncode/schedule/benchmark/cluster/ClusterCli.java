@@ -0,0 +1,92 @@
+package cn.uncode.schedule.benchmark.cluster;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import com.google.gson.GsonBuilder;
+
+/**
+ * 集群测试命令行
+ * 
+ * <pre>
+ * java -cp target/benchmarks.jar cn.uncode.schedule.benchmark.cluster.ClusterCli \
+ *     --nodes 3 --tasks 1000 --period 5 --duration 120 --events 30:kill,60:add,90:kill-leader \
+ *     [--assignStrategy rendezvous] [--ephemeralServer true] [--output results/cluster.json]
+ * </pre>
+ * 
+ * 加上--simulate true时使用虚拟时钟和模拟注册中心运行，--seed指定随机种子，相同的种子得到相同的结果：
+ * 
+ * <pre>
+ * java -cp target/benchmarks.jar cn.uncode.schedule.benchmark.cluster.ClusterCli --simulate true --seed 1 \
+ *     --nodes 1000 --tasks 2000 --period 5 --duration 3600 --events 600:kill-leader,1200:add
+ * </pre>
+ * 
+ * @author juny.ye
+ * 
+ */
+public class ClusterCli {
+
+	public static void main(String[] args) throws Exception {
+		boolean simulate = false;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if ("--simulate".equals(args[i])) {
+				simulate = Boolean.parseBoolean(args[i + 1]);
+			}
+		}
+		ClusterScenario harness = simulate ? new SimulatedClusterHarness() : new ClusterHarness();
+		String output = null;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String name = args[i].replaceFirst("^--", "");
+			String value = args[i + 1];
+			if ("simulate".equals(name)) {
+				continue;
+			} else if ("seed".equals(name)) {
+				if (simulate) {
+					((SimulatedClusterHarness) harness).setSeed(Long.parseLong(value));
+				}
+			} else if ("nodes".equals(name)) {
+				harness.setNodes(Integer.parseInt(value));
+			} else if ("tasks".equals(name)) {
+				harness.setTasks(Integer.parseInt(value));
+			} else if ("period".equals(name)) {
+				harness.setPeriodSeconds(Integer.parseInt(value));
+			} else if ("duration".equals(name)) {
+				harness.setDurationSeconds(Integer.parseInt(value));
+			} else if ("events".equals(name)) {
+				for (String event : value.split(",")) {
+					String[] parts = event.trim().split(":");
+					harness.addEvent(Integer.parseInt(parts[0]), parts[1]);
+				}
+			} else if ("output".equals(name)) {
+				output = value;
+			} else {
+				// 其他参数作为zkConfig，如assignStrategy、ephemeralServer、assignmentDocument
+				harness.setZkConfig(name, value);
+			}
+		}
+		long begin = System.currentTimeMillis();
+		List<PhaseReport> reports = harness.run();
+		for (PhaseReport report : reports) {
+			System.out.println(report);
+		}
+		System.out.println(String.format("Finished in %.1fs", (System.currentTimeMillis() - begin) / 1000.0));
+		if (output != null) {
+			File file = new File(output);
+			if (file.getParentFile() != null) {
+				file.getParentFile().mkdirs();
+			}
+			Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+			try {
+				new GsonBuilder().setPrettyPrinting().create().toJson(reports, writer);
+			} finally {
+				writer.close();
+			}
+			System.out.println("Report is saved to " + file.getPath());
+		}
+		System.exit(0);
+	}
+
+}
@@ -0,0 +1,133 @@
+package cn.uncode.schedule.benchmark.cluster;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import cn.uncode.schedule.zk.EmbeddedZooKeeper;
+
+/**
+ * 进程内的多节点集群测试：N个ZKScheduleManager、T个cron任务、一个进程内zookeeper，使用真实时钟，
+ * 请求速率为zookeeper服务端统计的每个会话的请求数
+ * 
+ * @author juny.ye
+ * 
+ */
+public class ClusterHarness extends ClusterScenario {
+
+	/**
+	 * 收敛检查间隔
+	 */
+	private static final long MONITOR_INTERVAL = 100;
+
+	private final List<ClusterNode> clusterNodes = new ArrayList<ClusterNode>();
+
+	private EmbeddedZooKeeper zooKeeper;
+
+	private String rootPath;
+
+	private ScheduledExecutorService monitor;
+
+	@Override
+	protected long now() {
+		return System.currentTimeMillis();
+	}
+
+	@Override
+	protected void advanceTo(long time) throws InterruptedException {
+		long wait = time - System.currentTimeMillis();
+		if (wait > 0) {
+			Thread.sleep(wait);
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		this.zooKeeper = new EmbeddedZooKeeper();
+		this.rootPath = this.zooKeeper.newRootPath();
+		this.monitor = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		this.monitor.shutdownNow();
+		for (ClusterNode node : this.clusterNodes) {
+			if (node.isAlive()) {
+				node.kill();
+			}
+		}
+		this.zooKeeper.close();
+	}
+
+	@Override
+	protected void startMonitor(Runnable task) {
+		this.monitor.scheduleWithFixedDelay(task, MONITOR_INTERVAL, MONITOR_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	protected void addNode() throws Exception {
+		Map<String, String> config = this.zooKeeper.zkConfig(this.rootPath);
+		config.put("autoRegisterTask", "true");
+		config.putAll(this.zkConfig);
+		ClusterNode node = new ClusterNode(this.clusterNodes.size());
+		node.start(config, this.beanNames, getCronExpression(), this.recorder);
+		this.clusterNodes.add(node);
+	}
+
+	@Override
+	protected void killNode(boolean leader) {
+		for (int i = this.clusterNodes.size() - 1; i >= 0; i--) {
+			ClusterNode node = this.clusterNodes.get(i);
+			if (node.isAlive() && (!leader || node.isLeader())) {
+				node.kill();
+				return;
+			}
+		}
+	}
+
+	@Override
+	protected int aliveNodes() {
+		int count = 0;
+		for (ClusterNode node : this.clusterNodes) {
+			if (node.isAlive()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 存活节点的本地视图中任务归属当前节点的节点数
+	 */
+	@Override
+	protected int countOwners(String task) {
+		int owners = 0;
+		for (ClusterNode node : this.clusterNodes) {
+			if (node.isAlive() && node.isOwner(task)) {
+				owners++;
+			}
+		}
+		return owners;
+	}
+
+	/**
+	 * 节点编号 -> 服务端统计的累计请求数
+	 */
+	@Override
+	protected Map<Integer, Long> sampleOperations() throws Exception {
+		Map<Long, Long> bySession = this.zooKeeper.packetsReceivedBySession();
+		Map<Integer, Long> byNode = new HashMap<Integer, Long>();
+		for (ClusterNode node : this.clusterNodes) {
+			Long packets = node.isAlive() ? bySession.get(node.getSessionId()) : null;
+			if (packets != null) {
+				byNode.put(node.getId(), packets);
+			}
+		}
+		return byNode;
+	}
+
+}
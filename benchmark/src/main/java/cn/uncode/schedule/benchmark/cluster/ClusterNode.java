@@ -0,0 +1,114 @@
+package cn.uncode.schedule.benchmark.cluster;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+
+import cn.uncode.schedule.ZKScheduleManager;
+import cn.uncode.schedule.zk.IScheduleDataManager;
+
+/**
+ * 集群中的一个节点：独立的spring容器和ZKScheduleManager，所有节点注册相同名称的任务bean
+ * 
+ * @author juny.ye
+ * 
+ */
+public class ClusterNode {
+
+	private final int id;
+
+	private GenericApplicationContext context;
+
+	private ZKScheduleManager scheduleManager;
+
+	private volatile boolean alive;
+
+	public ClusterNode(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * 启动节点并调度所有任务。ZKScheduleManager的spring容器是静态的，任务注册表在首次调度时绑定当前容器，节点需要依次启动
+	 * 
+	 * @param zkConfig
+	 * @param beanNames 任务bean名称，执行方法为run
+	 * @param cronExpression
+	 * @param recorder
+	 * @throws Exception
+	 */
+	public void start(Map<String, String> zkConfig, List<String> beanNames, String cronExpression, FireRecorder recorder)
+			throws Exception {
+		this.context = new GenericApplicationContext();
+		for (String beanName : beanNames) {
+			this.context.getBeanFactory().registerSingleton(beanName,
+					new HarnessJob(beanName + "#run", this.id, recorder));
+		}
+		this.context.refresh();
+		this.scheduleManager = new ZKScheduleManager();
+		this.scheduleManager.setZkConfig(zkConfig);
+		this.scheduleManager.setThreadNamePrefix("node" + this.id + "-");
+		this.scheduleManager.setApplicationContext(this.context);
+		this.scheduleManager.initialize();
+		this.scheduleManager.init();
+		for (String beanName : beanNames) {
+			this.scheduleManager.schedule(new ScheduledMethodRunnable(this.context.getBean(beanName), "run"),
+					new CronTrigger(cronExpression));
+		}
+		this.alive = true;
+	}
+
+	/**
+	 * 停止节点，不注销服务器节点，模拟进程退出
+	 */
+	public void kill() {
+		this.alive = false;
+		this.scheduleManager.shutdown();
+		this.context.close();
+	}
+
+	/**
+	 * 节点本地视图中任务是否归属当前节点，数据管理器尚未初始化时返回false
+	 */
+	public boolean isOwner(String task) {
+		IScheduleDataManager dataManager = this.scheduleManager.getScheduleDataManager();
+		if (!this.alive || dataManager == null) {
+			return false;
+		}
+		try {
+			return dataManager.isOwner(task, this.scheduleManager.getScheduleServerUUid());
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	public boolean isLeader() {
+		IScheduleDataManager dataManager = this.scheduleManager.getScheduleDataManager();
+		return this.alive && dataManager != null && dataManager.hasLeadership();
+	}
+
+	/**
+	 * 当前zookeeper会话编号，未连接时返回0
+	 */
+	public long getSessionId() {
+		try {
+			if (this.alive && this.scheduleManager.getZkManager().checkZookeeperState()) {
+				return this.scheduleManager.getZkManager().getZooKeeper().getSessionId();
+			}
+		} catch (Exception e) {
+			// 连接状态变化，本次不统计
+		}
+		return 0;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public boolean isAlive() {
+		return alive;
+	}
+
+}
@@ -0,0 +1,291 @@
+package cn.uncode.schedule.benchmark.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import cn.uncode.schedule.benchmark.cluster.FireRecorder.Fire;
+
+/**
+ * 集群测试场景：N个节点、T个cron任务，按计划增删节点，统计每个阶段的分配收敛时间、重复和漏执行次数、
+ * 执行延迟分位数以及每个节点的注册中心请求速率
+ * 
+ * 时间推进、节点启停和请求计数由子类实现：ClusterHarness使用真实时钟和进程内zookeeper，
+ * SimulatedClusterHarness使用虚拟时钟和模拟注册中心。
+ * 
+ * @author juny.ye
+ * 
+ */
+public abstract class ClusterScenario {
+
+	public static final String KILL = "kill";
+	public static final String KILL_LEADER = "kill-leader";
+	public static final String ADD = "add";
+
+	/**
+	 * 测试结束后等待最后一个周期的任务执行完成
+	 */
+	private static final long FINISH_GRACE = 2000;
+
+	protected int nodes = 3;
+
+	protected int tasks = 100;
+
+	/**
+	 * 任务触发周期（秒），需要整除60
+	 */
+	protected int periodSeconds = 5;
+
+	protected int durationSeconds = 60;
+
+	/**
+	 * 成员变化事件：相对测试开始的秒数 -> 事件
+	 */
+	private List<Event> events = new ArrayList<Event>();
+
+	/**
+	 * 额外的zkConfig，如assignStrategy、ephemeralServer
+	 */
+	protected Map<String, String> zkConfig = new HashMap<String, String>();
+
+	protected final List<String> taskNames = new ArrayList<String>();
+
+	protected final List<String> beanNames = new ArrayList<String>();
+
+	protected FireRecorder recorder;
+
+	private volatile Phase current;
+
+	public List<PhaseReport> run() throws Exception {
+		if (this.periodSeconds <= 0 || 60 % this.periodSeconds != 0) {
+			throw new IllegalArgumentException("Period must divide 60 seconds: " + this.periodSeconds);
+		}
+		for (int i = 0; i < this.tasks; i++) {
+			String beanName = String.format("job%05d", i);
+			this.beanNames.add(beanName);
+			this.taskNames.add(beanName + "#run");
+		}
+		this.recorder = new FireRecorder(this.periodSeconds * 1000L);
+		List<Phase> phases = new ArrayList<Phase>();
+		setUp();
+		try {
+			long begin = now();
+			this.current = openPhase("start", begin, begin);
+			phases.add(this.current);
+			for (int i = 0; i < this.nodes; i++) {
+				addNode();
+			}
+			startMonitor(new Runnable() {
+				public void run() {
+					checkConvergence(current);
+				}
+			});
+			for (Event event : this.events) {
+				advanceTo(begin + event.offsetSeconds * 1000L);
+				closePhase(this.current, now());
+				if (ADD.equals(event.action)) {
+					addNode();
+				} else {
+					killNode(KILL_LEADER.equals(event.action));
+				}
+				this.current = openPhase(event.action, begin, now());
+				phases.add(this.current);
+			}
+			advanceTo(begin + this.durationSeconds * 1000L);
+			closePhase(this.current, now());
+			advanceTo(now() + this.recorder.getPeriodMillis() + FINISH_GRACE);
+		} finally {
+			tearDown();
+		}
+		List<PhaseReport> reports = new ArrayList<PhaseReport>();
+		for (Phase phase : phases) {
+			reports.add(report(phase));
+		}
+		return reports;
+	}
+
+	/**
+	 * 当前时间，阶段边界、收敛时间和执行记录都使用该时间
+	 */
+	protected abstract long now();
+
+	/**
+	 * 推进到指定时间
+	 */
+	protected abstract void advanceTo(long time) throws Exception;
+
+	/**
+	 * 启动注册中心
+	 */
+	protected abstract void setUp() throws Exception;
+
+	/**
+	 * 停止所有存活节点和注册中心
+	 */
+	protected abstract void tearDown() throws Exception;
+
+	/**
+	 * 周期性执行收敛检查，在tearDown中停止
+	 */
+	protected abstract void startMonitor(Runnable monitor);
+
+	/**
+	 * 加入一个新节点并调度所有任务
+	 */
+	protected abstract void addNode() throws Exception;
+
+	/**
+	 * 停止Leader或者最后加入的存活节点
+	 */
+	protected abstract void killNode(boolean leader) throws Exception;
+
+	protected abstract int aliveNodes();
+
+	/**
+	 * 任务归属的存活节点数
+	 */
+	protected abstract int countOwners(String task);
+
+	/**
+	 * 节点编号 -> 累计的注册中心请求数
+	 */
+	protected abstract Map<Integer, Long> sampleOperations() throws Exception;
+
+	/**
+	 * 每个任务恰好归属一个存活节点时视为收敛，记录最后一次进入收敛状态的时间
+	 */
+	private void checkConvergence(Phase phase) {
+		if (phase == null || phase.end > 0) {
+			return;
+		}
+		boolean converged = aliveNodes() > 0;
+		for (int i = 0; i < this.taskNames.size() && converged; i++) {
+			converged = countOwners(this.taskNames.get(i)) == 1;
+		}
+		if (converged && !phase.converged) {
+			phase.convergedAt = now();
+		}
+		phase.converged = converged;
+	}
+
+	private Phase openPhase(String event, long begin, long start) throws Exception {
+		Phase phase = new Phase();
+		phase.event = event;
+		phase.startOffset = start - begin;
+		phase.start = start;
+		phase.operations = sampleOperations();
+		return phase;
+	}
+
+	private void closePhase(Phase phase, long end) throws Exception {
+		Map<Integer, Long> operations = sampleOperations();
+		phase.end = end;
+		phase.aliveNodes = aliveNodes();
+		double seconds = Math.max(1, end - phase.start) / 1000.0;
+		for (Map.Entry<Integer, Long> entry : operations.entrySet()) {
+			Long before = phase.operations.get(entry.getKey());
+			phase.zkOpsPerSecond.put(entry.getKey(), (entry.getValue() - (before == null ? 0 : before)) / seconds);
+		}
+	}
+
+	private PhaseReport report(Phase phase) {
+		PhaseReport report = new PhaseReport();
+		report.event = phase.event;
+		report.startOffset = phase.startOffset;
+		report.durationMillis = phase.end - phase.start;
+		report.aliveNodes = phase.aliveNodes;
+		report.convergenceMillis = phase.converged ? Math.max(0, phase.convergedAt - phase.start) : -1;
+		report.zkOpsPerSecond.putAll(phase.zkOpsPerSecond);
+		// 统计计划触发时间落在本阶段内的槽位
+		long period = this.recorder.getPeriodMillis();
+		long from = (phase.start + period - 1) / period * period;
+		long to = (phase.end + period - 1) / period * period;
+		report.expectedFires = (to - from) / period * this.tasks;
+		List<Fire> fires = this.recorder.getFires(from, to);
+		Set<String> fired = new HashSet<String>();
+		long[] lateness = new long[fires.size()];
+		for (int i = 0; i < fires.size(); i++) {
+			Fire fire = fires.get(i);
+			fired.add(fire.task + "@" + fire.slot);
+			lateness[i] = fire.time - fire.slot;
+			Long count = report.firesByNode.get(fire.node);
+			report.firesByNode.put(fire.node, count == null ? 1 : count + 1);
+		}
+		report.fires = fires.size();
+		report.duplicateFires = fires.size() - fired.size();
+		report.missedFires = report.expectedFires - fired.size();
+		if (lateness.length > 0) {
+			Arrays.sort(lateness);
+			report.latenessP50 = percentile(lateness, 0.50);
+			report.latenessP90 = percentile(lateness, 0.90);
+			report.latenessP99 = percentile(lateness, 0.99);
+			report.latenessMax = lateness[lateness.length - 1];
+		}
+		return report;
+	}
+
+	private static long percentile(long[] sorted, double percentile) {
+		int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	protected String getCronExpression() {
+		return "*/" + this.periodSeconds + " * * * * ?";
+	}
+
+	public void setNodes(int nodes) {
+		this.nodes = nodes;
+	}
+
+	public void setTasks(int tasks) {
+		this.tasks = tasks;
+	}
+
+	public void setPeriodSeconds(int periodSeconds) {
+		this.periodSeconds = periodSeconds;
+	}
+
+	public void setDurationSeconds(int durationSeconds) {
+		this.durationSeconds = durationSeconds;
+	}
+
+	public void addEvent(int offsetSeconds, String action) {
+		if (!KILL.equals(action) && !KILL_LEADER.equals(action) && !ADD.equals(action)) {
+			throw new IllegalArgumentException("Unknown event " + action);
+		}
+		Event event = new Event();
+		event.offsetSeconds = offsetSeconds;
+		event.action = action;
+		int index = 0;
+		while (index < this.events.size() && this.events.get(index).offsetSeconds <= offsetSeconds) {
+			index++;
+		}
+		this.events.add(index, event);
+	}
+
+	public void setZkConfig(String key, String value) {
+		this.zkConfig.put(key, value);
+	}
+
+	private static class Event {
+		int offsetSeconds;
+		String action;
+	}
+
+	private static class Phase {
+		String event;
+		long startOffset;
+		long start;
+		volatile long end;
+		int aliveNodes;
+		volatile boolean converged;
+		volatile long convergedAt;
+		Map<Integer, Long> operations;
+		Map<Integer, Double> zkOpsPerSecond = new HashMap<Integer, Double>();
+	}
+
+}
@@ -0,0 +1,65 @@
+package cn.uncode.schedule.benchmark.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 记录集群中所有节点的任务执行，按cron的计划触发时间（槽位）归属
+ * 
+ * @author juny.ye
+ * 
+ */
+public class FireRecorder {
+
+	private final long periodMillis;
+
+	private final List<Fire> fires = new ArrayList<Fire>();
+
+	/**
+	 * @param periodMillis 任务触发周期，计划触发时间按周期对齐
+	 */
+	public FireRecorder(long periodMillis) {
+		this.periodMillis = periodMillis;
+	}
+
+	public void record(String task, int node, long time) {
+		Fire fire = new Fire(task, node, time - time % this.periodMillis, time);
+		synchronized (this.fires) {
+			this.fires.add(fire);
+		}
+	}
+
+	/**
+	 * 计划触发时间在[from, to)之间的执行记录
+	 */
+	public List<Fire> getFires(long from, long to) {
+		List<Fire> result = new ArrayList<Fire>();
+		synchronized (this.fires) {
+			for (Fire fire : this.fires) {
+				if (fire.slot >= from && fire.slot < to) {
+					result.add(fire);
+				}
+			}
+		}
+		return result;
+	}
+
+	public long getPeriodMillis() {
+		return periodMillis;
+	}
+
+	public static class Fire {
+		final String task;
+		final int node;
+		final long slot;
+		final long time;
+
+		Fire(String task, int node, long slot, long time) {
+			this.task = task;
+			this.node = node;
+			this.slot = slot;
+			this.time = time;
+		}
+	}
+
+}
@@ -0,0 +1,27 @@
+package cn.uncode.schedule.benchmark.cluster;
+
+/**
+ * 集群测试的任务bean，每次执行记录到FireRecorder
+ * 
+ * @author juny.ye
+ * 
+ */
+public class HarnessJob {
+
+	private final String task;
+
+	private final int node;
+
+	private final FireRecorder recorder;
+
+	public HarnessJob(String task, int node, FireRecorder recorder) {
+		this.task = task;
+		this.node = node;
+		this.recorder = recorder;
+	}
+
+	public void run() {
+		this.recorder.record(this.task, this.node, System.currentTimeMillis());
+	}
+
+}
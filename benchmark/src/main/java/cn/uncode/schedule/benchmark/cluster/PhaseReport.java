@@ -0,0 +1,86 @@
+package cn.uncode.schedule.benchmark.cluster;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一个阶段（两次成员变化之间）的统计结果
+ * 
+ * @author juny.ye
+ * 
+ */
+public class PhaseReport {
+
+	/**
+	 * 触发本阶段的事件：start、kill、kill-leader、add
+	 */
+	String event;
+
+	/**
+	 * 阶段开始时间（相对测试开始，毫秒）
+	 */
+	long startOffset;
+
+	long durationMillis;
+
+	int aliveNodes;
+
+	/**
+	 * 从事件发生到每个任务恰好归属一个存活节点的时间，阶段结束时仍未收敛为-1
+	 */
+	long convergenceMillis = -1;
+
+	/**
+	 * 参与统计的计划触发次数（任务数 × 槽位数）
+	 */
+	long expectedFires;
+
+	long fires;
+
+	/**
+	 * 同一槽位被执行多次的次数（多出的执行数）
+	 */
+	long duplicateFires;
+
+	/**
+	 * 没有被任何节点执行的槽位数
+	 */
+	long missedFires;
+
+	long latenessP50;
+
+	long latenessP90;
+
+	long latenessP99;
+
+	long latenessMax;
+
+	/**
+	 * 节点编号 -> 执行次数
+	 */
+	Map<Integer, Long> firesByNode = new TreeMap<Integer, Long>();
+
+	/**
+	 * 节点编号 -> 每秒zookeeper请求数
+	 */
+	Map<Integer, Double> zkOpsPerSecond = new TreeMap<Integer, Double>();
+
+	@Override
+	public String toString() {
+		StringBuilder buffer = new StringBuilder();
+		buffer.append(String.format("[%6.1fs] %-11s nodes=%d duration=%.1fs converged=%s%n", this.startOffset / 1000.0,
+				this.event, this.aliveNodes, this.durationMillis / 1000.0,
+				this.convergenceMillis < 0 ? "no" : this.convergenceMillis + "ms"));
+		buffer.append(String.format("          fires=%d/%d duplicate=%d missed=%d lateness p50=%dms p90=%dms p99=%dms max=%dms%n",
+				this.fires, this.expectedFires, this.duplicateFires, this.missedFires, this.latenessP50,
+				this.latenessP90, this.latenessP99, this.latenessMax));
+		buffer.append("          fires by node=").append(this.firesByNode).append(" zk ops/s=");
+		StringBuilder ops = new StringBuilder("{");
+		for (Map.Entry<Integer, Double> entry : this.zkOpsPerSecond.entrySet()) {
+			ops.append(ops.length() > 1 ? ", " : "").append(entry.getKey()).append('=')
+					.append(String.format("%.1f", entry.getValue()));
+		}
+		return buffer.append(ops).append('}').toString();
+	}
+
+}
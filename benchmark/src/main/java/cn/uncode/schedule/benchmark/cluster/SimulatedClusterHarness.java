@@ -0,0 +1,219 @@
+package cn.uncode.schedule.benchmark.cluster;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+
+import cn.uncode.schedule.ZKScheduleManager;
+import cn.uncode.schedule.assign.AssignStrategyFactory;
+import cn.uncode.schedule.sim.SimulatedNode;
+import cn.uncode.schedule.sim.SimulatedStore;
+import cn.uncode.schedule.sim.VirtualClock;
+
+/**
+ * 确定性的集群模拟：与ClusterHarness相同的场景和统计，所有节点运行在一个虚拟时钟上，注册中心为进程内的模拟实现，
+ * 不占用线程和网络，上千节点、一小时的场景可以在数秒到数分钟内跑完；相同的种子得到相同的结果
+ * 
+ * 支持的配置：assignStrategy、maxTaskNumOfOneServer、balanceCoincidentTasks、serverExpireTime、autoRegisterTask。
+ * 请求速率为每个节点访问模拟注册中心的次数。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class SimulatedClusterHarness extends ClusterScenario {
+
+	/**
+	 * 虚拟时间的起点，按分钟对齐
+	 */
+	private static final long START_TIME = 1600000020000L;
+
+	/**
+	 * 收敛检查间隔
+	 */
+	private static final long MONITOR_INTERVAL = 1000;
+
+	/**
+	 * 节点启动时间的随机抖动上限
+	 */
+	private static final int START_JITTER = 1000;
+
+	private long seed = 1;
+
+	private final List<SimulatedNode> simulatedNodes = new ArrayList<SimulatedNode>();
+
+	/**
+	 * 存活节点的服务器编号
+	 */
+	private final Set<String> aliveUuids = new HashSet<String>();
+
+	private VirtualClock clock;
+
+	private SimulatedStore store;
+
+	private GenericApplicationContext context;
+
+	private Random random;
+
+	@Override
+	protected long now() {
+		return this.clock.currentTimeMillis();
+	}
+
+	@Override
+	protected void advanceTo(long time) {
+		this.clock.runUntil(time);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		this.random = new Random(this.seed);
+		this.clock = new VirtualClock(START_TIME);
+		this.store = new SimulatedStore(this.clock);
+		if (this.zkConfig.containsKey("serverExpireTime")) {
+			this.store.setServerExpireTime(Long.parseLong(this.zkConfig.get("serverExpireTime")));
+		}
+		if (this.zkConfig.containsKey("autoRegisterTask")) {
+			this.store.setAutoRegisterTask(Boolean.parseBoolean(this.zkConfig.get("autoRegisterTask")));
+		}
+		if (this.zkConfig.containsKey("balanceCoincidentTasks")) {
+			this.store.setBalanceCoincidentTasks(Boolean.parseBoolean(this.zkConfig.get("balanceCoincidentTasks")));
+		}
+		if (this.zkConfig.containsKey("maxTaskNumOfOneServer")) {
+			this.store.setMaxTaskNumOfOneServer(Integer.parseInt(this.zkConfig.get("maxTaskNumOfOneServer")));
+		}
+		// 所有节点共享一个容器，任务bean只创建一次
+		this.context = new GenericApplicationContext();
+		for (String beanName : this.beanNames) {
+			this.context.getBeanFactory().registerSingleton(beanName, new HarnessJob(beanName + "#run", -1, this.recorder));
+		}
+		this.context.refresh();
+		new ZKScheduleManager().setApplicationContext(this.context);
+	}
+
+	@Override
+	protected void tearDown() {
+		for (SimulatedNode node : this.simulatedNodes) {
+			if (node.isAlive()) {
+				node.kill();
+			}
+		}
+		this.context.close();
+	}
+
+	@Override
+	protected void startMonitor(final Runnable task) {
+		this.clock.schedule(now() + MONITOR_INTERVAL, new Runnable() {
+			public void run() {
+				task.run();
+				clock.schedule(now() + MONITOR_INTERVAL, this);
+			}
+		});
+	}
+
+	/**
+	 * 节点在当前时间之后的随机抖动内启动，启动后调度所有任务
+	 */
+	@Override
+	protected void addNode() {
+		final SimulatedNode node = new SimulatedNode(this.simulatedNodes.size(), this.store, this.clock);
+		this.simulatedNodes.add(node);
+		this.clock.schedule(now() + this.random.nextInt(START_JITTER), new Runnable() {
+			public void run() {
+				try {
+					node.start(AssignStrategyFactory.createAssignStrategy(zkConfig.get("assignStrategy"),
+							store.getMaxTaskNumOfOneServer()));
+					aliveUuids.add(node.getDataManager().getUuid());
+					for (String beanName : beanNames) {
+						node.schedule(new SimulatedJob(context.getBean(beanName), beanName + "#run", node.getId()),
+								new CronTrigger(getCronExpression()));
+					}
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+	}
+
+	@Override
+	protected void killNode(boolean leader) {
+		for (int i = this.simulatedNodes.size() - 1; i >= 0; i--) {
+			SimulatedNode node = this.simulatedNodes.get(i);
+			if (node.isAlive() && (!leader || node.isLeader())) {
+				node.kill();
+				this.aliveUuids.remove(node.getDataManager().getUuid());
+				return;
+			}
+		}
+	}
+
+	@Override
+	protected int aliveNodes() {
+		int count = 0;
+		for (SimulatedNode node : this.simulatedNodes) {
+			if (node.isAlive()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 注册中心中任务归属的存活节点数，模拟注册中心读写即时可见，不需要逐个节点查询本地视图
+	 */
+	@Override
+	protected int countOwners(String task) {
+		Set<String> owners = this.store.getOwners(task);
+		int count = 0;
+		if (owners != null) {
+			for (String owner : owners) {
+				if (this.aliveUuids.contains(owner)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	@Override
+	protected Map<Integer, Long> sampleOperations() {
+		Map<Integer, Long> byNode = new HashMap<Integer, Long>();
+		for (SimulatedNode node : this.simulatedNodes) {
+			if (node.isAlive()) {
+				byNode.put(node.getId(), node.getOperationCount());
+			}
+		}
+		return byNode;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * 所有节点共享任务bean，执行节点和执行时间在调度时绑定
+	 */
+	private class SimulatedJob extends ScheduledMethodRunnable {
+		private final String task;
+		private final int node;
+
+		SimulatedJob(Object bean, String task, int node) throws NoSuchMethodException {
+			super(bean, "run");
+			this.task = task;
+			this.node = node;
+		}
+
+		@Override
+		public void run() {
+			recorder.record(this.task, this.node, now());
+		}
+	}
+
+}
@@ -1,28 +1,46 @@
 package cn.uncode.schedule;
 
-import java.lang.reflect.Method;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Timer;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.Trigger;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
-import org.springframework.scheduling.support.ScheduledMethodRunnable;
-
-import cn.uncode.schedule.util.ScheduleUtil;
+import org.springframework.scheduling.support.CronTrigger;
+
+import cn.uncode.schedule.assign.AssignStrategyFactory;
+import cn.uncode.schedule.assign.IAssignStrategy;
+import cn.uncode.schedule.cron.CompiledCronTrigger;
+import cn.uncode.schedule.cron.FireSpread;
+import cn.uncode.schedule.cron.SpreadTrigger;
+import cn.uncode.schedule.delay.DelayedJobManager;
+import cn.uncode.schedule.executor.ExecutorGroup;
+import cn.uncode.schedule.executor.ExecutorGroupManager;
+import cn.uncode.schedule.local.ShardedMethodRunnable;
+import cn.uncode.schedule.local.TaskDescriptor;
+import cn.uncode.schedule.local.TaskRegistry;
+import cn.uncode.schedule.pipeline.PipelineStatistics;
+import cn.uncode.schedule.registry.ScheduleDataManagerFactory;
+import cn.uncode.schedule.util.ScheduleClock;
+import cn.uncode.schedule.util.ScheduleStage;
+import cn.uncode.schedule.wheel.TimingWheelTaskScheduler;
 import cn.uncode.schedule.zk.IScheduleDataManager;
+import cn.uncode.schedule.zk.LeaderListener;
 import cn.uncode.schedule.zk.ScheduleDataManager4ZK;
 import cn.uncode.schedule.zk.ScheduleServer;
 import cn.uncode.schedule.zk.ZKManager;
@@ -47,6 +65,11 @@ public class ZKScheduleManager extends ThreadPoolTaskScheduler implements Applic
 	protected ZKManager zkManager;
 
 	private IScheduleDataManager scheduleDataManager;
+	
+	/**
+	 * 任务分配策略，未设置时根据zkConfig中的assignStrategy创建
+	 */
+	private IAssignStrategy assignStrategy;
 
 	/**
 	 * 当前调度服务的信息
@@ -62,17 +85,100 @@ public class ZKScheduleManager extends ThreadPoolTaskScheduler implements Applic
 	 * 心跳间隔
 	 */
 	private int timerInterval = 2000;
+	
+	/**
+	 * 任务分配间隔
+	 */
+	private int assignInterval = 2000;
+	
+	/**
+	 * 本地任务核对间隔
+	 */
+	private int checkInterval = 2000;
+	
+	/**
+	 * 心跳超时时间，超时后中断本次心跳，保证心跳延迟有上限
+	 */
+	private int heartBeatTimeout = 5000;
+	
+	/**
+	 * 任务分配超时时间
+	 */
+	private int assignTimeout = 60000;
+	
+	/**
+	 * 本地任务核对超时时间
+	 */
+	private int checkTimeout = 30000;
 
 	/**
 	 * 是否注册成功
 	 */
-	private boolean isScheduleServerRegister = false;
+	private volatile boolean isScheduleServerRegister = false;
 
 	private static ApplicationContext applicationcontext;
 	
 	private Map<String, Boolean> isOwnerMap = new ConcurrentHashMap<String, Boolean>();
+	
+	/**
+	 * 数据处理任务的统计信息
+	 */
+	private PipelineStatistics pipelineStatistics = new PipelineStatistics();
+	
+	/**
+	 * 调度引擎：default使用继承的ScheduledThreadPoolExecutor，timingWheel使用分层哈希时间轮
+	 */
+	public static final String ENGINE_DEFAULT = "default";
+	public static final String ENGINE_TIMING_WHEEL = "timingWheel";
+	private String scheduleEngine = ENGINE_DEFAULT;
+	
+	/**
+	 * 时间轮引擎的执行线程数，0表示取poolSize与CPU核数中的较大值
+	 */
+	private int timingWheelPoolSize = 0;
+	private volatile TimingWheelTaskScheduler timingWheelScheduler;
+	
+	/**
+	 * 任务执行组，调度线程触发后任务在所属执行组中执行
+	 */
+	private volatile ExecutorGroupManager executorGroupManager;
+	
+	/**
+	 * 调度时解析的任务信息
+	 */
+	private volatile TaskRegistry taskRegistry;
+	
+	/**
+	 * 触发时间打散策略：none、hash、random，任务定义未指定时使用
+	 */
+	private String spreadPolicy = FireSpread.NONE;
+	
+	/**
+	 * 触发时间打散窗口（毫秒）
+	 */
+	private long spreadWindow;
+	
+	/**
+	 * 集群任务名称 -> 触发时间标识，由Leader据此把同时触发的任务分配到不同的服务器
+	 */
+	private Map<String, String> fireKeys = new ConcurrentHashMap<String, String>();
+	
+	/**
+	 * 时钟，模拟运行时为虚拟时钟
+	 */
+	private ScheduleClock clock = ScheduleClock.SYSTEM;
+	
+	/**
+	 * 外部调度器：设置后心跳、任务分配、本地任务核对和任务触发都由它调度，任务在调度线程中直接执行
+	 */
+	private TaskScheduler taskScheduler;
 
-	private Timer hearBeatTimer;
+	/**
+	 * 心跳、任务分配、本地任务核对分别在独立的线程中调度，互不阻塞
+	 */
+	private ScheduleStage heartBeatStage;
+	private ScheduleStage assignStage;
+	private ScheduleStage checkStage;
 	protected Lock initLock = new ReentrantLock();
 	protected boolean isStopSchedule = false;
 	protected Lock registerLock = new ReentrantLock();
@@ -85,6 +191,12 @@ public class ZKScheduleManager extends ThreadPoolTaskScheduler implements Applic
 	}
 
 	public void init() throws Exception {
+		if (this.zkConfig == null && this.scheduleDataManager != null) {
+			// 已指定数据管理器（如模拟运行），不连接zookeeper
+			this.errorMessage = null;
+			this.initialData();
+			return;
+		}
 		Properties properties = new Properties();
 		for (Map.Entry<String, String> e : this.zkConfig.entrySet()) {
 			properties.put(e.getKey(), e.getValue());
@@ -93,7 +205,7 @@ public class ZKScheduleManager extends ThreadPoolTaskScheduler implements Applic
 	}
 
 	public void reInit(Properties p) throws Exception {
-		if (this.start == true || this.hearBeatTimer != null) {
+		if (this.start == true || this.heartBeatStage != null) {
 			throw new Exception("调度器有任务处理，不能重新初始化");
 		}
 		this.init(p);
@@ -105,9 +217,24 @@ public class ZKScheduleManager extends ThreadPoolTaskScheduler implements Applic
 		}
 		this.initLock.lock();
 		try {
+			closeScheduleDataManager();
 			this.scheduleDataManager = null;
 			if (this.zkManager != null) {
 				this.zkManager.close();
+				this.zkManager = null;
+			}
+			if (ScheduleDataManagerFactory.isZookeeper(p) == false) {
+				// 非zookeeper注册中心不需要等待连接，直接初始化
+				this.scheduleDataManager = ScheduleDataManagerFactory.createScheduleDataManager(p, this.clock);
+				if (this.assignStrategy == null) {
+					String maxNum = p.getProperty(ZKManager.keys.maxTaskNumOfOneServer.toString());
+					this.assignStrategy = AssignStrategyFactory.createAssignStrategy(
+							p.getProperty(ZKManager.keys.assignStrategy.toString()),
+							maxNum == null || maxNum.length() == 0 ? 0 : Integer.parseInt(maxNum));
+				}
+				this.errorMessage = null;
+				this.initialData();
+				return;
 			}
 			this.zkManager = new ZKManager(p);
 			this.errorMessage = "Zookeeper connecting ......"
@@ -133,6 +260,10 @@ public class ZKScheduleManager extends ThreadPoolTaskScheduler implements Applic
 			// 先发送心跳信息
 			if (errorMessage != null) {
 				this.currenScheduleServer.setDealInfoDesc(errorMessage);
+			} else if (this.pipelineStatistics.hasFetched()) {
+				// 数据处理任务的累计吞吐量
+				this.currenScheduleServer.setDealInfoDesc(this.pipelineStatistics.getDealDescription());
+				this.currenScheduleServer.setLastFetchDataTime(this.pipelineStatistics.getLastFetchDataTime());
 			}
 			if (this.scheduleDataManager
 					.refreshScheduleServer(this.currenScheduleServer) == false) {
@@ -168,29 +299,32 @@ public class ZKScheduleManager extends ThreadPoolTaskScheduler implements Applic
 	 */
 	public void assignScheduleTask() throws Exception {
 		scheduleDataManager.clearExpireScheduleServer();
-		List<String> serverList = scheduleDataManager.loadScheduleServerNames();
-		if (scheduleDataManager.isLeader(this.currenScheduleServer.getUuid(),
-				serverList) == false) {
+		if (scheduleDataManager.hasLeadership() == false) {
 			if (LOGGER.isDebugEnabled()) {
 				LOGGER.debug(this.currenScheduleServer.getUuid()
 						+ ":不是负责任务分配的Leader,直接返回");
 			}
 			return;
 		}
+		List<String> serverList = scheduleDataManager.loadScheduleServerNames();
 		//黑名单
-		for(String ip:zkManager.getIpBlacklist()){
-			if(serverList.contains(ip)){
-				serverList.remove(ip);
+		if (this.zkManager != null) {
+			for(String ip:zkManager.getIpBlacklist()){
+				if(serverList.contains(ip)){
+					serverList.remove(ip);
+				}
 			}
 		}
 		// 设置初始化成功标准，避免在leader转换的时候，新增的线程组初始化失败
-		scheduleDataManager.assignTask(this.currenScheduleServer.getUuid(), serverList);
+		scheduleDataManager.assignTask(this.currenScheduleServer.getUuid(), serverList, this.assignStrategy);
 	}
 
 	/**
 	 * 定时向数据配置中心更新当前服务器的心跳信息。 如果发现本次更新的时间如果已经超过了，服务器死亡的心跳周期，则不能在向服务器更新信息。
 	 * 而应该当作新的服务器，进行重新注册。
 	 * 
+	 * 依次执行心跳、任务分配和本地任务核对，调度器内部已拆分为独立的阶段分别调度，此方法用于手工触发。
+	 * 
 	 * @throws Exception
 	 */
 	public void refreshScheduleServer() throws Exception {
@@ -217,6 +351,8 @@ public class ZKScheduleManager extends ThreadPoolTaskScheduler implements Applic
 	}
 	
 	public void checkLocalTask() throws Exception {
+		// 发布新调度任务的触发时间标识
+		scheduleDataManager.publishFireKeys(this.fireKeys);
 		// 检查系统任务执行情况
 		scheduleDataManager.checkLocalTask(this.currenScheduleServer.getUuid());
 	}
@@ -227,69 +363,266 @@ public class ZKScheduleManager extends ThreadPoolTaskScheduler implements Applic
 	 * @throws Exception
 	 */
 	public void initialData() throws Exception {
-		this.zkManager.initial();
-		this.scheduleDataManager = new ScheduleDataManager4ZK(this.zkManager);
+		if (this.zkManager != null) {
+			this.zkManager.initial();
+			this.scheduleDataManager = new ScheduleDataManager4ZK(this.zkManager, this.clock);
+		}
+		this.scheduleDataManager.setLeaderListener(new LeaderListener() {
+			public void leadershipAcquired() {
+				// 成为Leader后立即分配任务，不等待下一次调度
+				ScheduleStage stage = assignStage;
+				if (stage != null) {
+					stage.triggerNow();
+				}
+			}
+
+			public void leadershipLost() {
+				LOGGER.info(currenScheduleServer.getUuid() + ":不再负责任务分配");
+			}
+		});
+		if (this.assignStrategy == null) {
+			this.assignStrategy = this.zkManager == null ? AssignStrategyFactory.createAssignStrategy(null, 0)
+					: AssignStrategyFactory.createAssignStrategy(this.zkManager.getAssignStrategy(),
+							this.zkManager.getMaxTaskNumOfOneServer());
+		}
+		initialDelayedJobs();
 		if (this.start == true) {
 			// 注册调度管理器
 			this.scheduleDataManager.registerScheduleServer(this.currenScheduleServer);
-			if (hearBeatTimer == null) {
-				hearBeatTimer = new Timer("ScheduleManager-"
-						+ this.currenScheduleServer.getUuid() + "-HearBeat");
+			if (heartBeatStage == null) {
+				String prefix = "ScheduleManager-" + this.currenScheduleServer.getUuid();
+				heartBeatStage = new ScheduleStage(prefix + "-HearBeat", this.timerInterval, this.heartBeatTimeout,
+						Thread.MAX_PRIORITY, new Callable<Object>() {
+							public Object call() throws Exception {
+								heartBeat();
+								return null;
+							}
+						});
+				assignStage = new ScheduleStage(prefix + "-Assign", this.assignInterval, this.assignTimeout,
+						Thread.NORM_PRIORITY, new Callable<Object>() {
+							public Object call() throws Exception {
+								if (isScheduleServerRegister) {
+									assignScheduleTask();
+								}
+								return null;
+							}
+						});
+				checkStage = new ScheduleStage(prefix + "-CheckLocal", this.checkInterval, this.checkTimeout,
+						Thread.NORM_PRIORITY, new Callable<Object>() {
+							public Object call() throws Exception {
+								if (isScheduleServerRegister) {
+									checkLocalTask();
+								}
+								return null;
+							}
+						});
 			}
-			hearBeatTimer.schedule(new HeartBeatTimerTask(this), 2000, this.timerInterval);
+			if (this.taskScheduler != null) {
+				heartBeatStage.start(2000, this.taskScheduler, this.clock);
+				assignStage.start(2000, this.taskScheduler, this.clock);
+				checkStage.start(2000, this.taskScheduler, this.clock);
+			} else {
+				heartBeatStage.start(2000);
+				assignStage.start(2000);
+				checkStage.start(2000);
+			}
+		}
+	}
+	
+	/**
+	 * 心跳阶段：只更新当前服务器的心跳信息，失败时清除内存数据
+	 * 
+	 * @throws Exception
+	 */
+	private void heartBeat() throws Exception {
+		try {
+			rewriteScheduleInfo();
+		} catch (Exception e) {
+			this.clearMemoInfo();
+			throw e;
 		}
 	}
 	
-	private Runnable taskWrapper(final Runnable task){
+	/**
+	 * 调度线程只负责触发，任务交给所属执行组的线程执行
+	 */
+	private Runnable taskWrapper(Runnable task){
+		return taskWrapper(getTaskRegistry().register(task));
+	}
+	
+	private Runnable taskWrapper(final TaskDescriptor descriptor){
+		final String name = descriptor.getName();
+		final Runnable invocation = new Runnable(){
+			public void run(){
+				runIfOwner(descriptor);
+			}
+		};
+		if(this.taskScheduler != null){
+			// 外部调度器（模拟运行）在调度线程中直接执行，执行顺序确定
+			return invocation;
+		}
 		return new Runnable(){
 			public void run(){
-				ScheduledMethodRunnable scheduledMethodRunnable = (ScheduledMethodRunnable)task;
-		    	Method targetMethod = scheduledMethodRunnable.getMethod();
-		    	String[] beanNames = applicationcontext.getBeanNamesForType(targetMethod.getDeclaringClass());
-		    	if(null != beanNames && StringUtils.isNotEmpty(beanNames[0])){
-		    		String name = ScheduleUtil.getTaskNameFormBean(beanNames[0], targetMethod.getName());
-		    		boolean isOwner = false;
-					try {
-						if(isScheduleServerRegister == false){
-							Thread.sleep(1000);
-						}
-						if(zkManager.checkZookeeperState()){
-							isOwner = scheduleDataManager.isOwner(name, currenScheduleServer.getUuid());
-							isOwnerMap.put(name, isOwner);
-						}else{
-							// 如果zk不可用，使用历史数据
-							if(null != isOwnerMap){
-								isOwner = isOwnerMap.get(name);
-							}
-						}
-					} catch (Exception e) {
-						LOGGER.error("Check task owner error.", e);
-					}
-		    		if(isOwner){
-		    			task.run();
-		    			LOGGER.info("Cron job has been executed.");
-		    		}
-		    	}
+				getExecutorGroupManager().getGroup(name).execute(name, invocation);
 			}
 		};
 	}
-
-	class HeartBeatTimerTask extends java.util.TimerTask {
-		private transient final Logger log = LoggerFactory.getLogger(HeartBeatTimerTask.class);
-		ZKScheduleManager manager;
-
-		public HeartBeatTimerTask(ZKScheduleManager aManager) {
-			manager = aManager;
+	
+	/**
+	 * 任务注册表，首次调度时创建
+	 * 
+	 * @return
+	 */
+	public TaskRegistry getTaskRegistry() {
+		if (this.taskRegistry == null) {
+			synchronized (this) {
+				if (this.taskRegistry == null) {
+					this.taskRegistry = new TaskRegistry(applicationcontext);
+				}
+			}
 		}
-
-		public void run() {
-			try {
-				Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
-				manager.refreshScheduleServer();
-			} catch (Exception ex) {
-				log.error(ex.getMessage(), ex);
+		return this.taskRegistry;
+	}
+	
+	/**
+	 * 确认任务归属当前节点后执行
+	 * 
+	 * @param descriptor
+	 */
+	private void runIfOwner(TaskDescriptor descriptor){
+		String name = descriptor.getName();
+		long token = -1;
+		try {
+			if(isScheduleServerRegister == false && this.taskScheduler == null){
+				Thread.sleep(1000);
+			}
+			token = getFencingToken(name);
+		} catch (Exception e) {
+			LOGGER.error("Check task owner error.", e);
+		}
+		if(token >= 0){
+			if(descriptor.getShardedTask() != null){
+				runShards(name, descriptor.getShardedTask());
+			}else{
+				descriptor.getTask().run();
 			}
+			LOGGER.info("Cron job has been executed, epoch " + token + ".");
+		}
+	}
+	
+	/**
+	 * 执行当前节点持有的分片
+	 * 
+	 * @param name 任务名称
+	 * @param task
+	 */
+	private void runShards(String name, ShardedMethodRunnable task){
+		List<Integer> shards = null;
+		try {
+			shards = scheduleDataManager.getOwnedShards(name, currenScheduleServer.getUuid());
+		} catch (Exception e) {
+			LOGGER.error("Load task shards error.", e);
+		}
+		if(shards != null && shards.size() > 0){
+			if(LOGGER.isDebugEnabled()){
+				LOGGER.debug("Run task " + name + " shards " + shards + " of " + task.getShardCount() + ".");
+			}
+			task.run(shards);
+		}
+	}
+	
+	/**
+	 * 判断任务是否分配给当前节点，供spring task和quartz执行路径共用
+	 * 归属信息由数据管理器的本地视图提供，zk不可用时使用历史数据
+	 * 
+	 * @param name 任务名称
+	 * @return
+	 */
+	public boolean isOwner(String name) {
+		return getFencingToken(name) >= 0;
+	}
+	
+	/**
+	 * 获取任务执行的防护令牌，即确认任务归属时的分配纪元
+	 * 分配纪元变化后，在新纪元下重新确认归属之前不会返回有效令牌，避免任务迁移期间新旧服务器同时执行
+	 * zk不可用时使用历史数据，令牌为0
+	 * 
+	 * @param name 任务名称
+	 * @return 不属于当前节点时返回-1
+	 */
+	public long getFencingToken(String name) {
+		long token = -1;
+		try {
+			if(isDataManagerAvailable()){
+				token = scheduleDataManager.getFencingToken(name, currenScheduleServer.getUuid());
+				isOwnerMap.put(name, token >= 0);
+			}else{
+				// 如果zk不可用，使用历史数据
+				Boolean owner = isOwnerMap.get(name);
+				if(null != owner && owner){
+					token = 0;
+				}
+			}
+		} catch (Exception e) {
+			LOGGER.error("Check task owner error.", e);
+		}
+		return token;
+	}
+	
+	/**
+	 * 获取分片任务中属于当前节点的分片，zk不可用时返回空列表
+	 * 
+	 * @param name 任务名称
+	 * @return
+	 */
+	public List<Integer> getOwnedShards(String name) {
+		try {
+			if(isDataManagerAvailable()){
+				return scheduleDataManager.getOwnedShards(name, currenScheduleServer.getUuid());
+			}
+		} catch (Exception e) {
+			LOGGER.error("Load task shards error.", e);
+		}
+		return new ArrayList<Integer>();
+	}
+	
+	/**
+	 * 数据管理器是否可用：使用zookeeper时为连接正常，外部指定的数据管理器始终可用
+	 * 
+	 * @return
+	 * @throws Exception
+	 */
+	private boolean isDataManagerAvailable() throws Exception {
+		if (this.zkManager == null) {
+			return this.scheduleDataManager != null;
 		}
+		return this.zkManager.checkZookeeperState();
+	}
+	
+	/**
+	 * 初始化延迟任务管理器，注册各自的分区扫描任务
+	 * 
+	 * @throws Exception
+	 */
+	private void initialDelayedJobs() throws Exception {
+		if (applicationcontext == null) {
+			return;
+		}
+		for (DelayedJobManager manager : applicationcontext.getBeansOfType(DelayedJobManager.class).values()) {
+			manager.initial(this);
+		}
+	}
+	
+	/**
+	 * 任务归属本地视图的陈旧时间（毫秒），0表示实时有效，-1表示尚未同步
+	 * 
+	 * @return
+	 */
+	public long getOwnerViewStaleness() {
+		if(null == scheduleDataManager){
+			return -1;
+		}
+		return scheduleDataManager.getOwnerViewStaleness();
 	}
 
 	class InitialThread extends Thread {
@@ -338,6 +671,40 @@ public class ZKScheduleManager extends ThreadPoolTaskScheduler implements Applic
 	public IScheduleDataManager getScheduleDataManager() {
 		return scheduleDataManager;
 	}
+	
+	/**
+	 * 指定数据管理器，未设置zkConfig时init()直接使用它，不连接zookeeper
+	 * 
+	 * @param scheduleDataManager
+	 */
+	public void setScheduleDataManager(IScheduleDataManager scheduleDataManager) {
+		this.scheduleDataManager = scheduleDataManager;
+	}
+	
+	public ScheduleClock getClock() {
+		return clock;
+	}
+	
+	public void setClock(ScheduleClock clock) {
+		this.clock = clock;
+	}
+	
+	public TaskScheduler getTaskScheduler() {
+		return taskScheduler;
+	}
+	
+	/**
+	 * 设置外部调度器，如模拟运行的虚拟时钟调度器，调度器的生命周期由调用方管理
+	 * 
+	 * @param taskScheduler
+	 */
+	public void setTaskScheduler(TaskScheduler taskScheduler) {
+		this.taskScheduler = taskScheduler;
+	}
+
+	public PipelineStatistics getPipelineStatistics() {
+		return pipelineStatistics;
+	}
 
 	@Override
 	public void setApplicationContext(ApplicationContext applicationcontext)
@@ -353,32 +720,276 @@ public class ZKScheduleManager extends ThreadPoolTaskScheduler implements Applic
 		return zkManager;
 	}
 
+	public IAssignStrategy getAssignStrategy() {
+		return assignStrategy;
+	}
+
+	public void setAssignStrategy(IAssignStrategy assignStrategy) {
+		this.assignStrategy = assignStrategy;
+	}
+
+	public ScheduleStage getHeartBeatStage() {
+		return heartBeatStage;
+	}
+
+	public ScheduleStage getAssignStage() {
+		return assignStage;
+	}
+
+	public ScheduleStage getCheckStage() {
+		return checkStage;
+	}
+
+	public void setTimerInterval(int timerInterval) {
+		this.timerInterval = timerInterval;
+	}
+
+	public void setAssignInterval(int assignInterval) {
+		this.assignInterval = assignInterval;
+	}
+
+	public void setCheckInterval(int checkInterval) {
+		this.checkInterval = checkInterval;
+	}
+
+	public void setHeartBeatTimeout(int heartBeatTimeout) {
+		this.heartBeatTimeout = heartBeatTimeout;
+	}
+
+	public void setAssignTimeout(int assignTimeout) {
+		this.assignTimeout = assignTimeout;
+	}
+
+	public void setCheckTimeout(int checkTimeout) {
+		this.checkTimeout = checkTimeout;
+	}
+
 	public void setZkConfig(Map<String, String> zkConfig) {
 		this.zkConfig = zkConfig;
 	}
 	
+	public void setScheduleEngine(String scheduleEngine) {
+		this.scheduleEngine = scheduleEngine;
+	}
+
+	public String getScheduleEngine() {
+		return scheduleEngine;
+	}
+
+	public void setSpreadPolicy(String spreadPolicy) {
+		FireSpread.create(spreadPolicy, 1);
+		this.spreadPolicy = spreadPolicy;
+	}
+
+	public void setSpreadWindow(long spreadWindow) {
+		this.spreadWindow = spreadWindow;
+	}
+	
+	/**
+	 * 全局的触发时间打散策略
+	 * 
+	 * @return 不打散时返回null
+	 */
+	public FireSpread getFireSpread() {
+		return FireSpread.create(this.spreadPolicy, this.spreadWindow);
+	}
+
+	public void setTimingWheelPoolSize(int timingWheelPoolSize) {
+		this.timingWheelPoolSize = timingWheelPoolSize;
+	}
+	
+	/**
+	 * 配置执行组，任务按执行组隔离执行
+	 * 
+	 * @param executorGroups
+	 */
+	public void setExecutorGroups(List<ExecutorGroup> executorGroups) {
+		for (ExecutorGroup group : executorGroups) {
+			getExecutorGroupManager().addGroup(group);
+		}
+	}
+	
+	/**
+	 * 默认执行组使用虚拟线程执行任务，适合阻塞在网络和数据库调用上的任务；JVM不支持虚拟线程时仍使用线程池
+	 * 
+	 * @param virtualThreads
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		getExecutorGroupManager().getDefaultGroup().setVirtualThreads(virtualThreads);
+	}
+	
+	/**
+	 * 执行组管理，首次使用时创建，默认执行组的线程数取poolSize与CPU核数中的较大值
+	 * 
+	 * @return
+	 */
+	public ExecutorGroupManager getExecutorGroupManager() {
+		if (this.executorGroupManager == null) {
+			synchronized (this) {
+				if (this.executorGroupManager == null) {
+					this.executorGroupManager = new ExecutorGroupManager(
+							Math.max(getPoolSize(), Runtime.getRuntime().availableProcessors()));
+				}
+			}
+		}
+		return this.executorGroupManager;
+	}
+	
+	/**
+	 * 任务实际使用的调度器：外部调度器优先，其次是时间轮引擎
+	 * 
+	 * @return 使用继承的线程池调度时返回null
+	 */
+	private TaskScheduler getDelegateScheduler() {
+		if (this.taskScheduler != null) {
+			return this.taskScheduler;
+		}
+		return getTimingWheelScheduler();
+	}
+	
+	/**
+	 * 使用时间轮引擎时返回时间轮调度器，首次使用时创建
+	 * 
+	 * @return 使用默认引擎时返回null
+	 */
+	private TimingWheelTaskScheduler getTimingWheelScheduler() {
+		if (!ENGINE_TIMING_WHEEL.equals(this.scheduleEngine)) {
+			return null;
+		}
+		if (this.timingWheelScheduler == null) {
+			synchronized (this) {
+				if (this.timingWheelScheduler == null) {
+					int poolSize = this.timingWheelPoolSize;
+					if (poolSize <= 0) {
+						poolSize = Math.max(getPoolSize(), Runtime.getRuntime().availableProcessors());
+					}
+					this.timingWheelScheduler = new TimingWheelTaskScheduler(poolSize);
+					LOGGER.info("使用时间轮调度引擎，执行线程数：" + poolSize);
+				}
+			}
+		}
+		return this.timingWheelScheduler;
+	}
+
+	/**
+	 * 停止心跳、任务分配和本地任务核对，关闭调度线程、zookeeper连接和数据管理器
+	 */
+	@Override
+	public void shutdown() {
+		this.isStopSchedule = true;
+		if (this.initialThread != null) {
+			this.initialThread.stopThread();
+		}
+		for (ScheduleStage stage : new ScheduleStage[] { this.heartBeatStage, this.assignStage, this.checkStage }) {
+			if (stage != null) {
+				stage.stop();
+			}
+		}
+		if (this.taskScheduler == null) {
+			super.shutdown();
+		}
+		if (this.timingWheelScheduler != null) {
+			this.timingWheelScheduler.shutdown();
+		}
+		if (this.executorGroupManager != null) {
+			this.executorGroupManager.shutdown();
+		}
+		if (this.zkManager != null) {
+			try {
+				this.zkManager.close();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		closeScheduleDataManager();
+	}
+	
+	/**
+	 * 关闭需要释放资源的数据管理器，如本地文件注册中心
+	 */
+	private void closeScheduleDataManager() {
+		if (this.scheduleDataManager instanceof Closeable) {
+			try {
+				((Closeable) this.scheduleDataManager).close();
+			} catch (IOException e) {
+				LOGGER.error("Close schedule data manager error.", e);
+			}
+		}
+	}
+	
 	@Override
     public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period) {
+		TaskScheduler delegate = getDelegateScheduler();
+		if (delegate != null) {
+			return delegate.scheduleAtFixedRate(taskWrapper(task), period);
+		}
         return super.scheduleAtFixedRate(taskWrapper(task), period);
     }
 	
 	public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
-		return super.schedule(taskWrapper(task), trigger);
+		TaskDescriptor descriptor = getTaskRegistry().register(task);
+		trigger = prepareTrigger(descriptor, trigger);
+		TaskScheduler delegate = getDelegateScheduler();
+		if (delegate != null) {
+			return delegate.schedule(taskWrapper(descriptor), trigger);
+		}
+		return super.schedule(taskWrapper(descriptor), trigger);
+	}
+	
+	/**
+	 * cron触发器转换为编译后的触发器，记录集群任务的触发时间标识，未指定打散策略时按全局配置打散
+	 * 
+	 * @param descriptor
+	 * @param trigger
+	 * @return
+	 */
+	private Trigger prepareTrigger(TaskDescriptor descriptor, Trigger trigger) {
+		if (trigger instanceof CronTrigger) {
+			CompiledCronTrigger compiled = CompiledCronTrigger.from((CronTrigger) trigger);
+			if (compiled != null) {
+				trigger = compiled;
+			}
+		}
+		Trigger base = trigger instanceof SpreadTrigger ? ((SpreadTrigger) trigger).getDelegate() : trigger;
+		if (base instanceof CompiledCronTrigger) {
+			this.fireKeys.put(descriptor.getName(), ((CompiledCronTrigger) base).getFireKey());
+		}
+		FireSpread spread = getFireSpread();
+		if (spread != null && !(trigger instanceof SpreadTrigger)) {
+			trigger = new SpreadTrigger(trigger, spread, descriptor.getName());
+		}
+		return trigger;
 	}
 
 	public ScheduledFuture<?> schedule(Runnable task, Date startTime) {
+		TaskScheduler delegate = getDelegateScheduler();
+		if (delegate != null) {
+			return delegate.schedule(taskWrapper(task), startTime);
+		}
 		return super.schedule(taskWrapper(task), startTime);
 	}
 
 	public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Date startTime, long period) {
+		TaskScheduler delegate = getDelegateScheduler();
+		if (delegate != null) {
+			return delegate.scheduleAtFixedRate(taskWrapper(task), startTime, period);
+		}
 		return super.scheduleAtFixedRate(taskWrapper(task), startTime, period);
 	}
 
 	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Date startTime, long delay) {
+		TaskScheduler delegate = getDelegateScheduler();
+		if (delegate != null) {
+			return delegate.scheduleWithFixedDelay(taskWrapper(task), startTime, delay);
+		}
 		return super.scheduleWithFixedDelay(taskWrapper(task), startTime, delay);
 	}
 
 	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay) {
+		TaskScheduler delegate = getDelegateScheduler();
+		if (delegate != null) {
+			return delegate.scheduleWithFixedDelay(taskWrapper(task), delay);
+		}
 		return super.scheduleWithFixedDelay(taskWrapper(task), delay);
 	}
 	
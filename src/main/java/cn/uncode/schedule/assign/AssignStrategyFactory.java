@@ -0,0 +1,38 @@
+package cn.uncode.schedule.assign;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * 根据配置创建任务分配策略
+ * 
+ * @author juny.ye
+ * 
+ */
+public class AssignStrategyFactory {
+
+	public static final String RANDOM = "random";
+	public static final String LEAST_LOADED = "leastLoaded";
+	public static final String RENDEZVOUS = "rendezvous";
+
+	/**
+	 * @param name 策略名称：random、leastLoaded、rendezvous，或者自定义策略的类名，为空时使用leastLoaded
+	 * @param maxNumOfOneServer 每台服务器最多分配的任务数，0表示不限制
+	 * @return
+	 * @throws Exception
+	 */
+	public static IAssignStrategy createAssignStrategy(String name, int maxNumOfOneServer) throws Exception {
+		if (StringUtils.isEmpty(name) || LEAST_LOADED.equalsIgnoreCase(name)) {
+			return new LeastLoadedAssignStrategy(maxNumOfOneServer);
+		} else if (RENDEZVOUS.equalsIgnoreCase(name)) {
+			return new RendezvousHashAssignStrategy(maxNumOfOneServer);
+		} else if (RANDOM.equalsIgnoreCase(name)) {
+			return new RandomAssignStrategy();
+		}
+		Class<?> clazz = Class.forName(name);
+		if (!IAssignStrategy.class.isAssignableFrom(clazz)) {
+			throw new Exception(name + " 不是有效的任务分配策略");
+		}
+		return (IAssignStrategy) clazz.getDeclaredConstructor().newInstance();
+	}
+
+}
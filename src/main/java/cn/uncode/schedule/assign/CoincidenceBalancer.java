@@ -0,0 +1,135 @@
+package cn.uncode.schedule.assign;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 同时触发的任务分散到不同的服务器
+ * 
+ * 触发时间标识相同的任务为一组，每台服务器上同组任务数不超过 ceil(组内任务数 / 服务器数)。
+ * 超出的任务优先与目标服务器上其他组的任务交换，保持各服务器的任务总数不变；找不到可交换的任务时，
+ * 只在目标服务器负载更低时直接迁移。已满足约束的分配保持不动。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class CoincidenceBalancer {
+
+	/**
+	 * 调整分配结果
+	 * 
+	 * @param assignment 任务名称 -> 分配的服务器，由分配策略计算
+	 * @param fireKeys 任务名称 -> 触发时间标识，没有标识的任务不受约束，可用于交换
+	 * @param serverList 可用的服务器列表
+	 * @return 调整后的分配结果
+	 */
+	public static Map<String, String> balance(Map<String, String> assignment, Map<String, String> fireKeys,
+			List<String> serverList) {
+		Map<String, String> result = new HashMap<String, String>(assignment);
+		if (serverList.size() < 2 || fireKeys.isEmpty()) {
+			return result;
+		}
+		// 任务按名称排序保证结果稳定
+		Map<String, List<String>> groups = new TreeMap<String, List<String>>();
+		Map<String, List<String>> serverTasks = new HashMap<String, List<String>>();
+		for (String server : serverList) {
+			serverTasks.put(server, new ArrayList<String>());
+		}
+		List<String> taskNames = new ArrayList<String>(result.keySet());
+		Collections.sort(taskNames);
+		for (String taskName : taskNames) {
+			List<String> tasks = serverTasks.get(result.get(taskName));
+			if (tasks == null) {
+				continue;
+			}
+			tasks.add(taskName);
+			String fireKey = fireKeys.get(taskName);
+			if (fireKey != null) {
+				List<String> group = groups.get(fireKey);
+				if (group == null) {
+					group = new ArrayList<String>();
+					groups.put(fireKey, group);
+				}
+				group.add(taskName);
+			}
+		}
+		Map<String, Map<String, Integer>> counts = new HashMap<String, Map<String, Integer>>();
+		Map<String, Integer> limits = new HashMap<String, Integer>();
+		for (Map.Entry<String, List<String>> entry : groups.entrySet()) {
+			Map<String, Integer> count = new HashMap<String, Integer>();
+			for (String server : serverList) {
+				count.put(server, 0);
+			}
+			for (String taskName : entry.getValue()) {
+				String server = result.get(taskName);
+				count.put(server, count.get(server) + 1);
+			}
+			counts.put(entry.getKey(), count);
+			limits.put(entry.getKey(), (entry.getValue().size() + serverList.size() - 1) / serverList.size());
+		}
+
+		for (Map.Entry<String, List<String>> entry : groups.entrySet()) {
+			String fireKey = entry.getKey();
+			int limit = limits.get(fireKey);
+			Map<String, Integer> count = counts.get(fireKey);
+			for (String taskName : entry.getValue()) {
+				String source = result.get(taskName);
+				if (count.get(source) <= limit) {
+					continue;
+				}
+				String target = null;
+				for (String server : serverList) {
+					if (count.get(server) < limit && (target == null || count.get(server) < count.get(target))) {
+						target = server;
+					}
+				}
+				if (target == null) {
+					break;
+				}
+				String swap = findSwap(serverTasks.get(target), source, fireKey, fireKeys, counts, limits);
+				if (swap != null) {
+					move(swap, target, source, result, serverTasks, fireKeys, counts);
+				} else if (serverTasks.get(target).size() >= serverTasks.get(source).size()) {
+					continue;
+				}
+				move(taskName, source, target, result, serverTasks, fireKeys, counts);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 在目标服务器上找一个可以换到源服务器的任务：不属于同一组，换过去后不超过所在组的上限
+	 */
+	private static String findSwap(List<String> targetTasks, String source, String fireKey, Map<String, String> fireKeys,
+			Map<String, Map<String, Integer>> counts, Map<String, Integer> limits) {
+		for (String candidate : targetTasks) {
+			String candidateKey = fireKeys.get(candidate);
+			if (candidateKey == null) {
+				return candidate;
+			}
+			if (!candidateKey.equals(fireKey) && counts.get(candidateKey).get(source) < limits.get(candidateKey)) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	private static void move(String taskName, String from, String to, Map<String, String> result,
+			Map<String, List<String>> serverTasks, Map<String, String> fireKeys, Map<String, Map<String, Integer>> counts) {
+		result.put(taskName, to);
+		serverTasks.get(from).remove(taskName);
+		serverTasks.get(to).add(taskName);
+		String fireKey = fireKeys.get(taskName);
+		if (fireKey != null && counts.containsKey(fireKey)) {
+			Map<String, Integer> count = counts.get(fireKey);
+			count.put(from, count.get(from) - 1);
+			count.put(to, count.get(to) + 1);
+		}
+	}
+
+}
@@ -0,0 +1,23 @@
+package cn.uncode.schedule.assign;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 任务分配策略，由Leader在重新分配任务时调用
+ * 
+ * @author juny.ye
+ * 
+ */
+public interface IAssignStrategy {
+
+	/**
+	 * 计算任务的分配结果
+	 * 
+	 * @param taskServers 任务名称 -> 当前分配的服务器（已剔除不可用的服务器），未分配时为空列表
+	 * @param serverList 可用的服务器列表
+	 * @return 任务名称 -> 分配的服务器，不包含的任务表示暂不分配
+	 */
+	public Map<String, String> assign(Map<String, List<String>> taskServers, List<String> serverList);
+
+}
@@ -0,0 +1,113 @@
+package cn.uncode.schedule.assign;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cn.uncode.schedule.util.ScheduleUtil;
+
+/**
+ * 最小负载分配策略
+ * 
+ * 按{@link ScheduleUtil#assignTaskNumber(int, int, int)}计算每台服务器的任务配额，已有分配在配额内保持不动，
+ * 超出配额和未分配的任务交给当前负载最小的服务器。服务器加入时只从超出配额的服务器上迁移任务。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class LeastLoadedAssignStrategy implements IAssignStrategy {
+
+	private static final transient Logger LOG = LoggerFactory.getLogger(LeastLoadedAssignStrategy.class);
+
+	/**
+	 * 每台服务器最多分配的任务数，0表示不限制
+	 */
+	private int maxNumOfOneServer;
+
+	public LeastLoadedAssignStrategy() {
+	}
+
+	public LeastLoadedAssignStrategy(int maxNumOfOneServer) {
+		this.maxNumOfOneServer = maxNumOfOneServer;
+	}
+
+	@Override
+	public Map<String, String> assign(Map<String, List<String>> taskServers, List<String> serverList) {
+		Map<String, String> result = new HashMap<String, String>();
+		final Map<String, Integer> loads = new HashMap<String, Integer>();
+		for (String server : serverList) {
+			loads.put(server, 0);
+		}
+		for (List<String> servers : taskServers.values()) {
+			if (servers.size() > 0 && loads.containsKey(servers.get(0))) {
+				loads.put(servers.get(0), loads.get(servers.get(0)) + 1);
+			}
+		}
+		// 负载高的服务器优先获得多出的配额，减少任务迁移
+		List<String> sortedServers = new ArrayList<String>(serverList);
+		Collections.sort(sortedServers, new Comparator<String>() {
+			public int compare(String s1, String s2) {
+				return loads.get(s2).compareTo(loads.get(s1));
+			}
+		});
+		int[] taskNums = ScheduleUtil.assignTaskNumber(sortedServers.size(), taskServers.size(), this.maxNumOfOneServer);
+		Map<String, Integer> quotas = new HashMap<String, Integer>();
+		for (int i = 0; i < sortedServers.size(); i++) {
+			quotas.put(sortedServers.get(i), taskNums[i]);
+			loads.put(sortedServers.get(i), 0);
+		}
+
+		// 保留配额内的已有分配，按任务名称排序保证结果稳定
+		List<String> taskNames = new ArrayList<String>(taskServers.keySet());
+		Collections.sort(taskNames);
+		List<String> pending = new ArrayList<String>();
+		for (String taskName : taskNames) {
+			List<String> servers = taskServers.get(taskName);
+			String current = servers.size() > 0 ? servers.get(0) : null;
+			if (current != null && quotas.containsKey(current) && loads.get(current) < quotas.get(current)) {
+				result.put(taskName, current);
+				loads.put(current, loads.get(current) + 1);
+			} else {
+				pending.add(taskName);
+			}
+		}
+
+		int unassigned = 0;
+		for (String taskName : pending) {
+			String target = null;
+			for (String server : sortedServers) {
+				if (loads.get(server) >= quotas.get(server)) {
+					continue;
+				}
+				if (target == null || loads.get(server) < loads.get(target)) {
+					target = server;
+				}
+			}
+			if (target == null) {
+				unassigned++;
+				continue;
+			}
+			result.put(taskName, target);
+			loads.put(target, loads.get(target) + 1);
+		}
+		if (unassigned > 0) {
+			LOG.warn("服务器任务数已达上限" + this.maxNumOfOneServer + "，" + unassigned + "个任务暂不分配");
+		}
+		return result;
+	}
+
+	public int getMaxNumOfOneServer() {
+		return maxNumOfOneServer;
+	}
+
+	public void setMaxNumOfOneServer(int maxNumOfOneServer) {
+		this.maxNumOfOneServer = maxNumOfOneServer;
+	}
+
+}
@@ -0,0 +1,31 @@
+package cn.uncode.schedule.assign;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 随机分配策略：保留已有分配，未分配的任务随机选择服务器
+ * 
+ * @author juny.ye
+ * 
+ */
+public class RandomAssignStrategy implements IAssignStrategy {
+
+	private Random random = new Random();
+
+	@Override
+	public Map<String, String> assign(Map<String, List<String>> taskServers, List<String> serverList) {
+		Map<String, String> result = new HashMap<String, String>();
+		for (Map.Entry<String, List<String>> entry : taskServers.entrySet()) {
+			if (entry.getValue().size() > 0) {
+				result.put(entry.getKey(), entry.getValue().get(0));
+			} else {
+				result.put(entry.getKey(), serverList.get(random.nextInt(serverList.size())));
+			}
+		}
+		return result;
+	}
+
+}
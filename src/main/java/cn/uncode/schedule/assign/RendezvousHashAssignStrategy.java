@@ -0,0 +1,108 @@
+package cn.uncode.schedule.assign;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 一致性哈希（Rendezvous/最高随机权重）分配策略
+ * 
+ * 每个任务分配给与其哈希权重最高的服务器，服务器加入或退出时只有约1/N的任务发生迁移。
+ * 设置了每台服务器的任务上限时，权重最高的服务器已满则依次选择权重次高的服务器。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class RendezvousHashAssignStrategy implements IAssignStrategy {
+
+	private static final transient Logger LOG = LoggerFactory.getLogger(RendezvousHashAssignStrategy.class);
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/**
+	 * 每台服务器最多分配的任务数，0表示不限制
+	 */
+	private int maxNumOfOneServer;
+
+	public RendezvousHashAssignStrategy() {
+	}
+
+	public RendezvousHashAssignStrategy(int maxNumOfOneServer) {
+		this.maxNumOfOneServer = maxNumOfOneServer;
+	}
+
+	@Override
+	public Map<String, String> assign(Map<String, List<String>> taskServers, List<String> serverList) {
+		Map<String, String> result = new HashMap<String, String>();
+		Map<String, Integer> loads = new HashMap<String, Integer>();
+		List<String> taskNames = new ArrayList<String>(taskServers.keySet());
+		Collections.sort(taskNames);
+		int unassigned = 0;
+		for (String taskName : taskNames) {
+			String target = null;
+			long targetWeight = 0;
+			for (String server : serverList) {
+				if (this.maxNumOfOneServer > 0) {
+					Integer load = loads.get(server);
+					if (load != null && load >= this.maxNumOfOneServer) {
+						continue;
+					}
+				}
+				long weight = weight(taskName, server);
+				if (target == null || weight > targetWeight
+						|| (weight == targetWeight && server.compareTo(target) < 0)) {
+					target = server;
+					targetWeight = weight;
+				}
+			}
+			if (target == null) {
+				unassigned++;
+				continue;
+			}
+			result.put(taskName, target);
+			Integer load = loads.get(target);
+			loads.put(target, load == null ? 1 : load + 1);
+		}
+		if (unassigned > 0) {
+			LOG.warn("服务器任务数已达上限" + this.maxNumOfOneServer + "，" + unassigned + "个任务暂不分配");
+		}
+		return result;
+	}
+
+	/**
+	 * 任务与服务器组合的哈希权重，使用FNV-1a并做一次混淆，保证不同JVM上结果一致
+	 */
+	static long weight(String taskName, String server) {
+		long hash = FNV_OFFSET_BASIS;
+		hash = fnv(hash, taskName);
+		hash = (hash ^ 0xff) * FNV_PRIME;
+		hash = fnv(hash, server);
+		hash ^= (hash >>> 33);
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= (hash >>> 33);
+		return hash;
+	}
+
+	private static long fnv(long hash, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	public int getMaxNumOfOneServer() {
+		return maxNumOfOneServer;
+	}
+
+	public void setMaxNumOfOneServer(int maxNumOfOneServer) {
+		this.maxNumOfOneServer = maxNumOfOneServer;
+	}
+
+}
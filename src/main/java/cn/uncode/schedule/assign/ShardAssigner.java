@@ -0,0 +1,107 @@
+package cn.uncode.schedule.assign;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cn.uncode.schedule.util.ScheduleUtil;
+
+/**
+ * 分片任务的分配
+ * 
+ * 一个分片任务的所有分片按{@link ScheduleUtil#assignTaskNumber(int, int, int)}在可用服务器之间均分，
+ * 已有分片在配额内保持不动，多出的配额优先给已持有较多分片的服务器，减少分片迁移。
+ * 不同任务从不同的服务器开始分配余数，避免余下的分片总是集中在同一台服务器上。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class ShardAssigner {
+
+	private static final transient Logger LOG = LoggerFactory.getLogger(ShardAssigner.class);
+
+	/**
+	 * 计算分片任务的分配结果
+	 * 
+	 * @param taskName 任务名称
+	 * @param shardCount 分片数量
+	 * @param currentShards 分片序号 -> 当前分配的服务器（已剔除不可用的服务器）
+	 * @param serverList 可用的服务器列表
+	 * @param maxNumOfOneServer 每台服务器最多分配的分片数，0表示不限制
+	 * @return 分片序号 -> 分配的服务器，不包含的分片表示暂不分配
+	 */
+	public static Map<Integer, String> assign(String taskName, int shardCount, Map<Integer, String> currentShards,
+			List<String> serverList, int maxNumOfOneServer) {
+		Map<Integer, String> result = new TreeMap<Integer, String>();
+		if (serverList.isEmpty()) {
+			return result;
+		}
+		final Map<String, Integer> loads = new HashMap<String, Integer>();
+		for (String server : serverList) {
+			loads.put(server, 0);
+		}
+		for (Map.Entry<Integer, String> entry : currentShards.entrySet()) {
+			if (entry.getKey() < shardCount && loads.containsKey(entry.getValue())) {
+				loads.put(entry.getValue(), loads.get(entry.getValue()) + 1);
+			}
+		}
+		// 按任务名称轮转起始服务器，再按已有分片数排序
+		int offset = (taskName.hashCode() & Integer.MAX_VALUE) % serverList.size();
+		List<String> sortedServers = new ArrayList<String>(serverList.size());
+		sortedServers.addAll(serverList.subList(offset, serverList.size()));
+		sortedServers.addAll(serverList.subList(0, offset));
+		Collections.sort(sortedServers, new Comparator<String>() {
+			public int compare(String s1, String s2) {
+				return loads.get(s2).compareTo(loads.get(s1));
+			}
+		});
+		int[] shardNums = ScheduleUtil.assignTaskNumber(sortedServers.size(), shardCount, maxNumOfOneServer);
+		Map<String, Integer> quotas = new HashMap<String, Integer>();
+		for (int i = 0; i < sortedServers.size(); i++) {
+			quotas.put(sortedServers.get(i), shardNums[i]);
+			loads.put(sortedServers.get(i), 0);
+		}
+
+		List<Integer> pending = new ArrayList<Integer>();
+		for (int shard = 0; shard < shardCount; shard++) {
+			String current = currentShards.get(shard);
+			if (current != null && quotas.containsKey(current) && loads.get(current) < quotas.get(current)) {
+				result.put(shard, current);
+				loads.put(current, loads.get(current) + 1);
+			} else {
+				pending.add(shard);
+			}
+		}
+
+		int unassigned = 0;
+		for (Integer shard : pending) {
+			String target = null;
+			for (String server : sortedServers) {
+				if (loads.get(server) >= quotas.get(server)) {
+					continue;
+				}
+				if (target == null || loads.get(server) < loads.get(target)) {
+					target = server;
+				}
+			}
+			if (target == null) {
+				unassigned++;
+				continue;
+			}
+			result.put(shard, target);
+			loads.put(target, loads.get(target) + 1);
+		}
+		if (unassigned > 0) {
+			LOG.warn("服务器分片数已达上限" + maxNumOfOneServer + "，任务" + taskName + "有" + unassigned + "个分片暂不分配");
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,282 @@
+package cn.uncode.schedule.cron;
+
+import java.util.TimeZone;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * 编译后的cron表达式，语法与spring的CronSequenceGenerator一致：秒 分 时 日 月 周
+ * 
+ * 每个字段编译为位图，计算下次触发时间只做位运算和日期算术，不创建Calendar对象；实例不可变，可以在线程间共享。
+ * 
+ * @author juny.ye
+ * 
+ */
+public final class CompiledCron {
+
+	private static final String[] MONTHS = { "FOO", "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP",
+			"OCT", "NOV", "DEC" };
+
+	private static final String[] DAYS = { "SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT" };
+
+	private static final int SECONDS_OF_DAY = 86400;
+
+	/**
+	 * 向后查找的最大天数，覆盖2月29日等隔年才出现的日期
+	 */
+	private static final int MAX_SEARCH_DAYS = 366 * 8;
+
+	private final String expression;
+
+	private final long seconds;
+
+	private final long minutes;
+
+	private final long hours;
+
+	/**
+	 * 1~31
+	 */
+	private final long daysOfMonth;
+
+	/**
+	 * 0~11
+	 */
+	private final long months;
+
+	/**
+	 * 0~6，0为周日
+	 */
+	private final long daysOfWeek;
+
+	public CompiledCron(String expression) {
+		this.expression = expression;
+		String[] fields = StringUtils.split(expression);
+		if (fields == null || fields.length != 6) {
+			throw new IllegalArgumentException(String.format("Cron expression must consist of 6 fields (found %d in \"%s\")",
+					fields == null ? 0 : fields.length, expression));
+		}
+		this.seconds = parse(fields[0], 0, 60);
+		this.minutes = parse(fields[1], 0, 60);
+		this.hours = parse(fields[2], 0, 24);
+		this.daysOfMonth = parse(days(fields[3]), 0, 32) & ~1L;
+		this.months = parse(replaceOrdinals(fields[4], MONTHS), 1, 13) >>> 1;
+		long dow = parse(days(replaceOrdinals(fields[5], DAYS)), 0, 8);
+		if ((dow & (1L << 7)) != 0) {
+			dow = (dow | 1L) & ~(1L << 7);
+		}
+		this.daysOfWeek = dow;
+	}
+
+	/**
+	 * 下次触发时间：严格晚于after所在的秒
+	 * 
+	 * @param after 毫秒
+	 * @param timeZone 时区
+	 * @return 毫秒
+	 */
+	public long next(long after, TimeZone timeZone) {
+		long start = (floorDiv(after, 1000) + 1) * 1000;
+		long local = floorDiv(start + timeZone.getOffset(start), 1000);
+		long day = floorDiv(local, SECONDS_OF_DAY);
+		int secondOfDay = (int) (local - day * SECONDS_OF_DAY);
+		for (int i = 0; i < MAX_SEARCH_DAYS; i++) {
+			long civil = civilFromDays(day);
+			int year = (int) (civil >> 16);
+			int month = (int) ((civil >> 8) & 0xFF);
+			int dayOfMonth = (int) (civil & 0xFF);
+			if (!has(this.months, month - 1)) {
+				// 跳到下个月1日
+				day += daysInMonth(year, month) - dayOfMonth + 1;
+				secondOfDay = 0;
+				continue;
+			}
+			int dayOfWeek = (int) floorMod(day + 4, 7);
+			if (has(this.daysOfMonth, dayOfMonth) && has(this.daysOfWeek, dayOfWeek)) {
+				int time = nextTimeOfDay(secondOfDay);
+				if (time >= 0) {
+					long result = toUtc((day * SECONDS_OF_DAY + time) * 1000, timeZone);
+					if (result >= start) {
+						return result;
+					}
+					// 本地时间因夏令时不存在或早于起点，从下一秒继续
+					if (time + 1 < SECONDS_OF_DAY) {
+						secondOfDay = time + 1;
+						continue;
+					}
+				}
+			}
+			day++;
+			secondOfDay = 0;
+		}
+		throw new IllegalArgumentException("Invalid cron expression \"" + this.expression + "\" led to runaway search for next trigger");
+	}
+
+	/**
+	 * 当天不早于secondOfDay的第一个触发时刻
+	 * 
+	 * @return 当天没有时返回-1
+	 */
+	private int nextTimeOfDay(int secondOfDay) {
+		int hour = secondOfDay / 3600;
+		int minute = (secondOfDay / 60) % 60;
+		int second = secondOfDay % 60;
+		for (int h = nextBit(this.hours, hour); h >= 0; h = nextBit(this.hours, h + 1)) {
+			int m = nextBit(this.minutes, h == hour ? minute : 0);
+			for (; m >= 0; m = nextBit(this.minutes, m + 1)) {
+				int s = nextBit(this.seconds, h == hour && m == minute ? second : 0);
+				if (s >= 0) {
+					return h * 3600 + m * 60 + s;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 本地时间转为UTC，与CronSequenceGenerator一致：夏令时回拨重复的本地时间取标准时间，跳过的本地时间不存在
+	 * 
+	 * @return 本地时间不存在时返回-1
+	 */
+	private static long toUtc(long local, TimeZone timeZone) {
+		int offset = timeZone.getOffset(local - timeZone.getRawOffset());
+		long utc = local - offset;
+		int actual = timeZone.getOffset(utc);
+		if (actual == offset) {
+			return utc;
+		}
+		long alternative = local - actual;
+		return timeZone.getOffset(alternative) == actual ? alternative : -1;
+	}
+
+	private static boolean has(long bits, int index) {
+		return (bits & (1L << index)) != 0;
+	}
+
+	private static int nextBit(long bits, int from) {
+		if (from >= 64) {
+			return -1;
+		}
+		long masked = bits & (-1L << from);
+		return masked == 0 ? -1 : Long.numberOfTrailingZeros(masked);
+	}
+
+	/**
+	 * 1970-01-01起的天数转为年月日，编码为 年<<16 | 月<<8 | 日
+	 */
+	private static long civilFromDays(long days) {
+		long z = days + 719468;
+		long era = floorDiv(z, 146097);
+		long doe = z - era * 146097;
+		long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		long mp = (5 * doy + 2) / 153;
+		long d = doy - (153 * mp + 2) / 5 + 1;
+		long m = mp < 10 ? mp + 3 : mp - 9;
+		long y = yoe + era * 400 + (m <= 2 ? 1 : 0);
+		return (y << 16) | (m << 8) | d;
+	}
+
+	private static int daysInMonth(int year, int month) {
+		switch (month) {
+		case 2:
+			return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	private static long floorDiv(long x, long y) {
+		long r = x / y;
+		if ((x % y != 0) && ((x ^ y) < 0)) {
+			r--;
+		}
+		return r;
+	}
+
+	private static long floorMod(long x, long y) {
+		return x - floorDiv(x, y) * y;
+	}
+
+	private static String days(String field) {
+		return field.contains("?") ? "*" : field;
+	}
+
+	private static String replaceOrdinals(String value, String[] list) {
+		String result = value.toUpperCase();
+		for (int i = 0; i < list.length; i++) {
+			result = StringUtils.replace(result, list[i], String.valueOf(i));
+		}
+		return result;
+	}
+
+	/**
+	 * 解析字段为位图，取值范围[min, max)
+	 */
+	private long parse(String field, int min, int max) {
+		long bits = 0;
+		for (String part : StringUtils.split(field, ',')) {
+			int step = 1;
+			String range = part;
+			if (part.contains("/")) {
+				String[] split = StringUtils.split(part, '/');
+				if (split.length != 2) {
+					throw new IllegalArgumentException("Incrementer has more than two fields: '" + part + "' in expression \"" + this.expression + "\"");
+				}
+				range = split[0];
+				step = parseNumber(split[1]);
+				if (step <= 0) {
+					throw new IllegalArgumentException("Incrementer must be positive: '" + part + "' in expression \"" + this.expression + "\"");
+				}
+				if (!range.contains("-") && !"*".equals(range)) {
+					range = range + "-" + (max - 1);
+				}
+			}
+			int start;
+			int end;
+			if ("*".equals(range)) {
+				start = min;
+				end = max - 1;
+			} else if (range.contains("-")) {
+				String[] split = StringUtils.split(range, '-');
+				if (split.length != 2) {
+					throw new IllegalArgumentException("Range has more than two fields: '" + range + "' in expression \"" + this.expression + "\"");
+				}
+				start = parseNumber(split[0]);
+				end = parseNumber(split[1]);
+			} else {
+				start = end = parseNumber(range);
+			}
+			if (start < min || end >= max || start > end) {
+				throw new IllegalArgumentException("Range exceeds maximum (" + max + "): '" + part + "' in expression \"" + this.expression + "\"");
+			}
+			for (int i = start; i <= end; i += step) {
+				bits |= 1L << i;
+			}
+		}
+		return bits;
+	}
+
+	private int parseNumber(String value) {
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value '" + value + "' in expression \"" + this.expression + "\"");
+		}
+	}
+
+	public String getExpression() {
+		return expression;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ": " + this.expression;
+	}
+
+}
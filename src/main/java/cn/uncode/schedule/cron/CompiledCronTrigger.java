@@ -0,0 +1,103 @@
+package cn.uncode.schedule.cron;
+
+import java.lang.reflect.Field;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+import org.springframework.scheduling.support.CronSequenceGenerator;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * 使用共享触发时间序列的cron触发器，触发语义与spring的CronTrigger一致
+ * 
+ * @author juny.ye
+ * 
+ */
+public class CompiledCronTrigger implements Trigger {
+
+	private static final Field SEQUENCE_GENERATOR = ReflectionUtils.findField(CronTrigger.class, "sequenceGenerator");
+
+	private static final Field TIME_ZONE = ReflectionUtils.findField(CronSequenceGenerator.class, "timeZone");
+
+	static {
+		if (SEQUENCE_GENERATOR != null && TIME_ZONE != null) {
+			ReflectionUtils.makeAccessible(SEQUENCE_GENERATOR);
+			ReflectionUtils.makeAccessible(TIME_ZONE);
+		}
+	}
+
+	private final CronSchedule schedule;
+
+	public CompiledCronTrigger(String expression) {
+		this(expression, TimeZone.getDefault());
+	}
+
+	public CompiledCronTrigger(String expression, TimeZone timeZone) {
+		this.schedule = CronSchedule.forExpression(expression, timeZone);
+	}
+
+	/**
+	 * 转换spring的CronTrigger，无法读取时区时返回null
+	 * 
+	 * @param trigger
+	 * @return
+	 */
+	public static CompiledCronTrigger from(CronTrigger trigger) {
+		if (SEQUENCE_GENERATOR == null || TIME_ZONE == null) {
+			return null;
+		}
+		Object generator = ReflectionUtils.getField(SEQUENCE_GENERATOR, trigger);
+		Object timeZone = generator == null ? null : ReflectionUtils.getField(TIME_ZONE, generator);
+		if (!(timeZone instanceof TimeZone)) {
+			return null;
+		}
+		return new CompiledCronTrigger(trigger.getExpression(), (TimeZone) timeZone);
+	}
+
+	@Override
+	public Date nextExecutionTime(TriggerContext triggerContext) {
+		Date date = triggerContext.lastCompletionTime();
+		if (date != null) {
+			Date scheduled = triggerContext.lastScheduledExecutionTime();
+			if (scheduled != null && date.before(scheduled)) {
+				// 任务提前完成（时钟回拨等情况），以计划时间为准，避免同一秒重复触发
+				date = scheduled;
+			}
+		} else {
+			date = new Date();
+		}
+		return new Date(this.schedule.next(date.getTime()));
+	}
+
+	public String getExpression() {
+		return this.schedule.getCron().getExpression();
+	}
+
+	/**
+	 * 触发时间标识，标识相同的任务在同一时刻触发
+	 * 
+	 * @return
+	 */
+	public String getFireKey() {
+		return this.schedule.getTimeZone().getID() + "|" + getExpression();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return this == obj || (obj instanceof CompiledCronTrigger && this.schedule == ((CompiledCronTrigger) obj).schedule);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.schedule.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return getExpression();
+	}
+
+}
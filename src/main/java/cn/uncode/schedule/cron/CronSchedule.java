@@ -0,0 +1,167 @@
+package cn.uncode.schedule.cron;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * 同一cron表达式（及时区）共享的触发时间序列
+ * 
+ * 表达式只编译一次，并缓存从某一时刻起的连续若干个触发时间；使用相同表达式的任务在窗口内通过二分查找得到下次触发时间，
+ * 窗口用完后由第一个越界的调用重新计算。
+ * 共享表只弱引用各实例，实例由使用它的触发器持有，所有触发器释放后表项随之清除。
+ * 
+ * @author juny.ye
+ * 
+ */
+public final class CronSchedule {
+
+	/**
+	 * 每个窗口预先计算的触发次数
+	 */
+	private static final int LOOKAHEAD = 32;
+
+	private static final ConcurrentMap<String, ScheduleReference> SCHEDULES = new ConcurrentHashMap<String, ScheduleReference>();
+
+	/**
+	 * 已被回收的实例，下次访问共享表时清除对应表项
+	 */
+	private static final ReferenceQueue<CronSchedule> RELEASED = new ReferenceQueue<CronSchedule>();
+
+	private final CompiledCron cron;
+
+	private final TimeZone timeZone;
+
+	private volatile Window window;
+
+	private CronSchedule(CompiledCron cron, TimeZone timeZone) {
+		this.cron = cron;
+		this.timeZone = timeZone;
+	}
+
+	/**
+	 * 获取共享的触发时间序列，相同表达式和时区返回同一个实例
+	 * 
+	 * @param expression cron表达式
+	 * @param timeZone 时区
+	 * @return
+	 */
+	public static CronSchedule forExpression(String expression, TimeZone timeZone) {
+		String normalized = StringUtils.join(StringUtils.split(expression), ' ');
+		String key = timeZone.getID() + "|" + normalized;
+		expungeReleased();
+		CronSchedule created = null;
+		while (true) {
+			ScheduleReference reference = SCHEDULES.get(key);
+			CronSchedule schedule = reference == null ? null : reference.get();
+			if (schedule != null) {
+				return schedule;
+			}
+			if (created == null) {
+				created = new CronSchedule(new CompiledCron(normalized), (TimeZone) timeZone.clone());
+			}
+			ScheduleReference createdReference = new ScheduleReference(key, created);
+			if (reference == null ? SCHEDULES.putIfAbsent(key, createdReference) == null
+					: SCHEDULES.replace(key, reference, createdReference)) {
+				return created;
+			}
+		}
+	}
+
+	/**
+	 * 下次触发时间：严格晚于after所在的秒
+	 * 
+	 * @param after 毫秒
+	 * @return 毫秒
+	 */
+	public long next(long after) {
+		Window current = this.window;
+		if (current != null && after >= current.from) {
+			long threshold = (floorSecond(after) + 1) * 1000;
+			int index = Arrays.binarySearch(current.times, threshold);
+			if (index < 0) {
+				index = -index - 1;
+			}
+			if (index < current.times.length) {
+				return current.times[index];
+			}
+		} else if (current != null) {
+			// 早于窗口起点的查询直接计算，不替换其他任务正在使用的窗口
+			return this.cron.next(after, this.timeZone);
+		}
+		long[] times = new long[LOOKAHEAD];
+		long time = after;
+		for (int i = 0; i < LOOKAHEAD; i++) {
+			time = this.cron.next(time, this.timeZone);
+			times[i] = time;
+		}
+		this.window = new Window(after, times);
+		return times[0];
+	}
+
+	public CompiledCron getCron() {
+		return cron;
+	}
+
+	public TimeZone getTimeZone() {
+		return timeZone;
+	}
+
+	/**
+	 * 已共享的表达式数量
+	 * 
+	 * @return
+	 */
+	public static int size() {
+		expungeReleased();
+		return SCHEDULES.size();
+	}
+
+	private static void expungeReleased() {
+		Reference<? extends CronSchedule> reference;
+		while ((reference = RELEASED.poll()) != null) {
+			ScheduleReference released = (ScheduleReference) reference;
+			SCHEDULES.remove(released.key, released);
+		}
+	}
+
+	private static long floorSecond(long millis) {
+		long second = millis / 1000;
+		if (millis % 1000 < 0) {
+			second--;
+		}
+		return second;
+	}
+
+	/**
+	 * 共享表中对实例的弱引用，记录表项的键用于清除
+	 */
+	private static final class ScheduleReference extends WeakReference<CronSchedule> {
+		private final String key;
+
+		ScheduleReference(String key, CronSchedule schedule) {
+			super(schedule, RELEASED);
+			this.key = key;
+		}
+	}
+
+	/**
+	 * 从from之后连续的触发时间
+	 */
+	private static final class Window {
+		private final long from;
+		private final long[] times;
+
+		Window(long from, long[] times) {
+			this.from = from;
+			this.times = times;
+		}
+	}
+
+}
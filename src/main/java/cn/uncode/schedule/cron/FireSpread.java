@@ -0,0 +1,75 @@
+package cn.uncode.schedule.cron;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * 触发时间打散策略，把同一时刻触发的任务分散到一个时间窗口内
+ * 
+ * hash：按任务名称计算固定的偏移量，每次触发的时间稳定可预期；random：每次触发重新取随机偏移量。
+ * 窗口应小于任务的触发间隔，否则相邻两次触发可能重叠。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class FireSpread {
+
+	public static final String NONE = "none";
+	public static final String HASH = "hash";
+	public static final String RANDOM = "random";
+
+	private final boolean random;
+
+	/**
+	 * 打散窗口（毫秒）
+	 */
+	private final long window;
+
+	private FireSpread(boolean random, long window) {
+		this.random = random;
+		this.window = window;
+	}
+
+	/**
+	 * @param policy 打散策略：none、hash、random，为空时不打散
+	 * @param window 打散窗口（毫秒）
+	 * @return 不打散时返回null
+	 */
+	public static FireSpread create(String policy, long window) {
+		if (StringUtils.isEmpty(policy) || NONE.equalsIgnoreCase(policy) || window <= 0) {
+			return null;
+		}
+		if (HASH.equalsIgnoreCase(policy)) {
+			return new FireSpread(false, window);
+		} else if (RANDOM.equalsIgnoreCase(policy)) {
+			return new FireSpread(true, window);
+		}
+		throw new IllegalArgumentException(policy + " 不是有效的打散策略");
+	}
+
+	/**
+	 * 计算任务本次触发的偏移量
+	 * 
+	 * @param name 任务名称
+	 * @return [0, window)
+	 */
+	public long offset(String name) {
+		if (this.random) {
+			return ThreadLocalRandom.current().nextLong(this.window);
+		}
+		// 名称相近的任务（同一个bean的不同方法）hashCode接近，混淆后再取模
+		long hash = name.hashCode() * 0x9E3779B97F4A7C15L;
+		hash ^= hash >>> 32;
+		return (hash & Long.MAX_VALUE) % this.window;
+	}
+
+	public boolean isRandom() {
+		return random;
+	}
+
+	public long getWindow() {
+		return window;
+	}
+
+}
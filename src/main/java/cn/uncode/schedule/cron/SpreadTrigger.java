@@ -0,0 +1,81 @@
+package cn.uncode.schedule.cron;
+
+import java.util.Date;
+
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+
+/**
+ * 在原触发时间上加打散偏移量的触发器
+ * 
+ * 计算下次触发时间前先从上下文中扣除上次的偏移量，原触发器看到的仍是未打散的时间，不会因偏移跳过或重复触发。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class SpreadTrigger implements Trigger {
+
+	private final Trigger delegate;
+
+	private final FireSpread spread;
+
+	private final String name;
+
+	/**
+	 * 上次触发使用的偏移量，由调度线程按顺序访问
+	 */
+	private volatile long lastOffset;
+
+	public SpreadTrigger(Trigger delegate, FireSpread spread, String name) {
+		this.delegate = delegate;
+		this.spread = spread;
+		this.name = name;
+	}
+
+	@Override
+	public Date nextExecutionTime(TriggerContext triggerContext) {
+		Date next = this.delegate.nextExecutionTime(new ShiftedTriggerContext(triggerContext, this.lastOffset));
+		if (next == null) {
+			return null;
+		}
+		this.lastOffset = this.spread.offset(this.name);
+		return new Date(next.getTime() + this.lastOffset);
+	}
+
+	public Trigger getDelegate() {
+		return delegate;
+	}
+
+	public FireSpread getSpread() {
+		return spread;
+	}
+
+	private static class ShiftedTriggerContext implements TriggerContext {
+
+		private final TriggerContext context;
+
+		private final long offset;
+
+		ShiftedTriggerContext(TriggerContext context, long offset) {
+			this.context = context;
+			this.offset = offset;
+		}
+
+		public Date lastScheduledExecutionTime() {
+			return shift(this.context.lastScheduledExecutionTime());
+		}
+
+		public Date lastActualExecutionTime() {
+			return shift(this.context.lastActualExecutionTime());
+		}
+
+		public Date lastCompletionTime() {
+			return shift(this.context.lastCompletionTime());
+		}
+
+		private Date shift(Date date) {
+			return date == null || this.offset == 0 ? date : new Date(date.getTime() - this.offset);
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+package cn.uncode.schedule.delay;
+
+/**
+ * 延迟任务
+ * 
+ * @author juny.ye
+ * 
+ */
+public class DelayedJob {
+
+	/**
+	 * 业务主键，同一主键只保留最后一次提交的任务
+	 */
+	private String key;
+
+	/**
+	 * 触发时间（毫秒）
+	 */
+	private long fireTime;
+
+	/**
+	 * 业务数据
+	 */
+	private String payload;
+
+	/**
+	 * 存储中的任务编号，每次提交都不同，不参与序列化
+	 */
+	private transient String id;
+
+	private transient int partition;
+
+	private transient long bucket;
+
+	public DelayedJob() {
+	}
+
+	public DelayedJob(String key, long fireTime, String payload) {
+		this.key = key;
+		this.fireTime = fireTime;
+		this.payload = payload;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public void setKey(String key) {
+		this.key = key;
+	}
+
+	public long getFireTime() {
+		return fireTime;
+	}
+
+	public void setFireTime(long fireTime) {
+		this.fireTime = fireTime;
+	}
+
+	public String getPayload() {
+		return payload;
+	}
+
+	public void setPayload(String payload) {
+		this.payload = payload;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public int getPartition() {
+		return partition;
+	}
+
+	public void setPartition(int partition) {
+		this.partition = partition;
+	}
+
+	public long getBucket() {
+		return bucket;
+	}
+
+	public void setBucket(long bucket) {
+		this.bucket = bucket;
+	}
+
+}
@@ -0,0 +1,518 @@
+package cn.uncode.schedule.delay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
+
+import cn.uncode.schedule.ZKScheduleManager;
+import cn.uncode.schedule.util.ScheduleClock;
+import cn.uncode.schedule.util.ScheduleUtil;
+import cn.uncode.schedule.wheel.HashedWheelTimer;
+import cn.uncode.schedule.wheel.TimerTaskEntry;
+import cn.uncode.schedule.zk.TaskDefine;
+
+/**
+ * 持久化的一次性延迟任务
+ * 
+ * 任务按主键哈希分区、按触发时间分时间格保存。每个分区是扫描任务的一个分片，通过集群任务分配交给某台服务器，
+ * 该服务器只加载即将到期的时间格并放入内存时间轮，到期后认领任务并交给处理器执行。
+ * 
+ * <pre>
+ * &lt;bean id="orderTimeout" class="cn.uncode.schedule.delay.DelayedJobManager"&gt;
+ *     &lt;property name="handler" ref="orderTimeoutHandler" /&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ * 
+ * @author juny.ye
+ * 
+ */
+public class DelayedJobManager implements BeanNameAware, DisposableBean {
+	private static final transient Logger LOG = LoggerFactory.getLogger(DelayedJobManager.class);
+
+	/**
+	 * 扫描分区的方法，作为分片任务注册到集群
+	 */
+	public static final String SCAN_METHOD = "scan";
+
+	private static final long TIMER_TICK_MS = 10;
+	private static final int TIMER_WHEEL_SIZE = 512;
+
+	private String beanName;
+
+	private IDelayedJobHandler handler;
+
+	/**
+	 * 自定义存储，为空时使用zk存储
+	 */
+	private IDelayedJobStore store;
+
+	private IDelayedJobStore customStore;
+
+	/**
+	 * 分区数量，即扫描任务的分片数，任务提交后不能修改
+	 */
+	private int partitionCount = 16;
+
+	/**
+	 * 时间格跨度（毫秒）
+	 */
+	private long bucketMs = 60000;
+
+	/**
+	 * 提前加载的时间（毫秒），触发时间在此范围内的时间格会被加载到内存
+	 */
+	private long lookaheadMs = 120000;
+
+	/**
+	 * 扫描分区的间隔（毫秒），其他服务器提交到已加载时间格的任务最迟在一个间隔后被发现
+	 */
+	private long scanInterval = 1000;
+
+	/**
+	 * 处理线程数
+	 */
+	private int handlerThreads = 4;
+
+	/**
+	 * 处理失败后重试的延迟（毫秒），0表示不重试
+	 */
+	private long retryDelay = 60000;
+
+	private ZKScheduleManager scheduleManager;
+
+	private ScheduleClock clock = ScheduleClock.SYSTEM;
+
+	private HashedWheelTimer timer;
+
+	private ThreadPoolExecutor executor;
+
+	/**
+	 * 已放入时间轮的任务：主键 -> 任务
+	 */
+	private final Map<String, LoadedJob> loadedJobs = new ConcurrentHashMap<String, LoadedJob>();
+
+	/**
+	 * 已放入时间轮的任务编号，用于扫描时识别新任务
+	 */
+	private final Map<String, LoadedJob> loadedIds = new ConcurrentHashMap<String, LoadedJob>();
+
+	/**
+	 * 已加载的时间格：分区 -> 时间格编号 -> 时间格中已放入时间轮的任务
+	 */
+	private final Map<Integer, Map<Long, LoadedBucket>> loadedBuckets = new ConcurrentHashMap<Integer, Map<Long, LoadedBucket>>();
+
+	/**
+	 * 提交延迟任务，相同主键的未触发任务会被替换
+	 * 
+	 * @param key 业务主键
+	 * @param fireAt 触发时间
+	 * @param payload 业务数据
+	 * @throws Exception
+	 */
+	public void submit(String key, Date fireAt, String payload) throws Exception {
+		DelayedJob job = new DelayedJob(key, fireAt.getTime(), payload);
+		int partition = partitionOf(key);
+		long bucket = bucketOf(job.getFireTime());
+		getStore().save(job, partition, bucket);
+		unload(key);
+		//本服务器已加载该时间格时直接放入时间轮，不等待下一次扫描
+		Map<Long, LoadedBucket> buckets = this.loadedBuckets.get(partition);
+		LoadedBucket loadedBucket = buckets == null ? null : buckets.get(bucket);
+		if (loadedBucket != null) {
+			load(job, loadedBucket);
+		}
+	}
+
+	/**
+	 * 取消延迟任务
+	 * 
+	 * @param key 业务主键
+	 * @return 任务不存在或已触发时返回false
+	 * @throws Exception
+	 */
+	public boolean cancel(String key) throws Exception {
+		unload(key);
+		return getStore().cancel(key);
+	}
+
+	/**
+	 * 扫描分区，加载即将到期的时间格，由集群按分片调度
+	 * 
+	 * @param partition 分区
+	 * @param total 分区总数
+	 * @throws Exception
+	 */
+	public void scan(int partition, int total) throws Exception {
+		if (total != this.partitionCount) {
+			LOG.warn(this.beanName + ":分片数" + total + "与分区数" + this.partitionCount + "不一致");
+		}
+		long now = this.clock.currentTimeMillis();
+		long horizon = now + this.lookaheadMs;
+		Map<Long, LoadedBucket> buckets = this.loadedBuckets.get(partition);
+		if (buckets == null) {
+			buckets = new ConcurrentHashMap<Long, LoadedBucket>();
+			this.loadedBuckets.put(partition, buckets);
+		}
+		List<Long> nearBuckets = new ArrayList<Long>();
+		for (Long bucket : getStore().listBuckets(partition)) {
+			if (bucket * this.bucketMs > horizon) {
+				break;
+			}
+			nearBuckets.add(bucket);
+		}
+		//已被删除的时间格
+		Set<Long> present = new HashSet<Long>(nearBuckets);
+		for (Iterator<Map.Entry<Long, LoadedBucket>> it = buckets.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Long, LoadedBucket> entry = it.next();
+			if (!present.contains(entry.getKey())) {
+				unloadAll(entry.getValue());
+				it.remove();
+			}
+		}
+		if (nearBuckets.isEmpty()) {
+			return;
+		}
+		//只重新读取版本变化的时间格
+		Map<Long, Integer> versions = getStore().bucketVersions(partition, nearBuckets);
+		for (Long bucket : nearBuckets) {
+			LoadedBucket loadedBucket = buckets.get(bucket);
+			if (loadedBucket == null) {
+				loadedBucket = new LoadedBucket();
+				buckets.put(bucket, loadedBucket);
+			}
+			Integer version = versions.get(bucket);
+			if (version == null || version.intValue() != loadedBucket.version) {
+				loadedBucket.version = version == null ? LoadedBucket.UNKNOWN_VERSION : version.intValue();
+				relist(partition, bucket, loadedBucket);
+			}
+			if (loadedBucket.empty && (bucket + 1) * this.bucketMs < now) {
+				getStore().removeBucket(partition, bucket);
+				buckets.remove(bucket);
+			}
+		}
+	}
+
+	/**
+	 * 重新读取时间格中的任务编号，加载新任务，卸载其他服务器取消或替换的任务
+	 */
+	private void relist(int partition, long bucket, LoadedBucket loadedBucket) throws Exception {
+		List<String> ids = getStore().listJobs(partition, bucket);
+		List<String> newIds = new ArrayList<String>();
+		for (String id : ids) {
+			if (!this.loadedIds.containsKey(id)) {
+				newIds.add(id);
+			}
+		}
+		if (newIds.size() > 0) {
+			for (DelayedJob job : getStore().loadJobs(partition, bucket, newIds)) {
+				unload(job.getKey());
+				load(job, loadedBucket);
+			}
+		}
+		Set<String> present = new HashSet<String>(ids);
+		for (String id : loadedBucket.ids) {
+			LoadedJob loaded = this.loadedIds.get(id);
+			if (!present.contains(id) && loaded != null) {
+				unload(loaded);
+			}
+		}
+		loadedBucket.empty = ids.isEmpty();
+	}
+
+	/**
+	 * 注册扫描任务并启动时间轮，在调度管理器连接zk后调用
+	 * 
+	 * @param scheduleManager
+	 * @throws Exception
+	 */
+	public synchronized void initial(ZKScheduleManager scheduleManager) throws Exception {
+		this.scheduleManager = scheduleManager;
+		this.clock = scheduleManager.getClock();
+		if (this.customStore == null) {
+			if (scheduleManager.getZkManager() == null) {
+				throw new Exception(this.beanName + "：使用非zookeeper注册中心时需要通过setStore指定延迟任务存储");
+			}
+			this.store = new DelayedJobStore4ZK(scheduleManager.getZkManager());
+		}
+		start();
+		//重新连接后分区归属可能已变化，重新扫描
+		this.loadedBuckets.clear();
+		scheduleManager.getScheduleDataManager().addTask(buildTaskDefine());
+	}
+
+	/**
+	 * 启动时间轮和处理线程池
+	 */
+	synchronized void start() {
+		if (this.timer == null) {
+			final String prefix = "DelayedJob-" + this.beanName;
+			this.executor = new ThreadPoolExecutor(this.handlerThreads, this.handlerThreads, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger number = new AtomicInteger();
+
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, prefix + "-" + number.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			this.timer = new HashedWheelTimer(prefix + "-Ticker", TIMER_TICK_MS, TIMER_WHEEL_SIZE, this.executor);
+			this.timer.start();
+		}
+	}
+
+	/**
+	 * 扫描任务定义：周期执行的分片任务，每个分区一个分片
+	 * 
+	 * @return
+	 */
+	public TaskDefine buildTaskDefine() {
+		TaskDefine taskDefine = new TaskDefine();
+		taskDefine.setTargetBean(this.beanName);
+		taskDefine.setTargetMethod(SCAN_METHOD);
+		taskDefine.setPeriod(this.scanInterval);
+		taskDefine.setShardCount(this.partitionCount);
+		return taskDefine;
+	}
+
+	@Override
+	public synchronized void destroy() throws Exception {
+		if (this.timer != null) {
+			this.timer.stop();
+			this.executor.shutdown();
+			this.timer = null;
+		}
+		this.loadedJobs.clear();
+		this.loadedIds.clear();
+		this.loadedBuckets.clear();
+	}
+
+	private void load(final DelayedJob job, LoadedBucket loadedBucket) {
+		HashedWheelTimer current = this.timer;
+		if (current == null) {
+			return;
+		}
+		final LoadedJob loaded = new LoadedJob(job, loadedBucket);
+		this.loadedJobs.put(job.getKey(), loaded);
+		this.loadedIds.put(job.getId(), loaded);
+		loadedBucket.ids.add(job.getId());
+		loaded.entry = current.newTimeout(new Runnable() {
+			public void run() {
+				fire(loaded);
+			}
+		}, Math.max(0, job.getFireTime() - this.clock.currentTimeMillis()));
+	}
+
+	private void unload(String key) {
+		LoadedJob loaded = this.loadedJobs.get(key);
+		if (loaded != null) {
+			unload(loaded);
+		}
+	}
+
+	private void unload(LoadedJob loaded) {
+		this.loadedJobs.remove(loaded.job.getKey(), loaded);
+		this.loadedIds.remove(loaded.job.getId(), loaded);
+		loaded.bucket.ids.remove(loaded.job.getId());
+		if (loaded.entry != null) {
+			loaded.entry.cancel();
+		}
+	}
+
+	private void unloadAll(LoadedBucket loadedBucket) {
+		for (String id : loadedBucket.ids) {
+			LoadedJob loaded = this.loadedIds.get(id);
+			if (loaded != null) {
+				unload(loaded);
+			}
+		}
+	}
+
+	/**
+	 * 到期触发：确认分区仍属于当前服务器，认领成功后交给处理器
+	 * 
+	 * @param loaded
+	 */
+	private void fire(LoadedJob loaded) {
+		this.loadedJobs.remove(loaded.job.getKey(), loaded);
+		this.loadedIds.remove(loaded.job.getId(), loaded);
+		loaded.bucket.ids.remove(loaded.job.getId());
+		DelayedJob job = loaded.job;
+		try {
+			if (!isPartitionOwner(job.getPartition())) {
+				//分区已迁移，由新的服务器加载
+				Map<Long, LoadedBucket> buckets = this.loadedBuckets.get(job.getPartition());
+				if (buckets != null) {
+					buckets.clear();
+				}
+				return;
+			}
+			if (!getStore().claim(job)) {
+				return;
+			}
+		} catch (Exception e) {
+			//认领失败时任务仍在存储中，下次扫描重新加载
+			LOG.error("Claim delayed job " + job.getKey() + " error.", e);
+			return;
+		}
+		try {
+			this.handler.handle(job.getKey(), job.getPayload());
+		} catch (Exception e) {
+			LOG.error("Handle delayed job " + job.getKey() + " error.", e);
+			if (this.retryDelay > 0) {
+				try {
+					submit(job.getKey(), new Date(this.clock.currentTimeMillis() + this.retryDelay), job.getPayload());
+				} catch (Exception ex) {
+					LOG.error("Resubmit delayed job " + job.getKey() + " error.", ex);
+				}
+			}
+		}
+	}
+
+	private boolean isPartitionOwner(int partition) throws Exception {
+		if (this.scheduleManager == null) {
+			return true;
+		}
+		String name = ScheduleUtil.getTaskNameFormBean(this.beanName, SCAN_METHOD);
+		List<Integer> shards = this.scheduleManager.getOwnedShards(name);
+		return shards != null && shards.contains(partition);
+	}
+
+	private IDelayedJobStore getStore() {
+		if (this.store == null) {
+			throw new IllegalStateException(this.beanName + ":延迟任务管理器尚未初始化");
+		}
+		return this.store;
+	}
+
+	int partitionOf(String key) {
+		return (key.hashCode() & Integer.MAX_VALUE) % this.partitionCount;
+	}
+
+	long bucketOf(long fireTime) {
+		return fireTime / this.bucketMs;
+	}
+
+	/**
+	 * 已放入时间轮的任务数
+	 * 
+	 * @return
+	 */
+	public int getLoadedCount() {
+		return this.loadedJobs.size();
+	}
+
+	@Override
+	public void setBeanName(String name) {
+		this.beanName = name;
+	}
+
+	public String getBeanName() {
+		return beanName;
+	}
+
+	public IDelayedJobHandler getHandler() {
+		return handler;
+	}
+
+	public void setHandler(IDelayedJobHandler handler) {
+		this.handler = handler;
+	}
+
+	public void setStore(IDelayedJobStore store) {
+		this.customStore = store;
+		this.store = store;
+	}
+
+	public int getPartitionCount() {
+		return partitionCount;
+	}
+
+	public void setPartitionCount(int partitionCount) {
+		this.partitionCount = partitionCount;
+	}
+
+	public long getBucketMs() {
+		return bucketMs;
+	}
+
+	public void setBucketMs(long bucketMs) {
+		this.bucketMs = bucketMs;
+	}
+
+	public long getLookaheadMs() {
+		return lookaheadMs;
+	}
+
+	public void setLookaheadMs(long lookaheadMs) {
+		this.lookaheadMs = lookaheadMs;
+	}
+
+	public long getScanInterval() {
+		return scanInterval;
+	}
+
+	public void setScanInterval(long scanInterval) {
+		this.scanInterval = scanInterval;
+	}
+
+	public int getHandlerThreads() {
+		return handlerThreads;
+	}
+
+	public void setHandlerThreads(int handlerThreads) {
+		this.handlerThreads = handlerThreads;
+	}
+
+	public long getRetryDelay() {
+		return retryDelay;
+	}
+
+	public void setRetryDelay(long retryDelay) {
+		this.retryDelay = retryDelay;
+	}
+
+	private static class LoadedJob {
+		private final DelayedJob job;
+		private final LoadedBucket bucket;
+		private volatile TimerTaskEntry entry;
+
+		LoadedJob(DelayedJob job, LoadedBucket bucket) {
+			this.job = job;
+			this.bucket = bucket;
+		}
+	}
+
+	private static class LoadedBucket {
+		private static final int UNKNOWN_VERSION = -1;
+		/**
+		 * 已放入时间轮的任务编号
+		 */
+		private final Set<String> ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		/**
+		 * 上次读取任务编号时的时间格版本
+		 */
+		private volatile int version = UNKNOWN_VERSION;
+		/**
+		 * 上次读取时时间格为空
+		 */
+		private volatile boolean empty;
+	}
+
+}
@@ -0,0 +1,243 @@
+package cn.uncode.schedule.delay;
+
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+import cn.uncode.schedule.zk.ZKManager;
+import cn.uncode.schedule.zk.ZKTools;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * 延迟任务的zk存储，节点结构：
+ * <pre>
+ * /delay/keys/{key}               主键索引，数据为任务节点路径
+ * /delay/p{分区}/{时间格}/{key}~{序号}  任务，数据为json
+ * </pre>
+ * 提交、取消和认领都是单个事务，主键索引与任务节点始终一一对应。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class DelayedJobStore4ZK implements IDelayedJobStore {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String NODE_DELAY = "delay";
+	private static final String NODE_KEYS = "keys";
+	private static final String PARTITION_PREFIX = "p";
+	private static final String ID_SEPARATOR = "~";
+	/**
+	 * 并发提交同一主键时的最大重试次数
+	 */
+	private static final int MAX_SAVE_RETRY = 3;
+	/**
+	 * 流水线读取任务的超时时间
+	 */
+	private static final long READ_TIMEOUT = 30000;
+
+	private final ZKManager zkManager;
+	private final String pathDelay;
+	private final String pathKeys;
+	private final Gson gson = new GsonBuilder().create();
+
+	public DelayedJobStore4ZK(ZKManager zkManager) throws Exception {
+		this.zkManager = zkManager;
+		this.pathDelay = zkManager.getRootPath() + "/" + NODE_DELAY;
+		this.pathKeys = this.pathDelay + "/" + NODE_KEYS;
+		if (getZooKeeper().exists(this.pathKeys, false) == null) {
+			ZKTools.createPath(getZooKeeper(), this.pathKeys, CreateMode.PERSISTENT, this.zkManager.getAcl());
+		}
+	}
+
+	private ZooKeeper getZooKeeper() throws Exception {
+		return this.zkManager.getZooKeeper();
+	}
+
+	@Override
+	public void save(DelayedJob job, int partition, long bucket) throws Exception {
+		String encodedKey = encode(job.getKey());
+		String indexPath = this.pathKeys + "/" + encodedKey;
+		String bucketPath = bucketPath(partition, bucket);
+		String jobPath = bucketPath + "/" + encodedKey + ID_SEPARATOR + UUID.randomUUID().toString().replace("-", "");
+		byte[] data = this.gson.toJson(job).getBytes(UTF8);
+		for (int i = 0; ; i++) {
+			List<Op> ops = new ArrayList<Op>(3);
+			Stat stat = new Stat();
+			try {
+				String oldJobPath = new String(getZooKeeper().getData(indexPath, false, stat), UTF8);
+				ops.add(Op.delete(oldJobPath, -1));
+				ops.add(Op.setData(indexPath, jobPath.getBytes(UTF8), stat.getVersion()));
+			} catch (KeeperException.NoNodeException e) {
+				ops.add(Op.create(indexPath, jobPath.getBytes(UTF8), this.zkManager.getAcl(), CreateMode.PERSISTENT));
+			}
+			ops.add(Op.create(jobPath, data, this.zkManager.getAcl(), CreateMode.PERSISTENT));
+			try {
+				getZooKeeper().multi(ops);
+				break;
+			} catch (KeeperException e) {
+				if (i >= MAX_SAVE_RETRY) {
+					throw e;
+				}
+				if (e.code() == KeeperException.Code.NONODE && getZooKeeper().exists(bucketPath, false) == null) {
+					//时间格不存在（首次写入或刚被清理）
+					try {
+						ZKTools.createPath(getZooKeeper(), bucketPath, CreateMode.PERSISTENT, this.zkManager.getAcl());
+					} catch (KeeperException.NodeExistsException ex) {
+						//其他服务器已创建
+					}
+				}
+				//其余情况为同一主键被并发提交或取消，重新读取索引后重试
+			}
+		}
+		job.setId(jobPath.substring(bucketPath.length() + 1));
+		job.setPartition(partition);
+		job.setBucket(bucket);
+	}
+
+	@Override
+	public boolean cancel(String key) throws Exception {
+		String indexPath = this.pathKeys + "/" + encode(key);
+		for (int i = 0; ; i++) {
+			Stat stat = new Stat();
+			String jobPath;
+			try {
+				jobPath = new String(getZooKeeper().getData(indexPath, false, stat), UTF8);
+			} catch (KeeperException.NoNodeException e) {
+				return false;
+			}
+			try {
+				getZooKeeper().multi(Arrays.asList(Op.delete(jobPath, -1), Op.delete(indexPath, stat.getVersion())));
+				return true;
+			} catch (KeeperException e) {
+				//任务刚被认领或替换
+				if (i >= MAX_SAVE_RETRY) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	@Override
+	public List<Long> listBuckets(int partition) throws Exception {
+		List<String> children;
+		try {
+			children = getZooKeeper().getChildren(partitionPath(partition), false);
+		} catch (KeeperException.NoNodeException e) {
+			return Collections.emptyList();
+		}
+		List<Long> buckets = new ArrayList<Long>(children.size());
+		for (String child : children) {
+			buckets.add(Long.valueOf(child));
+		}
+		Collections.sort(buckets);
+		return buckets;
+	}
+
+	@Override
+	public Map<Long, Integer> bucketVersions(int partition, List<Long> buckets) throws Exception {
+		List<String> paths = new ArrayList<String>(buckets.size());
+		for (Long bucket : buckets) {
+			paths.add(bucketPath(partition, bucket));
+		}
+		//子节点版本在任务节点增删时递增，只读取Stat，不传输子节点列表
+		Map<String, Stat> stats = ZKTools.existsPipelined(getZooKeeper(), paths, READ_TIMEOUT);
+		Map<Long, Integer> versions = new HashMap<Long, Integer>();
+		for (Long bucket : buckets) {
+			Stat stat = stats.get(bucketPath(partition, bucket));
+			if (stat != null) {
+				versions.put(bucket, stat.getCversion());
+			}
+		}
+		return versions;
+	}
+
+	@Override
+	public List<String> listJobs(int partition, long bucket) throws Exception {
+		try {
+			return getZooKeeper().getChildren(bucketPath(partition, bucket), false);
+		} catch (KeeperException.NoNodeException e) {
+			return Collections.emptyList();
+		}
+	}
+
+	@Override
+	public List<DelayedJob> loadJobs(int partition, long bucket, List<String> ids) throws Exception {
+		String bucketPath = bucketPath(partition, bucket);
+		List<String> paths = new ArrayList<String>(ids.size());
+		for (String id : ids) {
+			paths.add(bucketPath + "/" + id);
+		}
+		Map<String, byte[]> datas = ZKTools.getDataPipelined(getZooKeeper(), paths, READ_TIMEOUT);
+		List<DelayedJob> jobs = new ArrayList<DelayedJob>(datas.size());
+		for (String id : ids) {
+			byte[] data = datas.get(bucketPath + "/" + id);
+			if (data == null) {
+				continue;
+			}
+			DelayedJob job = this.gson.fromJson(new String(data, UTF8), DelayedJob.class);
+			job.setId(id);
+			job.setPartition(partition);
+			job.setBucket(bucket);
+			jobs.add(job);
+		}
+		return jobs;
+	}
+
+	@Override
+	public boolean claim(DelayedJob job) throws Exception {
+		String jobPath = bucketPath(job.getPartition(), job.getBucket()) + "/" + job.getId();
+		String indexPath = this.pathKeys + "/" + encode(job.getKey());
+		try {
+			//任务节点存在时索引必然指向它，两者一起删除
+			getZooKeeper().multi(Arrays.asList(Op.delete(jobPath, -1), Op.delete(indexPath, -1)));
+			return true;
+		} catch (KeeperException.NoNodeException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public void removeBucket(int partition, long bucket) throws Exception {
+		try {
+			getZooKeeper().delete(bucketPath(partition, bucket), -1);
+		} catch (KeeperException.NoNodeException e) {
+			//已被删除
+		} catch (KeeperException.NotEmptyException e) {
+			//有新提交的任务
+		}
+	}
+
+	private String partitionPath(int partition) {
+		return this.pathDelay + "/" + PARTITION_PREFIX + partition;
+	}
+
+	private String bucketPath(int partition, long bucket) {
+		return partitionPath(partition) + "/" + bucket;
+	}
+
+	/**
+	 * 主键编码为合法的节点名，URL编码后不含"/"和"~"
+	 */
+	private static String encode(String key) throws Exception {
+		String encoded = URLEncoder.encode(key, "UTF-8");
+		if (".".equals(encoded) || "..".equals(encoded)) {
+			encoded = encoded.replace(".", "%2E");
+		}
+		return encoded;
+	}
+
+}
@@ -0,0 +1,20 @@
+package cn.uncode.schedule.delay;
+
+/**
+ * 延迟任务到期处理
+ * 
+ * @author juny.ye
+ * 
+ */
+public interface IDelayedJobHandler {
+
+	/**
+	 * 处理到期的延迟任务，抛出异常时按重试间隔重新提交
+	 * 
+	 * @param key 业务主键
+	 * @param payload 业务数据
+	 * @throws Exception
+	 */
+	public void handle(String key, String payload) throws Exception;
+
+}
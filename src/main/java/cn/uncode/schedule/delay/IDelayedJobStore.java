@@ -0,0 +1,91 @@
+package cn.uncode.schedule.delay;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 延迟任务存储，任务按 分区/时间格 组织，另有主键索引支持O(1)取消
+ * 
+ * @author juny.ye
+ * 
+ */
+public interface IDelayedJobStore {
+
+	/**
+	 * 保存任务，主键已存在时替换原任务
+	 * 
+	 * @param job
+	 * @param partition 分区
+	 * @param bucket 时间格编号
+	 * @throws Exception
+	 */
+	public void save(DelayedJob job, int partition, long bucket) throws Exception;
+
+	/**
+	 * 按主键取消任务
+	 * 
+	 * @param key
+	 * @return 任务不存在时返回false
+	 * @throws Exception
+	 */
+	public boolean cancel(String key) throws Exception;
+
+	/**
+	 * 分区中的时间格编号
+	 * 
+	 * @param partition
+	 * @return
+	 * @throws Exception
+	 */
+	public List<Long> listBuckets(int partition) throws Exception;
+
+	/**
+	 * 时间格的变更版本，时间格中增删任务后版本变化，扫描时只需重新读取版本变化的时间格
+	 * 
+	 * @param partition
+	 * @param buckets 时间格编号
+	 * @return 时间格编号 -> 版本，不存在的时间格不出现在结果中
+	 * @throws Exception
+	 */
+	public Map<Long, Integer> bucketVersions(int partition, List<Long> buckets) throws Exception;
+
+	/**
+	 * 时间格中的任务编号
+	 * 
+	 * @param partition
+	 * @param bucket
+	 * @return
+	 * @throws Exception
+	 */
+	public List<String> listJobs(int partition, long bucket) throws Exception;
+
+	/**
+	 * 读取任务，已被取消的任务不出现在结果中
+	 * 
+	 * @param partition
+	 * @param bucket
+	 * @param ids 任务编号
+	 * @return
+	 * @throws Exception
+	 */
+	public List<DelayedJob> loadJobs(int partition, long bucket, List<String> ids) throws Exception;
+
+	/**
+	 * 认领到期的任务：任务仍然有效时原子地删除任务及其主键索引
+	 * 
+	 * @param job
+	 * @return 任务已被取消、替换或被其他服务器认领时返回false
+	 * @throws Exception
+	 */
+	public boolean claim(DelayedJob job) throws Exception;
+
+	/**
+	 * 删除空的时间格
+	 * 
+	 * @param partition
+	 * @param bucket
+	 * @throws Exception
+	 */
+	public void removeBucket(int partition, long bucket) throws Exception;
+
+}
@@ -0,0 +1,417 @@
+package cn.uncode.schedule.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 任务执行组，组内任务共用独立的线程池，与调度线程和其他组隔离
+ * 
+ * <pre>
+ * &lt;bean class="cn.uncode.schedule.executor.ExecutorGroup"&gt;
+ *     &lt;property name="name" value="report" /&gt;
+ *     &lt;property name="threadNum" value="2" /&gt;
+ *     &lt;property name="queueSize" value="10" /&gt;
+ *     &lt;property name="tasks"&gt;&lt;list&gt;&lt;value&gt;reportTask#run&lt;/value&gt;&lt;/list&gt;&lt;/property&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ * 
+ * @author juny.ye
+ * 
+ */
+public class ExecutorGroup {
+	private static final transient Logger LOG = LoggerFactory.getLogger(ExecutorGroup.class);
+
+	/**
+	 * 默认执行组，未指定执行组的任务使用
+	 */
+	public static final String DEFAULT_GROUP = "default";
+
+	/**
+	 * 队列已满时丢弃本次触发
+	 */
+	public static final String POLICY_DISCARD = "discard";
+
+	/**
+	 * 队列已满时在触发线程中执行
+	 */
+	public static final String POLICY_CALLER_RUNS = "callerRuns";
+
+	private String name;
+
+	/**
+	 * 线程数，虚拟线程模式下不使用
+	 */
+	private int threadNum = 1;
+
+	/**
+	 * 等待执行的最大任务数，虚拟线程模式下不使用
+	 */
+	private int queueSize = 100;
+
+	/**
+	 * 队列已满时的处理策略：discard、callerRuns
+	 */
+	private String rejectPolicy = POLICY_DISCARD;
+
+	/**
+	 * 同一任务排队和执行中的次数达到maxInFlightPerTask时合并本次触发，默认不重叠执行
+	 */
+	private boolean coalesce = true;
+
+	/**
+	 * 属于该组的任务名称（bean名称#方法名称）
+	 */
+	private List<String> tasks = new ArrayList<String>();
+
+	/**
+	 * 是否使用虚拟线程执行，JVM不支持时使用线程池
+	 */
+	private boolean virtualThreads;
+
+	/**
+	 * 虚拟线程模式下同时执行的最大任务数
+	 */
+	private int virtualThreadLimit = 10000;
+
+	/**
+	 * 合并触发时同一任务同时执行的最大数量，0表示不限制
+	 */
+	private int maxInFlightPerTask = 1;
+
+	private volatile ExecutorService executor;
+
+	/**
+	 * 已关闭，之后的触发直接丢弃，不再创建线程池
+	 */
+	private volatile boolean shutdown;
+
+	/**
+	 * 虚拟线程模式下的并发许可，线程池模式为null
+	 */
+	private volatile Semaphore permits;
+
+	private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<String, AtomicInteger>();
+
+	private final AtomicInteger activeCount = new AtomicInteger();
+
+	private final AtomicLong completedCount = new AtomicLong();
+
+	private final AtomicLong submittedCount = new AtomicLong();
+
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	public ExecutorGroup() {
+	}
+
+	public ExecutorGroup(String name, int threadNum, int queueSize) {
+		this.name = name;
+		this.threadNum = threadNum;
+		this.queueSize = queueSize;
+	}
+
+	/**
+	 * 提交任务
+	 * 
+	 * @param taskName 任务名称，用于合并同一任务的重复触发
+	 * @param task
+	 * @return 被合并或拒绝时返回false
+	 */
+	public boolean execute(String taskName, Runnable task) {
+		if (this.coalesce && !acquireTask(taskName)) {
+			this.coalescedCount.incrementAndGet();
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Executor group " + this.name + " coalesced task " + taskName + ".");
+			}
+			return false;
+		}
+		ExecutorService pool = getExecutor();
+		if (pool == null) {
+			// 已关闭，延迟到达的触发（如时间轮或外部调度器中尚未处理完的触发）不再执行
+			if (this.coalesce) {
+				releaseTask(taskName);
+			}
+			this.rejectedCount.incrementAndGet();
+			LOG.warn("Executor group " + this.name + " is shut down, task " + taskName + " discarded.");
+			return false;
+		}
+		Semaphore semaphore = this.permits;
+		boolean permitted = semaphore == null || semaphore.tryAcquire();
+		Invocation invocation = new Invocation(taskName, task, semaphore != null && permitted ? semaphore : null);
+		if (permitted) {
+			try {
+				pool.execute(invocation);
+				this.submittedCount.incrementAndGet();
+				return true;
+			} catch (RejectedExecutionException e) {
+				invocation.releasePermit();
+			}
+		}
+		if (POLICY_CALLER_RUNS.equals(this.rejectPolicy) && !pool.isShutdown()) {
+			this.submittedCount.incrementAndGet();
+			invocation.run();
+			return true;
+		}
+		if (this.coalesce) {
+			releaseTask(taskName);
+		}
+		this.rejectedCount.incrementAndGet();
+		LOG.warn("Executor group " + this.name + " is full, task " + taskName + " discarded.");
+		return false;
+	}
+
+	private boolean acquireTask(String taskName) {
+		AtomicInteger count = this.inFlight.get(taskName);
+		if (count == null) {
+			AtomicInteger created = new AtomicInteger();
+			count = this.inFlight.putIfAbsent(taskName, created);
+			if (count == null) {
+				count = created;
+			}
+		}
+		for (;;) {
+			int current = count.get();
+			if (this.maxInFlightPerTask > 0 && current >= this.maxInFlightPerTask) {
+				return false;
+			}
+			if (count.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private void releaseTask(String taskName) {
+		AtomicInteger count = this.inFlight.get(taskName);
+		if (count != null) {
+			count.decrementAndGet();
+		}
+	}
+
+	/**
+	 * 第一次提交时创建线程池，关闭后返回null
+	 */
+	private ExecutorService getExecutor() {
+		if (this.executor == null && !this.shutdown) {
+			synchronized (this) {
+				if (this.executor == null && !this.shutdown) {
+					final String prefix = "ExecutorGroup-" + this.name;
+					if (this.virtualThreads) {
+						ExecutorService virtual = VirtualThreads.newExecutor(prefix);
+						if (virtual != null) {
+							this.permits = new Semaphore(Math.max(1, this.virtualThreadLimit));
+							this.executor = virtual;
+							return virtual;
+						}
+						LOG.warn("Executor group " + this.name + ": virtual threads are not supported, use thread pool.");
+					}
+					ThreadPoolExecutor pool = new ThreadPoolExecutor(this.threadNum, this.threadNum, 60, TimeUnit.SECONDS,
+							new ArrayBlockingQueue<Runnable>(Math.max(1, this.queueSize)), new ThreadFactory() {
+								private final AtomicInteger number = new AtomicInteger();
+
+								public Thread newThread(Runnable r) {
+									Thread thread = new Thread(r, prefix + "-" + number.incrementAndGet());
+									thread.setDaemon(true);
+									return thread;
+								}
+							}, new ThreadPoolExecutor.AbortPolicy());
+					pool.allowCoreThreadTimeOut(true);
+					this.executor = pool;
+				}
+			}
+		}
+		return this.executor;
+	}
+
+	public synchronized void shutdown() {
+		this.shutdown = true;
+		if (this.executor != null) {
+			this.executor.shutdown();
+			this.executor = null;
+			this.permits = null;
+		}
+		this.inFlight.clear();
+	}
+
+	public boolean isShutdown() {
+		return this.shutdown;
+	}
+
+	/**
+	 * 是否正在使用虚拟线程执行
+	 * 
+	 * @return
+	 */
+	public boolean isVirtual() {
+		return this.permits != null;
+	}
+
+	/**
+	 * 等待执行的任务数
+	 * 
+	 * @return
+	 */
+	public int getQueueDepth() {
+		ExecutorService pool = this.executor;
+		return pool instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) pool).getQueue().size() : 0;
+	}
+
+	/**
+	 * 正在执行的任务数
+	 * 
+	 * @return
+	 */
+	public int getActiveCount() {
+		return this.activeCount.get();
+	}
+
+	public long getCompletedCount() {
+		return this.completedCount.get();
+	}
+
+	public long getSubmittedCount() {
+		return this.submittedCount.get();
+	}
+
+	public long getCoalescedCount() {
+		return this.coalescedCount.get();
+	}
+
+	public long getRejectedCount() {
+		return this.rejectedCount.get();
+	}
+
+	/**
+	 * 执行统计，格式与数据处理任务的统计一致
+	 * 
+	 * @return
+	 */
+	public String getDescription() {
+		return "ThreadNum=" + (isVirtual() ? "virtual" : String.valueOf(this.threadNum)) + ",ActiveCount=" + getActiveCount() + ",QueueDepth=" + getQueueDepth()
+				+ ",Submitted=" + getSubmittedCount() + ",Completed=" + getCompletedCount() + ",Coalesced="
+				+ getCoalescedCount() + ",Rejected=" + getRejectedCount();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public int getThreadNum() {
+		return threadNum;
+	}
+
+	public void setThreadNum(int threadNum) {
+		this.threadNum = threadNum;
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	public String getRejectPolicy() {
+		return rejectPolicy;
+	}
+
+	public void setRejectPolicy(String rejectPolicy) {
+		this.rejectPolicy = rejectPolicy;
+	}
+
+	public boolean isCoalesce() {
+		return coalesce;
+	}
+
+	public void setCoalesce(boolean coalesce) {
+		this.coalesce = coalesce;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	public int getVirtualThreadLimit() {
+		return virtualThreadLimit;
+	}
+
+	public void setVirtualThreadLimit(int virtualThreadLimit) {
+		this.virtualThreadLimit = virtualThreadLimit;
+	}
+
+	public int getMaxInFlightPerTask() {
+		return maxInFlightPerTask;
+	}
+
+	public void setMaxInFlightPerTask(int maxInFlightPerTask) {
+		this.maxInFlightPerTask = maxInFlightPerTask;
+	}
+
+	public List<String> getTasks() {
+		return tasks;
+	}
+
+	public void setTasks(List<String> tasks) {
+		this.tasks = tasks;
+	}
+
+	/**
+	 * 一次任务执行，结束后归还并发许可和任务计数
+	 */
+	private class Invocation implements Runnable {
+		private final String taskName;
+		private final Runnable task;
+		private Semaphore permit;
+
+		Invocation(String taskName, Runnable task, Semaphore permit) {
+			this.taskName = taskName;
+			this.task = task;
+			this.permit = permit;
+		}
+
+		public void run() {
+			activeCount.incrementAndGet();
+			try {
+				this.task.run();
+			} finally {
+				activeCount.decrementAndGet();
+				completedCount.incrementAndGet();
+				releasePermit();
+				if (coalesce) {
+					releaseTask(this.taskName);
+				}
+			}
+		}
+
+		void releasePermit() {
+			if (this.permit != null) {
+				this.permit.release();
+				this.permit = null;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package cn.uncode.schedule.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 执行组管理：任务名称到执行组的映射，未指定执行组的任务使用默认执行组
+ * 
+ * @author juny.ye
+ * 
+ */
+public class ExecutorGroupManager {
+	private static final transient Logger LOG = LoggerFactory.getLogger(ExecutorGroupManager.class);
+
+	/**
+	 * 默认执行组的等待队列长度
+	 */
+	private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+	private final Map<String, ExecutorGroup> groups = new ConcurrentHashMap<String, ExecutorGroup>();
+
+	/**
+	 * 任务名称 -> 执行组名称
+	 */
+	private final Map<String, String> taskGroups = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * @param defaultThreadNum 默认执行组的线程数，配置了名为default的执行组时不使用
+	 */
+	public ExecutorGroupManager(int defaultThreadNum) {
+		this.groups.put(ExecutorGroup.DEFAULT_GROUP,
+				new ExecutorGroup(ExecutorGroup.DEFAULT_GROUP, Math.max(1, defaultThreadNum), DEFAULT_QUEUE_SIZE));
+	}
+
+	/**
+	 * 添加执行组，同名执行组被替换
+	 * 
+	 * @param group
+	 */
+	public void addGroup(ExecutorGroup group) {
+		ExecutorGroup old = this.groups.put(group.getName(), group);
+		if (old != null && old != group) {
+			old.shutdown();
+		}
+		if (group.getTasks() != null) {
+			for (String task : group.getTasks()) {
+				this.taskGroups.put(task, group.getName());
+			}
+		}
+	}
+
+	/**
+	 * 指定任务的执行组，为空时恢复为执行组配置或默认执行组
+	 * 
+	 * @param taskName 任务名称
+	 * @param groupName 执行组名称
+	 */
+	public void bindTask(String taskName, String groupName) {
+		if (StringUtils.isEmpty(groupName)) {
+			for (ExecutorGroup group : this.groups.values()) {
+				if (group.getTasks() != null && group.getTasks().contains(taskName)) {
+					this.taskGroups.put(taskName, group.getName());
+					return;
+				}
+			}
+			this.taskGroups.remove(taskName);
+		} else {
+			this.taskGroups.put(taskName, groupName);
+		}
+	}
+
+	/**
+	 * 任务所属的执行组，指定的执行组不存在时使用默认执行组
+	 * 
+	 * @param taskName
+	 * @return
+	 */
+	public ExecutorGroup getGroup(String taskName) {
+		String groupName = this.taskGroups.get(taskName);
+		if (groupName != null) {
+			ExecutorGroup group = this.groups.get(groupName);
+			if (group != null) {
+				return group;
+			}
+			LOG.warn("Executor group " + groupName + " of task " + taskName + " is not exists, use default group.");
+			this.taskGroups.remove(taskName);
+		}
+		return getDefaultGroup();
+	}
+
+	public ExecutorGroup getDefaultGroup() {
+		return this.groups.get(ExecutorGroup.DEFAULT_GROUP);
+	}
+
+	public List<ExecutorGroup> getGroups() {
+		return new ArrayList<ExecutorGroup>(this.groups.values());
+	}
+
+	public void shutdown() {
+		for (ExecutorGroup group : this.groups.values()) {
+			group.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,79 @@
+package cn.uncode.schedule.executor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 虚拟线程支持，通过反射调用，在不支持虚拟线程的JVM上同样可以加载
+ * 
+ * @author juny.ye
+ * 
+ */
+public final class VirtualThreads {
+	private static final transient Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+
+	private static final Method OF_VIRTUAL;
+	private static final Method BUILDER_NAME;
+	private static final Method BUILDER_FACTORY;
+	private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method factory = null;
+		Method newExecutor = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			name = builderClass.getMethod("name", String.class, long.class);
+			factory = builderClass.getMethod("factory");
+			newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			// 预览版本未开启时调用会抛出异常
+			ofVirtual.invoke(null);
+		} catch (Throwable e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = name;
+		BUILDER_FACTORY = factory;
+		NEW_THREAD_PER_TASK_EXECUTOR = newExecutor;
+	}
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * 当前JVM是否支持虚拟线程
+	 * 
+	 * @return
+	 */
+	public static boolean isSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * 每个任务一个虚拟线程的执行器
+	 * 
+	 * @param prefix 线程名称前缀
+	 * @return 不支持虚拟线程时返回null
+	 */
+	public static ExecutorService newExecutor(String prefix) {
+		if (!isSupported()) {
+			return null;
+		}
+		try {
+			Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), prefix + "-", 1L);
+			ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+			return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+		} catch (Exception e) {
+			LOG.warn("Create virtual thread executor error.", e);
+			return null;
+		}
+	}
+
+}
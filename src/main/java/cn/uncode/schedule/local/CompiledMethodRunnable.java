@@ -0,0 +1,32 @@
+package cn.uncode.schedule.local;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+
+/**
+ * 使用方法句柄调用的无参任务，调度时绑定一次，每次触发没有反射调用
+ * 
+ * @author juny.ye
+ * 
+ */
+public class CompiledMethodRunnable extends ScheduledMethodRunnable {
+
+	private final MethodHandle invoker;
+
+	public CompiledMethodRunnable(Object target, Method method) {
+		super(target, method);
+		this.invoker = InvokerFactory.bind(target, method, InvokerFactory.RUN_TYPE);
+	}
+
+	@Override
+	public void run() {
+		try {
+			this.invoker.invokeExact();
+		} catch (Throwable ex) {
+			throw InvokerFactory.rethrow(ex);
+		}
+	}
+
+}
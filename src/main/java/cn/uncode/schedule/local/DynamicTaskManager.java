@@ -1,9 +1,12 @@
 package cn.uncode.schedule.local;
 
 import java.lang.reflect.Method;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 
@@ -13,11 +16,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.aop.framework.AopProxyUtils;
 import org.springframework.aop.support.AopUtils;
 import org.springframework.scheduling.Trigger;
-import org.springframework.scheduling.support.CronTrigger;
 import org.springframework.scheduling.support.ScheduledMethodRunnable;
 import org.springframework.util.ReflectionUtils;
 
 import cn.uncode.schedule.ConsoleManager;
+import cn.uncode.schedule.cron.CompiledCronTrigger;
+import cn.uncode.schedule.cron.FireSpread;
+import cn.uncode.schedule.cron.SpreadTrigger;
+import cn.uncode.schedule.pipeline.IScheduleTaskDeal;
+import cn.uncode.schedule.pipeline.PipelineMethodRunnable;
 import cn.uncode.schedule.zk.TaskDefine;
 
 
@@ -29,22 +36,60 @@ public class DynamicTaskManager {
 	
 	private static final Map<String, ScheduledFuture<?>> SCHEDULE_FUTURES = new ConcurrentHashMap<String, ScheduledFuture<?>>();
 	
+	/**
+	 * 数据处理任务持有自己的处理线程池，取消任务时关闭
+	 */
+	private static final Map<String, PipelineMethodRunnable> PIPELINES = new ConcurrentHashMap<String, PipelineMethodRunnable>();
+	
+	/**
+	 * 数据处理任务的目标方法
+	 */
+	private static final String PIPELINE_METHOD = "execute";
+	
 	
 	/**
 	 * 启动定时任务
 	 * @param taskDefine
 	 * @param currentTime
+	 * @return 本地是否已调度该任务，目标bean不存在等原因未能调度时返回false
+	 */
+	public static boolean scheduleTask(TaskDefine taskDefine, Date currentTime){
+		return scheduleTask(taskDefine.getTargetBean(), taskDefine.getTargetMethod(),
+				taskDefine.getCronExpression(), taskDefine.getStartTime(), taskDefine.getPeriod(), taskDefine);
+	}
+	
+	/**
+	 * 重新启动定时任务，任务定义变化时使用
+	 * @param taskDefine
+	 * @param currentTime
+	 * @return 本地是否已调度该任务，未能调度时原任务已取消
 	 */
-	public static void scheduleTask(TaskDefine taskDefine, Date currentTime){
-		scheduleTask(taskDefine.getTargetBean(), taskDefine.getTargetMethod(),
-				taskDefine.getCronExpression(), taskDefine.getStartTime(), taskDefine.getPeriod());
+	public static boolean rescheduleTask(TaskDefine taskDefine, Date currentTime){
+		cancelTask(buildScheduleKey(taskDefine.getTargetBean(), taskDefine.getTargetMethod()));
+		return scheduleTask(taskDefine, currentTime);
 	}
 	
-	public static void clearLocalTask(List<String> existsTaskName){
+	/**
+	 * 取消本地定时任务
+	 * @param name 任务名称
+	 */
+	public static void cancelTask(String name){
+		ScheduledFuture<?> scheduledFuture = SCHEDULE_FUTURES.remove(name);
+		if(scheduledFuture != null){
+			scheduledFuture.cancel(true);
+			LOGGER.debug("Cancel schedule task " + name + ".");
+		}
+		PipelineMethodRunnable pipeline = PIPELINES.remove(name);
+		if(pipeline != null){
+			pipeline.close();
+		}
+	}
+	
+	public static void clearLocalTask(Collection<String> existsTaskName){
+		Set<String> names = new HashSet<String>(existsTaskName);
 		for(String name:SCHEDULE_FUTURES.keySet()){
-			if(!existsTaskName.contains(name)){
-				SCHEDULE_FUTURES.get(name).cancel(true);
-				SCHEDULE_FUTURES.remove(name);
+			if(!names.contains(name)){
+				cancelTask(name);
 			}
 		}
 	}
@@ -64,17 +109,42 @@ public class DynamicTaskManager {
 	 * @param period
 	 */
 	public static void scheduleTask(String targetBean, String targetMethod, String cronExpression, Date startTime, long period){
+		scheduleTask(targetBean, targetMethod, cronExpression, startTime, period, null);
+	}
+	
+	/**
+	 * 启动定时任务，任务定义指定分片数量、数据处理参数时按对应的任务类型封装
+	 * 
+	 * @param targetBean
+	 * @param targetMethod
+	 * @param cronExpression
+	 * @param startTime
+	 * @param period
+	 * @param taskDefine 任务定义，可以为null
+	 * @return 本地是否已调度该任务
+	 */
+	private static boolean scheduleTask(String targetBean, String targetMethod, String cronExpression, Date startTime, long period, TaskDefine taskDefine){
 		String scheduleKey = buildScheduleKey(targetBean, targetMethod);
 		try {
 			ScheduledFuture<?> scheduledFuture = null;
-			ScheduledMethodRunnable scheduledMethodRunnable = buildScheduledRunnable(targetBean, targetMethod);
+			ScheduledMethodRunnable scheduledMethodRunnable = buildScheduledRunnable(targetBean, targetMethod, taskDefine);
 			if(scheduledMethodRunnable != null){
 				if (!SCHEDULE_FUTURES.containsKey(scheduleKey)) {
+					if(taskDefine != null){
+						ConsoleManager.getScheduleManager().getExecutorGroupManager().bindTask(scheduleKey, taskDefine.getExecutorGroup());
+					}
+					FireSpread spread = buildFireSpread(taskDefine);
 					if(StringUtils.isNotEmpty(cronExpression)){
-						Trigger trigger = new CronTrigger(cronExpression);
+						Trigger trigger = new CompiledCronTrigger(cronExpression);
+						if(spread != null){
+							trigger = new SpreadTrigger(trigger, spread, scheduleKey);
+						}
 						scheduledFuture = ConsoleManager.getScheduleManager().schedule(scheduledMethodRunnable, trigger);
 					}else if(startTime != null){
 						if(period > 0){
+							if(spread != null){
+								startTime = new Date(startTime.getTime() + spread.offset(scheduleKey));
+							}
 							scheduledFuture = ConsoleManager.getScheduleManager().scheduleAtFixedRate(scheduledMethodRunnable, startTime, period);
 						}else{
 							scheduledFuture = ConsoleManager.getScheduleManager().schedule(scheduledMethodRunnable, startTime);
@@ -82,42 +152,87 @@ public class DynamicTaskManager {
 					}else if(period > 0){
 						scheduledFuture = ConsoleManager.getScheduleManager().scheduleAtFixedRate(scheduledMethodRunnable, period);
 					}
-					SCHEDULE_FUTURES.put(scheduleKey, scheduledFuture);
+					if(scheduledFuture != null){
+						SCHEDULE_FUTURES.put(scheduleKey, scheduledFuture);
+						if(scheduledMethodRunnable instanceof PipelineMethodRunnable){
+							PIPELINES.put(scheduleKey, (PipelineMethodRunnable) scheduledMethodRunnable);
+						}
+					}
 					LOGGER.debug("Building new schedule task, target bean "+ targetBean + " target method " + targetMethod + ".");
 				}
+				if(scheduledMethodRunnable instanceof PipelineMethodRunnable && PIPELINES.get(scheduleKey) != scheduledMethodRunnable){
+					// 任务已存在或未能调度，关闭本次创建的处理线程池
+					((PipelineMethodRunnable) scheduledMethodRunnable).close();
+				}
 			}else{
 				LOGGER.debug("Bean name is not exists.");
 			}
 		} catch (Exception e) {
 			LOGGER.error(e.getMessage(), e);
 		}
+		return SCHEDULE_FUTURES.containsKey(scheduleKey);
 	}
 	
 	
+	/**
+	 * 任务定义指定打散策略时使用任务的配置，否则使用调度器的全局配置
+	 * @param taskDefine
+	 * @return 不打散时返回null
+	 */
+	private static FireSpread buildFireSpread(TaskDefine taskDefine) throws Exception{
+		if(taskDefine != null && StringUtils.isNotEmpty(taskDefine.getSpreadPolicy())){
+			try {
+				return FireSpread.create(taskDefine.getSpreadPolicy(), taskDefine.getSpreadWindow());
+			} catch (IllegalArgumentException e) {
+				LOGGER.warn(e.getMessage() + "，使用全局配置");
+			}
+		}
+		return ConsoleManager.getScheduleManager().getFireSpread();
+	}
+	
 	private static String buildScheduleKey(String targetBean, String targetMethod){
 		return targetBean + "#" + targetMethod;
 	}
 	
 	/**
 	 * 封装任务对象
+	 * 1 目标bean实现IScheduleTaskDeal且目标方法为execute：数据处理任务
+	 * 2 分片数量大于1：分片任务，目标方法接收（分片序号, 分片总数）
+	 * 3 其他：无参方法
 	 * @param targetBean
 	 * @param targetMethod
+	 * @param taskDefine
 	 * @return
 	 */
-	private static ScheduledMethodRunnable buildScheduledRunnable(String targetBean, String targetMethod){
+	private static ScheduledMethodRunnable buildScheduledRunnable(String targetBean, String targetMethod, TaskDefine taskDefine){
 		Object bean = null;
 		Method method = null;
 		ScheduledMethodRunnable scheduledMethodRunnable = null;
+		int shardCount = taskDefine != null ? taskDefine.getShardCount() : 0;
 		try {
 			bean = ConsoleManager.getScheduleManager().getApplicationcontext().getBean(targetBean);
 			if(bean != null){
-				if(AopUtils.isAopProxy(bean)){
-					method = ReflectionUtils.findMethod(AopProxyUtils.ultimateTargetClass(bean), targetMethod);
+				Class<?> targetClass = AopUtils.isAopProxy(bean) ? AopProxyUtils.ultimateTargetClass(bean) : bean.getClass();
+				if(bean instanceof IScheduleTaskDeal && PIPELINE_METHOD.equals(targetMethod)){
+					method = ReflectionUtils.findMethod(targetClass, targetMethod, List.class);
+					scheduledMethodRunnable = new PipelineMethodRunnable(buildScheduleKey(targetBean, targetMethod),
+							(IScheduleTaskDeal<?>) bean, method, shardCount,
+							taskDefine != null ? taskDefine.getFetchSize() : 0,
+							taskDefine != null ? taskDefine.getThreadNum() : 0,
+							taskDefine != null ? taskDefine.getQueueSize() : 0,
+							ConsoleManager.getScheduleManager().getPipelineStatistics());
+				}else if(shardCount > 1){
+					method = ReflectionUtils.findMethod(targetClass, targetMethod, int.class, int.class);
+					if(method != null){
+						scheduledMethodRunnable = new ShardedMethodRunnable(bean, method, shardCount);
+					}else{
+						LOGGER.error("Sharded task method must accept (int shardIndex, int shardTotal), target bean "+ targetBean + " target method " + targetMethod + ".");
+					}
 				}else{
-					method = ReflectionUtils.findMethod(bean.getClass(), targetMethod);
-				}
-				if(method != null){
-					scheduledMethodRunnable = new ScheduledMethodRunnable(bean, method);
+					method = ReflectionUtils.findMethod(targetClass, targetMethod);
+					if(method != null){
+						scheduledMethodRunnable = new CompiledMethodRunnable(bean, method);
+					}
 				}
 			}
 		} catch (Exception e) {
@@ -0,0 +1,102 @@
+package cn.uncode.schedule.local;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * 任务方法调用句柄：调度时把目标方法绑定到目标对象，触发时直接调用，不再经过Method.invoke的参数数组和访问检查
+ * 
+ * @author juny.ye
+ * 
+ */
+public final class InvokerFactory {
+
+	/**
+	 * 无参任务方法，返回值被丢弃
+	 */
+	public static final MethodType RUN_TYPE = MethodType.methodType(void.class);
+
+	/**
+	 * 分片任务方法（分片序号, 分片总数）
+	 */
+	public static final MethodType SHARD_TYPE = MethodType.methodType(void.class, int.class, int.class);
+
+	/**
+	 * 需要返回值的无参方法，基本类型的返回值被装箱
+	 */
+	public static final MethodType CALL_TYPE = MethodType.methodType(Object.class);
+
+	private InvokerFactory() {
+	}
+
+	/**
+	 * 绑定目标方法，返回的句柄可以按type使用invokeExact调用
+	 * 
+	 * @param target 目标对象，可以是aop代理
+	 * @param method 目标方法，可以是目标类上的方法
+	 * @param type 调用类型
+	 * @return
+	 */
+	public static MethodHandle bind(Object target, Method method, MethodType type) {
+		Method invocable = resolveInvocableMethod(target, method);
+		ReflectionUtils.makeAccessible(invocable);
+		MethodHandle handle;
+		try {
+			handle = MethodHandles.lookup().unreflect(invocable);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Cannot access method " + invocable, e);
+		}
+		if (!Modifier.isStatic(invocable.getModifiers())) {
+			handle = handle.bindTo(target);
+		}
+		return handle.asType(type);
+	}
+
+	/**
+	 * 在aop代理上可以调用的方法：jdk动态代理只能调用接口方法，找不到时抛出异常；cglib代理是目标类的子类，直接使用原方法
+	 * 
+	 * @param target
+	 * @param method
+	 * @return
+	 */
+	public static Method resolveInvocableMethod(Object target, Method method) {
+		if (target == null || method.getDeclaringClass().isInstance(target) || Modifier.isStatic(method.getModifiers())) {
+			return method;
+		}
+		if (Proxy.isProxyClass(target.getClass())) {
+			for (Class<?> ifc : target.getClass().getInterfaces()) {
+				try {
+					return ifc.getMethod(method.getName(), method.getParameterTypes());
+				} catch (NoSuchMethodException e) {
+					// 继续查找其他接口
+				}
+			}
+		}
+		throw new IllegalStateException("Method " + method.getName() + " is not invocable on "
+				+ target.getClass().getName() + ", declare it on an interface of the proxy or use class-based proxies.");
+	}
+
+	/**
+	 * 转换目标方法抛出的异常，与ScheduledMethodRunnable一致：运行时异常和Error直接抛出，受检异常被包装
+	 * 
+	 * @param ex
+	 * @return
+	 */
+	public static RuntimeException rethrow(Throwable ex) {
+		if (ex instanceof RuntimeException) {
+			throw (RuntimeException) ex;
+		}
+		if (ex instanceof Error) {
+			throw (Error) ex;
+		}
+		throw new UndeclaredThrowableException(ex);
+	}
+
+}
@@ -0,0 +1,80 @@
+package cn.uncode.schedule.local;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+
+/**
+ * 分片任务的执行对象
+ * 
+ * 目标方法签名为 method(int shardIndex, int shardTotal)，每次触发时按当前服务器持有的分片依次调用。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class ShardedMethodRunnable extends ScheduledMethodRunnable {
+
+	private final int shardCount;
+
+	/**
+	 * 目标方法为（分片序号, 分片总数）时的调用句柄，子类自行实现调用时为null
+	 */
+	private final MethodHandle invoker;
+
+	public ShardedMethodRunnable(Object target, Method method, int shardCount) {
+		super(target, method);
+		this.shardCount = Math.max(1, shardCount);
+		if (Arrays.equals(method.getParameterTypes(), new Class<?>[] { int.class, int.class })) {
+			this.invoker = InvokerFactory.bind(target, method, InvokerFactory.SHARD_TYPE);
+		} else {
+			this.invoker = null;
+		}
+	}
+
+	/**
+	 * 执行指定的分片
+	 * 
+	 * @param shards 分片序号
+	 */
+	public void run(List<Integer> shards) {
+		for (Integer shard : shards) {
+			invoke(shard);
+		}
+	}
+
+	/**
+	 * 未指定分片时执行全部分片
+	 */
+	@Override
+	public void run() {
+		for (int shard = 0; shard < this.shardCount; shard++) {
+			invoke(shard);
+		}
+	}
+
+	/**
+	 * 执行单个分片
+	 * 
+	 * @param shard 分片序号
+	 */
+	protected void invoke(int shard) {
+		try {
+			this.invoker.invokeExact(shard, this.shardCount);
+		} catch (Throwable ex) {
+			throw InvokerFactory.rethrow(ex);
+		}
+	}
+
+	/**
+	 * 分片总数，不分片时为1
+	 * 
+	 * @return
+	 */
+	public int getShardCount() {
+		return shardCount;
+	}
+
+}
@@ -0,0 +1,60 @@
+package cn.uncode.schedule.local;
+
+/**
+ * 调度时解析好的任务信息，触发时直接使用
+ * 
+ * @author juny.ye
+ * 
+ */
+public class TaskDescriptor {
+
+	/**
+	 * 任务名称（bean名称#方法名称）
+	 */
+	private final String name;
+
+	private final String beanName;
+
+	/**
+	 * 执行对象，bean方法已绑定为方法句柄
+	 */
+	private final Runnable task;
+
+	/**
+	 * 分片数大于1的分片任务
+	 */
+	private final ShardedMethodRunnable shardedTask;
+
+	public TaskDescriptor(String name, String beanName, Runnable task) {
+		this.name = name;
+		this.beanName = beanName;
+		this.task = task;
+		if (task instanceof ShardedMethodRunnable && ((ShardedMethodRunnable) task).getShardCount() > 1) {
+			this.shardedTask = (ShardedMethodRunnable) task;
+		} else {
+			this.shardedTask = null;
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getBeanName() {
+		return beanName;
+	}
+
+	public Runnable getTask() {
+		return task;
+	}
+
+	/**
+	 * 分片任务
+	 * 
+	 * @return 不是分片任务时返回null
+	 */
+	public ShardedMethodRunnable getShardedTask() {
+		return shardedTask;
+	}
+
+}
@@ -0,0 +1,107 @@
+package cn.uncode.schedule.local;
+
+import java.beans.Introspector;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+import org.springframework.util.ClassUtils;
+
+import cn.uncode.schedule.util.ScheduleUtil;
+
+/**
+ * 任务注册表：调度时解析任务名称、目标bean和调用句柄，触发时不再查找bean
+ * 
+ * @author juny.ye
+ * 
+ */
+public class TaskRegistry {
+	private static final transient Logger LOG = LoggerFactory.getLogger(TaskRegistry.class);
+
+	private final ApplicationContext applicationContext;
+
+	/**
+	 * 任务名称 -> 最近一次调度的任务信息
+	 */
+	private final Map<String, TaskDescriptor> descriptors = new ConcurrentHashMap<String, TaskDescriptor>();
+
+	public TaskRegistry(ApplicationContext applicationContext) {
+		this.applicationContext = applicationContext;
+	}
+
+	/**
+	 * 解析并登记任务，任务都按名称参与集群分配，不会在所有服务器上执行
+	 * 
+	 * @param task 调度的任务
+	 * @return
+	 * @throws IllegalArgumentException 任务不是bean方法，无法确定任务名称
+	 */
+	public TaskDescriptor register(Runnable task) {
+		if (!(task instanceof ScheduledMethodRunnable)) {
+			LOG.error("Task " + task + " is not a bean method, it can not be scheduled in cluster.");
+			throw new IllegalArgumentException("Task " + task + " is not a bean method");
+		}
+		ScheduledMethodRunnable scheduledMethodRunnable = (ScheduledMethodRunnable) task;
+		Method method = scheduledMethodRunnable.getMethod();
+		String beanName = resolveBeanName(scheduledMethodRunnable.getTarget(), method);
+		if (beanName == null) {
+			// 按spring默认的bean命名规则由声明类推导，各服务器上名称一致，仍需确认归属
+			beanName = Introspector.decapitalize(ClassUtils.getShortName(method.getDeclaringClass()));
+			LOG.warn("Bean of method " + method + " is not found, use name " + beanName + ".");
+		}
+		TaskDescriptor descriptor = new TaskDescriptor(ScheduleUtil.getTaskNameFormBean(beanName, method.getName()),
+				beanName, compile(task));
+		this.descriptors.put(descriptor.getName(), descriptor);
+		return descriptor;
+	}
+
+	public TaskDescriptor get(String name) {
+		return this.descriptors.get(name);
+	}
+
+	/**
+	 * 按实例查找目标对象的bean名称，同类型有多个bean时不会选错；没有相同实例时使用第一个同类型的bean
+	 * 
+	 * @param target 目标对象
+	 * @param method 目标方法
+	 * @return 找不到时返回null
+	 */
+	String resolveBeanName(Object target, Method method) {
+		if (this.applicationContext == null) {
+			return null;
+		}
+		String[] beanNames = this.applicationContext.getBeanNamesForType(target.getClass());
+		if (beanNames.length == 0) {
+			beanNames = this.applicationContext.getBeanNamesForType(method.getDeclaringClass());
+		}
+		for (String beanName : beanNames) {
+			if (this.applicationContext.isSingleton(beanName) && this.applicationContext.getBean(beanName) == target) {
+				return beanName;
+			}
+		}
+		return beanNames.length > 0 ? beanNames[0] : null;
+	}
+
+	/**
+	 * spring注解和xml配置的任务绑定为方法句柄，避免每次触发的反射调用；无法绑定时保持原样
+	 * 
+	 * @param task
+	 * @return
+	 */
+	private Runnable compile(Runnable task) {
+		if (task.getClass() == ScheduledMethodRunnable.class) {
+			ScheduledMethodRunnable scheduledMethodRunnable = (ScheduledMethodRunnable) task;
+			try {
+				return new CompiledMethodRunnable(scheduledMethodRunnable.getTarget(), scheduledMethodRunnable.getMethod());
+			} catch (RuntimeException e) {
+				LOG.debug("Bind method " + scheduledMethodRunnable.getMethod() + " error, use reflection.", e);
+			}
+		}
+		return task;
+	}
+
+}
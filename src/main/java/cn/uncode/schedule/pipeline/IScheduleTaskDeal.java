@@ -0,0 +1,35 @@
+package cn.uncode.schedule.pipeline;
+
+import java.util.List;
+
+/**
+ * 数据处理任务：框架循环调用{@link #selectTasks(int, int, int)}取数据，交给多个线程调用{@link #execute(List)}处理，
+ * 直到取不到数据为止。任务定义的目标bean实现本接口、目标方法填写execute即为数据处理任务。
+ * 
+ * @author juny.ye
+ * 
+ * @param <T> 数据类型
+ */
+public interface IScheduleTaskDeal<T> {
+
+	/**
+	 * 取一批待处理的数据，返回的数据在处理完成前不应被再次取出
+	 * 
+	 * @param shardIndex 分片序号，不分片时为0
+	 * @param shardTotal 分片总数，不分片时为1
+	 * @param batchSize 每批最多取的数据条数
+	 * @return 没有数据时返回空列表或null，本次执行结束
+	 * @throws Exception
+	 */
+	public List<T> selectTasks(int shardIndex, int shardTotal, int batchSize) throws Exception;
+
+	/**
+	 * 处理一批数据
+	 * 
+	 * @param tasks
+	 * @return 处理成功返回true
+	 * @throws Exception
+	 */
+	public boolean execute(List<T> tasks) throws Exception;
+
+}
@@ -0,0 +1,174 @@
+package cn.uncode.schedule.pipeline;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cn.uncode.schedule.local.ShardedMethodRunnable;
+
+/**
+ * 数据处理任务的执行对象
+ * 
+ * 每次触发时，触发线程作为生产者循环取数据，处理线程池作为消费者并行处理。
+ * 已取出未处理完的批次数不超过 处理线程数 + 等待队列长度，达到上限时生产者阻塞，避免数据堆积在内存中。
+ * 取不到数据后等待已取出的数据全部处理完成才结束本次执行，保证下次触发不会重复取到正在处理的数据。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class PipelineMethodRunnable extends ShardedMethodRunnable {
+
+	private static final transient Logger LOG = LoggerFactory.getLogger(PipelineMethodRunnable.class);
+
+	public static final int DEFAULT_FETCH_SIZE = 100;
+
+	private final String name;
+	private final IScheduleTaskDeal<Object> deal;
+	private final int fetchSize;
+	private final int threadNum;
+	private final int queueSize;
+	private final PipelineStatistics statistics;
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * @param name 任务名称
+	 * @param deal 数据处理bean
+	 * @param method 数据处理bean的execute方法
+	 * @param shardCount 分片数量
+	 * @param fetchSize 每批取数据的条数，0使用默认值100
+	 * @param threadNum 处理线程数，0使用1个线程
+	 * @param queueSize 等待处理的最大批次数，0使用处理线程数
+	 * @param statistics 统计信息
+	 */
+	@SuppressWarnings("unchecked")
+	public PipelineMethodRunnable(String name, IScheduleTaskDeal<?> deal, Method method, int shardCount, int fetchSize,
+			int threadNum, int queueSize, PipelineStatistics statistics) {
+		super(deal, method, shardCount);
+		this.name = name;
+		this.deal = (IScheduleTaskDeal<Object>) deal;
+		this.fetchSize = fetchSize > 0 ? fetchSize : DEFAULT_FETCH_SIZE;
+		this.threadNum = threadNum > 0 ? threadNum : 1;
+		this.queueSize = queueSize > 0 ? queueSize : this.threadNum;
+		this.statistics = statistics;
+		this.executor = new ThreadPoolExecutor(this.threadNum, this.threadNum, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new PipelineThreadFactory(name));
+		// 任务空闲时不保留处理线程
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * 关闭处理线程池，已提交的批次继续处理完成，任务取消或重新调度时调用
+	 */
+	public void close() {
+		this.executor.shutdown();
+	}
+
+	public boolean isClosed() {
+		return this.executor.isShutdown();
+	}
+
+	@Override
+	protected void invoke(int shard) {
+		if (this.executor.isShutdown()) {
+			// 任务已取消，忽略取消前已经触发的执行
+			LOG.warn("Pipeline task " + this.name + " is closed, shard " + shard + " skipped.");
+			return;
+		}
+		int permits = this.threadNum + this.queueSize;
+		Semaphore slots = new Semaphore(permits);
+		int batches = 0;
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				List<Object> tasks;
+				try {
+					tasks = this.deal.selectTasks(shard, getShardCount(), this.fetchSize);
+				} catch (Exception e) {
+					LOG.error("Select tasks error, task " + this.name + " shard " + shard + ".", e);
+					break;
+				}
+				if (tasks == null || tasks.isEmpty()) {
+					break;
+				}
+				this.statistics.addFetch(tasks.size());
+				// 背压：处理不过来时阻塞取数据
+				slots.acquire();
+				try {
+					this.executor.execute(new DealRunnable(tasks, slots));
+				} catch (RejectedExecutionException e) {
+					slots.release();
+					throw e;
+				}
+				batches++;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			// 等待已取出的数据处理完成
+			slots.acquireUninterruptibly(permits);
+			slots.release(permits);
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Pipeline task " + this.name + " shard " + shard + " finished, " + batches + " batches.");
+		}
+	}
+
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	public int getThreadNum() {
+		return threadNum;
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	private class DealRunnable implements Runnable {
+		private final List<Object> tasks;
+		private final Semaphore slots;
+
+		DealRunnable(List<Object> tasks, Semaphore slots) {
+			this.tasks = tasks;
+			this.slots = slots;
+		}
+
+		public void run() {
+			long start = System.currentTimeMillis();
+			boolean success = false;
+			try {
+				success = deal.execute(this.tasks);
+			} catch (Throwable e) {
+				LOG.error("Execute tasks error, task " + name + ".", e);
+			} finally {
+				statistics.addDeal(this.tasks.size(), success, System.currentTimeMillis() - start);
+				this.slots.release();
+			}
+		}
+	}
+
+	private static class PipelineThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger number = new AtomicInteger();
+
+		PipelineThreadFactory(String name) {
+			this.prefix = "pipeline-" + name + "-";
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, this.prefix + this.number.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
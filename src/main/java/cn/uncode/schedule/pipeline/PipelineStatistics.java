@@ -0,0 +1,105 @@
+package cn.uncode.schedule.pipeline;
+
+import java.sql.Timestamp;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 数据处理任务的累计统计，随心跳写入服务器信息的dealInfoDesc和lastFetchDataTime
+ * 
+ * @author juny.ye
+ * 
+ */
+public class PipelineStatistics {
+
+	/**
+	 * 取数据的次数
+	 */
+	private final AtomicLong fetchDataCount = new AtomicLong();
+
+	/**
+	 * 取到的数据条数
+	 */
+	private final AtomicLong fetchDataNum = new AtomicLong();
+
+	/**
+	 * 处理成功的数据条数
+	 */
+	private final AtomicLong dealDataSucess = new AtomicLong();
+
+	/**
+	 * 处理失败的数据条数
+	 */
+	private final AtomicLong dealDataFail = new AtomicLong();
+
+	/**
+	 * 处理耗时（毫秒）
+	 */
+	private final AtomicLong dealSpendTime = new AtomicLong();
+
+	private volatile long lastFetchDataTime;
+
+	public void addFetch(int num) {
+		this.fetchDataCount.incrementAndGet();
+		this.fetchDataNum.addAndGet(num);
+		this.lastFetchDataTime = System.currentTimeMillis();
+	}
+
+	public void addDeal(int num, boolean success, long spendTime) {
+		if (success) {
+			this.dealDataSucess.addAndGet(num);
+		} else {
+			this.dealDataFail.addAndGet(num);
+		}
+		this.dealSpendTime.addAndGet(spendTime);
+	}
+
+	/**
+	 * 是否执行过数据处理任务
+	 * 
+	 * @return
+	 */
+	public boolean hasFetched() {
+		return this.lastFetchDataTime > 0;
+	}
+
+	/**
+	 * 最后一次取数据时间，没有取过时返回null
+	 * 
+	 * @return
+	 */
+	public Timestamp getLastFetchDataTime() {
+		return this.lastFetchDataTime > 0 ? new Timestamp(this.lastFetchDataTime) : null;
+	}
+
+	/**
+	 * 处理描述信息，格式与{@link cn.uncode.schedule.zk.ScheduleServer#getDealInfoDesc()}一致
+	 * 
+	 * @return
+	 */
+	public String getDealDescription() {
+		return "FetchDataCount=" + this.fetchDataCount.get() + ",FetcheDataNum=" + this.fetchDataNum.get()
+				+ ",DealDataSucess=" + this.dealDataSucess.get() + ",DealDataFail=" + this.dealDataFail.get()
+				+ ",DealSpendTime=" + this.dealSpendTime.get();
+	}
+
+	public long getFetchDataCount() {
+		return fetchDataCount.get();
+	}
+
+	public long getFetchDataNum() {
+		return fetchDataNum.get();
+	}
+
+	public long getDealDataSucess() {
+		return dealDataSucess.get();
+	}
+
+	public long getDealDataFail() {
+		return dealDataFail.get();
+	}
+
+	public long getDealSpendTime() {
+		return dealSpendTime.get();
+	}
+
+}
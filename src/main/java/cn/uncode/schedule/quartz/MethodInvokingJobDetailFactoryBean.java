@@ -16,8 +16,12 @@ package cn.uncode.schedule.quartz;
  * limitations under the License.
  */
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -48,6 +52,7 @@ import org.springframework.util.MethodInvoker;
 import org.springframework.util.ReflectionUtils;
 
 import cn.uncode.schedule.ConsoleManager;
+import cn.uncode.schedule.local.InvokerFactory;
 import cn.uncode.schedule.util.ScheduleUtil;
 
 /**
@@ -129,6 +134,11 @@ public class MethodInvokingJobDetailFactoryBean extends ArgumentConvertingMethod
 
 	private JobDetail jobDetail;
 
+	/**
+	 * 绑定参数后的方法句柄
+	 */
+	private volatile MethodHandle invoker;
+
 
 	/**
 	 * Set the name of the job.
@@ -247,6 +257,36 @@ public class MethodInvokingJobDetailFactoryBean extends ArgumentConvertingMethod
 	}
 
 
+	/**
+	 * 使用绑定后的方法句柄调用目标方法，单例目标只绑定一次
+	 * 目标方法抛出的异常与MethodInvoker一致，包装为InvocationTargetException
+	 */
+	@Override
+	public Object invoke() throws InvocationTargetException, IllegalAccessException {
+		MethodHandle handle = this.invoker;
+		if (handle == null) {
+			Object targetObject = getTargetObject();
+			Method preparedMethod = getPreparedMethod();
+			if (targetObject == null && !Modifier.isStatic(preparedMethod.getModifiers())) {
+				throw new IllegalArgumentException("Target method must not be non-static without a target");
+			}
+			Object[] arguments = getArguments();
+			handle = InvokerFactory.bind(targetObject, preparedMethod,
+					MethodType.genericMethodType(arguments.length));
+			if (arguments.length > 0) {
+				handle = MethodHandles.insertArguments(handle, 0, arguments);
+			}
+			if (this.targetBeanName == null || this.beanFactory.isSingleton(this.targetBeanName)) {
+				this.invoker = handle;
+			}
+		}
+		try {
+			return handle.invokeExact();
+		} catch (Throwable ex) {
+			throw new InvocationTargetException(ex);
+		}
+	}
+
 	/**
 	 * Overridden to support the {@link #setTargetBeanName "targetBeanName"} feature.
 	 */
@@ -311,20 +351,7 @@ public class MethodInvokingJobDetailFactoryBean extends ArgumentConvertingMethod
 		protected void executeInternal(JobExecutionContext context) throws JobExecutionException {
 			try {
 				String name = ScheduleUtil.getTaskNameFormBean(context.getJobDetail().getKey().getName(), this.methodInvoker.getTargetMethod());
-				boolean isOwner = false;
-				try {
-					if(ConsoleManager.getScheduleManager().getZkManager().checkZookeeperState()){
-						isOwner = ConsoleManager.getScheduleManager().getScheduleDataManager().isOwner(name, ConsoleManager.getScheduleManager().getScheduleServerUUid());
-						ConsoleManager.getScheduleManager().getIsOwnerMap().put(name, isOwner);
-					}else{
-						// 如果zk不可用，使用历史数据
-						if(null != ConsoleManager.getScheduleManager().getIsOwnerMap()){
-							isOwner = ConsoleManager.getScheduleManager().getIsOwnerMap().get(name);
-						}
-					}
-				} catch (Exception e) {
-					LOGGER.error("Check task owner error.", e);
-				}
+				boolean isOwner = ConsoleManager.getScheduleManager().isOwner(name);
 	    		if(isOwner){
 	    			ReflectionUtils.invokeMethod(setResultMethod, context, this.methodInvoker.invoke());
 	    			LOGGER.info("Cron job has been executed.");
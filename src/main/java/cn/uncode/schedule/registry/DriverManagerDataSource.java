@@ -0,0 +1,81 @@
+package cn.uncode.schedule.registry;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * 通过DriverManager获取连接的数据源，每次调用创建新连接，用于通过配置项创建jdbc注册中心，
+ * 应用中已有连接池时应直接使用连接池创建ScheduleDataManager4JDBC
+ * 
+ * @author juny.ye
+ * 
+ */
+class DriverManagerDataSource implements DataSource {
+
+	private final String url;
+
+	private final String user;
+
+	private final String password;
+
+	DriverManagerDataSource(String url, String user, String password) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return getConnection(this.user, this.password);
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return DriverManager.getConnection(this.url, username, password);
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return DriverManager.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		DriverManager.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		DriverManager.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return DriverManager.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		throw new SQLException(getClass().getName() + " 不是 " + iface.getName() + " 的实现");
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this);
+	}
+
+}
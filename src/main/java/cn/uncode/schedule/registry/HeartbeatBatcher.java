@@ -0,0 +1,159 @@
+package cn.uncode.schedule.registry;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.sql.DataSource;
+
+/**
+ * 心跳的组提交：同一数据源上同时到达的心跳合并为一个批量UPDATE，在一个事务中提交
+ * 
+ * 每个调用方把请求放入队列后竞争提交锁，取得锁的调用方一次提交队列中的所有请求，其他调用方等待锁释放后直接返回结果。
+ * 
+ * @author juny.ye
+ * 
+ */
+class HeartbeatBatcher {
+
+	private static final ConcurrentMap<String, HeartbeatBatcher> BATCHERS = new ConcurrentHashMap<String, HeartbeatBatcher>();
+
+	private final DataSource dataSource;
+
+	private final String sql;
+
+	private final ConcurrentLinkedQueue<Request> pending = new ConcurrentLinkedQueue<Request>();
+
+	private final Object commitLock = new Object();
+
+	private volatile long batches;
+
+	private volatile long requests;
+
+	private HeartbeatBatcher(DataSource dataSource, String sql) {
+		this.dataSource = dataSource;
+		this.sql = sql;
+	}
+
+	/**
+	 * 取得数据源和语句对应的批量提交器，同一进程中使用同一数据源和表的数据管理器共享
+	 * 
+	 * @param dataSource
+	 * @param sql 心跳语句，参数依次为心跳时间和服务器编号
+	 * @return
+	 */
+	static HeartbeatBatcher getBatcher(DataSource dataSource, String sql) {
+		String key = System.identityHashCode(dataSource) + "/" + sql;
+		HeartbeatBatcher batcher = BATCHERS.get(key);
+		if (batcher == null) {
+			HeartbeatBatcher created = new HeartbeatBatcher(dataSource, sql);
+			batcher = BATCHERS.putIfAbsent(key, created);
+			if (batcher == null) {
+				batcher = created;
+			}
+		}
+		return batcher;
+	}
+
+	/**
+	 * 提交心跳，与其他同时到达的心跳合并提交
+	 * 
+	 * @param uuid 服务器编号
+	 * @param heartBeatTime 心跳时间
+	 * @return 服务器记录存在时返回true
+	 * @throws SQLException
+	 */
+	boolean heartBeat(String uuid, long heartBeatTime) throws SQLException {
+		Request request = new Request(uuid, heartBeatTime);
+		this.pending.add(request);
+		synchronized (this.commitLock) {
+			if (!request.done) {
+				commit();
+			}
+		}
+		if (request.error != null) {
+			throw request.error;
+		}
+		return request.updated;
+	}
+
+	/**
+	 * 提交队列中所有的心跳，在提交锁内调用
+	 */
+	private void commit() throws SQLException {
+		List<Request> batch = new ArrayList<Request>();
+		Request request;
+		while ((request = this.pending.poll()) != null) {
+			batch.add(request);
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+		SQLException error = null;
+		int[] counts = null;
+		Connection connection = null;
+		try {
+			connection = this.dataSource.getConnection();
+			connection.setAutoCommit(false);
+			PreparedStatement statement = connection.prepareStatement(this.sql);
+			try {
+				for (Request item : batch) {
+					statement.setLong(1, item.heartBeatTime);
+					statement.setString(2, item.uuid);
+					statement.addBatch();
+				}
+				counts = statement.executeBatch();
+			} finally {
+				statement.close();
+			}
+			connection.commit();
+		} catch (SQLException e) {
+			error = e;
+			ScheduleDataManager4JDBC.rollbackQuietly(connection);
+		} finally {
+			ScheduleDataManager4JDBC.closeQuietly(connection);
+		}
+		this.batches++;
+		this.requests += batch.size();
+		for (int i = 0; i < batch.size(); i++) {
+			Request item = batch.get(i);
+			item.error = error;
+			// 部分驱动批量执行时返回SUCCESS_NO_INFO(-2)，视为更新成功
+			item.updated = counts != null && (counts[i] > 0 || counts[i] == PreparedStatement.SUCCESS_NO_INFO);
+			item.done = true;
+		}
+	}
+
+	/**
+	 * 已提交的批次数
+	 */
+	long getBatches() {
+		return batches;
+	}
+
+	/**
+	 * 已提交的心跳数
+	 */
+	long getRequests() {
+		return requests;
+	}
+
+	private static class Request {
+		final String uuid;
+		final long heartBeatTime;
+		volatile boolean done;
+		volatile boolean updated;
+		volatile SQLException error;
+
+		Request(String uuid, long heartBeatTime) {
+			this.uuid = uuid;
+			this.heartBeatTime = heartBeatTime;
+		}
+	}
+
+}
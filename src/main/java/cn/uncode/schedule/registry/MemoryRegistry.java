@@ -0,0 +1,146 @@
+package cn.uncode.schedule.registry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cn.uncode.schedule.util.ScheduleUtil;
+import cn.uncode.schedule.zk.ScheduleServer;
+import cn.uncode.schedule.zk.ServerListCache;
+import cn.uncode.schedule.zk.TaskDefine;
+
+/**
+ * 进程内的注册中心数据：服务器、任务归属、任务定义、触发时间标识和分配纪元
+ * 
+ * 全部使用并发容器和原子变量，不加锁：任务归属为不可变集合，变更时整体替换；分配只由Leader执行，
+ * 写入所有变更后纪元加一，读取方在纪元前后两次读取一致时确认归属。
+ * 
+ * 同一进程中rootPath相同的调度管理器共享同一个注册中心，组成进程内的集群。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class MemoryRegistry {
+
+	private static final ConcurrentMap<String, MemoryRegistry> REGISTRIES = new ConcurrentHashMap<String, MemoryRegistry>();
+
+	static final Set<String> NO_OWNER = Collections.emptySet();
+
+	/**
+	 * 服务器编号 -> 服务器信息，按注册序号排列，第一个为Leader
+	 */
+	final ConcurrentSkipListMap<String, ScheduleServer> servers = new ConcurrentSkipListMap<String, ScheduleServer>(
+			ServerListCache.SEQUENCE_COMPARATOR);
+
+	/**
+	 * 任务名称 -> 分配的服务器（分片任务为：服务器编号#分片序号），不可变
+	 */
+	final ConcurrentMap<String, Set<String>> taskOwners = new ConcurrentHashMap<String, Set<String>>();
+
+	final ConcurrentMap<String, TaskDefine> taskDefines = new ConcurrentHashMap<String, TaskDefine>();
+
+	final ConcurrentMap<String, String> fireKeys = new ConcurrentHashMap<String, String>();
+
+	final AtomicLong serverSequence = new AtomicLong();
+
+	final AtomicLong epoch = new AtomicLong();
+
+	/**
+	 * 服务器列表变化时通知各数据管理器重新判断Leader
+	 */
+	private final List<ScheduleDataManager4Memory> members = new CopyOnWriteArrayList<ScheduleDataManager4Memory>();
+
+	/**
+	 * 取得指定命名空间的注册中心，不存在时创建
+	 * 
+	 * @param namespace 命名空间，一般为rootPath
+	 * @return
+	 */
+	public static MemoryRegistry getRegistry(String namespace) {
+		MemoryRegistry registry = REGISTRIES.get(namespace);
+		if (registry == null) {
+			MemoryRegistry created = new MemoryRegistry();
+			registry = REGISTRIES.putIfAbsent(namespace, created);
+			if (registry == null) {
+				registry = created;
+			}
+		}
+		return registry;
+	}
+
+	/**
+	 * 删除指定命名空间的注册中心，已创建的数据管理器仍持有原来的数据
+	 * 
+	 * @param namespace
+	 */
+	public static void removeRegistry(String namespace) {
+		REGISTRIES.remove(namespace);
+	}
+
+	/**
+	 * 注册序号最小的服务器
+	 * 
+	 * @return 没有服务器时返回null
+	 */
+	String getLeader() {
+		Map.Entry<String, ScheduleServer> first = this.servers.firstEntry();
+		return first == null ? null : first.getKey();
+	}
+
+	List<String> getServerNames() {
+		return new ArrayList<String>(this.servers.keySet());
+	}
+
+	/**
+	 * 注册任务，已存在时不做处理
+	 * 
+	 * @return 是否新注册
+	 */
+	boolean registerTask(String name) {
+		return this.taskOwners.putIfAbsent(name, NO_OWNER) == null;
+	}
+
+	/**
+	 * 任务或任务的某个分片是否分配给指定的服务器
+	 */
+	boolean isOwner(String name, String uuid) {
+		Set<String> owners = this.taskOwners.get(name);
+		if (owners == null) {
+			return false;
+		}
+		if (owners.contains(uuid)) {
+			return true;
+		}
+		for (String owner : owners) {
+			if (ScheduleUtil.getShardFromOwner(owner) >= 0 && uuid.equals(ScheduleUtil.getServerFromOwner(owner))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	void join(ScheduleDataManager4Memory member) {
+		this.members.add(member);
+	}
+
+	void leave(ScheduleDataManager4Memory member) {
+		this.members.remove(member);
+	}
+
+	/**
+	 * 服务器列表变化后通知所有数据管理器
+	 */
+	void notifyMembershipChanged() {
+		for (ScheduleDataManager4Memory member : this.members) {
+			member.checkLeadership();
+		}
+	}
+
+}
@@ -0,0 +1,235 @@
+package cn.uncode.schedule.registry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cn.uncode.schedule.util.ScheduleClock;
+import cn.uncode.schedule.zk.ScheduleServer;
+import cn.uncode.schedule.zk.TaskDefine;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+/**
+ * 基于本地内存映射文件的数据管理器，用于不能依赖zookeeper的边缘节点
+ * 
+ * 运行时数据与ScheduleDataManager4Memory相同，保存在内存中；任务目录（任务、任务定义、触发时间标识）和分配纪元
+ * 写入内存映射文件，进程重启后恢复。服务器和任务归属不持久化，重启后重新注册和分配。
+ * 文件由一个进程独占，启动时加文件锁。
+ * 
+ * 文件格式：魔数(4) + 格式版本(4) + 数据长度(4) + CRC32(8) + JSON数据，先写数据后写头部，校验失败时按空目录启动。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class ScheduleDataManager4File extends ScheduleDataManager4Memory {
+	private static final transient Logger LOG = LoggerFactory.getLogger(ScheduleDataManager4File.class);
+
+	private static final int MAGIC = 0x55534348;
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int HEADER_SIZE = 20;
+
+	private static final int INITIAL_SIZE = 64 * 1024;
+
+	private static final Gson GSON = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss").create();
+
+	private final File file;
+
+	private final RandomAccessFile randomAccessFile;
+
+	private final FileChannel channel;
+
+	private final FileLock lock;
+
+	private MappedByteBuffer buffer;
+
+	/**
+	 * 有延迟写入的变化，下次心跳时写入
+	 */
+	private volatile boolean dirty;
+
+	public ScheduleDataManager4File(File file) throws IOException {
+		this(file, ScheduleClock.SYSTEM);
+	}
+
+	public ScheduleDataManager4File(File file, ScheduleClock clock) throws IOException {
+		super(new MemoryRegistry(), clock);
+		this.file = file;
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		this.randomAccessFile = new RandomAccessFile(file, "rw");
+		this.channel = this.randomAccessFile.getChannel();
+		FileLock fileLock = null;
+		try {
+			fileLock = this.channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			// 同一进程中已打开
+		}
+		if (fileLock == null) {
+			this.randomAccessFile.close();
+			throw new IOException("注册中心文件已被其他调度管理器使用：" + file.getPath());
+		}
+		this.lock = fileLock;
+		this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+				Math.max(INITIAL_SIZE, this.channel.size()));
+		load();
+	}
+
+	/**
+	 * 读取文件中的任务目录，纪元在保存值的基础上加一，保证重启后的防护令牌大于重启前发放的令牌
+	 */
+	private void load() {
+		if (this.buffer.getInt(0) != MAGIC) {
+			LOG.info("注册中心文件为空，创建新的任务目录：" + this.file.getPath());
+			return;
+		}
+		int length = this.buffer.getInt(8);
+		long checksum = this.buffer.getLong(12);
+		if (this.buffer.getInt(4) != FORMAT_VERSION || length < 0 || HEADER_SIZE + length > this.buffer.capacity()) {
+			LOG.error("注册中心文件格式错误，按空目录启动：" + this.file.getPath());
+			return;
+		}
+		byte[] data = new byte[length];
+		this.buffer.position(HEADER_SIZE);
+		this.buffer.get(data);
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		if (crc.getValue() != checksum) {
+			LOG.error("注册中心文件校验失败，按空目录启动：" + this.file.getPath());
+			return;
+		}
+		Catalog catalog;
+		try {
+			catalog = GSON.fromJson(new String(data, "UTF-8"), Catalog.class);
+		} catch (JsonParseException e) {
+			LOG.error("注册中心文件解析失败，按空目录启动：" + this.file.getPath(), e);
+			return;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		if (catalog.tasks != null) {
+			for (String name : catalog.tasks) {
+				this.registry.registerTask(name);
+			}
+		}
+		if (catalog.taskDefines != null) {
+			for (Map.Entry<String, TaskDefine> entry : catalog.taskDefines.entrySet()) {
+				this.registry.registerTask(entry.getKey());
+				this.registry.taskDefines.put(entry.getKey(), entry.getValue());
+			}
+		}
+		if (catalog.fireKeys != null) {
+			this.registry.fireKeys.putAll(catalog.fireKeys);
+		}
+		this.registry.epoch.set(catalog.epoch + 1);
+		LOG.info("从注册中心文件恢复任务目录，任务数：" + this.registry.taskOwners.size() + "，纪元："
+				+ this.registry.epoch.get());
+	}
+
+	@Override
+	protected void catalogChanged(boolean durable) {
+		if (durable) {
+			store(true);
+		} else {
+			this.dirty = true;
+		}
+	}
+
+	/**
+	 * 心跳时写入延迟的变化
+	 */
+	@Override
+	public boolean refreshScheduleServer(ScheduleServer server) throws Exception {
+		boolean result = super.refreshScheduleServer(server);
+		if (this.dirty) {
+			store(false);
+		}
+		return result;
+	}
+
+	/**
+	 * 写入完整的任务目录，空间不足时扩大映射区域
+	 * 
+	 * @param force 是否同步刷盘：任务定义和纪元变化时刷盘，其他变化只写入页缓存，进程崩溃不丢失
+	 */
+	private synchronized void store(boolean force) {
+		if (!this.channel.isOpen()) {
+			return;
+		}
+		this.dirty = false;
+		Catalog catalog = new Catalog();
+		catalog.epoch = this.registry.epoch.get();
+		catalog.tasks = new TreeSet<String>(this.registry.taskOwners.keySet());
+		catalog.taskDefines = new TreeMap<String, TaskDefine>(this.registry.taskDefines);
+		catalog.fireKeys = new TreeMap<String, String>(this.registry.fireKeys);
+		try {
+			byte[] data = GSON.toJson(catalog).getBytes("UTF-8");
+			if (HEADER_SIZE + data.length > this.buffer.capacity()) {
+				long size = this.buffer.capacity();
+				while (size < HEADER_SIZE + data.length) {
+					size = size * 2;
+				}
+				this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			}
+			CRC32 crc = new CRC32();
+			crc.update(data);
+			this.buffer.position(HEADER_SIZE);
+			this.buffer.put(data);
+			this.buffer.putInt(4, FORMAT_VERSION);
+			this.buffer.putInt(8, data.length);
+			this.buffer.putLong(12, crc.getValue());
+			this.buffer.putInt(0, MAGIC);
+			if (force) {
+				this.buffer.force();
+			}
+		} catch (IOException e) {
+			LOG.error("写入注册中心文件失败：" + this.file.getPath(), e);
+		}
+	}
+
+	/**
+	 * 写入任务目录并释放文件
+	 */
+	@Override
+	public void close() throws IOException {
+		super.close();
+		store(true);
+		synchronized (this) {
+			if (this.channel.isOpen()) {
+				this.lock.release();
+				this.randomAccessFile.close();
+			}
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * 文件中保存的任务目录
+	 */
+	static class Catalog {
+		long epoch;
+		TreeSet<String> tasks;
+		TreeMap<String, TaskDefine> taskDefines;
+		TreeMap<String, String> fireKeys;
+	}
+
+}
@@ -0,0 +1,968 @@
+package cn.uncode.schedule.registry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cn.uncode.schedule.assign.CoincidenceBalancer;
+import cn.uncode.schedule.assign.IAssignStrategy;
+import cn.uncode.schedule.assign.ShardAssigner;
+import cn.uncode.schedule.local.DynamicTaskManager;
+import cn.uncode.schedule.util.ScheduleClock;
+import cn.uncode.schedule.util.ScheduleUtil;
+import cn.uncode.schedule.zk.IScheduleDataManager;
+import cn.uncode.schedule.zk.LeaderListener;
+import cn.uncode.schedule.zk.ScheduleServer;
+import cn.uncode.schedule.zk.ServerListCache;
+import cn.uncode.schedule.zk.TaskDefine;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * 基于关系数据库的数据管理器，多个应用实例共享同一个数据库即组成集群
+ * 
+ * 分配、Leader和纪元的语义与ScheduleDataManager4ZK一致：注册序号最小的服务器为Leader，分配变化时纪元加一，
+ * 防护令牌为确认归属时的纪元。访问数据库的方式：
+ * 1、心跳通过HeartbeatBatcher组提交，同一进程中同时到达的心跳合并为一个批量UPDATE；
+ * 2、服务器列表、任务列表和任务归属各用一条查询整体读取，当前服务器的归属按服务器索引读取到本地视图，
+ * 任务触发时只读取纪元行确认视图有效，纪元变化后才重新读取视图；
+ * 3、Leader在一个事务中读取纪元、批量写入归属变更，最后以纪元为版本号条件更新纪元（乐观锁），
+ * 期间有其他写入时更新行数为0，整个事务回滚，下一轮重新分配。
+ * 
+ * 表结构在第一次使用时自动创建，表名前缀默认为uncode_schedule_。
+ * 服务器心跳使用本机时钟，集群各服务器的时钟偏差需要小于服务器过期时间。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class ScheduleDataManager4JDBC implements IScheduleDataManager, Closeable {
+	private static final transient Logger LOG = LoggerFactory.getLogger(ScheduleDataManager4JDBC.class);
+
+	private static final Gson GSON = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss").create();
+
+	private static final long DEFAULT_SERVER_EXPIRE_TIME = 5000 * 3;
+
+	public static final String DEFAULT_TABLE_PREFIX = "uncode_schedule_";
+
+	private static final String EPOCH = "epoch";
+
+	private static final String SERVER_SEQUENCE = "server_seq";
+
+	/**
+	 * 违反唯一约束的SQLState类别
+	 */
+	private static final String INTEGRITY_CONSTRAINT_VIOLATION = "23";
+
+	private final DataSource dataSource;
+
+	private final ScheduleClock clock;
+
+	private final String metaTable;
+
+	private final String serverTable;
+
+	private final String taskTable;
+
+	private final String ownerTable;
+
+	private final HeartbeatBatcher heartbeatBatcher;
+
+	private volatile String uuid;
+
+	private volatile boolean leadership;
+
+	private volatile LeaderListener leaderListener;
+
+	private long serverExpireTime = DEFAULT_SERVER_EXPIRE_TIME;
+
+	private boolean autoRegisterTask = true;
+
+	private boolean balanceCoincidentTasks = true;
+
+	private int maxTaskNumOfOneServer;
+
+	/**
+	 * 当前服务器的任务归属视图，纪元变化后整体替换
+	 */
+	private volatile OwnerView ownerView;
+
+	/**
+	 * 已确认存在于任务表中的任务，自动注册时跳过
+	 */
+	private final Set<String> registeredTasks = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * 已发布的触发时间标识，只更新变化的标识
+	 */
+	private final Map<String, String> publishedFireKeys = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * 本地已启动的动态任务 -> 启动时的任务定义版本
+	 */
+	private final Map<String, Long> localTasks = new ConcurrentHashMap<String, Long>();
+
+	public ScheduleDataManager4JDBC(DataSource dataSource) throws SQLException {
+		this(dataSource, DEFAULT_TABLE_PREFIX, ScheduleClock.SYSTEM);
+	}
+
+	public ScheduleDataManager4JDBC(DataSource dataSource, String tablePrefix) throws SQLException {
+		this(dataSource, tablePrefix, ScheduleClock.SYSTEM);
+	}
+
+	public ScheduleDataManager4JDBC(DataSource dataSource, String tablePrefix, ScheduleClock clock)
+			throws SQLException {
+		this.dataSource = dataSource;
+		this.clock = clock;
+		this.metaTable = tablePrefix + "meta";
+		this.serverTable = tablePrefix + "server";
+		this.taskTable = tablePrefix + "task";
+		this.ownerTable = tablePrefix + "owner";
+		this.heartbeatBatcher = HeartbeatBatcher.getBatcher(dataSource,
+				"UPDATE " + this.serverTable + " SET heartbeat = ?, version = version + 1 WHERE uuid = ?");
+		initSchema();
+	}
+
+	/**
+	 * 表不存在时创建表和索引，并写入纪元和服务器序号的初始行
+	 */
+	private void initSchema() throws SQLException {
+		Connection connection = this.dataSource.getConnection();
+		try {
+			Statement statement = connection.createStatement();
+			try {
+				try {
+					statement.executeQuery("SELECT meta_value FROM " + this.metaTable + " WHERE 1 = 0").close();
+					return;
+				} catch (SQLException e) {
+					LOG.info("创建调度注册表，前缀：" + this.metaTable.substring(0, this.metaTable.length() - 4));
+				}
+				statement.executeUpdate("CREATE TABLE " + this.metaTable
+						+ " (meta_name VARCHAR(64) NOT NULL PRIMARY KEY, meta_value BIGINT NOT NULL)");
+				statement.executeUpdate("CREATE TABLE " + this.serverTable
+						+ " (uuid VARCHAR(255) NOT NULL PRIMARY KEY, seq BIGINT NOT NULL, heartbeat BIGINT NOT NULL,"
+						+ " version BIGINT NOT NULL, info VARCHAR(4000))");
+				statement.executeUpdate("CREATE UNIQUE INDEX " + this.serverTable + "_seq ON " + this.serverTable
+						+ " (seq)");
+				statement.executeUpdate("CREATE INDEX " + this.serverTable + "_heartbeat ON " + this.serverTable
+						+ " (heartbeat)");
+				statement.executeUpdate("CREATE TABLE " + this.taskTable
+						+ " (task_name VARCHAR(255) NOT NULL PRIMARY KEY, task_define VARCHAR(4000),"
+						+ " shard_count INT NOT NULL, version BIGINT NOT NULL, fire_key VARCHAR(255))");
+				statement.executeUpdate("CREATE TABLE " + this.ownerTable
+						+ " (task_name VARCHAR(255) NOT NULL, server_uuid VARCHAR(255) NOT NULL, shard INT NOT NULL,"
+						+ " PRIMARY KEY (task_name, server_uuid, shard))");
+				statement.executeUpdate("CREATE INDEX " + this.ownerTable + "_server ON " + this.ownerTable
+						+ " (server_uuid)");
+			} finally {
+				statement.close();
+			}
+		} catch (SQLException e) {
+			// 多个服务器同时启动时表可能已被其他服务器创建
+			LOG.warn("创建调度注册表失败：" + e.getMessage());
+		} finally {
+			closeQuietly(connection);
+		}
+		insertIfAbsent("INSERT INTO " + this.metaTable + " (meta_name, meta_value) VALUES (?, 0)", EPOCH);
+		insertIfAbsent("INSERT INTO " + this.metaTable + " (meta_name, meta_value) VALUES (?, 0)", SERVER_SEQUENCE);
+	}
+
+	@Override
+	public boolean refreshScheduleServer(ScheduleServer server) throws Exception {
+		if (server.getUuid() == null) {
+			server.setRegister(false);
+			return false;
+		}
+		long now = this.clock.currentTimeMillis();
+		if (this.heartbeatBatcher.heartBeat(server.getUuid(), now) == false) {
+			// 服务器已过期被清除，重新注册
+			server.setRegister(false);
+			return false;
+		}
+		server.setHeartBeatTime(new Timestamp(now));
+		server.setVersion(server.getVersion() + 1);
+		return true;
+	}
+
+	/**
+	 * 服务器序号在事务中通过计数行加一取得，计数行的行锁保证序号唯一递增
+	 */
+	@Override
+	public void registerScheduleServer(ScheduleServer server) throws Exception {
+		if (server.isRegister() == true) {
+			throw new Exception(server.getUuid() + " 被重复注册");
+		}
+		long now = this.clock.currentTimeMillis();
+		Connection connection = this.dataSource.getConnection();
+		try {
+			connection.setAutoCommit(false);
+			executeUpdate(connection, "UPDATE " + this.metaTable + " SET meta_value = meta_value + 1 WHERE meta_name = ?",
+					SERVER_SEQUENCE);
+			long sequence = queryLong(connection, "SELECT meta_value FROM " + this.metaTable + " WHERE meta_name = ?",
+					SERVER_SEQUENCE);
+			StringBuffer id = new StringBuffer();
+			id.append(server.getIp()).append("$").append(UUID.randomUUID().toString().replaceAll("-", "").toUpperCase())
+					.append("$").append(String.format("%010d", sequence));
+			server.setUuid(id.toString());
+			server.setRegisterTime(new Timestamp(now));
+			server.setHeartBeatTime(new Timestamp(now));
+			executeUpdate(connection, "INSERT INTO " + this.serverTable
+					+ " (uuid, seq, heartbeat, version, info) VALUES (?, ?, ?, 0, ?)", server.getUuid(), sequence, now,
+					GSON.toJson(server));
+			connection.commit();
+		} catch (SQLException e) {
+			rollbackQuietly(connection);
+			throw e;
+		} finally {
+			closeQuietly(connection);
+		}
+		server.setRegister(true);
+		this.uuid = server.getUuid();
+		this.ownerView = null;
+		checkLeadership();
+	}
+
+	@Override
+	public ScheduleServer loadScheduleServer(String uuid) throws Exception {
+		Connection connection = this.dataSource.getConnection();
+		try {
+			PreparedStatement statement = prepare(connection,
+					"SELECT info, heartbeat, version FROM " + this.serverTable + " WHERE uuid = ?", uuid);
+			try {
+				ResultSet resultSet = statement.executeQuery();
+				if (!resultSet.next()) {
+					return null;
+				}
+				ScheduleServer server = GSON.fromJson(resultSet.getString(1), ScheduleServer.class);
+				server.setUuid(uuid);
+				server.setHeartBeatTime(new Timestamp(resultSet.getLong(2)));
+				server.setVersion(resultSet.getLong(3));
+				server.setRegister(true);
+				return server;
+			} finally {
+				statement.close();
+			}
+		} finally {
+			closeQuietly(connection);
+		}
+	}
+
+	@Override
+	public boolean isLeader(String uuid, List<String> serverList) {
+		return uuid.equals(getLeader(serverList));
+	}
+
+	@Override
+	public String getLeader(List<String> serverList) {
+		if (serverList == null || serverList.size() == 0) {
+			return "";
+		}
+		return Collections.min(serverList, ServerListCache.SEQUENCE_COMPARATOR);
+	}
+
+	@Override
+	public boolean hasLeadership() {
+		return this.leadership;
+	}
+
+	@Override
+	public void setLeaderListener(LeaderListener leaderListener) {
+		this.leaderListener = leaderListener;
+	}
+
+	/**
+	 * 读取序号最小的服务器重新判断Leader，身份变化时回调
+	 */
+	private void checkLeadership() throws SQLException {
+		String current = this.uuid;
+		boolean leader = current != null && current.equals(loadLeader());
+		if (leader == this.leadership) {
+			return;
+		}
+		this.leadership = leader;
+		LOG.info(current + (leader ? " 成为Leader" : " 不再是Leader"));
+		LeaderListener listener = this.leaderListener;
+		if (listener != null) {
+			if (leader) {
+				listener.leadershipAcquired();
+			} else {
+				listener.leadershipLost();
+			}
+		}
+	}
+
+	private String loadLeader() throws SQLException {
+		Connection connection = this.dataSource.getConnection();
+		try {
+			return loadLeader(connection);
+		} finally {
+			closeQuietly(connection);
+		}
+	}
+
+	private String loadLeader(Connection connection) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement("SELECT uuid FROM " + this.serverTable
+				+ " WHERE seq = (SELECT MIN(seq) FROM " + this.serverTable + ")");
+		try {
+			ResultSet resultSet = statement.executeQuery();
+			return resultSet.next() ? resultSet.getString(1) : null;
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * 按心跳时间索引删除过期服务器，然后重新判断Leader，每台服务器在分配阶段都会执行
+	 */
+	@Override
+	public void clearExpireScheduleServer() throws Exception {
+		long expireBefore = this.clock.currentTimeMillis() - this.serverExpireTime;
+		Connection connection = this.dataSource.getConnection();
+		try {
+			int count = executeUpdate(connection, "DELETE FROM " + this.serverTable + " WHERE heartbeat < ?",
+					expireBefore);
+			if (count > 0) {
+				LOG.debug("过期清除服务器" + count + "台");
+			}
+		} finally {
+			closeQuietly(connection);
+		}
+		checkLeadership();
+	}
+
+	@Override
+	public List<String> loadScheduleServerNames() throws Exception {
+		List<String> names = new ArrayList<String>();
+		Connection connection = this.dataSource.getConnection();
+		try {
+			PreparedStatement statement = connection.prepareStatement("SELECT uuid FROM " + this.serverTable
+					+ " ORDER BY seq");
+			try {
+				ResultSet resultSet = statement.executeQuery();
+				while (resultSet.next()) {
+					names.add(resultSet.getString(1));
+				}
+			} finally {
+				statement.close();
+			}
+		} finally {
+			closeQuietly(connection);
+		}
+		return names;
+	}
+
+	/**
+	 * 在一个事务中完成分配：读取纪元、任务和归属，批量写入变更，最后以读取的纪元为条件加一，条件不满足时回滚
+	 */
+	@Override
+	public void assignTask(String currentUuid, List<String> taskServerList, IAssignStrategy assignStrategy)
+			throws Exception {
+		if (this.isLeader(currentUuid, taskServerList) == false || taskServerList.size() <= 0) {
+			return;
+		}
+		Set<String> servers = new HashSet<String>(taskServerList);
+		Connection connection = this.dataSource.getConnection();
+		try {
+			connection.setAutoCommit(false);
+			long epoch = queryLong(connection, "SELECT meta_value FROM " + this.metaTable + " WHERE meta_name = ?",
+					EPOCH);
+			Map<String, Integer> shardCounts = new HashMap<String, Integer>();
+			Map<String, String> fireKeys = new HashMap<String, String>();
+			PreparedStatement statement = connection.prepareStatement("SELECT task_name, shard_count, fire_key FROM "
+					+ this.taskTable);
+			try {
+				ResultSet resultSet = statement.executeQuery();
+				while (resultSet.next()) {
+					shardCounts.put(resultSet.getString(1), resultSet.getInt(2));
+					if (resultSet.getString(3) != null) {
+						fireKeys.put(resultSet.getString(1), resultSet.getString(3));
+					}
+				}
+			} finally {
+				statement.close();
+			}
+			Map<String, Set<String>> snapshot = new HashMap<String, Set<String>>();
+			for (String name : shardCounts.keySet()) {
+				snapshot.put(name, new HashSet<String>());
+			}
+			statement = connection.prepareStatement("SELECT task_name, server_uuid, shard FROM " + this.ownerTable);
+			try {
+				ResultSet resultSet = statement.executeQuery();
+				while (resultSet.next()) {
+					Set<String> owners = snapshot.get(resultSet.getString(1));
+					if (owners != null) {
+						owners.add(buildOwner(resultSet.getString(2), resultSet.getInt(3)));
+					}
+				}
+			} finally {
+				statement.close();
+			}
+
+			Map<String, List<String>> currentServers = new HashMap<String, List<String>>();
+			Map<String, Set<String>> targets = new HashMap<String, Set<String>>();
+			for (Map.Entry<String, Set<String>> entry : snapshot.entrySet()) {
+				int shardCount = shardCounts.get(entry.getKey());
+				if (shardCount > 1) {
+					Map<Integer, String> currentShards = new HashMap<Integer, String>();
+					for (String owner : entry.getValue()) {
+						int shard = ScheduleUtil.getShardFromOwner(owner);
+						String serverId = ScheduleUtil.getServerFromOwner(owner);
+						if (shard >= 0 && shard < shardCount && servers.contains(serverId)
+								&& !currentShards.containsKey(shard)) {
+							currentShards.put(shard, serverId);
+						}
+					}
+					Map<Integer, String> targetShards = ShardAssigner.assign(entry.getKey(), shardCount,
+							currentShards, taskServerList, this.maxTaskNumOfOneServer);
+					Set<String> owners = new TreeSet<String>();
+					for (Map.Entry<Integer, String> shardEntry : targetShards.entrySet()) {
+						owners.add(ScheduleUtil.buildShardOwner(shardEntry.getValue(), shardEntry.getKey()));
+					}
+					targets.put(entry.getKey(), owners);
+					continue;
+				}
+				List<String> validServerIds = new ArrayList<String>();
+				for (String serverId : entry.getValue()) {
+					if (servers.contains(serverId)) {
+						validServerIds.add(serverId);
+					}
+				}
+				currentServers.put(entry.getKey(), validServerIds);
+			}
+			Map<String, String> assignment = assignStrategy.assign(currentServers, taskServerList);
+			if (this.balanceCoincidentTasks) {
+				assignment = CoincidenceBalancer.balance(assignment, fireKeys, taskServerList);
+			}
+			for (String name : currentServers.keySet()) {
+				String target = assignment.get(name);
+				targets.put(name, target == null ? Collections.<String> emptySet() : Collections.singleton(target));
+			}
+
+			int changes = 0;
+			PreparedStatement delete = connection.prepareStatement("DELETE FROM " + this.ownerTable
+					+ " WHERE task_name = ? AND server_uuid = ? AND shard = ?");
+			PreparedStatement insert = connection.prepareStatement("INSERT INTO " + this.ownerTable
+					+ " (task_name, server_uuid, shard) VALUES (?, ?, ?)");
+			try {
+				for (Map.Entry<String, Set<String>> entry : targets.entrySet()) {
+					Set<String> current = snapshot.get(entry.getKey());
+					if (current.equals(entry.getValue())) {
+						continue;
+					}
+					changes++;
+					for (String owner : current) {
+						if (!entry.getValue().contains(owner)) {
+							addOwnerBatch(delete, entry.getKey(), owner);
+						}
+					}
+					for (String owner : entry.getValue()) {
+						if (!current.contains(owner)) {
+							addOwnerBatch(insert, entry.getKey(), owner);
+						}
+					}
+				}
+				if (changes == 0) {
+					connection.rollback();
+					return;
+				}
+				delete.executeBatch();
+				insert.executeBatch();
+			} finally {
+				delete.close();
+				insert.close();
+			}
+			// 乐观锁：纪元仍为读取时的值并且当前服务器仍是Leader时才提交
+			int updated = executeUpdate(connection, "UPDATE " + this.metaTable
+					+ " SET meta_value = meta_value + 1 WHERE meta_name = ? AND meta_value = ?", EPOCH, epoch);
+			if (updated != 1 || !currentUuid.equals(loadLeader(connection))) {
+				connection.rollback();
+				LOG.warn("任务分配期间纪元或Leader发生变化，放弃本次分配，纪元：" + epoch);
+				return;
+			}
+			connection.commit();
+			LOG.info("任务重新分配完成，任务数：" + snapshot.size() + "，变更数：" + changes + "，纪元：" + (epoch + 1));
+		} catch (SQLException e) {
+			rollbackQuietly(connection);
+			throw e;
+		} finally {
+			closeQuietly(connection);
+		}
+	}
+
+	private static void addOwnerBatch(PreparedStatement statement, String name, String owner) throws SQLException {
+		statement.setString(1, name);
+		statement.setString(2, ScheduleUtil.getServerFromOwner(owner));
+		statement.setInt(3, ScheduleUtil.getShardFromOwner(owner));
+		statement.addBatch();
+	}
+
+	private static String buildOwner(String serverId, int shard) {
+		return shard < 0 ? serverId : ScheduleUtil.buildShardOwner(serverId, shard);
+	}
+
+	@Override
+	public boolean isOwner(String name, String uuid) throws Exception {
+		return getFencingToken(name, uuid) >= 0;
+	}
+
+	/**
+	 * 读取纪元行确认本地视图有效，视图的纪元落后时按服务器索引重新读取当前服务器的全部归属
+	 */
+	@Override
+	public long getFencingToken(String name, String uuid) throws Exception {
+		registerTask(name, uuid);
+		OwnerView view = confirmOwnerView(uuid);
+		return view.owners.containsKey(name) ? view.epoch : -1;
+	}
+
+	@Override
+	public List<Integer> getOwnedShards(String name, String uuid) throws Exception {
+		List<Integer> shards = new ArrayList<Integer>();
+		List<Integer> owned = confirmOwnerView(uuid).owners.get(name);
+		if (owned != null) {
+			for (Integer shard : owned) {
+				if (shard >= 0) {
+					shards.add(shard);
+				}
+			}
+			Collections.sort(shards);
+		}
+		return shards;
+	}
+
+	/**
+	 * 自动注册任务，任务表中已存在的任务只在第一次检查时访问数据库
+	 */
+	private void registerTask(String name, String uuid) throws SQLException {
+		if (!this.autoRegisterTask || this.registeredTasks.contains(name)) {
+			return;
+		}
+		if (insertIfAbsent("INSERT INTO " + this.taskTable + " (task_name, shard_count, version) VALUES (?, 0, 0)",
+				name) && LOG.isDebugEnabled()) {
+			LOG.debug(uuid + ":自动向集群注册任务[" + name + "]");
+		}
+		this.registeredTasks.add(name);
+	}
+
+	/**
+	 * 返回与数据库纪元一致的归属视图
+	 */
+	private OwnerView confirmOwnerView(String uuid) throws SQLException {
+		Connection connection = this.dataSource.getConnection();
+		try {
+			String epochSql = "SELECT meta_value FROM " + this.metaTable + " WHERE meta_name = ?";
+			long epoch = queryLong(connection, epochSql, EPOCH);
+			OwnerView view = this.ownerView;
+			if (view != null && view.epoch == epoch && view.uuid.equals(uuid)) {
+				view.confirmTime = this.clock.currentTimeMillis();
+				return view;
+			}
+			while (true) {
+				Map<String, List<Integer>> owners = new HashMap<String, List<Integer>>();
+				PreparedStatement statement = prepare(connection, "SELECT task_name, shard FROM " + this.ownerTable
+						+ " WHERE server_uuid = ?", uuid);
+				try {
+					ResultSet resultSet = statement.executeQuery();
+					while (resultSet.next()) {
+						List<Integer> shards = owners.get(resultSet.getString(1));
+						if (shards == null) {
+							shards = new ArrayList<Integer>();
+							owners.put(resultSet.getString(1), shards);
+						}
+						shards.add(resultSet.getInt(2));
+					}
+				} finally {
+					statement.close();
+				}
+				// 读取归属前后纪元一致，说明读取的是同一次分配的结果
+				long confirmed = queryLong(connection, epochSql, EPOCH);
+				if (confirmed == epoch) {
+					view = new OwnerView(uuid, epoch, owners, this.clock.currentTimeMillis());
+					if (uuid.equals(this.uuid)) {
+						this.ownerView = view;
+					}
+					return view;
+				}
+				epoch = confirmed;
+			}
+		} finally {
+			closeQuietly(connection);
+		}
+	}
+
+	/**
+	 * 任务定义按版本更新，定义变化时版本加一
+	 */
+	@Override
+	public void addTask(TaskDefine taskDefine) throws Exception {
+		String name = taskDefine.getTargetBean() + "#" + taskDefine.getTargetMethod();
+		String json = GSON.toJson(taskDefine);
+		Connection connection = this.dataSource.getConnection();
+		try {
+			int updated = executeUpdate(connection, "UPDATE " + this.taskTable
+					+ " SET task_define = ?, shard_count = ?, version = version + 1 WHERE task_name = ?", json,
+					taskDefine.getShardCount(), name);
+			if (updated == 0) {
+				executeUpdate(connection, "INSERT INTO " + this.taskTable
+						+ " (task_name, task_define, shard_count, version) VALUES (?, ?, ?, 1)", name, json,
+						taskDefine.getShardCount());
+			}
+		} finally {
+			closeQuietly(connection);
+		}
+		this.registeredTasks.add(name);
+	}
+
+	/**
+	 * 删除任务和归属，纪元加一使进行中的分配失效
+	 */
+	@Override
+	public void delTask(String targetBean, String targetMethod) throws Exception {
+		String name = targetBean + "#" + targetMethod;
+		Connection connection = this.dataSource.getConnection();
+		try {
+			connection.setAutoCommit(false);
+			executeUpdate(connection, "DELETE FROM " + this.ownerTable + " WHERE task_name = ?", name);
+			executeUpdate(connection, "DELETE FROM " + this.taskTable + " WHERE task_name = ?", name);
+			executeUpdate(connection, "UPDATE " + this.metaTable + " SET meta_value = meta_value + 1 WHERE meta_name = ?",
+					EPOCH);
+			connection.commit();
+		} catch (SQLException e) {
+			rollbackQuietly(connection);
+			throw e;
+		} finally {
+			closeQuietly(connection);
+		}
+		this.registeredTasks.remove(name);
+		this.publishedFireKeys.remove(name);
+	}
+
+	@Override
+	public List<TaskDefine> selectTask() throws Exception {
+		Map<String, TaskDefine> taskDefines = new HashMap<String, TaskDefine>();
+		Map<String, Set<String>> owners = new HashMap<String, Set<String>>();
+		Connection connection = this.dataSource.getConnection();
+		try {
+			PreparedStatement statement = connection.prepareStatement("SELECT task_name, task_define FROM "
+					+ this.taskTable + " ORDER BY task_name");
+			try {
+				ResultSet resultSet = statement.executeQuery();
+				while (resultSet.next()) {
+					taskDefines.put(resultSet.getString(1), parseTaskDefine(resultSet.getString(1),
+							resultSet.getString(2)));
+				}
+			} finally {
+				statement.close();
+			}
+			statement = connection.prepareStatement("SELECT task_name, server_uuid, shard FROM " + this.ownerTable);
+			try {
+				ResultSet resultSet = statement.executeQuery();
+				while (resultSet.next()) {
+					Set<String> set = owners.get(resultSet.getString(1));
+					if (set == null) {
+						set = new TreeSet<String>();
+						owners.put(resultSet.getString(1), set);
+					}
+					set.add(buildOwner(resultSet.getString(2), resultSet.getInt(3)));
+				}
+			} finally {
+				statement.close();
+			}
+		} finally {
+			closeQuietly(connection);
+		}
+		List<TaskDefine> result = new ArrayList<TaskDefine>();
+		for (Map.Entry<String, TaskDefine> entry : taskDefines.entrySet()) {
+			Set<String> set = owners.get(entry.getKey());
+			if (set != null) {
+				entry.getValue().setCurrentServer(StringUtils.join(set, ","));
+			}
+			result.add(entry.getValue());
+		}
+		return result;
+	}
+
+	private static TaskDefine parseTaskDefine(String name, String json) {
+		if (json != null) {
+			return GSON.fromJson(json, TaskDefine.class);
+		}
+		String[] names = name.split("#");
+		TaskDefine taskDefine = new TaskDefine();
+		taskDefine.setTargetBean(names[0]);
+		taskDefine.setTargetMethod(names.length > 1 ? names[1] : null);
+		return taskDefine;
+	}
+
+	/**
+	 * 核对本地动态任务：一条关联查询按服务器索引读取归属当前服务器的动态任务，版本变化的重新调度，不再归属的取消
+	 */
+	@Override
+	public boolean checkLocalTask(String currentUuid) throws Exception {
+		Map<String, TaskDefine> owned = new HashMap<String, TaskDefine>();
+		Map<String, Long> versions = new HashMap<String, Long>();
+		Connection connection = this.dataSource.getConnection();
+		try {
+			PreparedStatement statement = prepare(connection, "SELECT t.task_name, t.task_define, t.version FROM "
+					+ this.taskTable + " t INNER JOIN " + this.ownerTable + " o ON o.task_name = t.task_name"
+					+ " WHERE o.server_uuid = ? AND t.task_define IS NOT NULL", currentUuid);
+			try {
+				ResultSet resultSet = statement.executeQuery();
+				while (resultSet.next()) {
+					owned.put(resultSet.getString(1), GSON.fromJson(resultSet.getString(2), TaskDefine.class));
+					versions.put(resultSet.getString(1), resultSet.getLong(3));
+				}
+			} finally {
+				statement.close();
+			}
+		} finally {
+			closeQuietly(connection);
+		}
+		boolean changed = false;
+		for (Map.Entry<String, TaskDefine> entry : owned.entrySet()) {
+			String name = entry.getKey();
+			Long applied = this.localTasks.get(name);
+			if (!versions.get(name).equals(applied)) {
+				boolean scheduled;
+				if (applied != null) {
+					scheduled = DynamicTaskManager.rescheduleTask(entry.getValue(), new Date(this.clock.currentTimeMillis()));
+				} else {
+					scheduled = DynamicTaskManager.scheduleTask(entry.getValue(), new Date(this.clock.currentTimeMillis()));
+				}
+				// 未能调度时不记录版本，下次核对时重试
+				if (scheduled) {
+					this.localTasks.put(name, versions.get(name));
+					changed = true;
+				} else if (applied != null) {
+					this.localTasks.remove(name);
+					changed = true;
+				}
+			}
+		}
+		for (String name : this.localTasks.keySet()) {
+			if (!owned.containsKey(name)) {
+				this.localTasks.remove(name);
+				DynamicTaskManager.cancelTask(name);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * 只发布变化的触发时间标识，在一个批量UPDATE中提交
+	 */
+	@Override
+	public void publishFireKeys(Map<String, String> fireKeys) throws Exception {
+		List<Map.Entry<String, String>> changed = new ArrayList<Map.Entry<String, String>>();
+		for (Map.Entry<String, String> entry : fireKeys.entrySet()) {
+			if (!entry.getValue().equals(this.publishedFireKeys.get(entry.getKey()))) {
+				changed.add(entry);
+			}
+		}
+		if (changed.isEmpty()) {
+			return;
+		}
+		Connection connection = this.dataSource.getConnection();
+		try {
+			PreparedStatement statement = connection.prepareStatement("UPDATE " + this.taskTable
+					+ " SET fire_key = ? WHERE task_name = ?");
+			try {
+				for (Map.Entry<String, String> entry : changed) {
+					statement.setString(1, entry.getValue());
+					statement.setString(2, entry.getKey());
+					statement.addBatch();
+				}
+				int[] counts = statement.executeBatch();
+				for (int i = 0; i < counts.length; i++) {
+					// 任务尚未注册时不记录，下次重新发布
+					if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+						this.publishedFireKeys.put(changed.get(i).getKey(), changed.get(i).getValue());
+					}
+				}
+			} finally {
+				statement.close();
+			}
+		} finally {
+			closeQuietly(connection);
+		}
+	}
+
+	/**
+	 * 距离上次以数据库纪元确认归属视图的时间
+	 */
+	@Override
+	public long getOwnerViewStaleness() {
+		OwnerView view = this.ownerView;
+		if (view == null) {
+			return -1;
+		}
+		return Math.max(0, this.clock.currentTimeMillis() - view.confirmTime);
+	}
+
+	/**
+	 * 注销当前服务器，Leader立即转移给其他服务器
+	 */
+	@Override
+	public void close() throws IOException {
+		String current = this.uuid;
+		if (current == null) {
+			return;
+		}
+		try {
+			Connection connection = this.dataSource.getConnection();
+			try {
+				executeUpdate(connection, "DELETE FROM " + this.serverTable + " WHERE uuid = ?", current);
+			} finally {
+				closeQuietly(connection);
+			}
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+		this.uuid = null;
+		this.ownerView = null;
+		this.leadership = false;
+	}
+
+	/**
+	 * 插入一行，违反唯一约束时忽略
+	 * 
+	 * @return 是否插入
+	 */
+	private boolean insertIfAbsent(String sql, Object... params) throws SQLException {
+		Connection connection = this.dataSource.getConnection();
+		try {
+			executeUpdate(connection, sql, params);
+			return true;
+		} catch (SQLException e) {
+			if (e.getSQLState() != null && e.getSQLState().startsWith(INTEGRITY_CONSTRAINT_VIOLATION)) {
+				return false;
+			}
+			throw e;
+		} finally {
+			closeQuietly(connection);
+		}
+	}
+
+	private static PreparedStatement prepare(Connection connection, String sql, Object... params) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(sql);
+		for (int i = 0; i < params.length; i++) {
+			statement.setObject(i + 1, params[i]);
+		}
+		return statement;
+	}
+
+	private static int executeUpdate(Connection connection, String sql, Object... params) throws SQLException {
+		PreparedStatement statement = prepare(connection, sql, params);
+		try {
+			return statement.executeUpdate();
+		} finally {
+			statement.close();
+		}
+	}
+
+	private static long queryLong(Connection connection, String sql, Object... params) throws SQLException {
+		PreparedStatement statement = prepare(connection, sql, params);
+		try {
+			ResultSet resultSet = statement.executeQuery();
+			if (!resultSet.next()) {
+				throw new SQLException("未找到记录：" + sql);
+			}
+			return resultSet.getLong(1);
+		} finally {
+			statement.close();
+		}
+	}
+
+	static void rollbackQuietly(Connection connection) {
+		if (connection == null) {
+			return;
+		}
+		try {
+			connection.rollback();
+		} catch (SQLException e) {
+			LOG.warn("回滚失败：" + e.getMessage());
+		}
+	}
+
+	/**
+	 * 恢复自动提交后关闭连接，连接池中的连接被其他调用方复用时保持默认状态
+	 */
+	static void closeQuietly(Connection connection) {
+		if (connection == null) {
+			return;
+		}
+		try {
+			if (!connection.getAutoCommit()) {
+				connection.setAutoCommit(true);
+			}
+			connection.close();
+		} catch (SQLException e) {
+			LOG.warn("关闭数据库连接失败：" + e.getMessage());
+		}
+	}
+
+	public String getUuid() {
+		return uuid;
+	}
+
+	/**
+	 * 服务器心跳超过该时间未更新即被清除，默认15秒
+	 * 
+	 * @param serverExpireTime
+	 */
+	public void setServerExpireTime(long serverExpireTime) {
+		this.serverExpireTime = serverExpireTime;
+	}
+
+	public void setAutoRegisterTask(boolean autoRegisterTask) {
+		this.autoRegisterTask = autoRegisterTask;
+	}
+
+	public void setBalanceCoincidentTasks(boolean balanceCoincidentTasks) {
+		this.balanceCoincidentTasks = balanceCoincidentTasks;
+	}
+
+	public void setMaxTaskNumOfOneServer(int maxTaskNumOfOneServer) {
+		this.maxTaskNumOfOneServer = maxTaskNumOfOneServer;
+	}
+
+	/**
+	 * 某一纪元下当前服务器的任务归属：任务 -> 分片，不分片的任务分片为-1
+	 */
+	private static class OwnerView {
+		final String uuid;
+		final long epoch;
+		final Map<String, List<Integer>> owners;
+		volatile long confirmTime;
+
+		OwnerView(String uuid, long epoch, Map<String, List<Integer>> owners, long confirmTime) {
+			this.uuid = uuid;
+			this.epoch = epoch;
+			this.owners = owners;
+			this.confirmTime = confirmTime;
+		}
+	}
+
+}
@@ -0,0 +1,454 @@
+package cn.uncode.schedule.registry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+
+import cn.uncode.schedule.assign.CoincidenceBalancer;
+import cn.uncode.schedule.assign.IAssignStrategy;
+import cn.uncode.schedule.assign.ShardAssigner;
+import cn.uncode.schedule.local.DynamicTaskManager;
+import cn.uncode.schedule.util.ScheduleClock;
+import cn.uncode.schedule.util.ScheduleUtil;
+import cn.uncode.schedule.zk.IScheduleDataManager;
+import cn.uncode.schedule.zk.LeaderListener;
+import cn.uncode.schedule.zk.ScheduleServer;
+import cn.uncode.schedule.zk.ServerListCache;
+import cn.uncode.schedule.zk.TaskDefine;
+
+/**
+ * 基于进程内存的数据管理器，用于单实例部署和测试，所有操作都不访问网络
+ * 
+ * 分配、Leader和纪元的语义与ScheduleDataManager4ZK一致：注册序号最小的服务器为Leader，分配变化时纪元加一，
+ * 防护令牌为确认归属时的纪元。数据保存在MemoryRegistry中，进程退出后丢失。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class ScheduleDataManager4Memory implements IScheduleDataManager, Closeable {
+	private static final transient Logger LOG = LoggerFactory.getLogger(ScheduleDataManager4Memory.class);
+
+	private static final long DEFAULT_SERVER_EXPIRE_TIME = 5000 * 3;
+
+	protected final MemoryRegistry registry;
+
+	protected final ScheduleClock clock;
+
+	private volatile String uuid;
+
+	private volatile boolean leadership;
+
+	private volatile LeaderListener leaderListener;
+
+	private long serverExpireTime = DEFAULT_SERVER_EXPIRE_TIME;
+
+	private boolean autoRegisterTask = true;
+
+	private boolean balanceCoincidentTasks = true;
+
+	private int maxTaskNumOfOneServer;
+
+	/**
+	 * 本地已启动的动态任务 -> 启动时的任务定义，任务定义变更时整体替换，按引用比较
+	 */
+	private final Map<String, TaskDefine> localTasks = new ConcurrentHashMap<String, TaskDefine>();
+
+	public ScheduleDataManager4Memory(MemoryRegistry registry) {
+		this(registry, ScheduleClock.SYSTEM);
+	}
+
+	public ScheduleDataManager4Memory(MemoryRegistry registry, ScheduleClock clock) {
+		this.registry = registry;
+		this.clock = clock;
+		this.registry.join(this);
+	}
+
+	@Override
+	public boolean refreshScheduleServer(ScheduleServer server) throws Exception {
+		if (server.getUuid() == null || this.registry.servers.get(server.getUuid()) == null) {
+			// 服务器已过期被清除，重新注册
+			server.setRegister(false);
+			return false;
+		}
+		server.setHeartBeatTime(new Timestamp(this.clock.currentTimeMillis()));
+		server.setVersion(server.getVersion() + 1);
+		checkLeadership();
+		return true;
+	}
+
+	@Override
+	public void registerScheduleServer(ScheduleServer server) throws Exception {
+		if (server.isRegister() == true) {
+			throw new Exception(server.getUuid() + " 被重复注册");
+		}
+		StringBuffer id = new StringBuffer();
+		id.append(server.getIp()).append("$").append(UUID.randomUUID().toString().replaceAll("-", "").toUpperCase())
+				.append("$").append(String.format("%010d", this.registry.serverSequence.getAndIncrement()));
+		server.setUuid(id.toString());
+		server.setHeartBeatTime(new Timestamp(this.clock.currentTimeMillis()));
+		server.setRegister(true);
+		this.registry.servers.put(server.getUuid(), server);
+		this.uuid = server.getUuid();
+		this.registry.notifyMembershipChanged();
+	}
+
+	@Override
+	public ScheduleServer loadScheduleServer(String uuid) throws Exception {
+		return this.registry.servers.get(uuid);
+	}
+
+	@Override
+	public boolean isLeader(String uuid, List<String> serverList) {
+		return uuid.equals(getLeader(serverList));
+	}
+
+	@Override
+	public String getLeader(List<String> serverList) {
+		if (serverList == null || serverList.size() == 0) {
+			return "";
+		}
+		return Collections.min(serverList, ServerListCache.SEQUENCE_COMPARATOR);
+	}
+
+	@Override
+	public boolean hasLeadership() {
+		return this.leadership;
+	}
+
+	@Override
+	public void setLeaderListener(LeaderListener leaderListener) {
+		this.leaderListener = leaderListener;
+	}
+
+	/**
+	 * 服务器列表变化后重新判断Leader，身份变化时回调
+	 */
+	void checkLeadership() {
+		String current = this.uuid;
+		boolean leader = current != null && current.equals(this.registry.getLeader());
+		if (leader == this.leadership) {
+			return;
+		}
+		this.leadership = leader;
+		LOG.info(current + (leader ? " 成为Leader" : " 不再是Leader"));
+		LeaderListener listener = this.leaderListener;
+		if (listener != null) {
+			if (leader) {
+				listener.leadershipAcquired();
+			} else {
+				listener.leadershipLost();
+			}
+		}
+	}
+
+	@Override
+	public void clearExpireScheduleServer() throws Exception {
+		long expireBefore = this.clock.currentTimeMillis() - this.serverExpireTime;
+		boolean changed = false;
+		for (ScheduleServer server : this.registry.servers.values()) {
+			if (server.getHeartBeatTime().getTime() < expireBefore
+					&& this.registry.servers.remove(server.getUuid(), server)) {
+				LOG.debug("ScheduleServer[" + server.getUuid() + "]过期清除");
+				changed = true;
+			}
+		}
+		if (changed) {
+			this.registry.notifyMembershipChanged();
+		}
+	}
+
+	@Override
+	public List<String> loadScheduleServerNames() throws Exception {
+		return this.registry.getServerNames();
+	}
+
+	@Override
+	public void assignTask(String currentUuid, List<String> taskServerList, IAssignStrategy assignStrategy)
+			throws Exception {
+		if (this.isLeader(currentUuid, taskServerList) == false || taskServerList.size() <= 0) {
+			return;
+		}
+		Set<String> servers = new HashSet<String>(taskServerList);
+		// 当前分配的快照，写入时比较快照，期间被删除或修改的任务不覆盖
+		Map<String, Set<String>> snapshot = new HashMap<String, Set<String>>(this.registry.taskOwners);
+		Map<String, List<String>> currentServers = new HashMap<String, List<String>>();
+		Map<String, Integer> shardedTasks = new HashMap<String, Integer>();
+		for (Map.Entry<String, Set<String>> entry : snapshot.entrySet()) {
+			TaskDefine taskDefine = this.registry.taskDefines.get(entry.getKey());
+			if (taskDefine != null && taskDefine.getShardCount() > 1) {
+				shardedTasks.put(entry.getKey(), taskDefine.getShardCount());
+				continue;
+			}
+			List<String> validServerIds = new ArrayList<String>();
+			for (String serverId : entry.getValue()) {
+				if (servers.contains(serverId)) {
+					validServerIds.add(serverId);
+				}
+			}
+			currentServers.put(entry.getKey(), validServerIds);
+		}
+		Map<String, String> assignment = assignStrategy.assign(currentServers, taskServerList);
+		if (this.balanceCoincidentTasks) {
+			assignment = CoincidenceBalancer.balance(assignment, new HashMap<String, String>(this.registry.fireKeys),
+					taskServerList);
+		}
+		int changes = 0;
+		for (String name : currentServers.keySet()) {
+			String target = assignment.get(name);
+			Set<String> owners = target == null ? MemoryRegistry.NO_OWNER : Collections.singleton(target);
+			changes += replaceOwners(name, snapshot.get(name), owners);
+		}
+		for (Map.Entry<String, Integer> entry : shardedTasks.entrySet()) {
+			Map<Integer, String> currentShards = new HashMap<Integer, String>();
+			for (String owner : snapshot.get(entry.getKey())) {
+				int shard = ScheduleUtil.getShardFromOwner(owner);
+				String serverId = ScheduleUtil.getServerFromOwner(owner);
+				if (shard >= 0 && shard < entry.getValue() && servers.contains(serverId)
+						&& !currentShards.containsKey(shard)) {
+					currentShards.put(shard, serverId);
+				}
+			}
+			Map<Integer, String> targetShards = ShardAssigner.assign(entry.getKey(), entry.getValue(), currentShards,
+					taskServerList, this.maxTaskNumOfOneServer);
+			Set<String> owners = new TreeSet<String>();
+			for (Map.Entry<Integer, String> shardEntry : targetShards.entrySet()) {
+				owners.add(ScheduleUtil.buildShardOwner(shardEntry.getValue(), shardEntry.getKey()));
+			}
+			changes += replaceOwners(entry.getKey(), snapshot.get(entry.getKey()), Collections.unmodifiableSet(owners));
+		}
+		if (changes > 0) {
+			// 所有变更写入后纪元加一，期间确认的归属在纪元比较时失效
+			long epoch = this.registry.epoch.incrementAndGet();
+			catalogChanged(true);
+			LOG.info("任务重新分配完成，任务数：" + snapshot.size() + "，变更数：" + changes + "，纪元：" + epoch);
+		}
+	}
+
+	/**
+	 * 分配结果变化时以快照为期望值替换
+	 * 
+	 * @return 变更的任务数
+	 */
+	private int replaceOwners(String name, Set<String> expected, Set<String> owners) {
+		if (expected.equals(owners)) {
+			return 0;
+		}
+		return this.registry.taskOwners.replace(name, expected, owners) ? 1 : 0;
+	}
+
+	@Override
+	public boolean isOwner(String name, String uuid) throws Exception {
+		if (this.autoRegisterTask && this.registry.registerTask(name)) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug(uuid + ":自动向集群注册任务[" + name + "]");
+			}
+			catalogChanged(false);
+		}
+		return this.registry.isOwner(name, uuid);
+	}
+
+	/**
+	 * 纪元前后两次读取一致时返回纪元，期间发生分配的归属不予确认
+	 */
+	@Override
+	public long getFencingToken(String name, String uuid) throws Exception {
+		long epoch = this.registry.epoch.get();
+		if (isOwner(name, uuid) == false) {
+			return -1;
+		}
+		if (epoch != this.registry.epoch.get()) {
+			return -1;
+		}
+		return epoch;
+	}
+
+	@Override
+	public List<Integer> getOwnedShards(String name, String uuid) throws Exception {
+		List<Integer> shards = new ArrayList<Integer>();
+		Set<String> owners = this.registry.taskOwners.get(name);
+		if (owners != null) {
+			for (String owner : owners) {
+				int shard = ScheduleUtil.getShardFromOwner(owner);
+				if (shard >= 0 && uuid.equals(ScheduleUtil.getServerFromOwner(owner))) {
+					shards.add(shard);
+				}
+			}
+			Collections.sort(shards);
+		}
+		return shards;
+	}
+
+	@Override
+	public void addTask(TaskDefine taskDefine) throws Exception {
+		String name = taskDefine.getTargetBean() + "#" + taskDefine.getTargetMethod();
+		this.registry.registerTask(name);
+		this.registry.taskDefines.put(name, copyTaskDefine(taskDefine));
+		catalogChanged(true);
+	}
+
+	@Override
+	public void delTask(String targetBean, String targetMethod) throws Exception {
+		String name = targetBean + "#" + targetMethod;
+		this.registry.taskDefines.remove(name);
+		this.registry.taskOwners.remove(name);
+		this.registry.fireKeys.remove(name);
+		catalogChanged(true);
+	}
+
+	@Override
+	public List<TaskDefine> selectTask() throws Exception {
+		List<TaskDefine> taskDefines = new ArrayList<TaskDefine>();
+		for (Map.Entry<String, Set<String>> entry : this.registry.taskOwners.entrySet()) {
+			TaskDefine stored = this.registry.taskDefines.get(entry.getKey());
+			TaskDefine taskDefine;
+			if (stored != null) {
+				taskDefine = copyTaskDefine(stored);
+			} else {
+				String[] names = entry.getKey().split("#");
+				taskDefine = new TaskDefine();
+				taskDefine.setTargetBean(names[0]);
+				taskDefine.setTargetMethod(names.length > 1 ? names[1] : null);
+			}
+			if (entry.getValue().size() > 0) {
+				taskDefine.setCurrentServer(StringUtils.join(new TreeSet<String>(entry.getValue()), ","));
+			}
+			taskDefines.add(taskDefine);
+		}
+		return taskDefines;
+	}
+
+	/**
+	 * 核对本地动态任务：归属当前服务器且定义变化的任务重新调度，不再归属或已删除的任务取消
+	 */
+	@Override
+	public boolean checkLocalTask(String currentUuid) throws Exception {
+		boolean changed = false;
+		for (Map.Entry<String, TaskDefine> entry : this.registry.taskDefines.entrySet()) {
+			String name = entry.getKey();
+			TaskDefine applied = this.localTasks.get(name);
+			if (this.registry.isOwner(name, currentUuid)) {
+				if (applied != entry.getValue()) {
+					boolean scheduled;
+					if (applied != null) {
+						scheduled = DynamicTaskManager.rescheduleTask(entry.getValue(), new Date(this.clock.currentTimeMillis()));
+					} else {
+						scheduled = DynamicTaskManager.scheduleTask(entry.getValue(), new Date(this.clock.currentTimeMillis()));
+					}
+					// 未能调度时不记录，下次核对时重试
+					if (scheduled) {
+						this.localTasks.put(name, entry.getValue());
+						changed = true;
+					} else if (applied != null) {
+						this.localTasks.remove(name);
+						changed = true;
+					}
+				}
+			} else if (applied != null) {
+				this.localTasks.remove(name);
+				DynamicTaskManager.cancelTask(name);
+				changed = true;
+			}
+		}
+		for (String name : this.localTasks.keySet()) {
+			if (!this.registry.taskDefines.containsKey(name)) {
+				this.localTasks.remove(name);
+				DynamicTaskManager.cancelTask(name);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	@Override
+	public void publishFireKeys(Map<String, String> fireKeys) throws Exception {
+		boolean changed = false;
+		for (Map.Entry<String, String> entry : fireKeys.entrySet()) {
+			if (!entry.getValue().equals(this.registry.fireKeys.put(entry.getKey(), entry.getValue()))) {
+				changed = true;
+			}
+		}
+		if (changed) {
+			catalogChanged(false);
+		}
+	}
+
+	/**
+	 * 读写即时可见，本地视图没有陈旧时间
+	 */
+	@Override
+	public long getOwnerViewStaleness() {
+		return 0;
+	}
+
+	/**
+	 * 注销当前服务器，Leader立即转移给其他服务器
+	 */
+	@Override
+	public void close() throws IOException {
+		this.registry.leave(this);
+		String current = this.uuid;
+		if (current != null && this.registry.servers.remove(current) != null) {
+			this.registry.notifyMembershipChanged();
+		}
+	}
+
+	/**
+	 * 任务目录（任务、任务定义、触发时间标识和分配纪元）变化后回调，供持久化的实现使用
+	 * 
+	 * @param durable 是否需要立即持久化：任务定义和纪元需要立即持久化，自动注册的任务和触发时间标识可以延迟
+	 */
+	protected void catalogChanged(boolean durable) {
+	}
+
+	private static TaskDefine copyTaskDefine(TaskDefine taskDefine) {
+		TaskDefine copy = new TaskDefine();
+		BeanUtils.copyProperties(taskDefine, copy);
+		return copy;
+	}
+
+	public String getUuid() {
+		return uuid;
+	}
+
+	public MemoryRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * 服务器心跳超过该时间未更新即被清除，默认15秒
+	 * 
+	 * @param serverExpireTime
+	 */
+	public void setServerExpireTime(long serverExpireTime) {
+		this.serverExpireTime = serverExpireTime;
+	}
+
+	public void setAutoRegisterTask(boolean autoRegisterTask) {
+		this.autoRegisterTask = autoRegisterTask;
+	}
+
+	public void setBalanceCoincidentTasks(boolean balanceCoincidentTasks) {
+		this.balanceCoincidentTasks = balanceCoincidentTasks;
+	}
+
+	public void setMaxTaskNumOfOneServer(int maxTaskNumOfOneServer) {
+		this.maxTaskNumOfOneServer = maxTaskNumOfOneServer;
+	}
+
+}
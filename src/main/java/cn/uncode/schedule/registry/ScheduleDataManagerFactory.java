@@ -0,0 +1,148 @@
+package cn.uncode.schedule.registry;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.lang3.StringUtils;
+
+import cn.uncode.schedule.util.ScheduleClock;
+import cn.uncode.schedule.zk.IScheduleDataManager;
+import cn.uncode.schedule.zk.ZKManager;
+
+/**
+ * 根据配置创建注册中心的数据管理器
+ * 
+ * @author juny.ye
+ * 
+ */
+public class ScheduleDataManagerFactory {
+
+	/**
+	 * 注册中心类型：zookeeper、memory、file、jdbc，或者自定义数据管理器的类名，为空时使用zookeeper
+	 */
+	public static final String KEY_REGISTRY = "registry";
+
+	/**
+	 * file注册中心的文件路径
+	 */
+	public static final String KEY_REGISTRY_FILE = "registryFile";
+
+	/**
+	 * jdbc注册中心的连接地址、用户名、密码和表名前缀，驱动需要在classpath中
+	 */
+	public static final String KEY_JDBC_URL = "jdbcUrl";
+	public static final String KEY_JDBC_USER = "jdbcUser";
+	public static final String KEY_JDBC_PASSWORD = "jdbcPassword";
+	public static final String KEY_JDBC_TABLE_PREFIX = "jdbcTablePrefix";
+
+	/**
+	 * 服务器心跳过期时间（毫秒），非zookeeper注册中心使用
+	 */
+	public static final String KEY_SERVER_EXPIRE_TIME = "serverExpireTime";
+
+	public static final String ZOOKEEPER = "zookeeper";
+	public static final String MEMORY = "memory";
+	public static final String FILE = "file";
+	public static final String JDBC = "jdbc";
+
+	private static final String DEFAULT_ROOT_PATH = "/uncode/schedule";
+
+	/**
+	 * 是否使用zookeeper注册中心，由ZKScheduleManager连接zookeeper后创建ScheduleDataManager4ZK
+	 * 
+	 * @param properties
+	 * @return
+	 */
+	public static boolean isZookeeper(Properties properties) {
+		String name = properties.getProperty(KEY_REGISTRY);
+		return StringUtils.isEmpty(name) || ZOOKEEPER.equalsIgnoreCase(name);
+	}
+
+	/**
+	 * 创建非zookeeper的数据管理器
+	 * 
+	 * @param properties 调度配置，除注册中心配置外还读取autoRegisterTask、balanceCoincidentTasks、maxTaskNumOfOneServer
+	 * @param clock 时钟
+	 * @return
+	 * @throws Exception
+	 */
+	public static IScheduleDataManager createScheduleDataManager(Properties properties, ScheduleClock clock)
+			throws Exception {
+		String name = properties.getProperty(KEY_REGISTRY);
+		if (MEMORY.equalsIgnoreCase(name)) {
+			String rootPath = properties.getProperty(ZKManager.keys.rootPath.toString(), DEFAULT_ROOT_PATH);
+			return configure(new ScheduleDataManager4Memory(MemoryRegistry.getRegistry(rootPath), clock), properties);
+		} else if (FILE.equalsIgnoreCase(name)) {
+			String path = properties.getProperty(KEY_REGISTRY_FILE);
+			if (StringUtils.isEmpty(path)) {
+				throw new Exception("file注册中心需要配置" + KEY_REGISTRY_FILE);
+			}
+			return configure(new ScheduleDataManager4File(new File(path), clock), properties);
+		} else if (JDBC.equalsIgnoreCase(name)) {
+			String url = properties.getProperty(KEY_JDBC_URL);
+			if (StringUtils.isEmpty(url)) {
+				throw new Exception("jdbc注册中心需要配置" + KEY_JDBC_URL);
+			}
+			DataSource dataSource = new DriverManagerDataSource(url, properties.getProperty(KEY_JDBC_USER),
+					properties.getProperty(KEY_JDBC_PASSWORD));
+			String tablePrefix = properties.getProperty(KEY_JDBC_TABLE_PREFIX,
+					ScheduleDataManager4JDBC.DEFAULT_TABLE_PREFIX);
+			return configure(new ScheduleDataManager4JDBC(dataSource, tablePrefix, clock), properties);
+		}
+		Class<?> clazz = Class.forName(name);
+		if (!IScheduleDataManager.class.isAssignableFrom(clazz)) {
+			throw new Exception(name + " 不是有效的注册中心数据管理器");
+		}
+		try {
+			// 自定义实现可以通过构造参数读取调度配置
+			Constructor<?> constructor = clazz.getConstructor(Properties.class);
+			return (IScheduleDataManager) constructor.newInstance(properties);
+		} catch (NoSuchMethodException e) {
+			return (IScheduleDataManager) clazz.getDeclaredConstructor().newInstance();
+		}
+	}
+
+	private static IScheduleDataManager configure(ScheduleDataManager4JDBC dataManager, Properties properties) {
+		String autoRegisterTask = properties.getProperty(ZKManager.keys.autoRegisterTask.toString());
+		if (StringUtils.isNotEmpty(autoRegisterTask)) {
+			dataManager.setAutoRegisterTask(Boolean.valueOf(autoRegisterTask));
+		}
+		String balanceCoincidentTasks = properties.getProperty(ZKManager.keys.balanceCoincidentTasks.toString());
+		if (StringUtils.isNotEmpty(balanceCoincidentTasks)) {
+			dataManager.setBalanceCoincidentTasks(Boolean.valueOf(balanceCoincidentTasks));
+		}
+		String maxNum = properties.getProperty(ZKManager.keys.maxTaskNumOfOneServer.toString());
+		if (StringUtils.isNotEmpty(maxNum)) {
+			dataManager.setMaxTaskNumOfOneServer(Integer.parseInt(maxNum));
+		}
+		String serverExpireTime = properties.getProperty(KEY_SERVER_EXPIRE_TIME);
+		if (StringUtils.isNotEmpty(serverExpireTime)) {
+			dataManager.setServerExpireTime(Long.parseLong(serverExpireTime));
+		}
+		return dataManager;
+	}
+
+	private static IScheduleDataManager configure(ScheduleDataManager4Memory dataManager, Properties properties) {
+		String autoRegisterTask = properties.getProperty(ZKManager.keys.autoRegisterTask.toString());
+		if (StringUtils.isNotEmpty(autoRegisterTask)) {
+			dataManager.setAutoRegisterTask(Boolean.valueOf(autoRegisterTask));
+		}
+		String balanceCoincidentTasks = properties.getProperty(ZKManager.keys.balanceCoincidentTasks.toString());
+		if (StringUtils.isNotEmpty(balanceCoincidentTasks)) {
+			dataManager.setBalanceCoincidentTasks(Boolean.valueOf(balanceCoincidentTasks));
+		}
+		String maxNum = properties.getProperty(ZKManager.keys.maxTaskNumOfOneServer.toString());
+		if (StringUtils.isNotEmpty(maxNum)) {
+			dataManager.setMaxTaskNumOfOneServer(Integer.parseInt(maxNum));
+		}
+		String serverExpireTime = properties.getProperty(KEY_SERVER_EXPIRE_TIME);
+		if (StringUtils.isNotEmpty(serverExpireTime)) {
+			dataManager.setServerExpireTime(Long.parseLong(serverExpireTime));
+		}
+		return dataManager;
+	}
+
+}
@@ -0,0 +1,112 @@
+package cn.uncode.schedule.sim;
+
+import java.util.concurrent.ScheduledFuture;
+
+import org.springframework.scheduling.Trigger;
+
+import cn.uncode.schedule.ZKScheduleManager;
+import cn.uncode.schedule.assign.IAssignStrategy;
+
+/**
+ * 模拟节点：使用虚拟时钟调度器和模拟数据管理器的ZKScheduleManager，心跳、任务分配和任务触发都是虚拟时钟上的事件
+ * 
+ * 任务bean从ZKScheduleManager的spring容器中解析，所有节点共享同一个容器。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class SimulatedNode {
+
+	private final int id;
+
+	private final SimulatedStore store;
+
+	private final VirtualClock clock;
+
+	private VirtualTaskScheduler taskScheduler;
+
+	private SimulatedScheduleDataManager dataManager;
+
+	private ZKScheduleManager scheduleManager;
+
+	private volatile boolean alive;
+
+	public SimulatedNode(int id, SimulatedStore store, VirtualClock clock) {
+		this.id = id;
+		this.store = store;
+		this.clock = clock;
+	}
+
+	/**
+	 * 启动节点，注册服务器并开始心跳、任务分配和本地任务核对
+	 * 
+	 * @param assignStrategy 任务分配策略，为null时使用默认策略
+	 * @throws Exception
+	 */
+	public void start(IAssignStrategy assignStrategy) throws Exception {
+		this.taskScheduler = new VirtualTaskScheduler(this.clock);
+		this.dataManager = new SimulatedScheduleDataManager(this.store);
+		this.scheduleManager = new ZKScheduleManager();
+		this.scheduleManager.setClock(this.clock);
+		this.scheduleManager.setTaskScheduler(this.taskScheduler);
+		this.scheduleManager.setScheduleDataManager(this.dataManager);
+		if (assignStrategy != null) {
+			this.scheduleManager.setAssignStrategy(assignStrategy);
+		}
+		this.scheduleManager.init();
+		this.alive = true;
+	}
+
+	public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
+		return this.scheduleManager.schedule(task, trigger);
+	}
+
+	/**
+	 * 停止节点，不注销服务器，模拟进程退出
+	 */
+	public void kill() {
+		this.alive = false;
+		this.scheduleManager.shutdown();
+		this.taskScheduler.shutdown();
+		this.dataManager.close();
+	}
+
+	/**
+	 * 注册中心中任务是否分配给当前节点，不计入访问次数
+	 * 
+	 * @param task 任务名称
+	 * @return
+	 */
+	public boolean isOwner(String task) {
+		String uuid = this.dataManager == null ? null : this.dataManager.getUuid();
+		if (!this.alive || uuid == null) {
+			return false;
+		}
+		return this.store.isOwner(task, uuid);
+	}
+
+	public boolean isLeader() {
+		return this.alive && this.dataManager != null && this.dataManager.hasLeadership();
+	}
+
+	public long getOperationCount() {
+		return this.dataManager == null ? 0 : this.dataManager.getOperationCount();
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public boolean isAlive() {
+		return alive;
+	}
+
+	public ZKScheduleManager getScheduleManager() {
+		return scheduleManager;
+	}
+
+	public SimulatedScheduleDataManager getDataManager() {
+		return dataManager;
+	}
+
+}
@@ -0,0 +1,321 @@
+package cn.uncode.schedule.sim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cn.uncode.schedule.assign.CoincidenceBalancer;
+import cn.uncode.schedule.assign.IAssignStrategy;
+import cn.uncode.schedule.assign.ShardAssigner;
+import cn.uncode.schedule.util.ScheduleUtil;
+import cn.uncode.schedule.zk.IScheduleDataManager;
+import cn.uncode.schedule.zk.LeaderListener;
+import cn.uncode.schedule.zk.ScheduleServer;
+import cn.uncode.schedule.zk.ServerListCache;
+import cn.uncode.schedule.zk.TaskDefine;
+
+/**
+ * 模拟运行的数据管理器，每个模拟节点一个，读写共享的SimulatedStore
+ * 
+ * 分配、Leader和纪元的语义与ScheduleDataManager4ZK一致：序号最小的服务器为Leader，分配变化时纪元加一，
+ * 防护令牌为确认归属时的纪元；不同的是读写即时可见，没有网络延迟和watch通知延迟。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class SimulatedScheduleDataManager implements IScheduleDataManager {
+	private static final transient Logger LOG = LoggerFactory.getLogger(SimulatedScheduleDataManager.class);
+
+	private final SimulatedStore store;
+
+	private volatile String uuid;
+
+	private volatile boolean leadership;
+
+	private volatile LeaderListener leaderListener;
+
+	/**
+	 * 访问注册中心的次数，对应zookeeper请求数
+	 */
+	private final AtomicLong operationCount = new AtomicLong();
+
+	public SimulatedScheduleDataManager(SimulatedStore store) {
+		this.store = store;
+		this.store.join(this);
+	}
+
+	/**
+	 * 节点退出，不再接收服务器列表变化通知；服务器信息仍保留到心跳过期
+	 */
+	public void close() {
+		this.store.leave(this);
+	}
+
+	@Override
+	public boolean refreshScheduleServer(ScheduleServer server) throws Exception {
+		this.operationCount.incrementAndGet();
+		if (this.store.heartBeat(server) == false) {
+			server.setRegister(false);
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void registerScheduleServer(ScheduleServer server) throws Exception {
+		this.operationCount.incrementAndGet();
+		this.uuid = this.store.registerServer(server);
+		this.store.notifyMembershipChanged();
+	}
+
+	@Override
+	public ScheduleServer loadScheduleServer(String uuid) throws Exception {
+		this.operationCount.incrementAndGet();
+		return this.store.getServer(uuid);
+	}
+
+	@Override
+	public boolean isLeader(String uuid, List<String> serverList) {
+		return uuid.equals(getLeader(serverList));
+	}
+
+	@Override
+	public String getLeader(List<String> serverList) {
+		if (serverList == null || serverList.size() == 0) {
+			return "";
+		}
+		return Collections.min(serverList, ServerListCache.SEQUENCE_COMPARATOR);
+	}
+
+	@Override
+	public boolean hasLeadership() {
+		return this.leadership;
+	}
+
+	@Override
+	public void setLeaderListener(LeaderListener leaderListener) {
+		this.leaderListener = leaderListener;
+	}
+
+	/**
+	 * 服务器列表变化后重新判断Leader，身份变化时回调
+	 */
+	void checkLeadership() {
+		String current = this.uuid;
+		boolean leader = current != null && current.equals(this.store.getLeader());
+		if (leader == this.leadership) {
+			return;
+		}
+		this.leadership = leader;
+		LOG.info(current + (leader ? " 成为Leader" : " 不再是Leader"));
+		LeaderListener listener = this.leaderListener;
+		if (listener != null) {
+			if (leader) {
+				listener.leadershipAcquired();
+			} else {
+				listener.leadershipLost();
+			}
+		}
+	}
+
+	@Override
+	public void clearExpireScheduleServer() throws Exception {
+		this.operationCount.incrementAndGet();
+		if (this.store.clearExpireServers() > 0) {
+			this.store.notifyMembershipChanged();
+		}
+	}
+
+	@Override
+	public List<String> loadScheduleServerNames() throws Exception {
+		this.operationCount.incrementAndGet();
+		return this.store.getServerNames();
+	}
+
+	@Override
+	public void assignTask(String currentUuid, List<String> taskServerList, IAssignStrategy assignStrategy)
+			throws Exception {
+		if (this.isLeader(currentUuid, taskServerList) == false || taskServerList.size() <= 0) {
+			return;
+		}
+		this.operationCount.incrementAndGet();
+		Set<String> servers = new HashSet<String>(taskServerList);
+		boolean changed = false;
+		synchronized (this.store) {
+			Map<String, List<String>> currentServers = new LinkedHashMap<String, List<String>>();
+			Map<String, Integer> shardedTasks = new LinkedHashMap<String, Integer>();
+			for (String name : this.store.getTaskNames()) {
+				TaskDefine taskDefine = this.store.getTaskDefine(name);
+				if (taskDefine != null && taskDefine.getShardCount() > 1) {
+					shardedTasks.put(name, taskDefine.getShardCount());
+					continue;
+				}
+				List<String> validServerIds = new ArrayList<String>();
+				for (String serverId : this.store.getOwners(name)) {
+					if (servers.contains(serverId)) {
+						validServerIds.add(serverId);
+					}
+				}
+				currentServers.put(name, validServerIds);
+			}
+			Map<String, String> assignment = assignStrategy.assign(currentServers, taskServerList);
+			if (this.store.isBalanceCoincidentTasks()) {
+				assignment = CoincidenceBalancer.balance(assignment, this.store.getFireKeys(), taskServerList);
+			}
+			for (String name : currentServers.keySet()) {
+				String target = assignment.get(name);
+				Set<String> owners = new TreeSet<String>();
+				if (target != null) {
+					owners.add(target);
+				}
+				changed |= this.store.setOwners(name, owners);
+			}
+			for (Map.Entry<String, Integer> entry : shardedTasks.entrySet()) {
+				Map<Integer, String> currentShards = new HashMap<Integer, String>();
+				for (String owner : this.store.getOwners(entry.getKey())) {
+					int shard = ScheduleUtil.getShardFromOwner(owner);
+					String serverId = ScheduleUtil.getServerFromOwner(owner);
+					if (shard >= 0 && shard < entry.getValue() && servers.contains(serverId)
+							&& !currentShards.containsKey(shard)) {
+						currentShards.put(shard, serverId);
+					}
+				}
+				Map<Integer, String> targetShards = ShardAssigner.assign(entry.getKey(), entry.getValue(), currentShards,
+						taskServerList, this.store.getMaxTaskNumOfOneServer());
+				Set<String> owners = new TreeSet<String>();
+				for (Map.Entry<Integer, String> shardEntry : targetShards.entrySet()) {
+					owners.add(ScheduleUtil.buildShardOwner(shardEntry.getValue(), shardEntry.getKey()));
+				}
+				changed |= this.store.setOwners(entry.getKey(), owners);
+			}
+			if (changed) {
+				this.store.nextEpoch();
+			}
+		}
+		if (changed) {
+			this.operationCount.incrementAndGet();
+			if (LOG.isDebugEnabled()) {
+				LOG.debug(currentUuid + ":任务重新分配完成，纪元：" + this.store.getEpoch());
+			}
+		}
+	}
+
+	@Override
+	public boolean isOwner(String name, String uuid) throws Exception {
+		this.operationCount.incrementAndGet();
+		synchronized (this.store) {
+			if (this.store.isAutoRegisterTask() && !this.store.hasTask(name)) {
+				this.store.registerTask(name);
+			}
+			return this.store.isOwner(name, uuid);
+		}
+	}
+
+	@Override
+	public long getFencingToken(String name, String uuid) throws Exception {
+		synchronized (this.store) {
+			return isOwner(name, uuid) ? this.store.getEpoch() : -1;
+		}
+	}
+
+	@Override
+	public List<Integer> getOwnedShards(String name, String uuid) throws Exception {
+		this.operationCount.incrementAndGet();
+		List<Integer> shards = new ArrayList<Integer>();
+		Set<String> owners = this.store.getOwners(name);
+		if (owners != null) {
+			for (String owner : owners) {
+				int shard = ScheduleUtil.getShardFromOwner(owner);
+				if (shard >= 0 && uuid.equals(ScheduleUtil.getServerFromOwner(owner))) {
+					shards.add(shard);
+				}
+			}
+			Collections.sort(shards);
+		}
+		return shards;
+	}
+
+	@Override
+	public void addTask(TaskDefine taskDefine) throws Exception {
+		this.operationCount.incrementAndGet();
+		this.store.putTaskDefine(taskDefine.getTargetBean() + "#" + taskDefine.getTargetMethod(), taskDefine);
+	}
+
+	@Override
+	public void delTask(String targetBean, String targetMethod) throws Exception {
+		this.operationCount.incrementAndGet();
+		this.store.removeTask(targetBean + "#" + targetMethod);
+	}
+
+	@Override
+	public List<TaskDefine> selectTask() throws Exception {
+		this.operationCount.incrementAndGet();
+		List<TaskDefine> taskDefines = new ArrayList<TaskDefine>();
+		synchronized (this.store) {
+			for (String name : this.store.getTaskNames()) {
+				TaskDefine taskDefine = this.store.getTaskDefine(name);
+				if (taskDefine == null) {
+					String[] names = name.split("#");
+					taskDefine = new TaskDefine();
+					taskDefine.setTargetBean(names[0]);
+					taskDefine.setTargetMethod(names.length > 1 ? names[1] : null);
+				}
+				Set<String> owners = this.store.getOwners(name);
+				if (owners.size() > 0) {
+					taskDefine.setCurrentServer(StringUtils.join(owners, ","));
+				}
+				taskDefines.add(taskDefine);
+			}
+		}
+		return taskDefines;
+	}
+
+	/**
+	 * 模拟运行不启动动态任务，任务由各节点自行调度
+	 */
+	@Override
+	public boolean checkLocalTask(String currentUuid) throws Exception {
+		return false;
+	}
+
+	@Override
+	public void publishFireKeys(Map<String, String> fireKeys) throws Exception {
+		for (Map.Entry<String, String> entry : fireKeys.entrySet()) {
+			if (this.store.putFireKey(entry.getKey(), entry.getValue())) {
+				this.operationCount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * 读写即时可见，本地视图没有陈旧时间
+	 */
+	@Override
+	public long getOwnerViewStaleness() {
+		return 0;
+	}
+
+	public long getOperationCount() {
+		return operationCount.get();
+	}
+
+	public String getUuid() {
+		return uuid;
+	}
+
+	public SimulatedStore getStore() {
+		return store;
+	}
+
+}
@@ -0,0 +1,263 @@
+package cn.uncode.schedule.sim;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import cn.uncode.schedule.util.ScheduleClock;
+import cn.uncode.schedule.zk.ScheduleServer;
+import cn.uncode.schedule.zk.ServerListCache;
+import cn.uncode.schedule.zk.TaskDefine;
+
+/**
+ * 模拟运行的注册中心：所有模拟节点共享的服务器、任务归属和分配纪元，读写即时可见
+ * 
+ * 服务器编号和遍历顺序只取决于操作顺序，不使用随机数和哈希顺序，保证模拟结果可以重现。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class SimulatedStore {
+
+	private final ScheduleClock clock;
+
+	/**
+	 * 服务器心跳超过该时间未更新即被清除，对应zookeeper持久节点模式的过期时间或临时节点的会话超时
+	 */
+	private long serverExpireTime = 15000;
+
+	private boolean autoRegisterTask = true;
+
+	private boolean balanceCoincidentTasks = true;
+
+	private int maxTaskNumOfOneServer;
+
+	private long serverSequence;
+
+	private long epoch;
+
+	/**
+	 * 服务器编号 -> 服务器信息，按注册序号排列
+	 */
+	private final TreeMap<String, ScheduleServer> servers = new TreeMap<String, ScheduleServer>(
+			ServerListCache.SEQUENCE_COMPARATOR);
+
+	/**
+	 * 任务名称 -> 分配的服务器（分片任务为：服务器编号#分片序号）
+	 */
+	private final TreeMap<String, Set<String>> taskOwners = new TreeMap<String, Set<String>>();
+
+	private final Map<String, TaskDefine> taskDefines = new TreeMap<String, TaskDefine>();
+
+	private final Map<String, String> fireKeys = new TreeMap<String, String>();
+
+	/**
+	 * 服务器列表变化时通知各节点重新判断Leader
+	 */
+	private final List<SimulatedScheduleDataManager> members = new CopyOnWriteArrayList<SimulatedScheduleDataManager>();
+
+	public SimulatedStore(ScheduleClock clock) {
+		this.clock = clock;
+	}
+
+	synchronized String registerServer(ScheduleServer server) {
+		String uuid = server.getIp() + "$SIMULATED$" + String.format("%010d", this.serverSequence++);
+		server.setUuid(uuid);
+		server.setHeartBeatTime(new Timestamp(this.clock.currentTimeMillis()));
+		server.setRegister(true);
+		this.servers.put(uuid, server);
+		return uuid;
+	}
+
+	/**
+	 * 更新心跳
+	 * 
+	 * @return 服务器已被清除时返回false
+	 */
+	synchronized boolean heartBeat(ScheduleServer server) {
+		if (server.getUuid() == null || !this.servers.containsKey(server.getUuid())) {
+			return false;
+		}
+		server.setHeartBeatTime(new Timestamp(this.clock.currentTimeMillis()));
+		server.setVersion(server.getVersion() + 1);
+		this.servers.put(server.getUuid(), server);
+		return true;
+	}
+
+	synchronized ScheduleServer getServer(String uuid) {
+		return this.servers.get(uuid);
+	}
+
+	/**
+	 * 清除心跳过期的服务器
+	 * 
+	 * @return 清除的服务器数
+	 */
+	synchronized int clearExpireServers() {
+		long expireBefore = this.clock.currentTimeMillis() - this.serverExpireTime;
+		int count = 0;
+		for (Iterator<ScheduleServer> it = this.servers.values().iterator(); it.hasNext();) {
+			ScheduleServer server = it.next();
+			if (server.getHeartBeatTime().getTime() < expireBefore) {
+				it.remove();
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public synchronized List<String> getServerNames() {
+		return new ArrayList<String>(this.servers.keySet());
+	}
+
+	/**
+	 * 注册序号最小的服务器
+	 * 
+	 * @return 没有服务器时返回null
+	 */
+	public synchronized String getLeader() {
+		return this.servers.isEmpty() ? null : this.servers.firstKey();
+	}
+
+	synchronized boolean hasTask(String name) {
+		return this.taskOwners.containsKey(name);
+	}
+
+	synchronized void registerTask(String name) {
+		if (!this.taskOwners.containsKey(name)) {
+			this.taskOwners.put(name, new TreeSet<String>());
+		}
+	}
+
+	synchronized void removeTask(String name) {
+		this.taskOwners.remove(name);
+		this.taskDefines.remove(name);
+		this.fireKeys.remove(name);
+	}
+
+	public synchronized List<String> getTaskNames() {
+		return new ArrayList<String>(this.taskOwners.keySet());
+	}
+
+	/**
+	 * @return 任务不存在时返回null
+	 */
+	public synchronized Set<String> getOwners(String name) {
+		Set<String> owners = this.taskOwners.get(name);
+		return owners == null ? null : new TreeSet<String>(owners);
+	}
+
+	/**
+	 * 任务是否分配给指定的服务器
+	 * 
+	 * @param name 任务名称
+	 * @param owner 服务器编号
+	 * @return
+	 */
+	public synchronized boolean isOwner(String name, String owner) {
+		Set<String> owners = this.taskOwners.get(name);
+		return owners != null && owners.contains(owner);
+	}
+
+	/**
+	 * 替换任务的分配结果
+	 * 
+	 * @return 分配结果是否变化
+	 */
+	synchronized boolean setOwners(String name, Set<String> owners) {
+		Set<String> current = this.taskOwners.get(name);
+		if (current == null || current.equals(owners)) {
+			return false;
+		}
+		this.taskOwners.put(name, new TreeSet<String>(owners));
+		return true;
+	}
+
+	synchronized TaskDefine getTaskDefine(String name) {
+		return this.taskDefines.get(name);
+	}
+
+	synchronized void putTaskDefine(String name, TaskDefine taskDefine) {
+		registerTask(name);
+		this.taskDefines.put(name, taskDefine);
+	}
+
+	synchronized Map<String, String> getFireKeys() {
+		return new TreeMap<String, String>(this.fireKeys);
+	}
+
+	/**
+	 * @return 标识是否变化
+	 */
+	synchronized boolean putFireKey(String name, String fireKey) {
+		return !fireKey.equals(this.fireKeys.put(name, fireKey));
+	}
+
+	public synchronized long getEpoch() {
+		return this.epoch;
+	}
+
+	synchronized long nextEpoch() {
+		return ++this.epoch;
+	}
+
+	void join(SimulatedScheduleDataManager member) {
+		this.members.add(member);
+	}
+
+	void leave(SimulatedScheduleDataManager member) {
+		this.members.remove(member);
+	}
+
+	/**
+	 * 服务器列表变化后通知所有节点，在锁外回调
+	 */
+	void notifyMembershipChanged() {
+		for (SimulatedScheduleDataManager member : this.members) {
+			member.checkLeadership();
+		}
+	}
+
+	public ScheduleClock getClock() {
+		return clock;
+	}
+
+	public long getServerExpireTime() {
+		return serverExpireTime;
+	}
+
+	public void setServerExpireTime(long serverExpireTime) {
+		this.serverExpireTime = serverExpireTime;
+	}
+
+	public boolean isAutoRegisterTask() {
+		return autoRegisterTask;
+	}
+
+	public void setAutoRegisterTask(boolean autoRegisterTask) {
+		this.autoRegisterTask = autoRegisterTask;
+	}
+
+	public boolean isBalanceCoincidentTasks() {
+		return balanceCoincidentTasks;
+	}
+
+	public void setBalanceCoincidentTasks(boolean balanceCoincidentTasks) {
+		this.balanceCoincidentTasks = balanceCoincidentTasks;
+	}
+
+	public int getMaxTaskNumOfOneServer() {
+		return maxTaskNumOfOneServer;
+	}
+
+	public void setMaxTaskNumOfOneServer(int maxTaskNumOfOneServer) {
+		this.maxTaskNumOfOneServer = maxTaskNumOfOneServer;
+	}
+
+}
@@ -0,0 +1,112 @@
+package cn.uncode.schedule.sim;
+
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cn.uncode.schedule.util.ScheduleClock;
+
+/**
+ * 虚拟时钟：时间只在执行事件时前进，事件按时间和提交顺序依次执行，同样的输入总是得到同样的执行顺序
+ * 
+ * 所有事件在调用runUntil的线程中执行，模拟运行只能由一个线程驱动。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class VirtualClock implements ScheduleClock {
+	private static final transient Logger LOG = LoggerFactory.getLogger(VirtualClock.class);
+
+	private final PriorityQueue<Event> events = new PriorityQueue<Event>();
+
+	private long now;
+
+	/**
+	 * 事件提交序号，时间相同的事件按提交顺序执行
+	 */
+	private long sequence;
+
+	private long executedEvents;
+
+	public VirtualClock(long startTime) {
+		this.now = startTime;
+	}
+
+	public synchronized long currentTimeMillis() {
+		return this.now;
+	}
+
+	/**
+	 * 提交事件，时间早于当前时间时在当前时间执行
+	 * 
+	 * @param time 执行时间
+	 * @param task
+	 */
+	public synchronized void schedule(long time, Runnable task) {
+		this.events.add(new Event(Math.max(time, this.now), this.sequence++, task));
+	}
+
+	/**
+	 * 依次执行时间不晚于指定时间的事件，执行期间提交的事件同样会被执行，结束后时钟停在指定时间
+	 * 
+	 * @param time
+	 * @return 执行的事件数
+	 */
+	public synchronized int runUntil(long time) {
+		int count = 0;
+		while (!this.events.isEmpty() && this.events.peek().time <= time) {
+			Event event = this.events.poll();
+			this.now = event.time;
+			try {
+				event.task.run();
+			} catch (RuntimeException e) {
+				LOG.error("Simulated event error: " + e.getMessage(), e);
+			}
+			count++;
+		}
+		if (time > this.now) {
+			this.now = time;
+		}
+		this.executedEvents += count;
+		return count;
+	}
+
+	/**
+	 * 时钟前进指定时间
+	 * 
+	 * @param millis
+	 * @return 执行的事件数
+	 */
+	public int advance(long millis) {
+		return runUntil(currentTimeMillis() + millis);
+	}
+
+	public synchronized int getPendingEvents() {
+		return this.events.size();
+	}
+
+	public synchronized long getExecutedEvents() {
+		return this.executedEvents;
+	}
+
+	private static class Event implements Comparable<Event> {
+		final long time;
+		final long sequence;
+		final Runnable task;
+
+		Event(long time, long sequence, Runnable task) {
+			this.time = time;
+			this.sequence = sequence;
+			this.task = task;
+		}
+
+		public int compareTo(Event other) {
+			if (this.time != other.time) {
+				return this.time < other.time ? -1 : 1;
+			}
+			return this.sequence < other.sequence ? -1 : (this.sequence == other.sequence ? 0 : 1);
+		}
+	}
+
+}
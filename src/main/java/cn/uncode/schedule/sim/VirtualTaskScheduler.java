@@ -0,0 +1,193 @@
+package cn.uncode.schedule.sim;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+/**
+ * 基于虚拟时钟的调度器，每个模拟节点一个，共享同一个虚拟时钟；任务在驱动时钟的线程中直接执行
+ * 
+ * @author juny.ye
+ * 
+ */
+public class VirtualTaskScheduler implements TaskScheduler {
+
+	private final VirtualClock clock;
+
+	/**
+	 * 未结束的调度，停止时全部取消
+	 */
+	private final Set<VirtualFuture> futures = Collections.newSetFromMap(new IdentityHashMap<VirtualFuture, Boolean>());
+
+	private volatile boolean shutdown;
+
+	public VirtualTaskScheduler(VirtualClock clock) {
+		this.clock = clock;
+	}
+
+	public ScheduledFuture<?> schedule(Runnable task, final Trigger trigger) {
+		// 首次计算以虚拟时钟的当前时间作为上次完成时间，避免触发器读取系统时间
+		final SimpleTriggerContext context = new SimpleTriggerContext(null, null, new Date(this.clock.currentTimeMillis()));
+		Date first = trigger.nextExecutionTime(context);
+		if (first == null) {
+			return null;
+		}
+		return submit(new VirtualFuture(task, first.getTime()) {
+			@Override
+			long next(long scheduledTime, long actualTime, long completionTime) {
+				context.update(new Date(scheduledTime), new Date(actualTime), new Date(completionTime));
+				Date next = trigger.nextExecutionTime(context);
+				return next == null ? -1 : next.getTime();
+			}
+		});
+	}
+
+	public ScheduledFuture<?> schedule(Runnable task, Date startTime) {
+		return submit(new VirtualFuture(task, startTime.getTime()));
+	}
+
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Date startTime, final long period) {
+		return submit(new VirtualFuture(task, startTime.getTime()) {
+			@Override
+			long next(long scheduledTime, long actualTime, long completionTime) {
+				return scheduledTime + period;
+			}
+		});
+	}
+
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period) {
+		return scheduleAtFixedRate(task, new Date(this.clock.currentTimeMillis()), period);
+	}
+
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Date startTime, final long delay) {
+		return submit(new VirtualFuture(task, startTime.getTime()) {
+			@Override
+			long next(long scheduledTime, long actualTime, long completionTime) {
+				return completionTime + delay;
+			}
+		});
+	}
+
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay) {
+		return scheduleWithFixedDelay(task, new Date(this.clock.currentTimeMillis()), delay);
+	}
+
+	/**
+	 * 取消所有调度，之后提交的任务不再执行，模拟进程退出
+	 */
+	public synchronized void shutdown() {
+		this.shutdown = true;
+		for (VirtualFuture future : this.futures) {
+			future.cancelled = true;
+		}
+		this.futures.clear();
+	}
+
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	public VirtualClock getClock() {
+		return clock;
+	}
+
+	private synchronized ScheduledFuture<?> submit(VirtualFuture future) {
+		if (this.shutdown) {
+			future.cancelled = true;
+			return future;
+		}
+		this.futures.add(future);
+		this.clock.schedule(future.time, future);
+		return future;
+	}
+
+	private synchronized void finish(VirtualFuture future) {
+		this.futures.remove(future);
+	}
+
+	private class VirtualFuture implements ScheduledFuture<Object>, Runnable {
+		private final Runnable task;
+		private long time;
+		private volatile boolean cancelled;
+		private volatile boolean done;
+
+		VirtualFuture(Runnable task, long time) {
+			this.task = task;
+			this.time = time;
+		}
+
+		/**
+		 * 下一次执行时间
+		 * 
+		 * @return 小于0表示不再执行
+		 */
+		long next(long scheduledTime, long actualTime, long completionTime) {
+			return -1;
+		}
+
+		public void run() {
+			if (this.cancelled) {
+				return;
+			}
+			long actualTime = clock.currentTimeMillis();
+			try {
+				this.task.run();
+			} finally {
+				long next = this.cancelled ? -1 : next(this.time, actualTime, clock.currentTimeMillis());
+				if (next < 0) {
+					this.done = true;
+					finish(this);
+				} else {
+					this.time = next;
+					clock.schedule(next, this);
+				}
+			}
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (this.done || this.cancelled) {
+				return false;
+			}
+			this.cancelled = true;
+			finish(this);
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return this.cancelled;
+		}
+
+		public boolean isDone() {
+			return this.done || this.cancelled;
+		}
+
+		public Object get() {
+			if (!isDone()) {
+				throw new IllegalStateException("虚拟时钟下不能阻塞等待任务完成");
+			}
+			return null;
+		}
+
+		public Object get(long timeout, TimeUnit unit) {
+			return get();
+		}
+
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(this.time - clock.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		public int compareTo(Delayed other) {
+			long diff = getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS);
+			return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+		}
+	}
+
+}
@@ -0,0 +1,27 @@
+package cn.uncode.schedule.util;
+
+/**
+ * 调度器读取时间的入口，默认使用系统时钟，模拟运行时替换为虚拟时钟
+ * 
+ * @author juny.ye
+ * 
+ */
+public interface ScheduleClock {
+
+	/**
+	 * 系统时钟
+	 */
+	public static final ScheduleClock SYSTEM = new ScheduleClock() {
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+	};
+
+	/**
+	 * 当前时间（毫秒）
+	 * 
+	 * @return
+	 */
+	public long currentTimeMillis();
+
+}
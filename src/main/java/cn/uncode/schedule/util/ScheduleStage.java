@@ -0,0 +1,284 @@
+package cn.uncode.schedule.util;
+
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
+
+/**
+ * 独立调度的后台阶段（心跳、任务分配、本地任务核对）
+ * 
+ * 每个阶段有自己的调度线程和执行线程，调度线程按固定间隔提交任务并在超时后中断执行线程，
+ * 上一次执行未结束时跳过本次，保证一个阶段变慢不会拖延其他阶段。
+ * 是否结束以执行内容实际返回为准：超时取消后不响应中断的执行（如zookeeper读写）仍视为执行中，不会在执行线程上排队。
+ * 也可以由外部调度器驱动（如模拟运行的虚拟时钟），此时在调度器的线程中直接执行，不做超时中断。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class ScheduleStage {
+	private static final transient Logger LOG = LoggerFactory.getLogger(ScheduleStage.class);
+
+	private final String name;
+	private final long interval;
+	private final long timeout;
+	private final int threadPriority;
+	private final Callable<?> action;
+
+	private ScheduledExecutorService scheduler;
+	private ExecutorService worker;
+
+	/**
+	 * 执行内容是否仍在执行线程上运行，在执行结束时清除
+	 */
+	private final AtomicBoolean inFlight = new AtomicBoolean(false);
+
+	/**
+	 * 外部调度器驱动时的调度结果，否则为null
+	 */
+	private volatile TaskScheduler taskScheduler;
+	private Future<?> scheduled;
+	private volatile ScheduleClock clock = ScheduleClock.SYSTEM;
+
+	private final AtomicLong runCount = new AtomicLong();
+	private final AtomicLong failCount = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+	private final AtomicLong skipCount = new AtomicLong();
+	private volatile long lastRunTime;
+	private volatile long lastSpendTime;
+	private volatile long maxSpendTime;
+
+	private final Runnable tick = new Runnable() {
+		public void run() {
+			runOnce();
+		}
+	};
+
+	private final Callable<Object> guardedAction = new Callable<Object>() {
+		public Object call() throws Exception {
+			try {
+				return action.call();
+			} finally {
+				inFlight.set(false);
+			}
+		}
+	};
+
+	private final Runnable inlineTick = new Runnable() {
+		public void run() {
+			runInline();
+		}
+	};
+
+	/**
+	 * @param name 阶段名称，用于线程名和日志
+	 * @param interval 执行间隔（毫秒）
+	 * @param timeout 单次执行超时时间（毫秒），超时后中断执行线程
+	 * @param threadPriority 执行线程优先级
+	 * @param action 执行内容
+	 */
+	public ScheduleStage(String name, long interval, long timeout, int threadPriority, Callable<?> action) {
+		this.name = name;
+		this.interval = interval;
+		this.timeout = timeout;
+		this.threadPriority = threadPriority;
+		this.action = action;
+	}
+
+	public synchronized void start(long initialDelay) {
+		if (isStarted()) {
+			return;
+		}
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory(this.name + "-Scheduler", Thread.NORM_PRIORITY));
+		this.worker = Executors.newSingleThreadExecutor(threadFactory(this.name, this.threadPriority));
+		this.scheduler.scheduleWithFixedDelay(this.tick, initialDelay, this.interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 由外部调度器驱动，按给定时钟计算首次执行时间和耗时
+	 * 
+	 * @param initialDelay 首次执行延迟（毫秒）
+	 * @param taskScheduler 外部调度器
+	 * @param clock 时钟
+	 */
+	public synchronized void start(long initialDelay, TaskScheduler taskScheduler, ScheduleClock clock) {
+		if (isStarted()) {
+			return;
+		}
+		this.clock = clock;
+		this.taskScheduler = taskScheduler;
+		this.scheduled = taskScheduler.scheduleWithFixedDelay(this.inlineTick,
+				new Date(clock.currentTimeMillis() + initialDelay), this.interval);
+	}
+
+	/**
+	 * 立即执行一次，不影响固定间隔的调度
+	 */
+	public void triggerNow() {
+		TaskScheduler external = this.taskScheduler;
+		if (external != null) {
+			external.schedule(this.inlineTick, new Date(this.clock.currentTimeMillis()));
+			return;
+		}
+		ScheduledExecutorService executor = this.scheduler;
+		if (executor != null) {
+			executor.execute(this.tick);
+		}
+	}
+
+	public synchronized void stop() {
+		if (this.scheduler != null) {
+			this.scheduler.shutdownNow();
+			this.worker.shutdownNow();
+			this.scheduler = null;
+			this.worker = null;
+			// 旧执行线程上未结束的执行不影响重新启动后的调度
+			this.inFlight.set(false);
+		}
+		if (this.scheduled != null) {
+			this.scheduled.cancel(false);
+			this.scheduled = null;
+			this.taskScheduler = null;
+		}
+	}
+
+	public boolean isStarted() {
+		return this.scheduler != null || this.scheduled != null;
+	}
+
+	private void runOnce() {
+		ExecutorService executor = this.worker;
+		if (executor == null) {
+			return;
+		}
+		if (this.inFlight.compareAndSet(false, true) == false) {
+			this.skipCount.incrementAndGet();
+			return;
+		}
+		long start = this.clock.currentTimeMillis();
+		this.lastRunTime = start;
+		Future<?> future;
+		try {
+			future = executor.submit(this.guardedAction);
+		} catch (RejectedExecutionException e) {
+			// 已停止
+			this.inFlight.set(false);
+			return;
+		}
+		try {
+			future.get(this.timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			this.timeoutCount.incrementAndGet();
+			LOG.warn(this.name + " 执行超过" + this.timeout + "ms，已中断");
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			return;
+		} catch (Exception e) {
+			this.failCount.incrementAndGet();
+			LOG.error(this.name + " 执行失败：" + e.getMessage(), e.getCause() == null ? e : e.getCause());
+		} finally {
+			recordSpend(start);
+		}
+	}
+
+	/**
+	 * 外部调度器驱动时在调度线程中直接执行
+	 */
+	private void runInline() {
+		if (this.taskScheduler == null) {
+			// 已停止，取消之前已经触发的执行
+			return;
+		}
+		long start = this.clock.currentTimeMillis();
+		this.lastRunTime = start;
+		try {
+			this.action.call();
+		} catch (Exception e) {
+			this.failCount.incrementAndGet();
+			LOG.error(this.name + " 执行失败：" + e.getMessage(), e);
+		} finally {
+			recordSpend(start);
+		}
+	}
+
+	private void recordSpend(long start) {
+		long spend = this.clock.currentTimeMillis() - start;
+		this.lastSpendTime = spend;
+		if (spend > this.maxSpendTime) {
+			this.maxSpendTime = spend;
+		}
+		this.runCount.incrementAndGet();
+	}
+
+	private static ThreadFactory threadFactory(final String threadName, final int priority) {
+		return new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, threadName);
+				thread.setDaemon(true);
+				thread.setPriority(priority);
+				return thread;
+			}
+		};
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getInterval() {
+		return interval;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public long getRunCount() {
+		return runCount.get();
+	}
+
+	public long getFailCount() {
+		return failCount.get();
+	}
+
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	public long getSkipCount() {
+		return skipCount.get();
+	}
+
+	public long getLastRunTime() {
+		return lastRunTime;
+	}
+
+	public long getLastSpendTime() {
+		return lastSpendTime;
+	}
+
+	public long getMaxSpendTime() {
+		return maxSpendTime;
+	}
+
+	@Override
+	public String toString() {
+		return this.name + "[run=" + getRunCount() + ",fail=" + getFailCount() + ",timeout=" + getTimeoutCount()
+				+ ",skip=" + getSkipCount() + ",lastSpend=" + this.lastSpendTime + "ms,maxSpend=" + this.maxSpendTime + "ms]";
+	}
+
+}
@@ -15,6 +15,10 @@ import java.util.Date;
  */
 public class ScheduleUtil {
     public static String OWN_SIGN_BASE ="BASE";
+    /**
+     * 分片任务的分配节点名称：服务器编号#分片序号
+     */
+    public static final String SHARD_SEPARATOR = "#";
 
     public static String getLocalHostName() {
         try {
@@ -81,6 +85,46 @@ public class ScheduleUtil {
     	return beanName + "#" + methodName;
     }
     
+    /**
+     * 分片任务的分配节点名称
+     * @param serverUuid 服务器编号
+     * @param shardIndex 分片序号
+     * @return
+     */
+    public static String buildShardOwner(String serverUuid, int shardIndex){
+    	return serverUuid + SHARD_SEPARATOR + shardIndex;
+    }
+    
+    /**
+     * 从分配节点名称中取出服务器编号
+     * @param owner
+     * @return
+     */
+    public static String getServerFromOwner(String owner){
+    	int index = owner.lastIndexOf(SHARD_SEPARATOR);
+    	if(index < 0){
+    		return owner;
+    	}
+    	return owner.substring(0, index);
+    }
+    
+    /**
+     * 从分配节点名称中取出分片序号
+     * @param owner
+     * @return 不是分片分配节点时返回-1
+     */
+    public static int getShardFromOwner(String owner){
+    	int index = owner.lastIndexOf(SHARD_SEPARATOR);
+    	if(index < 0 || index == owner.length() - 1){
+    		return -1;
+    	}
+    	try{
+    		return Integer.parseInt(owner.substring(index + 1));
+    	}catch(NumberFormatException e){
+    		return -1;
+    	}
+    }
+    
     /**
      * 分配任务数量
      * @param serverNum 总的服务器数量
@@ -53,6 +53,7 @@ public class ManagerServlet extends HttpServlet{
 			"<th>cron表达式</th>"+ 
 			"<th>开始时间</th>"+ 
 			"<th>周期（秒）</th>"+ 
+			"<th>分片数</th>"+ 
 			"<th>执行节点</th>"+ 
 			"<th>操作</th>"+ 
 			"</tr>"+ 
@@ -73,6 +74,12 @@ public class ManagerServlet extends HttpServlet{
 				"corn表达式：<input name=\"cronExpression\" type=\"text\"/><br/>"+
 				"周期（秒）：<input name=\"period\" type=\"text\"/><br/>"+
 				"开始时间：<input name=\"startTime\" type=\"text\"/><br/>"+
+				"分片数：<input name=\"shardCount\" type=\"text\"/><br/>"+
+				"每批条数（数据处理任务）：<input name=\"fetchSize\" type=\"text\"/><br/>"+
+				"处理线程数（数据处理任务）：<input name=\"threadNum\" type=\"text\"/><br/>"+
+				"执行组：<input name=\"executorGroup\" type=\"text\"/><br/>"+
+				"打散策略（none/hash/random）：<input name=\"spreadPolicy\" type=\"text\"/><br/>"+
+				"打散窗口（毫秒）：<input name=\"spreadWindow\" type=\"text\"/><br/>"+
 				"<input type=\"button\" onclick=\"formSubmit()\" value=\"Submit\">"+
 			"</form>"+
 			"<script type=\"text/javascript\">"+
@@ -107,6 +114,30 @@ public class ManagerServlet extends HttpServlet{
 			if(StringUtils.isNotEmpty(startTime)){
 				taskDefine.setStartTime(new Date());
 			}
+			String shardCount = request.getParameter("shardCount");
+			if(StringUtils.isNotEmpty(shardCount)){
+				taskDefine.setShardCount(Integer.valueOf(shardCount));
+			}
+			String fetchSize = request.getParameter("fetchSize");
+			if(StringUtils.isNotEmpty(fetchSize)){
+				taskDefine.setFetchSize(Integer.valueOf(fetchSize));
+			}
+			String threadNum = request.getParameter("threadNum");
+			if(StringUtils.isNotEmpty(threadNum)){
+				taskDefine.setThreadNum(Integer.valueOf(threadNum));
+			}
+			String executorGroup = request.getParameter("executorGroup");
+			if(StringUtils.isNotEmpty(executorGroup)){
+				taskDefine.setExecutorGroup(executorGroup);
+			}
+			String spreadPolicy = request.getParameter("spreadPolicy");
+			if(StringUtils.isNotEmpty(spreadPolicy)){
+				taskDefine.setSpreadPolicy(spreadPolicy);
+			}
+			String spreadWindow = request.getParameter("spreadWindow");
+			if(StringUtils.isNotEmpty(spreadWindow)){
+				taskDefine.setSpreadWindow(Long.valueOf(spreadWindow));
+			}
 			if(StringUtils.isNotEmpty(cronExpression) || StringUtils.isNotEmpty(period)){
 				ConsoleManager.addScheduleTask(taskDefine);
 			}
@@ -117,12 +148,13 @@ public class ManagerServlet extends HttpServlet{
 				response.setContentType("text/html");  
 		        PrintWriter out = response.getWriter();  
 		        StringBuffer sb = new StringBuffer();
+		        String leader = ConsoleManager.getScheduleManager().getScheduleDataManager().getLeader(servers);
 	    		for(int i=0; i< servers.size();i++){
-	    			String ser = servers.get(0);
+	    			String ser = servers.get(i);
 	    			sb.append("<tr>")
 	    			  .append("<td>").append(i+1).append("</td>")
 	    			  .append("<td>").append(ser).append("</td>");
-					if( ConsoleManager.getScheduleManager().getScheduleDataManager().isLeader(ser, servers)){
+					if(ser.equals(leader)){
 						sb.append("<td>").append("是").append("</td>");
 					}else{
 						sb.append("<td>").append("否").append("</td>");
@@ -141,6 +173,7 @@ public class ManagerServlet extends HttpServlet{
 	    			  .append("<td>").append(taskDefine.getCronExpression()).append("</td>")
 	    			  .append("<td>").append(taskDefine.getStartTime()).append("</td>")
 	    			  .append("<td>").append(taskDefine.getPeriod()).append("</td>")
+	    			  .append("<td>").append(taskDefine.getShardCount()).append("</td>")
 	    			  .append("<td>").append(taskDefine.getCurrentServer()).append("</td>")
 	    			  .append("<td>").append("<a href=\"").append(request.getSession().getServletContext().getContextPath())
 	    			  				 .append("/uncode/schedule?del=")
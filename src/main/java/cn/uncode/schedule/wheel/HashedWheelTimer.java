@@ -0,0 +1,141 @@
+package cn.uncode.schedule.wheel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 分层哈希时间轮定时器
+ * 
+ * 任务按到期时间放入时间轮的时间格，插入和取消都是O(1)；延迟队列中只有非空的时间格，
+ * 时钟线程只在时间格到期时醒来。到期的任务交给执行线程池运行，时钟线程本身不执行任务。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class HashedWheelTimer {
+	private static final transient Logger LOG = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+	private static final long POLL_TIMEOUT = 200;
+
+	private final String name;
+	private final Executor executor;
+	private final DelayQueue<TimerTaskList> queue = new DelayQueue<TimerTaskList>();
+	private final TimingWheel timingWheel;
+
+	/**
+	 * 插入任务时持有读锁，推进时钟时持有写锁
+	 */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private volatile boolean running;
+	private Thread ticker;
+
+	/**
+	 * @param name 时钟线程名称
+	 * @param tickMs 最底层时间格的跨度（毫秒）
+	 * @param wheelSize 每层时间格数量
+	 * @param executor 执行到期任务的线程池
+	 */
+	public HashedWheelTimer(String name, long tickMs, int wheelSize, Executor executor) {
+		this.name = name;
+		this.executor = executor;
+		this.timingWheel = new TimingWheel(tickMs, wheelSize, System.currentTimeMillis(), this.queue);
+	}
+
+	public synchronized void start() {
+		if (this.running) {
+			return;
+		}
+		this.running = true;
+		this.ticker = new Thread(new Runnable() {
+			public void run() {
+				while (running) {
+					try {
+						advance(POLL_TIMEOUT);
+					} catch (InterruptedException e) {
+						break;
+					} catch (Throwable e) {
+						LOG.error("Timing wheel advance error.", e);
+					}
+				}
+			}
+		}, this.name);
+		this.ticker.setDaemon(true);
+		this.ticker.start();
+	}
+
+	public synchronized void stop() {
+		this.running = false;
+		if (this.ticker != null) {
+			this.ticker.interrupt();
+			this.ticker = null;
+		}
+	}
+
+	/**
+	 * 添加延迟任务
+	 * 
+	 * @param task
+	 * @param delayMs 延迟时间（毫秒），小于等于0时立即执行
+	 * @return 任务节点，可用于取消
+	 */
+	public TimerTaskEntry newTimeout(Runnable task, long delayMs) {
+		TimerTaskEntry entry = new TimerTaskEntry(task, System.currentTimeMillis() + Math.max(delayMs, 0));
+		addEntry(entry);
+		return entry;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	private void addEntry(TimerTaskEntry entry) {
+		boolean added;
+		this.lock.readLock().lock();
+		try {
+			added = this.timingWheel.add(entry);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+		if (!added && !entry.cancelled) {
+			// 已到期，交给执行线程池
+			try {
+				this.executor.execute(entry.task);
+			} catch (RejectedExecutionException e) {
+				LOG.warn("Timing wheel executor rejected task, " + e.getMessage());
+			}
+		}
+	}
+
+	private void advance(long timeoutMs) throws InterruptedException {
+		TimerTaskList bucket = this.queue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+		if (bucket == null) {
+			return;
+		}
+		List<TimerTaskEntry> entries = new ArrayList<TimerTaskEntry>();
+		this.lock.writeLock().lock();
+		try {
+			while (bucket != null) {
+				this.timingWheel.advanceClock(bucket.getExpiration());
+				bucket.flush(entries);
+				bucket = this.queue.poll();
+			}
+			// 上层时间格中的任务降到下层，最底层的任务到期执行
+			for (TimerTaskEntry entry : entries) {
+				addEntry(entry);
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+}
@@ -0,0 +1,63 @@
+package cn.uncode.schedule.wheel;
+
+/**
+ * 时间轮中的定时任务节点，通过双向链表挂在所属的时间格上，取消时O(1)从链表中摘除
+ * 
+ * @author juny.ye
+ * 
+ */
+public class TimerTaskEntry {
+
+	final Runnable task;
+	final long expirationMs;
+
+	volatile TimerTaskList list;
+	TimerTaskEntry prev;
+	TimerTaskEntry next;
+
+	volatile boolean cancelled;
+
+	TimerTaskEntry(Runnable task, long expirationMs) {
+		this.task = task;
+		this.expirationMs = expirationMs;
+	}
+
+	/**
+	 * 取消任务
+	 * 
+	 * @return 任务尚未取消时返回true
+	 */
+	public boolean cancel() {
+		if (this.cancelled) {
+			return false;
+		}
+		this.cancelled = true;
+		remove();
+		return true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * 到期时间（毫秒）
+	 * 
+	 * @return
+	 */
+	public long getExpirationMs() {
+		return expirationMs;
+	}
+
+	/**
+	 * 从所属的时间格中摘除，时间格在降级过程中可能变化，需要重试
+	 */
+	void remove() {
+		TimerTaskList current = this.list;
+		while (current != null) {
+			current.remove(this);
+			current = this.list;
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package cn.uncode.schedule.wheel;
+
+import java.util.List;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 时间轮的一个时间格，保存到期时间落在同一格内的任务
+ * 
+ * @author juny.ye
+ * 
+ */
+class TimerTaskList implements Delayed {
+
+	/**
+	 * 链表哨兵
+	 */
+	private final TimerTaskEntry root = new TimerTaskEntry(null, -1);
+
+	private final AtomicLong expiration = new AtomicLong(-1);
+
+	TimerTaskList() {
+		this.root.next = this.root;
+		this.root.prev = this.root;
+	}
+
+	/**
+	 * 设置时间格的到期时间
+	 * 
+	 * @return 到期时间变化时返回true，此时需要重新放入延迟队列
+	 */
+	boolean setExpiration(long expirationMs) {
+		return this.expiration.getAndSet(expirationMs) != expirationMs;
+	}
+
+	long getExpiration() {
+		return this.expiration.get();
+	}
+
+	void add(TimerTaskEntry entry) {
+		// 先从原时间格摘除，保证任务只在一个时间格中
+		entry.remove();
+		synchronized (this) {
+			synchronized (entry) {
+				if (entry.list == null) {
+					TimerTaskEntry tail = this.root.prev;
+					entry.next = this.root;
+					entry.prev = tail;
+					entry.list = this;
+					tail.next = entry;
+					this.root.prev = entry;
+				}
+			}
+		}
+	}
+
+	synchronized void remove(TimerTaskEntry entry) {
+		synchronized (entry) {
+			if (entry.list == this) {
+				entry.next.prev = entry.prev;
+				entry.prev.next = entry.next;
+				entry.next = null;
+				entry.prev = null;
+				entry.list = null;
+			}
+		}
+	}
+
+	/**
+	 * 取出所有任务并重置时间格
+	 * 
+	 * @param entries
+	 */
+	synchronized void flush(List<TimerTaskEntry> entries) {
+		TimerTaskEntry head = this.root.next;
+		while (head != this.root) {
+			remove(head);
+			entries.add(head);
+			head = this.root.next;
+		}
+		this.expiration.set(-1);
+	}
+
+	public long getDelay(TimeUnit unit) {
+		return unit.convert(Math.max(getExpiration() - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+	}
+
+	public int compareTo(Delayed o) {
+		TimerTaskList other = (TimerTaskList) o;
+		long diff = getExpiration() - other.getExpiration();
+		return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+	}
+
+}
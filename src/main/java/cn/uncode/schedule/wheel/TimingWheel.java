@@ -0,0 +1,93 @@
+package cn.uncode.schedule.wheel;
+
+import java.util.concurrent.DelayQueue;
+
+/**
+ * 分层时间轮中的一层
+ * 
+ * 每格跨度tickMs，共wheelSize格，超出本层范围的任务放入上一层（每格跨度为本层的总跨度），
+ * 上层的时间格到期时，其中的任务重新放入下层，逐级降到最底层后到期执行。
+ * 只有时间格进入延迟队列，任务的插入和取消都是O(1)。
+ * 
+ * @author juny.ye
+ * 
+ */
+class TimingWheel {
+
+	private final long tickMs;
+	private final int wheelSize;
+	private final long interval;
+	private final TimerTaskList[] buckets;
+	private final DelayQueue<TimerTaskList> queue;
+
+	/**
+	 * 当前时间，向下取整为tickMs的整数倍
+	 */
+	private volatile long currentTime;
+
+	private volatile TimingWheel overflowWheel;
+
+	TimingWheel(long tickMs, int wheelSize, long startMs, DelayQueue<TimerTaskList> queue) {
+		this.tickMs = tickMs;
+		this.wheelSize = wheelSize;
+		this.interval = tickMs * wheelSize;
+		this.queue = queue;
+		this.buckets = new TimerTaskList[wheelSize];
+		for (int i = 0; i < wheelSize; i++) {
+			this.buckets[i] = new TimerTaskList();
+		}
+		this.currentTime = startMs - (startMs % tickMs);
+	}
+
+	/**
+	 * 放入任务
+	 * 
+	 * @param entry
+	 * @return 任务已到期或已取消时返回false
+	 */
+	boolean add(TimerTaskEntry entry) {
+		long expiration = entry.expirationMs;
+		if (entry.cancelled) {
+			return false;
+		} else if (expiration < this.currentTime + this.tickMs) {
+			return false;
+		} else if (expiration < this.currentTime + this.interval) {
+			long virtualId = expiration / this.tickMs;
+			TimerTaskList bucket = this.buckets[(int) (virtualId % this.wheelSize)];
+			bucket.add(entry);
+			if (bucket.setExpiration(virtualId * this.tickMs)) {
+				this.queue.offer(bucket);
+			}
+			return true;
+		} else {
+			return getOverflowWheel().add(entry);
+		}
+	}
+
+	/**
+	 * 推进时钟，由到期的时间格驱动
+	 * 
+	 * @param timeMs
+	 */
+	void advanceClock(long timeMs) {
+		if (timeMs >= this.currentTime + this.tickMs) {
+			this.currentTime = timeMs - (timeMs % this.tickMs);
+			TimingWheel overflow = this.overflowWheel;
+			if (overflow != null) {
+				overflow.advanceClock(this.currentTime);
+			}
+		}
+	}
+
+	private TimingWheel getOverflowWheel() {
+		if (this.overflowWheel == null) {
+			synchronized (this) {
+				if (this.overflowWheel == null) {
+					this.overflowWheel = new TimingWheel(this.interval, this.wheelSize, this.currentTime, this.queue);
+				}
+			}
+		}
+		return this.overflowWheel;
+	}
+
+}
@@ -0,0 +1,263 @@
+package cn.uncode.schedule.wheel;
+
+import java.util.Date;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+/**
+ * 基于分层哈希时间轮的任务调度器
+ * 
+ * 与ThreadPoolTaskScheduler语义一致：周期任务不会与自身并发执行，执行完成后再计算下一次触发时间，
+ * 执行异常记录日志后继续下一次调度。触发由时钟线程负责，执行在独立的线程池中进行。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class TimingWheelTaskScheduler implements TaskScheduler {
+	private static final transient Logger LOG = LoggerFactory.getLogger(TimingWheelTaskScheduler.class);
+
+	/**
+	 * 默认最底层时间格跨度（毫秒）
+	 */
+	public static final long DEFAULT_TICK_MS = 10;
+
+	/**
+	 * 默认每层时间格数量
+	 */
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	private final HashedWheelTimer timer;
+	private final ThreadPoolExecutor executor;
+
+	public TimingWheelTaskScheduler(int poolSize) {
+		this(DEFAULT_TICK_MS, DEFAULT_WHEEL_SIZE, poolSize);
+	}
+
+	/**
+	 * @param tickMs 最底层时间格跨度（毫秒）
+	 * @param wheelSize 每层时间格数量
+	 * @param poolSize 执行线程数
+	 */
+	public TimingWheelTaskScheduler(long tickMs, int wheelSize, int poolSize) {
+		this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new WheelThreadFactory());
+		this.timer = new HashedWheelTimer("TimingWheel-ticker", tickMs, wheelSize, this.executor);
+		this.timer.start();
+	}
+
+	public void shutdown() {
+		this.timer.stop();
+		this.executor.shutdown();
+	}
+
+	@Override
+	public ScheduledFuture<?> schedule(Runnable task, final Trigger trigger) {
+		WheelScheduledFuture future = new WheelScheduledFuture(task) {
+			private final SimpleTriggerContext context = new SimpleTriggerContext();
+
+			@Override
+			protected long nextExecutionTime(long scheduled, long start, long completion) {
+				if (scheduled > 0) {
+					this.context.update(new Date(scheduled), new Date(start), new Date(completion));
+				}
+				Date next = trigger.nextExecutionTime(this.context);
+				return next == null ? -1 : next.getTime();
+			}
+		};
+		return future.start();
+	}
+
+	@Override
+	public ScheduledFuture<?> schedule(Runnable task, final Date startTime) {
+		WheelScheduledFuture future = new WheelScheduledFuture(task) {
+			@Override
+			protected long nextExecutionTime(long scheduled, long start, long completion) {
+				return scheduled > 0 ? -1 : startTime.getTime();
+			}
+		};
+		return future.start();
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, final Date startTime, final long period) {
+		WheelScheduledFuture future = new WheelScheduledFuture(task) {
+			@Override
+			protected long nextExecutionTime(long scheduled, long start, long completion) {
+				return scheduled > 0 ? scheduled + period : startTime.getTime();
+			}
+		};
+		return future.start();
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period) {
+		return scheduleAtFixedRate(task, new Date(), period);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, final Date startTime, final long delay) {
+		WheelScheduledFuture future = new WheelScheduledFuture(task) {
+			@Override
+			protected long nextExecutionTime(long scheduled, long start, long completion) {
+				return scheduled > 0 ? completion + delay : startTime.getTime();
+			}
+		};
+		return future.start();
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay) {
+		return scheduleWithFixedDelay(task, new Date(), delay);
+	}
+
+	/**
+	 * 时间轮中的调度任务，每次执行完成后计算下一次触发时间并重新放入时间轮
+	 */
+	private abstract class WheelScheduledFuture implements ScheduledFuture<Object>, Runnable {
+		private final Runnable task;
+		private volatile TimerTaskEntry entry;
+		private volatile long scheduledTime;
+		private volatile boolean cancelled;
+		private volatile boolean done;
+		private volatile Thread runner;
+
+		WheelScheduledFuture(Runnable task) {
+			this.task = task;
+		}
+
+		/**
+		 * 计算下一次触发时间
+		 * 
+		 * @param scheduled 上一次计划触发时间，首次调度时为0
+		 * @param start 上一次实际开始时间
+		 * @param completion 上一次完成时间
+		 * @return 不再触发时返回-1
+		 */
+		protected abstract long nextExecutionTime(long scheduled, long start, long completion);
+
+		WheelScheduledFuture start() {
+			scheduleNext(nextExecutionTime(0, 0, 0));
+			return this;
+		}
+
+		public void run() {
+			if (this.cancelled) {
+				return;
+			}
+			long start = System.currentTimeMillis();
+			this.runner = Thread.currentThread();
+			try {
+				this.task.run();
+			} catch (Throwable e) {
+				LOG.error("Unexpected error occurred in scheduled task.", e);
+			} finally {
+				this.runner = null;
+				// 清除cancel(true)留下的中断标记，避免影响线程池中的下一个任务
+				Thread.interrupted();
+			}
+			scheduleNext(nextExecutionTime(this.scheduledTime, start, System.currentTimeMillis()));
+		}
+
+		private void scheduleNext(long next) {
+			synchronized (this) {
+				if (next < 0 || this.cancelled) {
+					this.done = true;
+					notifyAll();
+					return;
+				}
+				this.scheduledTime = next;
+				this.entry = timer.newTimeout(this, next - System.currentTimeMillis());
+			}
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			synchronized (this) {
+				if (this.cancelled || this.done) {
+					return false;
+				}
+				this.cancelled = true;
+				notifyAll();
+			}
+			TimerTaskEntry current = this.entry;
+			if (current != null) {
+				current.cancel();
+			}
+			Thread thread = this.runner;
+			if (mayInterruptIfRunning && thread != null) {
+				thread.interrupt();
+			}
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return this.cancelled;
+		}
+
+		public boolean isDone() {
+			return this.done || this.cancelled;
+		}
+
+		public Object get() throws InterruptedException, ExecutionException {
+			synchronized (this) {
+				while (!isDone()) {
+					wait();
+				}
+			}
+			if (this.cancelled) {
+				throw new CancellationException();
+			}
+			return null;
+		}
+
+		public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+			synchronized (this) {
+				while (!isDone()) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						throw new TimeoutException();
+					}
+					wait(remaining);
+				}
+			}
+			if (this.cancelled) {
+				throw new CancellationException();
+			}
+			return null;
+		}
+
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(this.scheduledTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		public int compareTo(Delayed o) {
+			long diff = getDelay(TimeUnit.MILLISECONDS) - o.getDelay(TimeUnit.MILLISECONDS);
+			return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+		}
+	}
+
+	private static class WheelThreadFactory implements ThreadFactory {
+		private final AtomicInteger number = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "TimingWheel-exec-" + this.number.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
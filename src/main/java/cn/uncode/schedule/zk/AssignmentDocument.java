@@ -0,0 +1,104 @@
+package cn.uncode.schedule.zk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 任务分配文档，由Leader整体发布，其他服务器watch后在本地应用
+ * 
+ * @author juny.ye
+ * 
+ */
+public class AssignmentDocument {
+
+	/**
+	 * 分配节点名称 -> 分配的任务列表，分配节点名称为服务器编号，分片任务为服务器编号#分片序号
+	 */
+	private Map<String, List<String>> servers = new TreeMap<String, List<String>>();
+
+	/**
+	 * 任务名称 -> 任务定义的数据版本，包含所有任务（含暂未分配的任务）
+	 */
+	private Map<String, Integer> taskVersions = new TreeMap<String, Integer>();
+
+	/**
+	 * 生成该文档的分配纪元
+	 */
+	private long epoch;
+
+	/**
+	 * 文档版本，即分配文档节点的数据版本，不参与序列化
+	 */
+	private transient int version = -1;
+
+	public void addTask(String taskName, int dataVersion, String owner) {
+		this.taskVersions.put(taskName, dataVersion);
+		if (owner != null) {
+			List<String> tasks = this.servers.get(owner);
+			if (tasks == null) {
+				tasks = new ArrayList<String>();
+				this.servers.put(owner, tasks);
+			}
+			tasks.add(taskName);
+		}
+	}
+
+	/**
+	 * 转换为任务名称 -> 分配节点名称列表
+	 * 
+	 * @return
+	 */
+	public Map<String, List<String>> getTaskServers() {
+		Map<String, List<String>> taskServers = new HashMap<String, List<String>>();
+		for (String taskName : this.taskVersions.keySet()) {
+			taskServers.put(taskName, new ArrayList<String>(1));
+		}
+		for (Map.Entry<String, List<String>> entry : this.servers.entrySet()) {
+			for (String taskName : entry.getValue()) {
+				List<String> list = taskServers.get(taskName);
+				if (list == null) {
+					list = new ArrayList<String>(1);
+					taskServers.put(taskName, list);
+				}
+				list.add(entry.getKey());
+			}
+		}
+		return taskServers;
+	}
+
+	public Map<String, List<String>> getServers() {
+		return servers;
+	}
+
+	public void setServers(Map<String, List<String>> servers) {
+		this.servers = servers;
+	}
+
+	public Map<String, Integer> getTaskVersions() {
+		return taskVersions;
+	}
+
+	public void setTaskVersions(Map<String, Integer> taskVersions) {
+		this.taskVersions = taskVersions;
+	}
+
+	public long getEpoch() {
+		return epoch;
+	}
+
+	public void setEpoch(long epoch) {
+		this.epoch = epoch;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public void setVersion(int version) {
+		this.version = version;
+	}
+
+}
@@ -0,0 +1,266 @@
+package cn.uncode.schedule.zk;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+
+/**
+ * 任务分配文档的发布与订阅
+ * 
+ * Leader将完整的分配结果写入一个节点，内容较大时分块写入子节点，节点数据只保存分块的代号和数量。
+ * 其他服务器只watch这一个节点，分配变化时读取一次并应用到{@link TaskOwnerCache}，
+ * 每台服务器发现自身任务的开销从O(任务数)次读取降为每次分配变化一次读取。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class AssignmentDocumentStore {
+	private static final transient Logger LOG = LoggerFactory.getLogger(AssignmentDocumentStore.class);
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String CHUNK_HEADER = "chunks:";
+
+	/**
+	 * 单个节点保存的最大字节数，低于zookeeper默认的1M限制
+	 */
+	private static final int CHUNK_SIZE = 512 * 1024;
+
+	private final ZKManager zkManager;
+	private final String path;
+	private final Gson gson;
+	private final TaskOwnerCache taskOwnerCache;
+
+	/**
+	 * Leader最后一次发布的内容
+	 */
+	private byte[] lastPublished;
+
+	private volatile ZooKeeper watchedZooKeeper;
+	private volatile boolean needResync = true;
+	private volatile int appliedVersion = -1;
+
+	private final Watcher watcher = new Watcher() {
+		public void process(WatchedEvent event) {
+			if (event.getType() == EventType.NodeDataChanged || event.getType() == EventType.NodeCreated) {
+				load(watchedZooKeeper);
+			}
+		}
+	};
+
+	private final DataCallback dataCallback = new DataCallback() {
+		public void processResult(int rc, String path, Object ctx, byte[] data, Stat stat) {
+			ZooKeeper zk = watchedZooKeeper;
+			if (rc == Code.NONODE.intValue()) {
+				// 文档尚未发布，等待节点创建
+				zk.exists(path, watcher, existsCallback, null);
+				return;
+			}
+			if (rc != Code.OK.intValue()) {
+				needResync = true;
+				return;
+			}
+			String header = data == null ? "" : new String(data, 0, Math.min(data.length, 64), UTF8);
+			if (header.startsWith(CHUNK_HEADER)) {
+				// 分块异步读取，不在事件线程中同步等待
+				String[] parts = header.trim().split(":");
+				ChunkRead read = new ChunkRead(stat.getVersion(), Integer.parseInt(parts[2]));
+				for (int i = 0; i < read.chunks.length; i++) {
+					zk.getData(path + "/" + parts[1] + "-" + i, false, chunkCallback, read);
+				}
+				return;
+			}
+			apply(data, stat.getVersion());
+		}
+	};
+
+	private final DataCallback chunkCallback = new DataCallback() {
+		public void processResult(int rc, String path, Object ctx, byte[] data, Stat stat) {
+			// 同一会话的回调都在事件线程中按顺序执行，读取状态不需要同步
+			ChunkRead read = (ChunkRead) ctx;
+			if (read.failed) {
+				return;
+			}
+			if (rc != Code.OK.intValue()) {
+				read.failed = true;
+				if (rc == Code.NONODE.intValue()) {
+					// 读取期间文档已更新，旧分块被删除，重新读取文档节点
+					load(watchedZooKeeper);
+				} else {
+					needResync = true;
+				}
+				return;
+			}
+			int index = Integer.parseInt(path.substring(path.lastIndexOf('-') + 1));
+			read.chunks[index] = data;
+			if (--read.remaining > 0) {
+				return;
+			}
+			ByteArrayOutputStream content = new ByteArrayOutputStream(read.chunks.length * CHUNK_SIZE);
+			for (byte[] chunk : read.chunks) {
+				content.write(chunk, 0, chunk.length);
+			}
+			apply(content.toByteArray(), read.version);
+		}
+	};
+
+	private final StatCallback existsCallback = new StatCallback() {
+		public void processResult(int rc, String path, Object ctx, Stat stat) {
+			if (rc == Code.OK.intValue()) {
+				load(watchedZooKeeper);
+			} else if (rc != Code.NONODE.intValue()) {
+				needResync = true;
+			}
+		}
+	};
+
+	public AssignmentDocumentStore(ZKManager zkManager, String path, Gson gson, TaskOwnerCache taskOwnerCache) {
+		this.zkManager = zkManager;
+		this.path = path;
+		this.gson = gson;
+		this.taskOwnerCache = taskOwnerCache;
+	}
+
+	/**
+	 * 发布分配文档，内容没有变化时不写入
+	 * 
+	 * @param document
+	 * @return 发出的zookeeper请求数
+	 * @throws Exception
+	 */
+	public int publish(AssignmentDocument document) throws Exception {
+		byte[] content = this.gson.toJson(document).getBytes(UTF8);
+		if (Arrays.equals(content, this.lastPublished)) {
+			return 0;
+		}
+		ZooKeeper zk = this.zkManager.getZooKeeper();
+		int requests = 0;
+		if (zk.exists(this.path, false) == null) {
+			try {
+				zk.create(this.path, null, this.zkManager.getAcl(), CreateMode.PERSISTENT);
+			} catch (KeeperException.NodeExistsException e) {
+				// 并发创建，忽略
+			}
+			requests++;
+		}
+		requests++;
+		List<String> oldChunks = zk.getChildren(this.path, false);
+		requests++;
+		if (content.length <= CHUNK_SIZE) {
+			zk.setData(this.path, content, -1);
+			requests++;
+		} else {
+			// 先写入新代号的分块，再切换文档节点，最后删除旧分块
+			String generation = Long.toString(System.currentTimeMillis(), 36);
+			int count = (content.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+			for (int i = 0; i < count; i++) {
+				byte[] chunk = Arrays.copyOfRange(content, i * CHUNK_SIZE, Math.min(content.length, (i + 1) * CHUNK_SIZE));
+				zk.create(this.path + "/" + generation + "-" + i, chunk, this.zkManager.getAcl(), CreateMode.PERSISTENT);
+				requests++;
+			}
+			zk.setData(this.path, (CHUNK_HEADER + generation + ":" + count).getBytes(UTF8), -1);
+			requests++;
+		}
+		if (oldChunks.size() > 0) {
+			List<Op> ops = new ArrayList<Op>();
+			for (String chunk : oldChunks) {
+				ops.add(Op.delete(this.path + "/" + chunk, -1));
+			}
+			requests += ZKTools.multiInBatches(zk, ops, 200);
+		}
+		this.lastPublished = content;
+		return requests;
+	}
+
+	/**
+	 * 检查watch是否注册在当前会话上，会话重建或读取失败后重新读取
+	 * 
+	 * @throws Exception
+	 */
+	public synchronized void ensureWatching() throws Exception {
+		if (this.zkManager.checkZookeeperState() == false) {
+			return;
+		}
+		ZooKeeper zk = this.zkManager.getZooKeeper();
+		if (zk != this.watchedZooKeeper || this.needResync) {
+			this.watchedZooKeeper = zk;
+			this.needResync = false;
+			load(zk);
+		}
+	}
+
+	/**
+	 * 本地已应用的文档版本，-1表示尚未应用
+	 * 
+	 * @return
+	 */
+	public int getAppliedVersion() {
+		return appliedVersion;
+	}
+
+	private void load(ZooKeeper zk) {
+		if (zk == null) {
+			return;
+		}
+		zk.getData(this.path, this.watcher, this.dataCallback, null);
+	}
+
+	/**
+	 * 解析并应用文档内容，在事件线程中调用
+	 * 
+	 * @param data 完整的文档内容
+	 * @param version 文档节点的数据版本
+	 */
+	private void apply(byte[] data, int version) {
+		if (version < this.appliedVersion) {
+			return;
+		}
+		try {
+			AssignmentDocument document = data == null || data.length == 0 ? new AssignmentDocument()
+					: this.gson.fromJson(new String(data, UTF8), AssignmentDocument.class);
+			document.setVersion(version);
+			this.taskOwnerCache.applyAssignment(document);
+			this.appliedVersion = version;
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("应用任务分配文档，版本：" + version + "，大小：" + (data == null ? 0 : data.length));
+			}
+		} catch (Exception e) {
+			LOG.warn("解析任务分配文档失败：" + e.getMessage());
+			this.needResync = true;
+		}
+	}
+
+	/**
+	 * 一次分块读取的状态
+	 */
+	private static class ChunkRead {
+		private final int version;
+		private final byte[][] chunks;
+		private int remaining;
+		private boolean failed;
+
+		ChunkRead(int version, int count) {
+			this.version = version;
+			this.chunks = new byte[count][];
+			this.remaining = count;
+		}
+	}
+
+}
@@ -0,0 +1,152 @@
+package cn.uncode.schedule.zk;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * 任务分配纪元
+ * 
+ * /epoch节点保存单调递增的分配纪元，Leader每个分配事务都带上该节点的版本检查并将纪元加一，
+ * 同时检查Leader自身的服务器节点仍然存在。两个同时认为自己是Leader的服务器，只有一个能提交成功，
+ * 另一个得到{@link KeeperException.BadVersionException}后放弃本次分配。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class AssignmentEpoch {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ZKManager zkManager;
+	private final String path;
+
+	/**
+	 * 最后一次读取或提交后的纪元和节点版本
+	 */
+	private long epoch = 0;
+	private int version = -1;
+
+	public AssignmentEpoch(ZKManager zkManager, String path) {
+		this.zkManager = zkManager;
+		this.path = path;
+	}
+
+	/**
+	 * 纪元节点不存在时创建，初始纪元为0
+	 * 
+	 * @throws Exception
+	 */
+	public void initial() throws Exception {
+		ZooKeeper zk = this.zkManager.getZooKeeper();
+		if (zk.exists(this.path, false) == null) {
+			try {
+				zk.create(this.path, encode(0), this.zkManager.getAcl(), CreateMode.PERSISTENT);
+			} catch (KeeperException.NodeExistsException e) {
+				// 其他服务器已创建
+			}
+		}
+	}
+
+	/**
+	 * 读取当前纪元，作为本次分配事务的版本检查基础
+	 * 
+	 * @param zk
+	 * @return
+	 * @throws Exception
+	 */
+	public long read(ZooKeeper zk) throws Exception {
+		Stat stat = new Stat();
+		byte[] data = zk.getData(this.path, false, stat);
+		this.epoch = decode(data);
+		this.version = stat.getVersion();
+		return this.epoch;
+	}
+
+	/**
+	 * 分批提交分配操作，每批都检查Leader节点和纪元版本，并将纪元加一
+	 * 
+	 * @param zk
+	 * @param ops 分配操作，删除操作应排在创建操作之前
+	 * @param batchSize 每批最多包含的分配操作数
+	 * @param leaderPath Leader自身的服务器节点
+	 * @return 发出的zookeeper请求数
+	 * @throws Exception Leader节点不存在或纪元已被其他服务器修改时抛出对应的KeeperException
+	 */
+	public int commit(ZooKeeper zk, List<Op> ops, int batchSize, String leaderPath) throws Exception {
+		int requests = 0;
+		for (int from = 0; from < ops.size(); from += batchSize) {
+			List<Op> batch = ops.subList(from, Math.min(from + batchSize, ops.size()));
+			requests++;
+			if (!apply(zk, batch, leaderPath)) {
+				// 部分任务节点已变化，逐个提交，每个操作占用一个纪元
+				for (Op op : batch) {
+					requests++;
+					apply(zk, Collections.singletonList(op), leaderPath);
+				}
+			}
+		}
+		return requests;
+	}
+
+	/**
+	 * 提交一批操作
+	 * 
+	 * @return 因分配操作自身的NoNode/NodeExists失败时返回false
+	 */
+	private boolean apply(ZooKeeper zk, List<Op> batch, String leaderPath) throws Exception {
+		List<Op> fenced = new ArrayList<Op>(batch.size() + 2);
+		fenced.add(Op.check(leaderPath, -1));
+		fenced.add(Op.setData(this.path, encode(this.epoch + 1), this.version));
+		fenced.addAll(batch);
+		try {
+			zk.multi(fenced);
+		} catch (KeeperException e) {
+			List<OpResult> results = e.getResults();
+			if (results != null && results.size() >= 2) {
+				if (isError(results.get(0))) {
+					throw KeeperException.create(Code.NONODE, leaderPath);
+				}
+				if (isError(results.get(1))) {
+					throw KeeperException.create(Code.BADVERSION, this.path);
+				}
+			}
+			if (e.code() == Code.NONODE || e.code() == Code.NODEEXISTS) {
+				return false;
+			}
+			throw e;
+		}
+		this.epoch++;
+		this.version++;
+		return true;
+	}
+
+	private static boolean isError(OpResult result) {
+		return result instanceof OpResult.ErrorResult && ((OpResult.ErrorResult) result).getErr() != Code.OK.intValue();
+	}
+
+	public long getEpoch() {
+		return epoch;
+	}
+
+	public static byte[] encode(long epoch) {
+		return Long.toString(epoch).getBytes(UTF8);
+	}
+
+	public static long decode(byte[] data) {
+		if (data == null || data.length == 0) {
+			return 0;
+		}
+		return Long.parseLong(new String(data, UTF8).trim());
+	}
+
+}
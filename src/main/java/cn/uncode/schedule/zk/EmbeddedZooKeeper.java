@@ -0,0 +1,130 @@
+package cn.uncode.schedule.zk;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.zookeeper.server.ServerCnxn;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+
+/**
+ * 进程内的单机zookeeper，用于测试和基准测试，数据目录在临时目录中，关闭时删除
+ * 
+ * @author juny.ye
+ * 
+ */
+public class EmbeddedZooKeeper {
+
+	private static final String ROOT_PATH_PREFIX = "/uncode/embedded";
+
+	private final File dataDir;
+
+	private final int port;
+
+	private final ServerCnxnFactory factory;
+
+	private int roots;
+
+	public EmbeddedZooKeeper() throws Exception {
+		this.dataDir = File.createTempFile("zk-embedded", "");
+		this.dataDir.delete();
+		this.dataDir.mkdirs();
+		this.port = freePort();
+		ZooKeeperServer server = new ZooKeeperServer(this.dataDir, this.dataDir, 2000);
+		this.factory = ServerCnxnFactory.createFactory(new InetSocketAddress("127.0.0.1", this.port), 1000);
+		this.factory.startup(server);
+	}
+
+	public String getConnectString() {
+		return "127.0.0.1:" + this.port;
+	}
+
+	/**
+	 * 每次调用返回新的根路径，同一服务端上的使用者互不影响
+	 * 
+	 * @return
+	 */
+	public synchronized String newRootPath() {
+		return ROOT_PATH_PREFIX + (++this.roots);
+	}
+
+	/**
+	 * 连接当前服务端的zkConfig，可直接用于ZKScheduleManager
+	 * 
+	 * @param rootPath 根路径
+	 * @return
+	 */
+	public Map<String, String> zkConfig(String rootPath) {
+		Map<String, String> config = new HashMap<String, String>();
+		config.put(ZKManager.keys.zkConnectString.toString(), getConnectString());
+		config.put(ZKManager.keys.rootPath.toString(), rootPath);
+		config.put(ZKManager.keys.zkSessionTimeout.toString(), "60000");
+		config.put(ZKManager.keys.userName.toString(), "ScheduleAdmin");
+		config.put(ZKManager.keys.password.toString(), "password");
+		return config;
+	}
+
+	/**
+	 * 创建一个已连接并初始化根节点的ZKManager
+	 * 
+	 * @param rootPath 根路径
+	 * @param extraConfig 覆盖默认配置的zkConfig项
+	 * @return
+	 * @throws Exception
+	 */
+	public ZKManager newZKManager(String rootPath, Map<String, String> extraConfig) throws Exception {
+		Properties properties = new Properties();
+		properties.putAll(zkConfig(rootPath));
+		properties.putAll(extraConfig);
+		ZKManager zkManager = new ZKManager(properties);
+		zkManager.initial();
+		return zkManager;
+	}
+
+	/**
+	 * 服务端统计的每个会话收到的请求数（包括ping）
+	 * 
+	 * @return 会话编号 -> 累计请求数
+	 * @throws Exception
+	 */
+	public Map<Long, Long> packetsReceivedBySession() throws Exception {
+		Map<Long, Long> packets = new HashMap<Long, Long>();
+		Method getSessionId = ServerCnxn.class.getDeclaredMethod("getSessionId");
+		getSessionId.setAccessible(true);
+		for (ServerCnxn connection : this.factory.getConnections()) {
+			packets.put((Long) getSessionId.invoke(connection), connection.getPacketsReceived());
+		}
+		return packets;
+	}
+
+	public void close() {
+		this.factory.shutdown();
+		delete(this.dataDir);
+	}
+
+	private static int freePort() throws IOException {
+		ServerSocket socket = new ServerSocket(0);
+		try {
+			return socket.getLocalPort();
+		} finally {
+			socket.close();
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
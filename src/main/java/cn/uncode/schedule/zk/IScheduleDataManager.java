@@ -1,11 +1,17 @@
 package cn.uncode.schedule.zk;
 
 import java.util.List;
+import java.util.Map;
+
+import cn.uncode.schedule.assign.IAssignStrategy;
 
 
 /**
  * 调度配置中心客户端接口，可以有基于数据库的实现，可以有基于ConfigServer的实现
  * 
+ * 已有实现：ScheduleDataManager4ZK（默认）、ScheduleDataManager4Memory、ScheduleDataManager4File、ScheduleDataManager4JDBC，
+ * 通过配置项registry选择，见ScheduleDataManagerFactory
+ * 
  * @author juny.ye
  * 
  */
@@ -26,20 +32,79 @@ public interface IScheduleDataManager{
      * @throws Exception
      */
     public void registerScheduleServer(ScheduleServer server) throws Exception;
+    
+    /**
+     * 读取服务器信息，包括注册时的静态信息和最后一次心跳
+     * 
+     * @param uuid
+     * @return 服务器不存在时返回null
+     * @throws Exception
+     */
+    public ScheduleServer loadScheduleServer(String uuid) throws Exception;
 
     
     public boolean isLeader(String uuid,List<String> serverList);
     
+    /**
+     * 根据服务器列表计算Leader
+     * 
+     * @param serverList
+     * @return
+     */
+    public String getLeader(List<String> serverList);
+    
+    /**
+     * 当前注册的服务器是否为Leader
+     * 
+     * @return
+     */
+    public boolean hasLeadership();
+    
+    /**
+     * 设置Leader状态变化回调
+     * 
+     * @param leaderListener
+     */
+    public void setLeaderListener(LeaderListener leaderListener);
+    
 
 	public void clearExpireScheduleServer() throws Exception;
 	
 	
 	public List<String> loadScheduleServerNames() throws Exception;
 	
-	public void assignTask(String currentUuid, List<String> taskServerList) throws Exception;
+	/**
+	 * 重新分配任务，只有Leader执行
+	 * 
+	 * @param currentUuid 当前服务器
+	 * @param taskServerList 可用的服务器列表
+	 * @param assignStrategy 任务分配策略
+	 * @throws Exception
+	 */
+	public void assignTask(String currentUuid, List<String> taskServerList, IAssignStrategy assignStrategy) throws Exception;
 	
 	public boolean isOwner(String name, String uuid)throws Exception;
 	
+	/**
+	 * 任务执行前获取防护令牌：分配纪元确认后任务仍属于当前服务器时返回该纪元
+	 * 
+	 * @param name 任务名称
+	 * @param uuid 当前服务器
+	 * @return 不属于当前服务器或纪元未能确认时返回-1
+	 * @throws Exception
+	 */
+	public long getFencingToken(String name, String uuid)throws Exception;
+	
+	/**
+	 * 分片任务中分配给指定服务器的分片序号
+	 * 
+	 * @param name 任务名称
+	 * @param uuid 服务器编号
+	 * @return 按序号排列，没有分配分片时返回空列表
+	 * @throws Exception
+	 */
+	public List<Integer> getOwnedShards(String name, String uuid)throws Exception;
+	
 	public void addTask(TaskDefine taskDefine)throws Exception;
 	
 	public void delTask(String targetBean, String targetMethod)throws Exception;
@@ -47,6 +112,21 @@ public interface IScheduleDataManager{
 	public List<TaskDefine> selectTask()throws Exception;
 	
 	public boolean checkLocalTask(String currentUuid)throws Exception;
+	
+	/**
+	 * 发布任务的触发时间标识，只写入发生变化的部分
+	 * 
+	 * @param fireKeys 任务名称 -> 触发时间标识
+	 * @throws Exception
+	 */
+	public void publishFireKeys(Map<String, String> fireKeys)throws Exception;
+	
+	/**
+	 * 任务归属本地视图的陈旧时间（毫秒），0表示实时有效，-1表示尚未同步
+	 * 
+	 * @return
+	 */
+	public long getOwnerViewStaleness();
     
     
      
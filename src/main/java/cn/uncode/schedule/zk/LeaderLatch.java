@@ -0,0 +1,180 @@
+package cn.uncode.schedule.zk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.zookeeper.AsyncCallback.ChildrenCallback;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Leader选举
+ * 
+ * 注册序号最小的服务器为Leader，其余服务器只watch序号紧邻的前一个服务器节点，
+ * 前一个节点删除时重新判断，避免每次心跳对整个服务器列表排序，也避免所有节点同时被唤醒。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class LeaderLatch {
+	private static final transient Logger LOG = LoggerFactory.getLogger(LeaderLatch.class);
+
+	private final ZKManager zkManager;
+	private final String pathServer;
+
+	/**
+	 * 当前服务器在/server下的节点名称
+	 */
+	private volatile String serverName;
+	private volatile boolean leadership = false;
+	private volatile ZooKeeper watchedZooKeeper;
+	private volatile boolean needResync = false;
+	private volatile LeaderListener leaderListener;
+
+	private final Watcher watcher = new Watcher() {
+		public void process(WatchedEvent event) {
+			if (event.getType() == EventType.NodeDeleted) {
+				checkLeadership();
+			} else if (event.getType() == EventType.NodeDataChanged) {
+				// watch只触发一次，心跳更新节点数据后需要重新注册，否则无法感知节点删除
+				ZooKeeper zk = watchedZooKeeper;
+				String name = serverName;
+				if (zk != null && name != null) {
+					zk.exists(event.getPath(), this, predecessorCallback, name);
+				}
+			}
+		}
+	};
+
+	private final ChildrenCallback serverCallback = new ChildrenCallback() {
+		public void processResult(int rc, String path, Object ctx, List<String> children) {
+			if (ctx.equals(serverName) == false) {
+				// 服务器已重新注册，忽略过期的回调
+				return;
+			}
+			if (rc != Code.OK.intValue()) {
+				needResync = true;
+				return;
+			}
+			List<String> servers = new ArrayList<String>(children);
+			Collections.sort(servers, ServerListCache.SEQUENCE_COMPARATOR);
+			int index = servers.indexOf(serverName);
+			ZooKeeper zk = watchedZooKeeper;
+			if (index < 0) {
+				// 当前服务器节点已被清除，等待重新注册
+				setLeadership(false);
+			} else if (index == 0) {
+				setLeadership(true);
+				// 监听自身节点，节点被清除时失去Leader身份
+				zk.exists(path + "/" + serverName, watcher, predecessorCallback, serverName);
+			} else {
+				setLeadership(false);
+				zk.exists(path + "/" + servers.get(index - 1), watcher, predecessorCallback, serverName);
+			}
+		}
+	};
+
+	private final StatCallback predecessorCallback = new StatCallback() {
+		public void processResult(int rc, String path, Object ctx, Stat stat) {
+			if (ctx.equals(serverName) == false) {
+				return;
+			}
+			if (rc == Code.NONODE.intValue()) {
+				// 监听的节点已经删除，重新判断
+				checkLeadership();
+			} else if (rc != Code.OK.intValue()) {
+				needResync = true;
+			}
+		}
+	};
+
+	public LeaderLatch(ZKManager zkManager, String pathServer) {
+		this.zkManager = zkManager;
+		this.pathServer = pathServer;
+	}
+
+	/**
+	 * 服务器注册成功后开始参与选举
+	 * 
+	 * @param serverName 服务器在/server下的节点名称
+	 * @throws Exception
+	 */
+	public synchronized void start(String serverName) throws Exception {
+		this.serverName = serverName;
+		this.watchedZooKeeper = this.zkManager.getZooKeeper();
+		this.needResync = false;
+		checkLeadership();
+	}
+
+	/**
+	 * 会话重建或读取失败后重新判断并注册watch
+	 * 
+	 * @throws Exception
+	 */
+	public synchronized void ensureWatching() throws Exception {
+		if (this.serverName == null || this.zkManager.checkZookeeperState() == false) {
+			return;
+		}
+		ZooKeeper zk = this.zkManager.getZooKeeper();
+		if (zk != this.watchedZooKeeper || this.needResync) {
+			this.watchedZooKeeper = zk;
+			this.needResync = false;
+			checkLeadership();
+		}
+	}
+
+	/**
+	 * 当前服务器是否为Leader，只读内存
+	 * 
+	 * @return
+	 */
+	public boolean hasLeadership() {
+		return this.leadership;
+	}
+
+	public String getServerName() {
+		return serverName;
+	}
+
+	public void setLeaderListener(LeaderListener leaderListener) {
+		this.leaderListener = leaderListener;
+	}
+
+	private void checkLeadership() {
+		ZooKeeper zk = this.watchedZooKeeper;
+		String name = this.serverName;
+		if (zk == null || name == null) {
+			return;
+		}
+		zk.getChildren(this.pathServer, false, this.serverCallback, name);
+	}
+
+	private void setLeadership(boolean leadership) {
+		if (this.leadership == leadership) {
+			return;
+		}
+		this.leadership = leadership;
+		LOG.info(this.serverName + (leadership ? " 成为Leader" : " 不再是Leader"));
+		LeaderListener listener = this.leaderListener;
+		if (listener != null) {
+			try {
+				if (leadership) {
+					listener.leadershipAcquired();
+				} else {
+					listener.leadershipLost();
+				}
+			} catch (Exception e) {
+				LOG.error(e.getMessage(), e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,21 @@
+package cn.uncode.schedule.zk;
+
+/**
+ * Leader状态变化回调，在zookeeper事件线程中调用，实现中不能执行耗时操作
+ * 
+ * @author juny.ye
+ * 
+ */
+public interface LeaderListener {
+
+	/**
+	 * 当前服务器成为Leader
+	 */
+	public void leadershipAcquired();
+
+	/**
+	 * 当前服务器失去Leader身份
+	 */
+	public void leadershipLost();
+
+}
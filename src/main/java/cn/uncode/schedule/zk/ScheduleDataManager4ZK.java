@@ -1,26 +1,40 @@
 package cn.uncode.schedule.zk;
 
 import java.lang.reflect.Type;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
 import java.sql.Timestamp;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
 import org.apache.zookeeper.ZooKeeper;
 import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import cn.uncode.schedule.ConsoleManager;
+import cn.uncode.schedule.assign.CoincidenceBalancer;
+import cn.uncode.schedule.assign.IAssignStrategy;
+import cn.uncode.schedule.assign.ShardAssigner;
 import cn.uncode.schedule.local.DynamicTaskManager;
+import cn.uncode.schedule.util.ScheduleClock;
+import cn.uncode.schedule.util.ScheduleUtil;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -42,26 +56,118 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
 	private static final transient Logger LOG = LoggerFactory.getLogger(ScheduleDataManager4ZK.class);
 	
 	private static final String NODE_SERVER = "server";
+	private static final String NODE_SERVER_INFO = "serverinfo";
 	private static final String NODE_TASK = "task";
-	private static final long SERVER_EXPIRE_TIME = 5000 * 3;
+	private static final String NODE_ASSIGNMENT = "assignment";
+	private static final String NODE_EPOCH = "epoch";
+	private static final String NODE_FIRE = "fire";
+	/**
+	 * 触发时间标识节点名称：任务名称=触发时间标识，两部分分别经过URL编码
+	 */
+	private static final String FIRE_SEPARATOR = "=";
+	private static final long DEFAULT_SERVER_EXPIRE_TIME = 5000 * 3;
+	/**
+	 * 任务分配时每个事务包含的最大写操作数
+	 */
+	private static final int MULTI_BATCH_SIZE = 200;
+	/**
+	 * 任务分配时流水线读取的超时时间
+	 */
+	private static final long ASSIGN_READ_TIMEOUT = 30000;
 	private Gson gson ;
 	private ZKManager zkManager;
 	private String pathServer;
+	private String pathServerInfo;
 	private String pathTask;
+	private String pathEpoch;
+	private String pathFire;
 	private long zkBaseTime = 0;
 	private long loclaBaseTime = 0;
-	private Random random;
+	private TaskOwnerCache taskOwnerCache;
+	private ServerListCache serverListCache;
+	private LeaderLatch leaderLatch;
+	/**
+	 * 分配文档模式下发布和订阅分配结果，否则为null
+	 */
+	private AssignmentDocumentStore assignmentDocumentStore;
+	private AssignmentEpoch assignmentEpoch;
+	/**
+	 * Leader缓存的任务分片数量：任务名称 -> {任务定义数据版本, 分片数量}
+	 */
+	private Map<String, int[]> taskShardCounts = new ConcurrentHashMap<String, int[]>();
+	/**
+	 * 本地已核对的任务 -> 已应用的任务定义版本
+	 */
+	private Map<String, Integer> localTaskVersions = new ConcurrentHashMap<String, Integer>();
+	private String reconcileUuid;
+	/**
+	 * 当前服务器已发布的触发时间标识：任务名称 -> 触发时间标识
+	 */
+	private Map<String, String> publishedFireKeys = new ConcurrentHashMap<String, String>();
+	private volatile long lastAssignSpendTime;
+	private volatile int lastAssignZkOps;
+	private volatile int lastAssignChanges;
+	/**
+	 * 分配纪元尚未确认而跳过的执行次数
+	 */
+	private final AtomicLong unconfirmedSkipCount = new AtomicLong();
+	/**
+	 * 本次纪元未确认期间是否已输出警告
+	 */
+	private final AtomicBoolean unconfirmedWarned = new AtomicBoolean();
+	/**
+	 * 最后一次写入的心跳数据
+	 */
+	private byte[] lastHeartBeatValue;
+	/**
+	 * 本地时钟，模拟运行时为虚拟时钟
+	 */
+	private final ScheduleClock clock;
+	/**
+	 * 持久节点模式下服务器心跳过期时间
+	 */
+	private long serverExpireTime = DEFAULT_SERVER_EXPIRE_TIME;
 	
     public ScheduleDataManager4ZK(ZKManager aZkManager) throws Exception {
+    	this(aZkManager, ScheduleClock.SYSTEM);
+    }
+    
+    public ScheduleDataManager4ZK(ZKManager aZkManager, ScheduleClock clock) throws Exception {
     	this.zkManager = aZkManager;
+    	this.clock = clock;
     	gson = new GsonBuilder().registerTypeAdapter(Timestamp.class,new TimestampTypeAdapter()).setDateFormat("yyyy-MM-dd HH:mm:ss").create();
 		this.pathServer = this.zkManager.getRootPath() +"/" + NODE_SERVER;
 		this.pathTask = this.zkManager.getRootPath() +"/" + NODE_TASK;
-		this.random = new Random();
+		this.pathServerInfo = this.zkManager.getRootPath() +"/" + NODE_SERVER_INFO;
+		this.pathEpoch = this.zkManager.getRootPath() +"/" + NODE_EPOCH;
+		this.pathFire = this.zkManager.getRootPath() +"/" + NODE_FIRE;
 		if (this.getZooKeeper().exists(this.pathServer, false) == null) {
 			ZKTools.createPath(getZooKeeper(),this.pathServer, CreateMode.PERSISTENT, this.zkManager.getAcl());
 		}
-		loclaBaseTime = System.currentTimeMillis();
+		if (this.getZooKeeper().exists(this.pathServerInfo, false) == null) {
+			ZKTools.createPath(getZooKeeper(),this.pathServerInfo, CreateMode.PERSISTENT, this.zkManager.getAcl());
+		}
+		if (this.getZooKeeper().exists(this.pathTask, false) == null) {
+			ZKTools.createPath(getZooKeeper(),this.pathTask, CreateMode.PERSISTENT, this.zkManager.getAcl());
+		}
+		if (this.getZooKeeper().exists(this.pathFire, false) == null) {
+			ZKTools.createPath(getZooKeeper(),this.pathFire, CreateMode.PERSISTENT, this.zkManager.getAcl());
+		}
+		this.assignmentEpoch = new AssignmentEpoch(this.zkManager, this.pathEpoch);
+		this.assignmentEpoch.initial();
+		if (this.zkManager.isAssignmentDocument()) {
+			this.taskOwnerCache = new TaskOwnerCache(this.zkManager, this.pathTask, this.pathEpoch, false);
+			this.assignmentDocumentStore = new AssignmentDocumentStore(this.zkManager,
+					this.zkManager.getRootPath() + "/" + NODE_ASSIGNMENT, this.gson, this.taskOwnerCache);
+			this.assignmentDocumentStore.ensureWatching();
+		} else {
+			this.taskOwnerCache = new TaskOwnerCache(this.zkManager, this.pathTask, this.pathEpoch);
+		}
+		this.taskOwnerCache.ensureWatching();
+		this.serverListCache = new ServerListCache(this.zkManager, this.pathServer);
+		this.serverListCache.ensureWatching();
+		this.leaderLatch = new LeaderLatch(this.zkManager, this.pathServer);
+		loclaBaseTime = this.clock.currentTimeMillis();
         String tempPath = this.zkManager.getZooKeeper().create(this.zkManager.getRootPath() + "/systime",null, this.zkManager.getAcl(), CreateMode.EPHEMERAL_SEQUENTIAL);
         Stat tempStat = this.zkManager.getZooKeeper().exists(tempPath, false);
         zkBaseTime = tempStat.getCtime();
@@ -78,27 +184,46 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
 	public boolean refreshScheduleServer(ScheduleServer server) throws Exception {
 		Timestamp heartBeatTime = new Timestamp(this.getSystemTime());
     	String zkPath = this.pathServer +"/" + server.getUuid();
-    	if(this.getZooKeeper().exists(zkPath, false)== null){
-    		//数据可能被清除，先清除内存数据后，重新注册数据
-    		server.setRegister(false);
-    		return false;
-    	}else{
-    		Timestamp oldHeartBeatTime = server.getHeartBeatTime();
-    		server.setHeartBeatTime(heartBeatTime);
-    		server.setVersion(server.getVersion() + 1);
-    		String valueString = this.gson.toJson(server);
-    		try{
-    			this.getZooKeeper().setData(zkPath,valueString.getBytes(),-1);
-    		}catch(Exception e){
-    			//恢复上次的心跳时间
-    			server.setHeartBeatTime(oldHeartBeatTime);
-    			server.setVersion(server.getVersion() - 1);
-    			throw e;
-    		}
-    		return true;
-    	}
+		Timestamp oldHeartBeatTime = server.getHeartBeatTime();
+		server.setHeartBeatTime(heartBeatTime);
+		server.setVersion(server.getVersion() + 1);
+		byte[] value = ScheduleServerCodec.encodeHeartBeat(server);
+		if(this.zkManager.isEphemeralServer() && ScheduleServerCodec.isSameState(value, this.lastHeartBeatValue)){
+			//临时节点的存活由会话保证，状态没有变化时不写zookeeper
+			server.setHeartBeatTime(oldHeartBeatTime);
+			server.setVersion(server.getVersion() - 1);
+			if(this.serverListCache.isLive() && this.serverListCache.getServerList().contains(server.getUuid()) == false
+					&& this.getZooKeeper().exists(zkPath, false) == null){
+				server.setRegister(false);
+				return false;
+			}
+		}else{
+			try{
+				this.getZooKeeper().setData(zkPath,value,-1);
+				this.lastHeartBeatValue = value;
+			}catch(KeeperException.NoNodeException e){
+				//数据可能被清除（或临时节点随会话失效），先清除内存数据后，重新注册数据
+				server.setHeartBeatTime(oldHeartBeatTime);
+				server.setVersion(server.getVersion() - 1);
+				server.setRegister(false);
+				return false;
+			}catch(Exception e){
+				//恢复上次的心跳时间
+				server.setHeartBeatTime(oldHeartBeatTime);
+				server.setVersion(server.getVersion() - 1);
+				throw e;
+			}
+		}
+		//会话重建后重新注册本地缓存的watch
+		ensureOwnerWatching();
+		this.serverListCache.ensureWatching();
+		this.leaderLatch.ensureWatching();
+		return true;
 	}
 
+	/**
+	 * 注册服务器：心跳节点只保存会变化的字段，静态信息单独写入/serverinfo，只写一次
+	 */
 	@Override
 	public void registerScheduleServer(ScheduleServer server) throws Exception {
 		if(server.isRegister() == true){
@@ -111,15 +236,52 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
 		id.append(server.getIp()).append("$")
 			.append(UUID.randomUUID().toString().replaceAll("-", "").toUpperCase());
 		String zkServerPath = pathServer + "/" + id.toString() +"$";
-		realPath = this.getZooKeeper().create(zkServerPath, null, this.zkManager.getAcl(),CreateMode.PERSISTENT_SEQUENTIAL);
-		server.setUuid(realPath.substring(realPath.lastIndexOf("/") + 1));
+		CreateMode createMode = this.zkManager.isEphemeralServer() ? CreateMode.EPHEMERAL_SEQUENTIAL : CreateMode.PERSISTENT_SEQUENTIAL;
 		
 		Timestamp heartBeatTime = new Timestamp(getSystemTime());
 		server.setHeartBeatTime(heartBeatTime);
+		byte[] value = ScheduleServerCodec.encodeHeartBeat(server);
+		realPath = this.getZooKeeper().create(zkServerPath, value, this.zkManager.getAcl(), createMode);
+		this.lastHeartBeatValue = value;
+		server.setUuid(realPath.substring(realPath.lastIndexOf("/") + 1));
 		
 		String valueString = this.gson.toJson(server);
-		this.getZooKeeper().setData(realPath,valueString.getBytes(),-1);
+		this.getZooKeeper().create(this.pathServerInfo + "/" + server.getUuid(), valueString.getBytes(), this.zkManager.getAcl(),
+				this.zkManager.isEphemeralServer() ? CreateMode.EPHEMERAL : CreateMode.PERSISTENT);
 		server.setRegister(true);
+		this.leaderLatch.start(server.getUuid());
+	}
+	
+	@Override
+	public ScheduleServer loadScheduleServer(String uuid) throws Exception {
+		ScheduleServer server = null;
+		try{
+			byte[] info = this.getZooKeeper().getData(this.pathServerInfo + "/" + uuid, false, null);
+			if(info != null){
+				server = this.gson.fromJson(new String(info), ScheduleServer.class);
+			}
+		}catch(KeeperException.NoNodeException e){
+			//旧版本注册的服务器没有静态信息
+		}
+		byte[] data = null;
+		try{
+			data = this.getZooKeeper().getData(this.pathServer + "/" + uuid, false, null);
+		}catch(KeeperException.NoNodeException e){
+			return null;
+		}
+		if(ScheduleServerCodec.isHeartBeat(data)){
+			if(server == null){
+				server = new ScheduleServer();
+			}
+			ScheduleServerCodec.decodeHeartBeat(data, server);
+		}else if(data != null){
+			//旧版本的心跳数据为完整的json
+			server = this.gson.fromJson(new String(data), ScheduleServer.class);
+		}
+		if(server != null){
+			server.setUuid(uuid);
+		}
+		return server;
 	}
 	
 	public List<String> loadAllScheduleServer() throws Exception {
@@ -130,16 +292,20 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
 	}
 	
 	public void clearExpireScheduleServer() throws Exception{
+		 if(this.zkManager.isEphemeralServer()){
+			 //临时节点随会话超时由zookeeper自动删除，不需要轮询
+			 return;
+		 }
 		 String zkPath = this.pathServer;
 		 if(this.getZooKeeper().exists(zkPath,false)== null){
 			 this.getZooKeeper().create(zkPath, null, this.zkManager.getAcl(), CreateMode.PERSISTENT);
 		 }
 		for (String name : this.zkManager.getZooKeeper().getChildren(zkPath, false)) {
 			try {
-				Stat stat = new Stat();
-				this.getZooKeeper().getData(zkPath + "/" + name, null, stat);
-				if (getSystemTime() - stat.getMtime() > SERVER_EXPIRE_TIME) {
+				Stat stat = this.getZooKeeper().exists(zkPath + "/" + name, false);
+				if (stat != null && getSystemTime() - stat.getMtime() > this.serverExpireTime) {
 					ZKTools.deleteTree(this.getZooKeeper(), zkPath + "/" + name);
+					ZKTools.deleteTree(this.getZooKeeper(), this.pathServerInfo + "/" + name);
 					LOG.debug("ScheduleServer[" + zkPath + "/" + name + "]过期清除");
 				}
 			} catch (Exception e) {
@@ -154,34 +320,29 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
 			return new ArrayList<String>();
 		}
 		List<String> serverList = this.getZooKeeper().getChildren(zkPath, false);
-		Collections.sort(serverList, new Comparator<String>() {
-			public int compare(String u1, String u2) {
-				return u1.substring(u1.lastIndexOf("$") + 1).compareTo(
-						u2.substring(u2.lastIndexOf("$") + 1));
-			}
-		});
+		Collections.sort(serverList, ServerListCache.SEQUENCE_COMPARATOR);
 		return serverList;
 	}
 	
 	public List<String> loadScheduleServerNames() throws Exception {
+		if(this.serverListCache.isLive()){
+			//watch维护的服务器列表，直接读内存
+			return new ArrayList<String>(this.serverListCache.getServerList());
+		}
 		String zkPath = this.pathServer;
 		if (this.getZooKeeper().exists(zkPath, false) == null) {
 			return new ArrayList<String>();
 		}
 		List<String> serverList = this.getZooKeeper()
 				.getChildren(zkPath, false);
-		Collections.sort(serverList, new Comparator<String>() {
-			public int compare(String u1, String u2) {
-				return u1.substring(u1.lastIndexOf("$") + 1).compareTo(
-						u2.substring(u2.lastIndexOf("$") + 1));
-			}
-		});
+		Collections.sort(serverList, ServerListCache.SEQUENCE_COMPARATOR);
+		this.serverListCache.ensureWatching();
 		return serverList;
 	}
 	
 	
 	@Override
-	public void assignTask(String currentUuid, List<String> taskServerList) throws Exception {
+	public void assignTask(String currentUuid, List<String> taskServerList, IAssignStrategy assignStrategy) throws Exception {
 		 if(this.isLeader(currentUuid,taskServerList)==false){
 			 if(LOG.isDebugEnabled()){
 				 LOG.debug(currentUuid +":不是负责任务分配的Leader,直接返回");
@@ -196,61 +357,308 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
 			 return;
 		 }
 		 if(this.zkManager.checkZookeeperState()){
+			 long startTime = this.clock.currentTimeMillis();
+			 int zkOps = 0;
 			 String zkPath = this.pathTask;
-			 if(this.getZooKeeper().exists(zkPath,false)== null){
-				 this.getZooKeeper().create(zkPath, null, this.zkManager.getAcl(), CreateMode.PERSISTENT);
+			 ZooKeeper zk = this.getZooKeeper();
+			 zkOps++;
+			 if(zk.exists(zkPath,false)== null){
+				 zkOps++;
+				 zk.create(zkPath, null, this.zkManager.getAcl(), CreateMode.PERSISTENT);
 			 }
-			 List<String> children = this.getZooKeeper().getChildren(zkPath, false);
+			 //先读取分配纪元，提交时以其版本作为乐观锁
+			 zkOps++;
+			 this.assignmentEpoch.read(zk);
+			 zkOps++;
+			 List<String> children = zk.getChildren(zkPath, false);
+			 List<Op> ops = new ArrayList<Op>();
+			 List<Op> createOps = new ArrayList<Op>();
+			 AssignmentDocument document = new AssignmentDocument();
 			 if(null != children && children.size() > 0){
-				 for(int i = 0; i < children.size(); i++){
-					 String taskName = children.get(i);
+				 //流水线读取所有任务的分配信息
+				 List<String> taskPaths = new ArrayList<String>(children.size());
+				 for(String taskName:children){
+					 taskPaths.add(zkPath + "/" + taskName);
+				 }
+				 zkOps += taskPaths.size();
+				 Map<String, Stat> taskStats = new HashMap<String, Stat>();
+				 Map<String, List<String>> taskServers = ZKTools.getChildrenPipelined(zk, taskPaths, ASSIGN_READ_TIMEOUT, taskStats);
+				 Set<String> servers = new HashSet<String>(taskServerList);
+				 Map<String, List<String>> currentServers = new HashMap<String, List<String>>();
+				 Map<String, Integer> shardedTasks = new HashMap<String, Integer>();
+				 for(String taskName:children){
 					 String taskPath = zkPath + "/" + taskName;
-					 if(this.getZooKeeper().exists(taskPath, false) == null){
-						 this.getZooKeeper().create(taskPath, null, this.zkManager.getAcl(),CreateMode.PERSISTENT);
+					 List<String> taskServerIds = taskServers.get(taskPath);
+					 if(taskServerIds == null){
+						 //任务已被删除
+						 continue;
 					 }
-					 
-					 List<String> taskServerIds = this.getZooKeeper().getChildren(taskPath, false);
-					 if(null == taskServerIds || taskServerIds.size() == 0){
-						 assignServer2Task(taskServerList, taskPath);
-					 }else{
-						 boolean hasAssignSuccess = false;
-						 for(String serverId:taskServerIds){
-							 if(taskServerList.contains(serverId)){
-								 hasAssignSuccess = true;
-								 continue;
-							 }
-							 ZKTools.deleteTree(this.getZooKeeper(), taskPath + "/" + serverId);
+					 Stat taskStat = taskStats.get(taskPath);
+					 if(taskStat.getDataLength() == 0){
+						 this.taskShardCounts.remove(taskName);
+					 }else if(isShardCountStale(taskName, taskStat)){
+						 zkOps++;
+						 loadShardCount(zk, taskName);
+					 }
+					 int[] shardInfo = this.taskShardCounts.get(taskName);
+					 if(shardInfo != null && shardInfo[1] > 1){
+						 shardedTasks.put(taskName, shardInfo[1]);
+						 continue;
+					 }
+					 List<String> validServerIds = new ArrayList<String>();
+					 for(String serverId:taskServerIds){
+						 if(servers.contains(serverId)){
+							 validServerIds.add(serverId);
 						 }
-						 if(hasAssignSuccess == false){
-							 assignServer2Task(taskServerList, taskPath);
+					 }
+					 currentServers.put(taskName, validServerIds);
+				 }
+				 this.taskShardCounts.keySet().retainAll(new HashSet<String>(children));
+				 Map<String, String> assignment = assignStrategy.assign(currentServers, taskServerList);
+				 if(this.zkManager.isBalanceCoincidentTasks()){
+					 //同时触发的任务分散到不同的服务器
+					 zkOps++;
+					 assignment = CoincidenceBalancer.balance(assignment, loadFireKeys(zk), taskServerList);
+				 }
+				 for(Map.Entry<String, List<String>> entry:currentServers.entrySet()){
+					 String taskPath = zkPath + "/" + entry.getKey();
+					 String target = assignment.get(entry.getKey());
+					 boolean hasAssignSuccess = false;
+					 for(String serverId:taskServers.get(taskPath)){
+						 if(serverId.equals(target)){
+							 hasAssignSuccess = true;
+							 continue;
 						 }
+						 ops.add(Op.delete(taskPath + "/" + serverId, -1));
 					 }
-					 
-				 }	
+					 if(hasAssignSuccess == false && target != null){
+						 createOps.add(assignServer2Task(target, taskPath));
+					 }
+					 document.addTask(entry.getKey(), taskStats.get(taskPath).getVersion(), target);
+				 }
+				 //分片任务的每个分片单独分配，分配节点名称为：服务器编号#分片序号
+				 int maxNumOfOneServer = this.zkManager.getMaxTaskNumOfOneServer();
+				 for(Map.Entry<String, Integer> entry:shardedTasks.entrySet()){
+					 String taskPath = zkPath + "/" + entry.getKey();
+					 int shardCount = entry.getValue();
+					 List<String> owners = taskServers.get(taskPath);
+					 Map<Integer, String> currentShards = new HashMap<Integer, String>();
+					 for(String owner:owners){
+						 int shard = ScheduleUtil.getShardFromOwner(owner);
+						 String serverId = ScheduleUtil.getServerFromOwner(owner);
+						 if(shard >= 0 && shard < shardCount && servers.contains(serverId) && !currentShards.containsKey(shard)){
+							 currentShards.put(shard, serverId);
+						 }
+					 }
+					 Map<Integer, String> targetShards = ShardAssigner.assign(entry.getKey(), shardCount, currentShards, taskServerList, maxNumOfOneServer);
+					 Set<String> targetOwners = new HashSet<String>();
+					 for(Map.Entry<Integer, String> shardEntry:targetShards.entrySet()){
+						 targetOwners.add(ScheduleUtil.buildShardOwner(shardEntry.getValue(), shardEntry.getKey()));
+					 }
+					 for(String owner:owners){
+						 if(!targetOwners.remove(owner)){
+							 ops.add(Op.delete(taskPath + "/" + owner, -1));
+						 }
+					 }
+					 for(String owner:targetOwners){
+						 createOps.add(assignServer2Task(owner, taskPath));
+					 }
+					 int version = taskStats.get(taskPath).getVersion();
+					 document.addTask(entry.getKey(), version, null);
+					 for(Map.Entry<Integer, String> shardEntry:targetShards.entrySet()){
+						 document.addTask(entry.getKey(), version, ScheduleUtil.buildShardOwner(shardEntry.getValue(), shardEntry.getKey()));
+					 }
+				 }
+				 //先删除后创建，避免同一纪元内任务同时属于新旧两个服务器
+				 ops.addAll(createOps);
+				 //分批事务提交写操作，每批检查并递增分配纪元
+				 try{
+					 zkOps += this.assignmentEpoch.commit(zk, ops, MULTI_BATCH_SIZE, this.pathServer + "/" + currentUuid);
+				 }catch(KeeperException.BadVersionException e){
+					 LOG.warn(currentUuid +":分配纪元已被其他服务器修改，放弃本次任务分配");
+					 return;
+				 }catch(KeeperException.NoNodeException e){
+					 LOG.warn(currentUuid +":当前服务器节点已不存在，放弃本次任务分配");
+					 return;
+				 }
 			 }else{
 				 if(LOG.isDebugEnabled()){
 					 LOG.debug(currentUuid +":没有集群任务");
 				 }	
 			 }
+			 if(this.assignmentDocumentStore != null){
+				 //分配结果写入后整体发布，内容无变化时不写入
+				 document.setEpoch(this.assignmentEpoch.getEpoch());
+				 zkOps += this.assignmentDocumentStore.publish(document);
+			 }
+			 this.lastAssignSpendTime = this.clock.currentTimeMillis() - startTime;
+			 this.lastAssignZkOps = zkOps;
+			 this.lastAssignChanges = ops.size();
+			 if(ops.size() > 0){
+				 LOG.info("任务重新分配完成，任务数：" + (children == null ? 0 : children.size()) + "，变更数：" + ops.size()
+						 + "，zookeeper请求数：" + zkOps + "，耗时：" + this.lastAssignSpendTime + "ms");
+			 }else if(LOG.isDebugEnabled()){
+				 LOG.debug("任务分配无变化，zookeeper请求数：" + zkOps + "，耗时：" + this.lastAssignSpendTime + "ms");
+			 }
 		 }
 		 
 	}
 
-	private void assignServer2Task(List<String> taskServerList, String taskPath)throws Exception {
-		int index = random.nextInt(taskServerList.size());
-		 String serverId = taskServerList.get(index);
-		 this.getZooKeeper().create(taskPath + "/" + serverId, null, this.zkManager.getAcl(),CreateMode.PERSISTENT);
+	private boolean isShardCountStale(String taskName, Stat stat) {
+		int[] shardInfo = this.taskShardCounts.get(taskName);
+		return shardInfo == null || shardInfo[0] != stat.getVersion();
+	}
+
+	/**
+	 * 读取任务定义中的分片数量，按任务定义的数据版本缓存，定义不变时不再读取
+	 */
+	private void loadShardCount(ZooKeeper zk, String taskName) throws Exception {
+		Stat stat = new Stat();
+		int shardCount = 0;
+		try{
+			byte[] data = zk.getData(this.pathTask + "/" + taskName, false, stat);
+			if(data != null && data.length > 0){
+				TaskDefine taskDefine = this.gson.fromJson(new String(data), TaskDefine.class);
+				if(taskDefine != null){
+					shardCount = taskDefine.getShardCount();
+				}
+			}
+		}catch(KeeperException.NoNodeException e){
+			return;
+		}catch(JsonParseException e){
+			LOG.warn("任务定义格式错误：" + taskName);
+		}
+		this.taskShardCounts.put(taskName, new int[]{stat.getVersion(), shardCount});
+	}
+
+	/**
+	 * 读取所有任务的触发时间标识，一次getChildren完成
+	 */
+	private Map<String, String> loadFireKeys(ZooKeeper zk) throws Exception {
+		Map<String, String> fireKeys = new HashMap<String, String>();
+		List<String> children;
+		try{
+			children = zk.getChildren(this.pathFire, false);
+		}catch(KeeperException.NoNodeException e){
+			return fireKeys;
+		}
+		for(String child:children){
+			int index = child.indexOf(FIRE_SEPARATOR);
+			if(index > 0){
+				fireKeys.put(URLDecoder.decode(child.substring(0, index), "UTF-8"),
+						URLDecoder.decode(child.substring(index + 1), "UTF-8"));
+			}
+		}
+		return fireKeys;
+	}
+
+	@Override
+	public void publishFireKeys(Map<String, String> fireKeys) throws Exception {
+		List<String> changed = new ArrayList<String>();
+		for(Map.Entry<String, String> entry:fireKeys.entrySet()){
+			if(!entry.getValue().equals(this.publishedFireKeys.get(entry.getKey()))){
+				changed.add(entry.getKey());
+			}
+		}
+		if(changed.isEmpty() || this.zkManager.checkZookeeperState() == false){
+			return;
+		}
+		ZooKeeper zk = this.getZooKeeper();
+		List<String> children = zk.getChildren(this.pathFire, false);
+		for(String name:changed){
+			String fireKey = fireKeys.get(name);
+			String prefix = URLEncoder.encode(name, "UTF-8") + FIRE_SEPARATOR;
+			String node = prefix + URLEncoder.encode(fireKey, "UTF-8");
+			//任务的触发时间变化后删除旧的标识
+			for(String child:children){
+				if(child.startsWith(prefix) && !child.equals(node)){
+					deleteFireNode(zk, child);
+				}
+			}
+			if(!children.contains(node)){
+				try{
+					zk.create(this.pathFire + "/" + node, null, this.zkManager.getAcl(), CreateMode.PERSISTENT);
+				}catch(KeeperException.NodeExistsException e){
+					//其他服务器已发布相同的标识
+				}
+			}
+			this.publishedFireKeys.put(name, fireKey);
+		}
+	}
+
+	private void deleteFireNode(ZooKeeper zk, String node) throws Exception {
+		try{
+			zk.delete(this.pathFire + "/" + node, -1);
+		}catch(KeeperException.NoNodeException e){
+			//已被其他服务器删除
+		}
+	}
+
+	private void ensureOwnerWatching() throws Exception {
+		if(this.assignmentDocumentStore != null){
+			this.assignmentDocumentStore.ensureWatching();
+		}
+		this.taskOwnerCache.ensureWatching();
+	}
+
+	private Op assignServer2Task(String serverId, String taskPath)throws Exception {
 		 if(LOG.isDebugEnabled()){
 			 StringBuffer buffer = new StringBuffer();
 			 buffer.append("Assign server [").append(serverId).append("]").append(" to task [").append(taskPath).append("]");
 			 LOG.debug(buffer.toString());
 		 }
+		 return Op.create(taskPath + "/" + serverId, null, this.zkManager.getAcl(),CreateMode.PERSISTENT);
+	}
+
+	/**
+	 * 最近一次任务分配的耗时（毫秒）
+	 * @return
+	 */
+	public long getLastAssignSpendTime() {
+		return lastAssignSpendTime;
+	}
+
+	/**
+	 * 最近一次任务分配发出的zookeeper请求数
+	 * @return
+	 */
+	public int getLastAssignZkOps() {
+		return lastAssignZkOps;
+	}
+
+	/**
+	 * 最近一次任务分配提交的写操作数
+	 * @return
+	 */
+	public int getLastAssignChanges() {
+		return lastAssignChanges;
+	}
+
+	/**
+	 * 分配纪元尚未确认而跳过的执行次数
+	 * @return
+	 */
+	public long getUnconfirmedSkipCount() {
+		return unconfirmedSkipCount.get();
 	}
 
 	public boolean isLeader(String uuid,List<String> serverList){
+		if(uuid.equals(this.leaderLatch.getServerName())){
+			return this.leaderLatch.hasLeadership();
+		}
     	return uuid.equals(getLeader(serverList));
     }
 	
+	@Override
+	public boolean hasLeadership(){
+		return this.leaderLatch.hasLeadership();
+	}
+	
+	@Override
+	public void setLeaderListener(LeaderListener leaderListener){
+		this.leaderLatch.setLeaderListener(leaderListener);
+	}
+	
 	public String getLeader(List<String> serverList){
 		if(serverList == null || serverList.size() ==0){
 			return "";
@@ -268,14 +676,36 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
     	return leader;
     }
 	
+	/**
+	 * 任务归属本地视图的陈旧时间（毫秒），0表示watch实时有效，-1表示尚未同步
+	 * @return
+	 */
+	public long getOwnerViewStaleness(){
+		return this.taskOwnerCache.getStaleness();
+	}
+	
 	public long getSystemTime(){
-		return this.zkBaseTime + ( System.currentTimeMillis() - this.loclaBaseTime);
+		return this.zkBaseTime + ( this.clock.currentTimeMillis() - this.loclaBaseTime);
+	}
+	
+	/**
+	 * 持久节点模式下服务器心跳超过该时间未更新即被清除，默认15秒
+	 * @param serverExpireTime
+	 */
+	public void setServerExpireTime(long serverExpireTime) {
+		this.serverExpireTime = serverExpireTime;
 	}
 	
 	class TimestampTypeAdapter implements JsonSerializer<Timestamp>, JsonDeserializer<Timestamp>{   
+		private final ThreadLocal<DateFormat> format = new ThreadLocal<DateFormat>() {
+			@Override
+			protected DateFormat initialValue() {
+				return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+			}
+		};
+		
 	    public JsonElement serialize(Timestamp src, Type arg1, JsonSerializationContext arg2) {   
-	    	DateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");   
-	        String dateFormatAsString = format.format(new Date(src.getTime()));   
+	        String dateFormatAsString = format.get().format(new Date(src.getTime()));   
 	        return new JsonPrimitive(dateFormatAsString);   
 	    }   
 	  
@@ -285,8 +715,7 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
 	        }   
 	  
 	        try {   
-	        	DateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");   
-	            Date date = (Date) format.parse(json.getAsString());   
+	            Date date = (Date) format.get().parse(json.getAsString());   
 	            return new Timestamp(date.getTime());   
 	        } catch (Exception e) {   
 	            throw new JsonParseException(e);   
@@ -296,15 +725,24 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
 
 	@Override
 	public boolean isOwner(String name, String uuid) throws Exception {
+		//优先读取watch维护的本地归属视图
+		Boolean cached = this.taskOwnerCache.isOwner(name, uuid);
+		if(cached != null){
+			return cached;
+		}
 		boolean isOwner = false;
 		//查看集群中是否注册当前任务，如果没有就自动注册
 		String zkPath = this.pathTask + "/" + name;
 		if(this.zkManager.isAutoRegisterTask()){
 			if(this.getZooKeeper().exists(zkPath,false) == null){
-				this.getZooKeeper().create(zkPath, null, this.zkManager.getAcl(),CreateMode.PERSISTENT);
-				if(LOG.isDebugEnabled()){
-					 LOG.debug(uuid +":自动向集群注册任务[" + name + "]");
-				 }
+				try{
+					this.getZooKeeper().create(zkPath, null, this.zkManager.getAcl(),CreateMode.PERSISTENT);
+					if(LOG.isDebugEnabled()){
+						 LOG.debug(uuid +":自动向集群注册任务[" + name + "]");
+					 }
+				}catch(KeeperException.NodeExistsException e){
+					//其他服务器同时注册了该任务
+				}
 			}
 		}
 		//判断是否分配给当前节点
@@ -312,10 +750,58 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
 		if(this.getZooKeeper().exists(zkPath,false) != null){
 			isOwner = true;
 		}
+		this.taskOwnerCache.watchTask(name);
 		return isOwner;
 	}
 
+	@Override
+	public List<Integer> getOwnedShards(String name, String uuid) throws Exception {
+		List<Integer> shards = this.taskOwnerCache.getShards(name, uuid);
+		if(shards != null){
+			return shards;
+		}
+		shards = new ArrayList<Integer>();
+		String zkPath = this.pathTask + "/" + name;
+		if(this.getZooKeeper().exists(zkPath, false) != null){
+			for(String owner:this.getZooKeeper().getChildren(zkPath, false)){
+				int shard = ScheduleUtil.getShardFromOwner(owner);
+				if(shard >= 0 && uuid.equals(ScheduleUtil.getServerFromOwner(owner))){
+					shards.add(shard);
+				}
+			}
+			Collections.sort(shards);
+		}
+		return shards;
+	}
 	
+	/**
+	 * 任务执行前检查：分配纪元已确认时，再判断任务是否分配给当前服务器；
+	 * 纪元尚未确认时不等待，直接跳过本次执行并计数，不占用执行线程
+	 */
+	@Override
+	public long getFencingToken(String name, String uuid) throws Exception {
+		long epoch = this.taskOwnerCache.getEpoch();
+		if(epoch < 0){
+			this.unconfirmedSkipCount.incrementAndGet();
+			//每次纪元未确认期间只警告一次，跳过次数见unconfirmedSkipCount
+			if(this.unconfirmedWarned.compareAndSet(false, true)){
+				LOG.warn("分配纪元尚未确认，暂停执行任务：" + name);
+			}else if(LOG.isDebugEnabled()){
+				LOG.debug("分配纪元尚未确认，跳过本次执行：" + name);
+			}
+			return -1;
+		}
+		this.unconfirmedWarned.set(false);
+		if(isOwner(name, uuid) == false){
+			return -1;
+		}
+		//判断期间纪元发生变化，归属可能已经失效
+		if(epoch != this.taskOwnerCache.getEpoch()){
+			return -1;
+		}
+		return epoch;
+	}
+
 	@Override
 	public void addTask(TaskDefine taskDefine) throws Exception {
 		String zkPath = this.pathTask;
@@ -339,6 +825,14 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
 				ZKTools.deleteTree(this.getZooKeeper(), zkPath);
 			}
 		}
+		String prefix = URLEncoder.encode(targetBean + "#" + targetMethod, "UTF-8") + FIRE_SEPARATOR;
+		if(this.getZooKeeper().exists(this.pathFire, false) != null){
+			for(String child:this.getZooKeeper().getChildren(this.pathFire, false)){
+				if(child.startsWith(prefix)){
+					deleteFireNode(this.getZooKeeper(), child);
+				}
+			}
+		}
 	}
 	
 	@Override
@@ -362,8 +856,10 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
 					}
 				}
 				List<String> sers = this.getZooKeeper().getChildren(zkPath+"/"+child, false);
-				if(sers != null){
-					taskDefine.setCurrentServer(sers.get(0));
+				if(sers != null && sers.size() > 0){
+					//分片任务显示所有分片的分配节点
+					Collections.sort(sers);
+					taskDefine.setCurrentServer(StringUtils.join(sers, ","));
 				}
 				taskDefines.add(taskDefine);
 			}
@@ -371,41 +867,79 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
 		return taskDefines;
 	}
 
+	/**
+	 * 增量核对本地任务：只处理归属或定义版本发生变化的任务，未变化的任务不访问zookeeper
+	 */
 	@Override
 	public boolean checkLocalTask(String currentUuid) throws Exception {
-		if(this.zkManager.checkZookeeperState()){
-			 String zkPath = this.pathTask;
-			 List<String> children = this.getZooKeeper().getChildren(zkPath, false);
-			 List<String> ownerTask = new ArrayList<String>();
-			 if(null != children && children.size() > 0){
-				 for(int i = 0; i < children.size(); i++){
-					 String taskName = children.get(i);
-					 if (isOwner(taskName, currentUuid)) {
-						 String taskPath = zkPath + "/" + taskName;
-						 byte[] data = this.getZooKeeper().getData(taskPath, null, null);
-						 if (null != data) {
-							 String json = new String(data);
-							 TaskDefine taskDefine = this.gson.fromJson(json, TaskDefine.class);
-							 ownerTask.add(taskName);
-							 DynamicTaskManager.scheduleTask(taskDefine, new Date(getSystemTime()));
-						 }
-					 }                                                 
-				 }
-			 }
-			 DynamicTaskManager.clearLocalTask(ownerTask);
+		if(this.zkManager.checkZookeeperState() == false){
+			return false;
 		}
-		return false;
+		ensureOwnerWatching();
+		if(currentUuid.equals(this.reconcileUuid) == false){
+			//服务器编号变化（重新注册），全量核对一次
+			this.reconcileUuid = currentUuid;
+			this.taskOwnerCache.markAllDirty();
+			for(String name:this.localTaskVersions.keySet()){
+				reconcileLocalTask(name, currentUuid);
+			}
+		}
+		boolean changed = false;
+		for(String name:this.taskOwnerCache.drainDirtyTasks()){
+			if(reconcileLocalTask(name, currentUuid)){
+				changed = true;
+			}
+		}
+		return changed;
 	}
-
 	
+	private boolean reconcileLocalTask(String name, String currentUuid) throws Exception {
+		Boolean owner = this.taskOwnerCache.isOwner(name, currentUuid);
+		Integer appliedVersion = this.localTaskVersions.get(name);
+		if(owner == null || owner == false){
+			if(appliedVersion != null){
+				this.localTaskVersions.remove(name);
+				DynamicTaskManager.cancelTask(name);
+				return true;
+			}
+			return false;
+		}
+		Integer version = this.taskOwnerCache.getDataVersion(name);
+		if(appliedVersion != null && appliedVersion.equals(version)){
+			return false;
+		}
+		Stat stat = new Stat();
+		byte[] data = null;
+		try{
+			data = this.getZooKeeper().getData(this.pathTask + "/" + name, null, stat);
+		}catch(KeeperException.NoNodeException e){
+			if(appliedVersion != null){
+				this.localTaskVersions.remove(name);
+				DynamicTaskManager.cancelTask(name);
+				return true;
+			}
+			return false;
+		}
+		if (null != data) {
+			 String json = new String(data);
+			 TaskDefine taskDefine = this.gson.fromJson(json, TaskDefine.class);
+			 boolean scheduled;
+			 if(appliedVersion != null){
+				 scheduled = DynamicTaskManager.rescheduleTask(taskDefine, new Date(getSystemTime()));
+			 }else{
+				 scheduled = DynamicTaskManager.scheduleTask(taskDefine, new Date(getSystemTime()));
+			 }
+			 if(scheduled == false){
+				 //目标bean尚未创建等原因未能调度，不记录版本，下次核对时重试
+				 this.localTaskVersions.remove(name);
+				 this.taskOwnerCache.markDirty(name);
+				 return appliedVersion != null;
+			 }
+		}else if(appliedVersion != null){
+			DynamicTaskManager.cancelTask(name);
+		}
+		this.localTaskVersions.put(name, stat.getVersion());
+		return true;
+	}
 
-	
-
-	
-
-
-}
-
-
-
- 
\ No newline at end of file
+}
\ No newline at end of file
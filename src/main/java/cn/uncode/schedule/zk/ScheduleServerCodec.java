@@ -0,0 +1,112 @@
+package cn.uncode.schedule.zk;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.sql.Timestamp;
+
+/**
+ * 心跳数据编码
+ * 
+ * 心跳只写入会变化的字段，采用固定布局的二进制格式：
+ * 魔数'U''H'(2) + 格式版本(1) + 保留(1) + 数据版本号(8) + 心跳时间(8) + 最后取数时间(8) + 处理描述长度(2) + 处理描述(UTF-8)。
+ * 服务器名称、IP、注册时间等静态信息只在注册时写入一次。
+ * 
+ * @author juny.ye
+ * 
+ */
+public class ScheduleServerCodec {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte MAGIC_0 = 'U';
+	private static final byte MAGIC_1 = 'H';
+	private static final byte FORMAT_VERSION = 1;
+	private static final int HEADER_LENGTH = 4;
+	private static final int VERSION_OFFSET = HEADER_LENGTH;
+	private static final int HEART_BEAT_TIME_OFFSET = VERSION_OFFSET + 8;
+	private static final int FIXED_LENGTH = HEADER_LENGTH + 8 + 8 + 8 + 2;
+	private static final int MAX_DESC_LENGTH = 4096;
+
+	public static byte[] encodeHeartBeat(ScheduleServer server) {
+		byte[] desc = null;
+		if (server.getDealInfoDesc() != null) {
+			desc = server.getDealInfoDesc().getBytes(UTF8);
+			if (desc.length > MAX_DESC_LENGTH) {
+				byte[] truncated = new byte[MAX_DESC_LENGTH];
+				System.arraycopy(desc, 0, truncated, 0, MAX_DESC_LENGTH);
+				desc = truncated;
+			}
+		}
+		int descLength = desc == null ? 0 : desc.length;
+		ByteBuffer buffer = ByteBuffer.allocate(FIXED_LENGTH + descLength);
+		buffer.put(MAGIC_0).put(MAGIC_1).put(FORMAT_VERSION).put((byte) 0);
+		buffer.putLong(server.getVersion());
+		buffer.putLong(server.getHeartBeatTime() == null ? -1 : server.getHeartBeatTime().getTime());
+		buffer.putLong(server.getLastFetchDataTime() == null ? -1 : server.getLastFetchDataTime().getTime());
+		buffer.putShort((short) descLength);
+		if (desc != null) {
+			buffer.put(desc);
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * 是否为心跳数据格式
+	 * 
+	 * @param data
+	 * @return
+	 */
+	public static boolean isHeartBeat(byte[] data) {
+		return data != null && data.length >= FIXED_LENGTH && data[0] == MAGIC_0 && data[1] == MAGIC_1
+				&& data[2] == FORMAT_VERSION;
+	}
+
+	/**
+	 * 将心跳数据解码到服务器信息中
+	 * 
+	 * @param data
+	 * @param server
+	 * @return 不是心跳数据格式时返回false
+	 */
+	public static boolean decodeHeartBeat(byte[] data, ScheduleServer server) {
+		if (isHeartBeat(data) == false) {
+			return false;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		buffer.position(HEADER_LENGTH);
+		server.setVersion(buffer.getLong());
+		long heartBeatTime = buffer.getLong();
+		server.setHeartBeatTime(heartBeatTime < 0 ? null : new Timestamp(heartBeatTime));
+		long lastFetchDataTime = buffer.getLong();
+		server.setLastFetchDataTime(lastFetchDataTime < 0 ? null : new Timestamp(lastFetchDataTime));
+		int descLength = buffer.getShort() & 0xffff;
+		if (descLength > 0) {
+			server.setDealInfoDesc(new String(data, FIXED_LENGTH, descLength, UTF8));
+		} else {
+			server.setDealInfoDesc(null);
+		}
+		return true;
+	}
+
+	/**
+	 * 比较两次心跳除数据版本号和心跳时间之外的内容是否相同
+	 * 
+	 * @param data1
+	 * @param data2
+	 * @return
+	 */
+	public static boolean isSameState(byte[] data1, byte[] data2) {
+		if (data1 == null || data2 == null || data1.length != data2.length) {
+			return false;
+		}
+		for (int i = 0; i < data1.length; i++) {
+			if (i >= VERSION_OFFSET && i < HEART_BEAT_TIME_OFFSET + 8) {
+				continue;
+			}
+			if (data1[i] != data2[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,127 @@
+package cn.uncode.schedule.zk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.zookeeper.AsyncCallback.ChildrenCallback;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 调度服务器列表本地缓存
+ *
+ * 通过/server子节点watch维护按注册序号排序的服务器列表，读取服务器列表时不访问zookeeper。
+ *
+ * @author juny.ye
+ *
+ */
+public class ServerListCache {
+	private static final transient Logger LOG = LoggerFactory.getLogger(ServerListCache.class);
+
+	/**
+	 * 按服务器名称中最后一个$之后的注册序号排序
+	 */
+	public static final Comparator<String> SEQUENCE_COMPARATOR = new Comparator<String>() {
+		public int compare(String u1, String u2) {
+			return u1.substring(u1.lastIndexOf("$") + 1).compareTo(
+					u2.substring(u2.lastIndexOf("$") + 1));
+		}
+	};
+
+	private final ZKManager zkManager;
+	private final String pathServer;
+
+	/**
+	 * 排序后的服务器列表，不可变，变更时整体替换
+	 */
+	private volatile List<String> serverList = Collections.emptyList();
+
+	private volatile ZooKeeper watchedZooKeeper;
+	private volatile boolean needResync = true;
+	private volatile boolean loaded = false;
+
+	private final Watcher serverWatcher = new Watcher() {
+		public void process(WatchedEvent event) {
+			if (event.getType() == EventType.NodeChildrenChanged) {
+				loadServerList(watchedZooKeeper);
+			}
+		}
+	};
+
+	private final ChildrenCallback serverCallback = new ChildrenCallback() {
+		public void processResult(int rc, String path, Object ctx, List<String> children) {
+			if (rc == Code.OK.intValue()) {
+				List<String> servers = new ArrayList<String>(children);
+				Collections.sort(servers, SEQUENCE_COMPARATOR);
+				serverList = Collections.unmodifiableList(servers);
+				loaded = true;
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("调度服务器列表变化：" + serverList);
+				}
+			} else {
+				needResync = true;
+			}
+		}
+	};
+
+	public ServerListCache(ZKManager zkManager, String pathServer) {
+		this.zkManager = zkManager;
+		this.pathServer = pathServer;
+	}
+
+	/**
+	 * 检查watch是否注册在当前会话上，会话重建或读取失败后重新同步
+	 *
+	 * @throws Exception
+	 */
+	public synchronized void ensureWatching() throws Exception {
+		if (this.zkManager.checkZookeeperState() == false) {
+			return;
+		}
+		ZooKeeper zk = this.zkManager.getZooKeeper();
+		if (zk != this.watchedZooKeeper || this.needResync) {
+			this.watchedZooKeeper = zk;
+			this.needResync = false;
+			loadServerList(zk);
+		}
+	}
+
+	/**
+	 * 本地列表是否实时：已加载且watch注册在当前会话上
+	 *
+	 * @return
+	 */
+	public boolean isLive() {
+		try {
+			return this.loaded && this.needResync == false && this.watchedZooKeeper != null
+					&& this.zkManager.checkZookeeperState()
+					&& this.zkManager.getZooKeeper() == this.watchedZooKeeper;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	/**
+	 * 按注册序号排序的服务器列表，返回的列表不可修改
+	 *
+	 * @return
+	 */
+	public List<String> getServerList() {
+		return this.serverList;
+	}
+
+	private void loadServerList(ZooKeeper zk) {
+		if (zk == null) {
+			return;
+		}
+		zk.getChildren(this.pathServer, this.serverWatcher, this.serverCallback, null);
+	}
+
+}
@@ -34,6 +34,41 @@ public class TaskDefine {
 	 */
 	private long period;
 	
+	/**
+	 * 分片数量，大于1时任务拆分为多个分片分配到不同的服务器，目标方法需要接收（分片序号, 分片总数）两个int参数
+	 */
+	private int shardCount;
+	
+	/**
+	 * 数据处理任务每批取数据的条数，默认100
+	 */
+	private int fetchSize;
+	
+	/**
+	 * 数据处理任务的处理线程数，默认1
+	 */
+	private int threadNum;
+	
+	/**
+	 * 数据处理任务等待处理的最大批次数，超过时暂停取数据，默认与处理线程数相同
+	 */
+	private int queueSize;
+	
+	/**
+	 * 执行组名称，为空时使用默认执行组
+	 */
+	private String executorGroup;
+	
+	/**
+	 * 触发时间打散策略：none、hash、random，为空时使用调度器的全局配置
+	 */
+	private String spreadPolicy;
+	
+	/**
+	 * 触发时间打散窗口（毫秒）
+	 */
+	private long spreadWindow;
+	
 	private String currentServer;
 	
 	
@@ -85,6 +120,70 @@ public class TaskDefine {
 		this.period = period;
 	}
 
+	public int getShardCount() {
+		return shardCount;
+	}
+
+	public void setShardCount(int shardCount) {
+		this.shardCount = shardCount;
+	}
+
+	/**
+	 * 是否为分片任务
+	 * @return
+	 */
+	public boolean isSharded() {
+		return shardCount > 1;
+	}
+
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	public int getThreadNum() {
+		return threadNum;
+	}
+
+	public void setThreadNum(int threadNum) {
+		this.threadNum = threadNum;
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	public String getExecutorGroup() {
+		return executorGroup;
+	}
+
+	public void setExecutorGroup(String executorGroup) {
+		this.executorGroup = executorGroup;
+	}
+
+	public String getSpreadPolicy() {
+		return spreadPolicy;
+	}
+
+	public void setSpreadPolicy(String spreadPolicy) {
+		this.spreadPolicy = spreadPolicy;
+	}
+
+	public long getSpreadWindow() {
+		return spreadWindow;
+	}
+
+	public void setSpreadWindow(long spreadWindow) {
+		this.spreadWindow = spreadWindow;
+	}
+
 	public String getCurrentServer() {
 		return currentServer;
 	}
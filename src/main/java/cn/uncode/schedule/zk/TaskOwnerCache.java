@@ -0,0 +1,527 @@
+package cn.uncode.schedule.zk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.zookeeper.AsyncCallback.ChildrenCallback;
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cn.uncode.schedule.util.ScheduleUtil;
+
+/**
+ * 任务归属本地缓存
+ *
+ * 通过zookeeper子节点watch维护/task/任务名称/服务器 的分配关系，任务触发时只读内存，不再访问zookeeper。
+ * watch在zookeeper的事件线程中异步刷新，会话重建后由心跳线程调用{@link #ensureWatching()}重新注册。
+ * 同时记录任务定义的数据版本，归属或定义发生变化的任务进入变更集合，供本地任务增量核对。
+ * 使用分配文档时不watch任务树，由{@link AssignmentDocumentStore}调用{@link #applyAssignment(AssignmentDocument)}整体更新。
+ *
+ * 另外watch分配纪元节点：纪元变化的通知到达时立即进入待确认状态，任务归属在新纪元下重新确认之前不允许执行任务，
+ * 确认后的纪元作为任务执行的防护令牌。任务树模式下，zookeeper保证同一会话的事件和响应按顺序到达，
+ * 读取到新纪元后再发出一个空读请求，其响应到达时该纪元引起的归属变化都已应用到本地视图。
+ *
+ * @author juny.ye
+ *
+ */
+public class TaskOwnerCache {
+	private static final transient Logger LOG = LoggerFactory.getLogger(TaskOwnerCache.class);
+
+	private final ZKManager zkManager;
+	private final String pathTask;
+	private final String pathEpoch;
+
+	/**
+	 * 是否通过watch任务树维护归属关系，为false时由分配文档更新
+	 */
+	private final boolean watchTaskTree;
+
+	/**
+	 * 任务名称 -> 分配的服务器集合，集合不可变，变更时整体替换
+	 */
+	private final Map<String, Set<String>> taskOwners = new ConcurrentHashMap<String, Set<String>>();
+
+	/**
+	 * 任务名称 -> 任务定义节点的数据版本
+	 */
+	private final Map<String, Integer> taskDataVersions = new ConcurrentHashMap<String, Integer>();
+
+	/**
+	 * 归属或定义发生变化，尚未被本地核对处理的任务
+	 */
+	private final Set<String> dirtyTasks = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * 当前注册watch的zookeeper实例，会话重建后实例会变化
+	 */
+	private volatile ZooKeeper watchedZooKeeper;
+
+	/**
+	 * 异步读取失败时置位，下次心跳重新同步
+	 */
+	private volatile boolean needResync = true;
+
+	/**
+	 * 最后一次确认本地视图与zookeeper一致的时间
+	 */
+	private volatile long lastSyncTime = 0;
+
+	/**
+	 * 已确认的分配纪元，-1表示尚未确认
+	 */
+	private volatile long epoch = -1;
+
+	/**
+	 * 纪元变化尚未确认
+	 */
+	private volatile boolean epochPending = true;
+
+	/**
+	 * 纪元变化通知的计数，用于丢弃被更新的通知覆盖的确认，由epochLock保护
+	 */
+	private int epochChanges = 0;
+
+	/**
+	 * 分配文档模式下已应用文档的纪元
+	 */
+	private volatile long documentEpoch = -1;
+
+	/**
+	 * 分配文档模式下等待文档的纪元读取结果
+	 */
+	private volatile EpochRead awaitingDocument;
+
+	private final Object epochLock = new Object();
+
+	private final Watcher epochWatcher = new Watcher() {
+		public void process(WatchedEvent event) {
+			if (event.getType() == EventType.NodeDataChanged) {
+				markEpochChanged();
+				loadEpoch(watchedZooKeeper);
+			}
+		}
+	};
+
+	private final DataCallback epochCallback = new DataCallback() {
+		public void processResult(int rc, String path, Object ctx, byte[] data, Stat stat) {
+			if (rc != Code.OK.intValue()) {
+				needResync = true;
+				return;
+			}
+			EpochRead read = new EpochRead((Integer) ctx, AssignmentEpoch.decode(data));
+			if (watchTaskTree) {
+				ZooKeeper zk = watchedZooKeeper;
+				if (zk != null) {
+					zk.exists(pathEpoch, false, epochBarrierCallback, read);
+				}
+			} else if (documentEpoch >= read.epoch) {
+				confirmEpoch(read);
+			} else {
+				awaitingDocument = read;
+			}
+		}
+	};
+
+	private final StatCallback epochBarrierCallback = new StatCallback() {
+		public void processResult(int rc, String path, Object ctx, Stat stat) {
+			if (rc == Code.OK.intValue()) {
+				confirmEpoch((EpochRead) ctx);
+			} else {
+				needResync = true;
+			}
+		}
+	};
+
+	private final Watcher taskListWatcher = new Watcher() {
+		public void process(WatchedEvent event) {
+			if (event.getType() == EventType.NodeChildrenChanged) {
+				loadTaskList(watchedZooKeeper, false);
+			}
+		}
+	};
+
+	private final Watcher taskWatcher = new Watcher() {
+		public void process(WatchedEvent event) {
+			if (event.getPath() == null || event.getPath().length() <= pathTask.length()) {
+				return;
+			}
+			String name = event.getPath().substring(pathTask.length() + 1);
+			if (event.getType() == EventType.NodeChildrenChanged) {
+				loadTask(watchedZooKeeper, name);
+			} else if (event.getType() == EventType.NodeDeleted) {
+				removeTask(name);
+			}
+		}
+	};
+
+	private final Watcher taskDataWatcher = new Watcher() {
+		public void process(WatchedEvent event) {
+			if (event.getPath() == null || event.getPath().length() <= pathTask.length()) {
+				return;
+			}
+			String name = event.getPath().substring(pathTask.length() + 1);
+			if (event.getType() == EventType.NodeDataChanged) {
+				loadTaskData(watchedZooKeeper, name);
+			} else if (event.getType() == EventType.NodeDeleted) {
+				removeTask(name);
+			}
+		}
+	};
+
+	private final ChildrenCallback taskListCallback = new ChildrenCallback() {
+		public void processResult(int rc, String path, Object ctx, List<String> children) {
+			if (rc != Code.OK.intValue()) {
+				if (rc != Code.NONODE.intValue()) {
+					needResync = true;
+				}
+				return;
+			}
+			boolean rearmAll = (Boolean) ctx;
+			ZooKeeper zk = watchedZooKeeper;
+			Set<String> names = new HashSet<String>(children);
+			for (String name : taskOwners.keySet()) {
+				if (!names.contains(name)) {
+					removeTask(name);
+				}
+			}
+			for (String name : children) {
+				if (rearmAll || !taskOwners.containsKey(name)) {
+					loadTask(zk, name);
+					loadTaskData(zk, name);
+				}
+			}
+			lastSyncTime = System.currentTimeMillis();
+		}
+	};
+
+	private final ChildrenCallback taskCallback = new ChildrenCallback() {
+		public void processResult(int rc, String path, Object ctx, List<String> children) {
+			String name = (String) ctx;
+			if (rc == Code.OK.intValue()) {
+				taskOwners.put(name, Collections.unmodifiableSet(new HashSet<String>(children)));
+				dirtyTasks.add(name);
+				lastSyncTime = System.currentTimeMillis();
+			} else if (rc == Code.NONODE.intValue()) {
+				removeTask(name);
+			} else {
+				needResync = true;
+			}
+		}
+	};
+
+	private final StatCallback taskDataCallback = new StatCallback() {
+		public void processResult(int rc, String path, Object ctx, Stat stat) {
+			String name = (String) ctx;
+			if (rc == Code.OK.intValue()) {
+				Integer old = taskDataVersions.put(name, stat.getVersion());
+				if (old == null || old.intValue() != stat.getVersion()) {
+					dirtyTasks.add(name);
+				}
+			} else if (rc == Code.NONODE.intValue()) {
+				removeTask(name);
+			} else {
+				needResync = true;
+			}
+		}
+	};
+
+	public TaskOwnerCache(ZKManager zkManager, String pathTask, String pathEpoch) {
+		this(zkManager, pathTask, pathEpoch, true);
+	}
+
+	public TaskOwnerCache(ZKManager zkManager, String pathTask, String pathEpoch, boolean watchTaskTree) {
+		this.zkManager = zkManager;
+		this.pathTask = pathTask;
+		this.pathEpoch = pathEpoch;
+		this.watchTaskTree = watchTaskTree;
+	}
+
+	/**
+	 * 检查watch是否注册在当前会话上，会话重建或读取失败后全量重新同步
+	 *
+	 * @throws Exception
+	 */
+	public synchronized void ensureWatching() throws Exception {
+		if (this.zkManager.checkZookeeperState() == false) {
+			return;
+		}
+		ZooKeeper zk = this.zkManager.getZooKeeper();
+		if (zk != this.watchedZooKeeper || this.needResync) {
+			boolean rearmAll = zk != this.watchedZooKeeper;
+			this.watchedZooKeeper = zk;
+			this.needResync = false;
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("重新同步任务归属缓存：" + this.pathTask);
+			}
+			markEpochChanged();
+			if (this.watchTaskTree) {
+				loadTaskList(zk, rearmAll);
+			}
+			loadEpoch(zk);
+		} else if (this.watchTaskTree) {
+			this.lastSyncTime = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * 查询本地视图中任务是否分配给指定服务器
+	 *
+	 * @param name 任务名称
+	 * @param uuid 服务器编号
+	 * @return 本地视图中没有该任务时返回null
+	 */
+	public Boolean isOwner(String name, String uuid) {
+		Set<String> owners = this.taskOwners.get(name);
+		if (owners == null) {
+			return null;
+		}
+		if (owners.contains(uuid)) {
+			return true;
+		}
+		for (String owner : owners) {
+			if (ScheduleUtil.getShardFromOwner(owner) >= 0 && uuid.equals(ScheduleUtil.getServerFromOwner(owner))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 分片任务中分配给指定服务器的分片序号
+	 *
+	 * @param name 任务名称
+	 * @param uuid 服务器编号
+	 * @return 按序号排列，本地视图中没有该任务时返回null
+	 */
+	public List<Integer> getShards(String name, String uuid) {
+		Set<String> owners = this.taskOwners.get(name);
+		if (owners == null) {
+			return null;
+		}
+		List<Integer> shards = new ArrayList<Integer>();
+		for (String owner : owners) {
+			int shard = ScheduleUtil.getShardFromOwner(owner);
+			if (shard >= 0 && uuid.equals(ScheduleUtil.getServerFromOwner(owner))) {
+				shards.add(shard);
+			}
+		}
+		Collections.sort(shards);
+		return shards;
+	}
+
+	/**
+	 * 已确认的分配纪元，纪元变化尚未确认时返回-1
+	 *
+	 * @return
+	 */
+	public long getEpoch() {
+		return this.epochPending ? -1 : this.epoch;
+	}
+
+	/**
+	 * 主动加载单个任务的归属信息，用于刚自动注册的任务
+	 *
+	 * @param name
+	 */
+	public void watchTask(String name) {
+		ZooKeeper zk = this.watchedZooKeeper;
+		if (zk != null && this.watchTaskTree) {
+			loadTask(zk, name);
+			loadTaskData(zk, name);
+		}
+	}
+
+	/**
+	 * 应用Leader发布的分配文档，归属或定义版本变化的任务进入变更集合
+	 *
+	 * @param document
+	 */
+	public synchronized void applyAssignment(AssignmentDocument document) {
+		Map<String, List<String>> taskServers = document.getTaskServers();
+		for (String name : this.taskOwners.keySet()) {
+			if (!taskServers.containsKey(name)) {
+				removeTask(name);
+			}
+		}
+		for (Map.Entry<String, List<String>> entry : taskServers.entrySet()) {
+			String name = entry.getKey();
+			Set<String> owners = new HashSet<String>(entry.getValue());
+			Set<String> old = this.taskOwners.get(name);
+			if (old == null || !old.equals(owners)) {
+				this.taskOwners.put(name, Collections.unmodifiableSet(owners));
+				this.dirtyTasks.add(name);
+			}
+			Integer version = document.getTaskVersions().get(name);
+			if (version != null) {
+				Integer oldVersion = this.taskDataVersions.put(name, version);
+				if (oldVersion == null || oldVersion.intValue() != version.intValue()) {
+					this.dirtyTasks.add(name);
+				}
+			}
+		}
+		this.lastSyncTime = System.currentTimeMillis();
+		this.documentEpoch = document.getEpoch();
+		EpochRead read = this.awaitingDocument;
+		if (read != null && this.documentEpoch >= read.epoch) {
+			this.awaitingDocument = null;
+			confirmEpoch(read);
+		}
+	}
+
+	/**
+	 * 任务定义节点的数据版本
+	 *
+	 * @param name
+	 * @return 尚未读取时返回null
+	 */
+	public Integer getDataVersion(String name) {
+		return this.taskDataVersions.get(name);
+	}
+
+	/**
+	 * 取出并清空变更任务集合
+	 *
+	 * @return
+	 */
+	public List<String> drainDirtyTasks() {
+		List<String> names = new ArrayList<String>();
+		for (String name : this.dirtyTasks) {
+			this.dirtyTasks.remove(name);
+			names.add(name);
+		}
+		return names;
+	}
+
+	/**
+	 * 将任务重新标记为变更，用于本次核对未能完成的任务在下次核对时重试
+	 *
+	 * @param name 任务名称
+	 */
+	public void markDirty(String name) {
+		this.dirtyTasks.add(name);
+	}
+
+	/**
+	 * 将所有已知任务标记为变更，用于当前服务器编号变化后全量核对
+	 */
+	public void markAllDirty() {
+		this.dirtyTasks.addAll(this.taskOwners.keySet());
+	}
+
+	/**
+	 * 本地视图是否实时：zookeeper连接正常且watch注册在当前会话上
+	 *
+	 * @return
+	 */
+	public boolean isLive() {
+		try {
+			return this.needResync == false && this.watchedZooKeeper != null
+					&& this.zkManager.checkZookeeperState()
+					&& this.zkManager.getZooKeeper() == this.watchedZooKeeper;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	/**
+	 * 本地视图的陈旧时间，实时时返回0，否则返回距离最后一次同步的毫秒数，从未同步返回-1
+	 *
+	 * @return
+	 */
+	public long getStaleness() {
+		if (this.lastSyncTime == 0) {
+			return -1;
+		}
+		if (isLive()) {
+			return 0;
+		}
+		return System.currentTimeMillis() - this.lastSyncTime;
+	}
+
+	public long getLastSyncTime() {
+		return lastSyncTime;
+	}
+
+	public int size() {
+		return this.taskOwners.size();
+	}
+
+	private void loadTaskList(ZooKeeper zk, boolean rearmAll) {
+		if (zk == null) {
+			return;
+		}
+		zk.getChildren(this.pathTask, this.taskListWatcher, this.taskListCallback, rearmAll);
+	}
+
+	private void loadTask(ZooKeeper zk, String name) {
+		if (zk == null) {
+			return;
+		}
+		zk.getChildren(this.pathTask + "/" + name, this.taskWatcher, this.taskCallback, name);
+	}
+
+	private void loadTaskData(ZooKeeper zk, String name) {
+		if (zk == null) {
+			return;
+		}
+		zk.exists(this.pathTask + "/" + name, this.taskDataWatcher, this.taskDataCallback, name);
+	}
+
+	private void loadEpoch(ZooKeeper zk) {
+		if (zk == null) {
+			return;
+		}
+		int changes;
+		synchronized (this.epochLock) {
+			changes = this.epochChanges;
+		}
+		zk.getData(this.pathEpoch, this.epochWatcher, this.epochCallback, changes);
+	}
+
+	private void markEpochChanged() {
+		synchronized (this.epochLock) {
+			this.epochChanges++;
+			this.epochPending = true;
+		}
+	}
+
+	private void confirmEpoch(EpochRead read) {
+		synchronized (this.epochLock) {
+			// 确认期间又收到新的变化通知时，等待新通知的确认
+			if (read.changes == this.epochChanges) {
+				this.epoch = read.epoch;
+				this.epochPending = false;
+			}
+		}
+	}
+
+	private void removeTask(String name) {
+		this.taskOwners.remove(name);
+		this.taskDataVersions.remove(name);
+		this.dirtyTasks.add(name);
+	}
+
+	private static class EpochRead {
+		private final int changes;
+		private final long epoch;
+
+		EpochRead(int changes, long epoch) {
+			this.changes = changes;
+			this.epoch = epoch;
+		}
+	}
+
+}
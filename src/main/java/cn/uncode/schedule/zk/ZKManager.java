@@ -34,8 +34,12 @@ public class ZKManager{
     private List<ACL> acl = new ArrayList<ACL>();
     private Properties properties;
     private boolean isCheckParentPath = true;
+    /**
+     * 连接已主动关闭，不再重连
+     */
+    private volatile boolean closed = false;
     public enum keys {
-        zkConnectString, rootPath, userName, password, zkSessionTimeout, autoRegisterTask, ipBlacklist
+        zkConnectString, rootPath, userName, password, zkSessionTimeout, autoRegisterTask, ipBlacklist, assignStrategy, maxTaskNumOfOneServer, ephemeralServer, assignmentDocument, balanceCoincidentTasks
     }
 
     public ZKManager(Properties aProperties) throws Exception{
@@ -48,7 +52,7 @@ public class ZKManager{
      * @throws Exception
      */
     public synchronized void  reConnection() throws Exception{
-        if (this.zk != null) {
+        if (this.zk != null && this.closed == false) {
             this.zk.close();
             this.zk = null;
             this.connect() ;
@@ -95,6 +99,7 @@ public class ZKManager{
     
     public void close() throws InterruptedException {
         log.info("关闭zookeeper连接");
+        this.closed = true;
         this.zk.close();
     }
     
@@ -119,6 +124,57 @@ public class ZKManager{
     	}
         return true;
     }
+    /**
+     * 任务分配策略：random、leastLoaded、rendezvous或自定义策略类名
+     * @return
+     */
+    public String getAssignStrategy(){
+        return this.properties.getProperty(keys.assignStrategy.toString());
+    }
+    /**
+     * 每台服务器最多分配的任务数，0表示不限制
+     * @return
+     */
+    public int getMaxTaskNumOfOneServer(){
+    	String maxNum = this.properties.getProperty(keys.maxTaskNumOfOneServer.toString());
+    	if(StringUtils.isNotEmpty(maxNum)){
+    		return Integer.parseInt(maxNum);
+    	}
+        return 0;
+    }
+    /**
+     * 是否使用临时节点注册调度服务器，节点失效由zookeeper会话超时自动清除，不再轮询过期服务器
+     * @return
+     */
+    public boolean isEphemeralServer(){
+    	String ephemeralServer = this.properties.getProperty(keys.ephemeralServer.toString());
+    	if(StringUtils.isNotEmpty(ephemeralServer)){
+    		return Boolean.valueOf(ephemeralServer);
+    	}
+        return false;
+    }
+    /**
+     * 是否由Leader发布整体的分配文档，其他服务器只watch文档节点
+     * @return
+     */
+    public boolean isAssignmentDocument(){
+    	String assignmentDocument = this.properties.getProperty(keys.assignmentDocument.toString());
+    	if(StringUtils.isNotEmpty(assignmentDocument)){
+    		return Boolean.valueOf(assignmentDocument);
+    	}
+        return false;
+    }
+    /**
+     * 是否把触发时间相同的任务分配到不同的服务器，默认开启
+     * @return
+     */
+    public boolean isBalanceCoincidentTasks(){
+    	String balanceCoincidentTasks = this.properties.getProperty(keys.balanceCoincidentTasks.toString());
+    	if(StringUtils.isNotEmpty(balanceCoincidentTasks)){
+    		return Boolean.valueOf(balanceCoincidentTasks);
+    	}
+        return true;
+    }
     public boolean checkZookeeperState() throws Exception{
         return zk != null && zk.getState() == States.CONNECTED;
     }
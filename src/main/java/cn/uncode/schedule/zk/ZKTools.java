@@ -3,9 +3,19 @@ package cn.uncode.schedule.zk;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.zookeeper.AsyncCallback.Children2Callback;
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Op;
 import org.apache.zookeeper.ZooKeeper;
 import org.apache.zookeeper.data.ACL;
 import org.apache.zookeeper.data.Stat;
@@ -24,7 +34,11 @@ public class ZKTools {
 			if (str.equals("") == false) {
 				zkPath = zkPath + "/" + str;
 				if (zk.exists(zkPath, false) == null) {
-					zk.create(zkPath, null, acl, createMode);
+					try {
+						zk.create(zkPath, null, acl, createMode);
+					} catch (KeeperException.NodeExistsException e) {
+						// 多个服务器同时启动时由其他服务器创建
+					}
 				}
 			}
 		}
@@ -70,4 +84,169 @@ public class ZKTools {
 	   }
 	   return (String[])dealList.toArray(new String[0]);
    }
+
+   /**
+    * 流水线方式批量读取子节点：所有请求异步发出后统一等待结果，不存在的节点不出现在结果中
+    * 
+    * @param zk
+    * @param paths 节点路径
+    * @param timeout 等待超时时间（毫秒）
+    * @return 路径 -> 子节点列表
+    * @throws Exception
+    */
+   public static Map<String, List<String>> getChildrenPipelined(ZooKeeper zk, List<String> paths, long timeout) throws Exception{
+	   return getChildrenPipelined(zk, paths, timeout, null);
+   }
+   
+   /**
+    * 流水线方式批量读取子节点，同时返回各节点的Stat
+    * 
+    * @param zk
+    * @param paths 节点路径
+    * @param timeout 等待超时时间（毫秒）
+    * @param stats 不为null时放入路径 -> 节点Stat
+    * @return 路径 -> 子节点列表
+    * @throws Exception
+    */
+   public static Map<String, List<String>> getChildrenPipelined(ZooKeeper zk, List<String> paths, long timeout, 
+		   final Map<String, Stat> stats) throws Exception{
+	   final Map<String, List<String>> result = Collections.synchronizedMap(new HashMap<String, List<String>>());
+	   final int[] errorCode = new int[]{Code.OK.intValue()};
+	   final CountDownLatch latch = new CountDownLatch(paths.size());
+	   Children2Callback callback = new Children2Callback() {
+		   public void processResult(int rc, String path, Object ctx, List<String> children, Stat stat) {
+			   if (rc == Code.OK.intValue()) {
+				   result.put(path, children);
+				   if (stats != null) {
+					   synchronized (stats) {
+						   stats.put(path, stat);
+					   }
+				   }
+			   } else if (rc != Code.NONODE.intValue()) {
+				   errorCode[0] = rc;
+			   }
+			   latch.countDown();
+		   }
+	   };
+	   for (String path : paths) {
+		   zk.getChildren(path, false, callback, null);
+	   }
+	   if (latch.await(timeout, TimeUnit.MILLISECONDS) == false) {
+		   throw new Exception("批量读取子节点超时，未完成请求数：" + latch.getCount());
+	   }
+	   if (errorCode[0] != Code.OK.intValue()) {
+		   throw KeeperException.create(Code.get(errorCode[0]));
+	   }
+	   return result;
+   }
+   
+   /**
+    * 流水线方式批量读取节点Stat，不存在的节点不出现在结果中
+    * 
+    * @param zk
+    * @param paths 节点路径
+    * @param timeout 等待超时时间（毫秒）
+    * @return 路径 -> 节点Stat
+    * @throws Exception
+    */
+   public static Map<String, Stat> existsPipelined(ZooKeeper zk, List<String> paths, long timeout) throws Exception{
+	   final Map<String, Stat> result = Collections.synchronizedMap(new HashMap<String, Stat>());
+	   final int[] errorCode = new int[]{Code.OK.intValue()};
+	   final CountDownLatch latch = new CountDownLatch(paths.size());
+	   StatCallback callback = new StatCallback() {
+		   public void processResult(int rc, String path, Object ctx, Stat stat) {
+			   if (rc == Code.OK.intValue()) {
+				   result.put(path, stat);
+			   } else if (rc != Code.NONODE.intValue()) {
+				   errorCode[0] = rc;
+			   }
+			   latch.countDown();
+		   }
+	   };
+	   for (String path : paths) {
+		   zk.exists(path, false, callback, null);
+	   }
+	   if (latch.await(timeout, TimeUnit.MILLISECONDS) == false) {
+		   throw new Exception("批量读取节点状态超时，未完成请求数：" + latch.getCount());
+	   }
+	   if (errorCode[0] != Code.OK.intValue()) {
+		   throw KeeperException.create(Code.get(errorCode[0]));
+	   }
+	   return result;
+   }
+   
+   /**
+    * 流水线方式批量读取节点数据，已删除的节点不出现在结果中
+    * 
+    * @param zk
+    * @param paths 节点路径
+    * @param timeout 等待超时时间（毫秒）
+    * @return 路径 -> 节点数据
+    * @throws Exception
+    */
+   public static Map<String, byte[]> getDataPipelined(ZooKeeper zk, List<String> paths, long timeout) throws Exception{
+	   final Map<String, byte[]> result = Collections.synchronizedMap(new HashMap<String, byte[]>());
+	   final int[] errorCode = new int[]{Code.OK.intValue()};
+	   final CountDownLatch latch = new CountDownLatch(paths.size());
+	   DataCallback callback = new DataCallback() {
+		   public void processResult(int rc, String path, Object ctx, byte[] data, Stat stat) {
+			   if (rc == Code.OK.intValue()) {
+				   result.put(path, data);
+			   } else if (rc != Code.NONODE.intValue()) {
+				   errorCode[0] = rc;
+			   }
+			   latch.countDown();
+		   }
+	   };
+	   for (String path : paths) {
+		   zk.getData(path, false, callback, null);
+	   }
+	   if (latch.await(timeout, TimeUnit.MILLISECONDS) == false) {
+		   throw new Exception("批量读取节点数据超时，未完成请求数：" + latch.getCount());
+	   }
+	   if (errorCode[0] != Code.OK.intValue()) {
+		   throw KeeperException.create(Code.get(errorCode[0]));
+	   }
+	   return result;
+   }
+   
+   /**
+    * 分批以事务方式提交写操作，某一批事务失败时（例如节点被并发修改）逐条重试，忽略节点已存在或已删除的错误
+    * 
+    * @param zk
+    * @param ops 写操作
+    * @param batchSize 每批事务包含的操作数
+    * @return 发出的zookeeper请求数
+    * @throws Exception
+    */
+   public static int multiInBatches(ZooKeeper zk, List<Op> ops, int batchSize) throws Exception{
+	   int requests = 0;
+	   for (int from = 0; from < ops.size(); from += batchSize) {
+		   List<Op> batch = ops.subList(from, Math.min(from + batchSize, ops.size()));
+		   requests++;
+		   try {
+			   zk.multi(batch);
+		   } catch (KeeperException.NoNodeException e) {
+			   requests += applyOneByOne(zk, batch);
+		   } catch (KeeperException.NodeExistsException e) {
+			   requests += applyOneByOne(zk, batch);
+		   }
+	   }
+	   return requests;
+   }
+   
+   private static int applyOneByOne(ZooKeeper zk, List<Op> batch) throws Exception{
+	   int requests = 0;
+	   for (Op op : batch) {
+		   requests++;
+		   try {
+			   zk.multi(Collections.singletonList(op));
+		   } catch (KeeperException.NoNodeException e) {
+			   // 节点已被删除，忽略
+		   } catch (KeeperException.NodeExistsException e) {
+			   // 节点已被创建，忽略
+		   }
+	   }
+	   return requests;
+   }
 }
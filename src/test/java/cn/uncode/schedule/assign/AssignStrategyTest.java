@@ -0,0 +1,140 @@
+package cn.uncode.schedule.assign;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * @author juny.ye
+ */
+public class AssignStrategyTest {
+
+	private static Map<String, List<String>> tasks(int num) {
+		Map<String, List<String>> taskServers = new HashMap<String, List<String>>();
+		for (int i = 0; i < num; i++) {
+			taskServers.put("taskObj#print" + i, new ArrayList<String>());
+		}
+		return taskServers;
+	}
+
+	private static List<String> servers(int num) {
+		List<String> servers = new ArrayList<String>();
+		for (int i = 0; i < num; i++) {
+			servers.add("127.0.0.1$SERVER" + i + "$000000000" + i);
+		}
+		return servers;
+	}
+
+	private static Map<String, List<String>> current(Map<String, String> assignment, List<String> servers) {
+		Map<String, List<String>> taskServers = new HashMap<String, List<String>>();
+		for (Map.Entry<String, String> entry : assignment.entrySet()) {
+			List<String> list = new ArrayList<String>();
+			if (servers.contains(entry.getValue())) {
+				list.add(entry.getValue());
+			}
+			taskServers.put(entry.getKey(), list);
+		}
+		return taskServers;
+	}
+
+	private static Map<String, Integer> loads(Map<String, String> assignment) {
+		Map<String, Integer> loads = new HashMap<String, Integer>();
+		for (String server : assignment.values()) {
+			loads.put(server, loads.containsKey(server) ? loads.get(server) + 1 : 1);
+		}
+		return loads;
+	}
+
+	private static int moved(Map<String, String> before, Map<String, String> after) {
+		int moved = 0;
+		for (Map.Entry<String, String> entry : after.entrySet()) {
+			if (!entry.getValue().equals(before.get(entry.getKey()))) {
+				moved++;
+			}
+		}
+		return moved;
+	}
+
+	@Test
+	public void testLeastLoadedBalance() {
+		List<String> servers = servers(3);
+		Map<String, String> assignment = new LeastLoadedAssignStrategy().assign(tasks(100), servers);
+		assertEquals(100, assignment.size());
+		for (int load : loads(assignment).values()) {
+			assertTrue(load == 33 || load == 34);
+		}
+
+		// 新服务器加入，只迁移超出配额的任务
+		List<String> grown = servers(4);
+		Map<String, String> after = new LeastLoadedAssignStrategy().assign(current(assignment, grown), grown);
+		for (int load : loads(after).values()) {
+			assertEquals(25, load);
+		}
+		assertEquals(25, moved(assignment, after));
+	}
+
+	@Test
+	public void testLeastLoadedMaxNum() {
+		Map<String, String> assignment = new LeastLoadedAssignStrategy(10).assign(tasks(100), servers(3));
+		assertEquals(30, assignment.size());
+	}
+
+	@Test
+	public void testRendezvousMinimalMovement() {
+		List<String> servers = servers(4);
+		Map<String, String> assignment = new RendezvousHashAssignStrategy().assign(tasks(1000), servers);
+		for (int load : loads(assignment).values()) {
+			assertTrue(load > 150 && load < 350);
+		}
+
+		// 服务器退出，只迁移该服务器上的任务
+		List<String> shrunk = new ArrayList<String>(servers);
+		String removed = shrunk.remove(2);
+		Map<String, String> after = new RendezvousHashAssignStrategy().assign(current(assignment, shrunk), shrunk);
+		assertEquals(loads(assignment).get(removed).intValue(), moved(assignment, after));
+
+		// 服务器重新加入，任务回到原来的服务器
+		Map<String, String> back = new RendezvousHashAssignStrategy().assign(current(after, servers), servers);
+		assertEquals(assignment, back);
+	}
+
+	@Test
+	public void testShardSpread() {
+		List<String> servers = servers(3);
+		Map<Integer, String> shards = ShardAssigner.assign("taskObj#reconcile", 8, new HashMap<Integer, String>(), servers, 0);
+		assertEquals(8, shards.size());
+		Map<String, Integer> loads = new HashMap<String, Integer>();
+		for (String server : shards.values()) {
+			loads.put(server, loads.containsKey(server) ? loads.get(server) + 1 : 1);
+		}
+		assertEquals(3, loads.size());
+		for (int load : loads.values()) {
+			assertTrue(load == 2 || load == 3);
+		}
+
+		// 服务器退出，其余服务器上的分片保持不动
+		List<String> shrunk = new ArrayList<String>(servers);
+		String removed = shrunk.remove(0);
+		Map<Integer, String> current = new HashMap<Integer, String>();
+		for (Map.Entry<Integer, String> entry : shards.entrySet()) {
+			if (!entry.getValue().equals(removed)) {
+				current.put(entry.getKey(), entry.getValue());
+			}
+		}
+		Map<Integer, String> after = ShardAssigner.assign("taskObj#reconcile", 8, current, shrunk, 0);
+		assertEquals(8, after.size());
+		for (Map.Entry<Integer, String> entry : current.entrySet()) {
+			assertEquals(entry.getValue(), after.get(entry.getKey()));
+		}
+
+		// 每台服务器最多2个分片
+		assertEquals(6, ShardAssigner.assign("taskObj#reconcile", 8, new HashMap<Integer, String>(), servers, 2).size());
+	}
+
+}
@@ -0,0 +1,101 @@
+package cn.uncode.schedule.assign;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * @author juny.ye
+ */
+public class CoincidenceBalancerTest {
+
+	private static List<String> servers(int num) {
+		List<String> servers = new ArrayList<String>();
+		for (int i = 0; i < num; i++) {
+			servers.add("127.0.0.1$SERVER" + i + "$000000000" + i);
+		}
+		return servers;
+	}
+
+	private static Map<String, Integer> count(Map<String, String> assignment, Map<String, String> fireKeys, String fireKey) {
+		Map<String, Integer> count = new HashMap<String, Integer>();
+		for (Map.Entry<String, String> entry : assignment.entrySet()) {
+			if (fireKey.equals(fireKeys.get(entry.getKey()))) {
+				String server = entry.getValue();
+				count.put(server, count.containsKey(server) ? count.get(server) + 1 : 1);
+			}
+		}
+		return count;
+	}
+
+	private static Map<String, Integer> loads(Map<String, String> assignment) {
+		Map<String, Integer> loads = new HashMap<String, Integer>();
+		for (String server : assignment.values()) {
+			loads.put(server, loads.containsKey(server) ? loads.get(server) + 1 : 1);
+		}
+		return loads;
+	}
+
+	@Test
+	public void testSpreadCoincidentTasksBySwap() {
+		List<String> servers = servers(3);
+		Map<String, String> assignment = new HashMap<String, String>();
+		Map<String, String> fireKeys = new HashMap<String, String>();
+		// 每分钟整点触发的9个任务都在第一台服务器上，其他服务器上是没有触发时间标识的任务
+		for (int i = 0; i < 9; i++) {
+			assignment.put("minute#task" + i, servers.get(0));
+			fireKeys.put("minute#task" + i, "UTC|0 * * * * ?");
+			assignment.put("other#task" + i, servers.get(1 + i % 2));
+		}
+		Map<String, Integer> before = loads(assignment);
+		Map<String, String> result = CoincidenceBalancer.balance(assignment, fireKeys, servers);
+		for (int num : count(result, fireKeys, "UTC|0 * * * * ?").values()) {
+			assertEquals(3, num);
+		}
+		assertEquals(before, loads(result));
+	}
+
+	@Test
+	public void testKeepBalancedAssignment() {
+		List<String> servers = servers(2);
+		Map<String, String> assignment = new HashMap<String, String>();
+		Map<String, String> fireKeys = new HashMap<String, String>();
+		for (int i = 0; i < 4; i++) {
+			assignment.put("hour#task" + i, servers.get(i % 2));
+			fireKeys.put("hour#task" + i, "UTC|0 0 * * * ?");
+		}
+		assertEquals(assignment, CoincidenceBalancer.balance(assignment, fireKeys, servers));
+	}
+
+	@Test
+	public void testSwapRespectsOtherGroups() {
+		List<String> servers = servers(2);
+		Map<String, String> assignment = new HashMap<String, String>();
+		Map<String, String> fireKeys = new HashMap<String, String>();
+		// 两组任务各自集中在一台服务器上，交换后两组都均分
+		for (int i = 0; i < 4; i++) {
+			assignment.put("a#task" + i, servers.get(0));
+			fireKeys.put("a#task" + i, "UTC|0 * * * * ?");
+			assignment.put("b#task" + i, servers.get(1));
+			fireKeys.put("b#task" + i, "UTC|30 * * * * ?");
+		}
+		Map<String, String> result = CoincidenceBalancer.balance(assignment, fireKeys, servers);
+		for (String fireKey : new String[] { "UTC|0 * * * * ?", "UTC|30 * * * * ?" }) {
+			Map<String, Integer> count = count(result, fireKeys, fireKey);
+			assertEquals(2, count.size());
+			for (int num : count.values()) {
+				assertEquals(2, num);
+			}
+		}
+		for (int load : loads(result).values()) {
+			assertTrue(load == 4);
+		}
+	}
+
+}
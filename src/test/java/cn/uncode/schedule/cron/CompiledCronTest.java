@@ -0,0 +1,131 @@
+package cn.uncode.schedule.cron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+import org.springframework.scheduling.support.CronSequenceGenerator;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+/**
+ * @author juny.ye
+ */
+public class CompiledCronTest {
+
+	private static final String[] EXPRESSIONS = { "* * * * * ?", "0 * * * * ?", "0 0 * * * ?", "*/15 * * * * ?",
+			"0 10-40/7 * * * *", "0 30 2 * * ?", "0 0 9-17 * * MON-FRI", "0 0 12 1,15 * ?", "0 0 0 29 2 ?",
+			"0 0 0 31 * ?", "0 15 10 ? JAN-MAR,OCT sat,SUN", "30 45 23 L-1 * ?".replace("L-1", "28-31"),
+			"0 0 0 * * 7", "0 0/5 14,18 * * ?" };
+
+	private static final String[] ZONES = { "UTC", "Asia/Shanghai", "America/New_York", "Europe/London" };
+
+	@Test
+	public void testSameAsSpring() {
+		Random random = new Random(42);
+		long base = 1577836800000L; // 2020-01-01
+		long span = 8L * 365 * 24 * 3600 * 1000;
+		for (String zone : ZONES) {
+			TimeZone timeZone = TimeZone.getTimeZone(zone);
+			for (String expression : EXPRESSIONS) {
+				CronSequenceGenerator expected = new CronSequenceGenerator(expression, timeZone);
+				CompiledCron actual = new CompiledCron(expression);
+				for (int i = 0; i < 300; i++) {
+					long time = base + (long) (random.nextDouble() * span);
+					assertEquals(expression + " " + zone + " after " + new Date(time), expected.next(new Date(time)).getTime(),
+							actual.next(time, timeZone));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSecondsResetWhenMinuteAdvances() {
+		TimeZone timeZone = TimeZone.getTimeZone("UTC");
+		// 2021-01-13 21:06:15 之后的第一个匹配是 21:10:05（spring 4.0的CronSequenceGenerator在此返回21:10:25）
+		assertEquals(1610572205000L, new CompiledCron("5/20 10-40/7 * * * *").next(1610571975000L, timeZone));
+	}
+
+	@Test
+	public void testSequenceAcrossDaylightSaving() {
+		TimeZone timeZone = TimeZone.getTimeZone("America/New_York");
+		for (String expression : new String[] { "0 */30 * * * ?", "0 30 2 * * ?", "0 0 1 * * ?" }) {
+			CronSequenceGenerator expected = new CronSequenceGenerator(expression, timeZone);
+			CronSchedule schedule = CronSchedule.forExpression(expression, timeZone);
+			// 2021-03-13 和 2021-11-06 前后
+			for (long start : new long[] { 1615611600000L, 1636171200000L }) {
+				Date e = new Date(start);
+				long a = start;
+				for (int i = 0; i < 100; i++) {
+					e = expected.next(e);
+					a = schedule.next(a);
+					assertEquals(expression + " step " + i, e.getTime(), a);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSharedWindow() {
+		TimeZone timeZone = TimeZone.getTimeZone("UTC");
+		CronSchedule schedule = CronSchedule.forExpression("0 * * * * ?", timeZone);
+		assertSame(schedule, CronSchedule.forExpression(" 0  * * * *  ? ", timeZone));
+		long start = 1600000000000L;
+		assertEquals(1600000020000L, schedule.next(start));
+		// 窗口内查询
+		assertEquals(1600000080000L, schedule.next(1600000020000L));
+		assertEquals(1600000080000L, schedule.next(1600000079999L));
+		// 早于窗口起点的查询
+		assertEquals(1600000020000L, schedule.next(start - 1000));
+		// 超出窗口后重新计算
+		assertEquals(1600086420000L, schedule.next(1600086400000L));
+	}
+
+	@Test
+	public void testReleaseUnusedSchedule() throws Exception {
+		TimeZone timeZone = TimeZone.getTimeZone("UTC");
+		int before = CronSchedule.size();
+		for (int i = 0; i < 100; i++) {
+			CronSchedule.forExpression("0 " + i % 60 + " " + i / 60 + " * * ?", timeZone);
+		}
+		// 没有触发器持有的实例被回收后，共享表项随之清除
+		long deadline = System.currentTimeMillis() + 10000;
+		while (CronSchedule.size() > before && System.currentTimeMillis() < deadline) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		assertTrue(CronSchedule.size() <= before);
+	}
+
+	@Test
+	public void testTriggerSemantics() {
+		TimeZone timeZone = TimeZone.getDefault();
+		CronTrigger expected = new CronTrigger("*/10 * * * * ?", timeZone);
+		CompiledCronTrigger actual = CompiledCronTrigger.from(expected);
+		Date scheduled = new Date(1600000010000L);
+		SimpleTriggerContext context = new SimpleTriggerContext(scheduled, scheduled, new Date(1600000009500L));
+		assertEquals(expected.nextExecutionTime(context), actual.nextExecutionTime(context));
+		context = new SimpleTriggerContext(scheduled, scheduled, new Date(1600000012300L));
+		assertEquals(expected.nextExecutionTime(context), actual.nextExecutionTime(context));
+		assertEquals("*/10 * * * * ?", actual.getExpression());
+	}
+
+	@Test
+	public void testInvalidExpression() {
+		for (String expression : new String[] { "* * * * *", "60 * * * * ?", "* * * * 13 ?", "*/0 * * * * ?", "a * * * * ?" }) {
+			try {
+				new CompiledCron(expression);
+				fail(expression);
+			} catch (IllegalArgumentException e) {
+				// 与CronSequenceGenerator一致
+			}
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+package cn.uncode.schedule.cron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.junit.Test;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+/**
+ * @author juny.ye
+ */
+public class SpreadTriggerTest {
+
+	private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+	@Test
+	public void testHashOffsetIsStableAndSpread() {
+		FireSpread spread = FireSpread.create(FireSpread.HASH, 30000);
+		Set<Long> offsets = new HashSet<Long>();
+		for (int i = 0; i < 100; i++) {
+			long offset = spread.offset("taskObj#print" + i);
+			assertTrue(offset >= 0 && offset < 30000);
+			assertEquals(offset, spread.offset("taskObj#print" + i));
+			offsets.add(offset);
+		}
+		assertTrue(offsets.size() > 90);
+		assertNull(FireSpread.create(FireSpread.NONE, 30000));
+		assertNull(FireSpread.create(FireSpread.HASH, 0));
+	}
+
+	@Test
+	public void testSpreadWithinWindowWithoutSkipping() {
+		FireSpread spread = FireSpread.create(FireSpread.RANDOM, 50000);
+		SpreadTrigger trigger = new SpreadTrigger(new CompiledCronTrigger("0 * * * * ?", UTC), spread, "taskObj#print");
+		// 2021-01-13 21:06:15 UTC
+		long now = 1610571975000L;
+		SimpleTriggerContext context = new SimpleTriggerContext(null, null, new Date(now));
+		long minute = (now / 60000 + 1) * 60000;
+		for (int i = 0; i < 50; i++) {
+			Date next = trigger.nextExecutionTime(context);
+			assertTrue(next.getTime() >= minute && next.getTime() < minute + 50000);
+			// 任务执行耗时5秒
+			context.update(next, next, new Date(next.getTime() + 5000));
+			minute += 60000;
+		}
+	}
+
+}
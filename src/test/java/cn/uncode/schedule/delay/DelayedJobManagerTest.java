@@ -0,0 +1,244 @@
+package cn.uncode.schedule.delay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author juny.ye
+ */
+public class DelayedJobManagerTest {
+
+	private DelayedJobManager manager;
+
+	private MemoryStore store;
+
+	private final List<String> handled = Collections.synchronizedList(new ArrayList<String>());
+
+	@Before
+	public void setUp() {
+		this.store = new MemoryStore();
+		this.manager = new DelayedJobManager();
+		this.manager.setBeanName("delay");
+		this.manager.setStore(this.store);
+		this.manager.setPartitionCount(2);
+		this.manager.setBucketMs(100);
+		this.manager.setLookaheadMs(200);
+		this.manager.setHandler(new IDelayedJobHandler() {
+			public void handle(String key, String payload) {
+				handled.add(key + "=" + payload);
+			}
+		});
+		this.manager.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.manager.destroy();
+	}
+
+	@Test
+	public void testFireReplaceAndCancel() throws Exception {
+		long now = System.currentTimeMillis();
+		this.manager.submit("a", new Date(now + 150), "1");
+		this.manager.submit("b", new Date(now + 150), "1");
+		this.manager.submit("c", new Date(now + 150), "1");
+		this.manager.submit("a", new Date(now + 250), "2");
+		assertTrue(this.manager.cancel("b"));
+		assertFalse(this.manager.cancel("b"));
+		scanUntil(now + 600);
+		Collections.sort(this.handled);
+		assertEquals("[a=2, c=1]", this.handled.toString());
+		assertEquals(0, this.store.index.size());
+		assertEquals(0, this.manager.getLoadedCount());
+	}
+
+	@Test
+	public void testOnlyNearBucketsLoaded() throws Exception {
+		long now = System.currentTimeMillis();
+		this.manager.submit("near", new Date(now + 50), "1");
+		this.manager.submit("far", new Date(now + 5000), "1");
+		for (int p = 0; p < 2; p++) {
+			this.manager.scan(p, 2);
+		}
+		assertEquals(1, this.manager.getLoadedCount());
+		// 已加载时间格中的任务被其他服务器取消
+		this.store.cancel("near");
+		for (int p = 0; p < 2; p++) {
+			this.manager.scan(p, 2);
+		}
+		assertEquals(0, this.manager.getLoadedCount());
+	}
+
+	@Test
+	public void testUnchangedBucketsNotRelisted() throws Exception {
+		long now = System.currentTimeMillis();
+		this.manager.submit("a", new Date(now + 5000), "1");
+		this.manager.setLookaheadMs(10000);
+		int partition = this.manager.partitionOf("a");
+		this.manager.scan(partition, 2);
+		assertEquals(1, this.manager.getLoadedCount());
+		int listed = this.store.listJobsCalls.get();
+		// 时间格没有变化，只读取版本
+		this.manager.scan(partition, 2);
+		this.manager.scan(partition, 2);
+		assertEquals(listed, this.store.listJobsCalls.get());
+		// 其他服务器取消任务后版本变化，重新读取并卸载
+		this.store.cancel("a");
+		this.manager.scan(partition, 2);
+		assertEquals(listed + 1, this.store.listJobsCalls.get());
+		assertEquals(0, this.manager.getLoadedCount());
+	}
+
+	@Test
+	public void testRetryOnFailure() throws Exception {
+		final AtomicInteger attempts = new AtomicInteger();
+		final CountDownLatch latch = new CountDownLatch(2);
+		this.manager.setRetryDelay(50);
+		this.manager.setHandler(new IDelayedJobHandler() {
+			public void handle(String key, String payload) throws Exception {
+				latch.countDown();
+				if (attempts.incrementAndGet() == 1) {
+					throw new IllegalStateException("first attempt");
+				}
+			}
+		});
+		long now = System.currentTimeMillis();
+		this.manager.submit("r", new Date(now + 20), "1");
+		long deadline = now + 2000;
+		while (latch.getCount() > 0 && System.currentTimeMillis() < deadline) {
+			for (int p = 0; p < 2; p++) {
+				this.manager.scan(p, 2);
+			}
+			latch.await(20, TimeUnit.MILLISECONDS);
+		}
+		assertEquals(0, latch.getCount());
+	}
+
+	private void scanUntil(long time) throws Exception {
+		while (System.currentTimeMillis() < time) {
+			for (int p = 0; p < 2; p++) {
+				this.manager.scan(p, 2);
+			}
+			Thread.sleep(20);
+		}
+	}
+
+	/**
+	 * 内存存储，模拟zk存储的语义
+	 */
+	private static class MemoryStore implements IDelayedJobStore {
+		private final Map<String, DelayedJob> index = new HashMap<String, DelayedJob>();
+		private final Map<Integer, TreeMap<Long, Map<String, DelayedJob>>> partitions = new HashMap<Integer, TreeMap<Long, Map<String, DelayedJob>>>();
+		private final Map<String, Integer> versions = new HashMap<String, Integer>();
+		private final AtomicInteger listJobsCalls = new AtomicInteger();
+		private int sequence;
+
+		private void changed(int partition, long bucket) {
+			String path = partition + "/" + bucket;
+			Integer version = this.versions.get(path);
+			this.versions.put(path, version == null ? 0 : version + 1);
+		}
+
+		public synchronized void save(DelayedJob job, int partition, long bucket) {
+			cancel(job.getKey());
+			job.setId(job.getKey() + "~" + (++sequence));
+			job.setPartition(partition);
+			job.setBucket(bucket);
+			TreeMap<Long, Map<String, DelayedJob>> buckets = this.partitions.get(partition);
+			if (buckets == null) {
+				buckets = new TreeMap<Long, Map<String, DelayedJob>>();
+				this.partitions.put(partition, buckets);
+			}
+			Map<String, DelayedJob> jobs = buckets.get(bucket);
+			if (jobs == null) {
+				jobs = new HashMap<String, DelayedJob>();
+				buckets.put(bucket, jobs);
+			}
+			jobs.put(job.getId(), job);
+			this.index.put(job.getKey(), job);
+			changed(partition, bucket);
+		}
+
+		public synchronized boolean cancel(String key) {
+			DelayedJob job = this.index.remove(key);
+			if (job == null) {
+				return false;
+			}
+			this.partitions.get(job.getPartition()).get(job.getBucket()).remove(job.getId());
+			changed(job.getPartition(), job.getBucket());
+			return true;
+		}
+
+		public synchronized List<Long> listBuckets(int partition) {
+			TreeMap<Long, Map<String, DelayedJob>> buckets = this.partitions.get(partition);
+			return buckets == null ? new ArrayList<Long>() : new ArrayList<Long>(buckets.keySet());
+		}
+
+		public synchronized Map<Long, Integer> bucketVersions(int partition, List<Long> buckets) {
+			Map<Long, Integer> result = new HashMap<Long, Integer>();
+			TreeMap<Long, Map<String, DelayedJob>> partitionBuckets = this.partitions.get(partition);
+			for (Long bucket : buckets) {
+				if (partitionBuckets != null && partitionBuckets.containsKey(bucket)) {
+					result.put(bucket, this.versions.get(partition + "/" + bucket));
+				}
+			}
+			return result;
+		}
+
+		public synchronized List<String> listJobs(int partition, long bucket) {
+			this.listJobsCalls.incrementAndGet();
+			Map<String, DelayedJob> jobs = this.partitions.get(partition).get(bucket);
+			return jobs == null ? new ArrayList<String>() : new ArrayList<String>(new TreeSet<String>(jobs.keySet()));
+		}
+
+		public synchronized List<DelayedJob> loadJobs(int partition, long bucket, List<String> ids) {
+			List<DelayedJob> result = new ArrayList<DelayedJob>();
+			Map<String, DelayedJob> jobs = this.partitions.get(partition).get(bucket);
+			for (String id : ids) {
+				DelayedJob job = jobs == null ? null : jobs.get(id);
+				if (job != null) {
+					DelayedJob copy = new DelayedJob(job.getKey(), job.getFireTime(), job.getPayload());
+					copy.setId(id);
+					copy.setPartition(partition);
+					copy.setBucket(bucket);
+					result.add(copy);
+				}
+			}
+			return result;
+		}
+
+		public synchronized boolean claim(DelayedJob job) {
+			DelayedJob current = this.index.get(job.getKey());
+			if (current == null || !current.getId().equals(job.getId())) {
+				return false;
+			}
+			return cancel(job.getKey());
+		}
+
+		public synchronized void removeBucket(int partition, long bucket) {
+			Map<String, DelayedJob> jobs = this.partitions.get(partition).get(bucket);
+			if (jobs != null && jobs.isEmpty()) {
+				this.partitions.get(partition).remove(bucket);
+				this.versions.remove(partition + "/" + bucket);
+			}
+		}
+	}
+
+}
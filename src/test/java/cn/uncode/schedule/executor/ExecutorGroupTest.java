@@ -0,0 +1,147 @@
+package cn.uncode.schedule.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author juny.ye
+ */
+public class ExecutorGroupTest {
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private ExecutorGroupManager manager = new ExecutorGroupManager(2);
+
+	@After
+	public void tearDown() {
+		this.release.countDown();
+		this.manager.shutdown();
+	}
+
+	@Test
+	public void testCoalesceRunningTask() throws Exception {
+		ExecutorGroup group = new ExecutorGroup("g", 2, 10);
+		CountDownLatch started = new CountDownLatch(1);
+		assertTrue(group.execute("a#run", blocking(started)));
+		assertTrue(started.await(1, TimeUnit.SECONDS));
+		// 上一次执行未结束，合并本次触发
+		assertFalse(group.execute("a#run", blocking(null)));
+		assertEquals(1, group.getCoalescedCount());
+		assertEquals(1, group.getActiveCount());
+		this.release.countDown();
+		group.shutdown();
+	}
+
+	@Test
+	public void testDiscardAfterShutdown() throws Exception {
+		ExecutorGroup group = new ExecutorGroup("g", 1, 10);
+		final CountDownLatch ran = new CountDownLatch(1);
+		group.shutdown();
+		// 关闭后延迟到达的触发直接丢弃，不重新创建线程池
+		assertFalse(group.execute("a#run", new Runnable() {
+			public void run() {
+				ran.countDown();
+			}
+		}));
+		assertTrue(group.isShutdown());
+		assertEquals(1, group.getRejectedCount());
+		assertFalse(ran.await(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testDiscardWhenQueueFull() throws Exception {
+		ExecutorGroup group = new ExecutorGroup("g", 1, 1);
+		CountDownLatch started = new CountDownLatch(1);
+		assertTrue(group.execute("a#run", blocking(started)));
+		assertTrue(started.await(1, TimeUnit.SECONDS));
+		assertTrue(group.execute("b#run", blocking(null)));
+		assertEquals(1, group.getQueueDepth());
+		assertFalse(group.execute("c#run", blocking(null)));
+		assertEquals(1, group.getRejectedCount());
+		// 被拒绝的任务下次触发可以重新提交
+		this.release.countDown();
+		long deadline = System.currentTimeMillis() + 1000;
+		while (group.getCompletedCount() < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(group.execute("c#run", blocking(null)));
+		group.shutdown();
+	}
+
+	@Test
+	public void testSlowGroupIsolated() throws Exception {
+		ExecutorGroup slow = new ExecutorGroup("slow", 1, 10);
+		slow.setTasks(Arrays.asList("slow#run"));
+		this.manager.addGroup(slow);
+		this.manager.bindTask("fast#run", null);
+		assertSame(slow, this.manager.getGroup("slow#run"));
+		assertEquals(ExecutorGroup.DEFAULT_GROUP, this.manager.getGroup("fast#run").getName());
+		this.manager.bindTask("other#run", "missing");
+		assertEquals(ExecutorGroup.DEFAULT_GROUP, this.manager.getGroup("other#run").getName());
+
+		CountDownLatch started = new CountDownLatch(1);
+		this.manager.getGroup("slow#run").execute("slow#run", blocking(started));
+		assertTrue(started.await(1, TimeUnit.SECONDS));
+		final CountDownLatch fast = new CountDownLatch(1);
+		this.manager.getGroup("fast#run").execute("fast#run", new Runnable() {
+			public void run() {
+				fast.countDown();
+			}
+		});
+		assertTrue(fast.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testMaxInFlightPerTask() throws Exception {
+		ExecutorGroup group = new ExecutorGroup("g", 4, 10);
+		group.setMaxInFlightPerTask(2);
+		assertTrue(group.execute("a#run", blocking(null)));
+		assertTrue(group.execute("a#run", blocking(null)));
+		assertFalse(group.execute("a#run", blocking(null)));
+		assertTrue(group.execute("b#run", blocking(null)));
+		assertEquals(1, group.getCoalescedCount());
+		this.release.countDown();
+		group.shutdown();
+	}
+
+	@Test
+	public void testVirtualThreadsFallback() throws Exception {
+		ExecutorGroup group = new ExecutorGroup("v", 1, 1);
+		group.setVirtualThreads(true);
+		final CountDownLatch done = new CountDownLatch(1);
+		assertTrue(group.execute("a#run", new Runnable() {
+			public void run() {
+				done.countDown();
+			}
+		}));
+		assertTrue(done.await(1, TimeUnit.SECONDS));
+		// 不支持虚拟线程的JVM上退回线程池
+		assertEquals(VirtualThreads.isSupported(), group.isVirtual());
+		group.shutdown();
+	}
+
+	private Runnable blocking(final CountDownLatch started) {
+		return new Runnable() {
+			public void run() {
+				if (started != null) {
+					started.countDown();
+				}
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+	}
+
+}
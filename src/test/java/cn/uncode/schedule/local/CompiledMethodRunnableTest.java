@@ -0,0 +1,117 @@
+package cn.uncode.schedule.local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.util.ReflectionUtils;
+
+import cn.uncode.schedule.quartz.MethodInvokingJobDetailFactoryBean;
+
+/**
+ * @author juny.ye
+ */
+public class CompiledMethodRunnableTest {
+
+	public interface Job {
+		void run();
+	}
+
+	public static class SampleJob implements Job {
+		private final List<String> calls = new ArrayList<String>();
+
+		public void run() {
+			calls.add("run");
+		}
+
+		public int count() {
+			calls.add("count");
+			return calls.size();
+		}
+
+		public void shard(int index, int total) {
+			calls.add(index + "/" + total);
+		}
+
+		public String echo(String value, int times) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < times; i++) {
+				sb.append(value);
+			}
+			return sb.toString();
+		}
+
+		public void fail() throws Exception {
+			throw new Exception("checked");
+		}
+	}
+
+	@Test
+	public void testRunAndShard() {
+		SampleJob job = new SampleJob();
+		new CompiledMethodRunnable(job, ReflectionUtils.findMethod(SampleJob.class, "run")).run();
+		// 返回值被丢弃
+		new CompiledMethodRunnable(job, ReflectionUtils.findMethod(SampleJob.class, "count")).run();
+		new ShardedMethodRunnable(job, ReflectionUtils.findMethod(SampleJob.class, "shard", int.class, int.class), 3)
+				.run(Arrays.asList(0, 2));
+		assertEquals("[run, count, 0/3, 2/3]", job.calls.toString());
+	}
+
+	@Test
+	public void testCheckedExceptionWrapped() {
+		try {
+			new CompiledMethodRunnable(new SampleJob(), ReflectionUtils.findMethod(SampleJob.class, "fail")).run();
+			fail();
+		} catch (UndeclaredThrowableException e) {
+			assertEquals("checked", e.getUndeclaredThrowable().getMessage());
+		}
+	}
+
+	@Test
+	public void testJdkProxyUsesInterfaceMethod() {
+		SampleJob target = new SampleJob();
+		ProxyFactory factory = new ProxyFactory(target);
+		factory.addInterface(Job.class);
+		Object proxy = factory.getProxy();
+		// 目标类上的方法在jdk代理上通过接口方法调用
+		new CompiledMethodRunnable(proxy, ReflectionUtils.findMethod(SampleJob.class, "run")).run();
+		assertEquals("[run]", target.calls.toString());
+		try {
+			new CompiledMethodRunnable(proxy, ReflectionUtils.findMethod(SampleJob.class, "count"));
+			fail();
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("count"));
+		}
+	}
+
+	@Test
+	public void testQuartzInvokerWithArguments() throws Exception {
+		MethodInvokingJobDetailFactoryBean invoker = new MethodInvokingJobDetailFactoryBean();
+		invoker.setTargetObject(new SampleJob());
+		invoker.setTargetMethod("echo");
+		invoker.setArguments(new Object[] { "ab", 3 });
+		invoker.prepare();
+		assertEquals("ababab", invoker.invoke());
+		assertEquals("ababab", invoker.invoke());
+
+		invoker = new MethodInvokingJobDetailFactoryBean();
+		invoker.setTargetObject(new SampleJob());
+		invoker.setTargetMethod("fail");
+		invoker.prepare();
+		try {
+			invoker.invoke();
+			fail();
+		} catch (InvocationTargetException e) {
+			assertEquals("checked", e.getTargetException().getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,83 @@
+package cn.uncode.schedule.local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * @author juny.ye
+ */
+public class TaskRegistryTest {
+
+	public static class Counter {
+		private int count;
+
+		public void run() {
+			count++;
+		}
+	}
+
+	@Test
+	public void testResolveBeanByInstance() throws Exception {
+		GenericApplicationContext context = new GenericApplicationContext();
+		context.getBeanFactory().registerSingleton("first", new Counter());
+		context.getBeanFactory().registerSingleton("second", new Counter());
+		context.refresh();
+		TaskRegistry registry = new TaskRegistry(context);
+		Counter second = (Counter) context.getBean("second");
+		TaskDescriptor descriptor = registry.register(new ScheduledMethodRunnable(second, "run"));
+		// 同类型的第二个bean不会被识别为第一个
+		assertEquals("second#run", descriptor.getName());
+		assertEquals("second", descriptor.getBeanName());
+		assertTrue(descriptor.getTask() instanceof CompiledMethodRunnable);
+		assertSame(descriptor, registry.get("second#run"));
+		descriptor.getTask().run();
+		assertEquals(1, second.count);
+		context.close();
+	}
+
+	@Test
+	public void testShardedAndPlainRunnable() throws Exception {
+		GenericApplicationContext context = new GenericApplicationContext();
+		context.getBeanFactory().registerSingleton("sharded", new CompiledMethodRunnableTest.SampleJob());
+		context.refresh();
+		TaskRegistry registry = new TaskRegistry(context);
+		Object bean = context.getBean("sharded");
+		TaskDescriptor descriptor = registry.register(new ShardedMethodRunnable(bean,
+				ReflectionUtils.findMethod(bean.getClass(), "shard", int.class, int.class), 4));
+		assertEquals("sharded#shard", descriptor.getName());
+		assertNotNull(descriptor.getShardedTask());
+		context.close();
+	}
+
+	@Test
+	public void testUnresolvedTaskStaysInCluster() throws Exception {
+		GenericApplicationContext context = new GenericApplicationContext();
+		context.refresh();
+		TaskRegistry registry = new TaskRegistry(context);
+		// 找不到bean时按声明类推导名称，仍然参与集群分配
+		TaskDescriptor descriptor = registry.register(new ScheduledMethodRunnable(new Counter(), "run"));
+		assertEquals("taskRegistryTest.Counter#run", descriptor.getName());
+		assertSame(descriptor, registry.get("taskRegistryTest.Counter#run"));
+
+		Runnable plain = new Runnable() {
+			public void run() {
+			}
+		};
+		try {
+			registry.register(plain);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// 不是bean方法的任务拒绝调度，不会在所有服务器上执行
+		}
+		context.close();
+	}
+
+}
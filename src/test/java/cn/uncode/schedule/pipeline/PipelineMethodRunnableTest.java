@@ -0,0 +1,97 @@
+package cn.uncode.schedule.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * @author juny.ye
+ */
+public class PipelineMethodRunnableTest {
+
+	/**
+	 * 按分片取0~total-1中属于本分片的数字
+	 */
+	public static class NumberDeal implements IScheduleTaskDeal<Integer> {
+		private final int total;
+		private final AtomicInteger next = new AtomicInteger();
+		private final AtomicInteger fetched = new AtomicInteger();
+		private final AtomicInteger processed = new AtomicInteger();
+		private final AtomicInteger maxPending = new AtomicInteger();
+
+		public NumberDeal(int total) {
+			this.total = total;
+		}
+
+		public List<Integer> selectTasks(int shardIndex, int shardTotal, int batchSize) {
+			List<Integer> tasks = new ArrayList<Integer>();
+			while (tasks.size() < batchSize) {
+				int value = this.next.getAndIncrement();
+				if (value >= this.total) {
+					break;
+				}
+				if (value % shardTotal == shardIndex) {
+					tasks.add(value);
+				}
+			}
+			int pending = this.fetched.addAndGet(tasks.size()) - this.processed.get();
+			if (pending > this.maxPending.get()) {
+				this.maxPending.set(pending);
+			}
+			return tasks;
+		}
+
+		public boolean execute(List<Integer> tasks) throws Exception {
+			Thread.sleep(5);
+			this.processed.addAndGet(tasks.size());
+			return tasks.get(0) % 7 != 0;
+		}
+	}
+
+	private static PipelineMethodRunnable runnable(NumberDeal deal, int shardCount, PipelineStatistics statistics)
+			throws Exception {
+		return new PipelineMethodRunnable("numberDeal#execute", deal, NumberDeal.class.getMethod("execute", List.class),
+				shardCount, 10, 4, 2, statistics);
+	}
+
+	@Test
+	public void testProcessAll() throws Exception {
+		NumberDeal deal = new NumberDeal(1000);
+		PipelineStatistics statistics = new PipelineStatistics();
+		runnable(deal, 1, statistics).run();
+		assertEquals(1000, deal.processed.get());
+		assertEquals(1000, statistics.getFetchDataNum());
+		assertEquals(100, statistics.getFetchDataCount());
+		assertEquals(1000, statistics.getDealDataSucess() + statistics.getDealDataFail());
+		assertTrue(statistics.getDealDataFail() > 0);
+		// 已取出未处理完的数据不超过 (处理线程数 + 等待队列长度 + 正在取的一批) * 每批条数
+		assertTrue(deal.maxPending.get() <= (4 + 2 + 1) * 10);
+	}
+
+	@Test
+	public void testShards() throws Exception {
+		NumberDeal deal = new NumberDeal(100);
+		PipelineStatistics statistics = new PipelineStatistics();
+		List<Integer> shards = new ArrayList<Integer>();
+		shards.add(1);
+		runnable(deal, 4, statistics).run(shards);
+		assertEquals(25, deal.processed.get());
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		NumberDeal deal = new NumberDeal(100);
+		PipelineMethodRunnable runnable = runnable(deal, 1, new PipelineStatistics());
+		runnable.close();
+		assertTrue(runnable.isClosed());
+		// 关闭后不再取数据
+		runnable.run();
+		assertEquals(0, deal.processed.get());
+	}
+
+}
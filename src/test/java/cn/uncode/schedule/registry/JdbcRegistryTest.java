@@ -0,0 +1,259 @@
+package cn.uncode.schedule.registry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+
+import cn.uncode.schedule.ZKScheduleManager;
+import cn.uncode.schedule.assign.LeastLoadedAssignStrategy;
+import cn.uncode.schedule.sim.VirtualClock;
+import cn.uncode.schedule.zk.LeaderListener;
+import cn.uncode.schedule.zk.ScheduleServer;
+import cn.uncode.schedule.zk.TaskDefine;
+
+/**
+ * @author juny.ye
+ */
+public class JdbcRegistryTest {
+
+	private static DriverManagerDataSource createDataSource() {
+		return new DriverManagerDataSource("jdbc:h2:mem:schedule" + System.nanoTime() + ";DB_CLOSE_DELAY=-1", "sa",
+				"");
+	}
+
+	@Test
+	public void testAssignAndFailover() throws Exception {
+		DriverManagerDataSource dataSource = createDataSource();
+		VirtualClock clock = new VirtualClock(0);
+		ScheduleDataManager4JDBC first = new ScheduleDataManager4JDBC(dataSource, "s_", clock);
+		ScheduleDataManager4JDBC second = new ScheduleDataManager4JDBC(dataSource, "s_", clock);
+		final AtomicInteger acquired = new AtomicInteger();
+		second.setLeaderListener(new LeaderListener() {
+			public void leadershipAcquired() {
+				acquired.incrementAndGet();
+			}
+
+			public void leadershipLost() {
+			}
+		});
+		ScheduleServer server1 = ScheduleServer.createScheduleServer(null);
+		ScheduleServer server2 = ScheduleServer.createScheduleServer(null);
+		first.registerScheduleServer(server1);
+		second.registerScheduleServer(server2);
+		assertTrue(first.hasLeadership());
+		assertFalse(second.hasLeadership());
+		assertEquals(server2.getIp(), second.loadScheduleServer(server2.getUuid()).getIp());
+
+		for (int i = 0; i < 4; i++) {
+			assertFalse(first.isOwner("job" + i + "#run", server1.getUuid()));
+		}
+		TaskDefine taskDefine = new TaskDefine();
+		taskDefine.setTargetBean("dynamicJob");
+		taskDefine.setTargetMethod("run");
+		taskDefine.setCronExpression("0/5 * * * * ?");
+		taskDefine.setShardCount(2);
+		first.addTask(taskDefine);
+		List<String> servers = first.loadScheduleServerNames();
+		assertEquals(Arrays.asList(server1.getUuid(), server2.getUuid()), servers);
+		first.assignTask(server1.getUuid(), servers, new LeastLoadedAssignStrategy(0));
+		int owned1 = 0;
+		int owned2 = 0;
+		for (int i = 0; i < 4; i++) {
+			String name = "job" + i + "#run";
+			boolean owner1 = first.isOwner(name, server1.getUuid());
+			boolean owner2 = second.isOwner(name, server2.getUuid());
+			assertTrue(owner1 != owner2);
+			owned1 += owner1 ? 1 : 0;
+			owned2 += owner2 ? 1 : 0;
+			assertEquals(owner1 ? 1 : -1, first.getFencingToken(name, server1.getUuid()));
+		}
+		assertEquals(2, owned1);
+		assertEquals(2, owned2);
+		// 两个分片分别属于两台服务器
+		assertEquals(Arrays.asList(0), first.getOwnedShards("dynamicJob#run", server1.getUuid()));
+		assertEquals(Arrays.asList(1), second.getOwnedShards("dynamicJob#run", server2.getUuid()));
+		for (TaskDefine task : first.selectTask()) {
+			assertNotNull(task.getCurrentServer());
+		}
+
+		// 第一台服务器停止心跳后过期清除，第二台服务器成为Leader，接管所有任务并进入新纪元
+		clock.advance(10000);
+		assertTrue(second.refreshScheduleServer(server2));
+		clock.advance(10000);
+		second.clearExpireScheduleServer();
+		assertTrue(second.hasLeadership());
+		assertEquals(1, acquired.get());
+		assertNull(second.loadScheduleServer(server1.getUuid()));
+		assertFalse(first.refreshScheduleServer(server1));
+		servers = second.loadScheduleServerNames();
+		second.assignTask(server2.getUuid(), servers, new LeastLoadedAssignStrategy(0));
+		for (int i = 0; i < 4; i++) {
+			assertEquals(2, second.getFencingToken("job" + i + "#run", server2.getUuid()));
+		}
+		assertEquals(Arrays.asList(0, 1), second.getOwnedShards("dynamicJob#run", server2.getUuid()));
+
+		second.delTask("dynamicJob", "run");
+		assertEquals(4, second.selectTask().size());
+		second.close();
+	}
+
+	@Test
+	public void testStaleLeaderRollback() throws Exception {
+		DriverManagerDataSource dataSource = createDataSource();
+		ScheduleDataManager4JDBC first = new ScheduleDataManager4JDBC(dataSource);
+		ScheduleDataManager4JDBC second = new ScheduleDataManager4JDBC(dataSource);
+		ScheduleServer server1 = ScheduleServer.createScheduleServer(null);
+		ScheduleServer server2 = ScheduleServer.createScheduleServer(null);
+		first.registerScheduleServer(server1);
+		second.registerScheduleServer(server2);
+		assertFalse(second.isOwner("job#run", server2.getUuid()));
+		// 服务器列表过时的服务器自认为是Leader，数据库中的Leader不是它，分配在提交前回滚
+		second.assignTask(server2.getUuid(), Arrays.asList(server2.getUuid()), new LeastLoadedAssignStrategy(0));
+		assertEquals(-1, second.getFencingToken("job#run", server2.getUuid()));
+		assertNull(second.selectTask().get(0).getCurrentServer());
+
+		first.assignTask(server1.getUuid(), first.loadScheduleServerNames(), new LeastLoadedAssignStrategy(0));
+		assertTrue(first.getFencingToken("job#run", server1.getUuid()) == 1
+				|| second.getFencingToken("job#run", server2.getUuid()) == 1);
+		first.close();
+		second.close();
+	}
+
+	@Test
+	public void testHeartbeatGroupCommit() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicBoolean blocking = new AtomicBoolean();
+		DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:schedule" + System.nanoTime()
+				+ ";DB_CLOSE_DELAY=-1", "sa", "") {
+			@Override
+			public Connection getConnection() throws SQLException {
+				// 第一批心跳提交时阻塞，其余心跳在此期间排队
+				if (blocking.compareAndSet(true, false)) {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						throw new SQLException(e);
+					}
+				}
+				return super.getConnection();
+			}
+		};
+		final List<ScheduleDataManager4JDBC> dataManagers = new ArrayList<ScheduleDataManager4JDBC>();
+		final List<ScheduleServer> servers = new ArrayList<ScheduleServer>();
+		for (int i = 0; i < 8; i++) {
+			ScheduleDataManager4JDBC dataManager = new ScheduleDataManager4JDBC(dataSource);
+			ScheduleServer server = ScheduleServer.createScheduleServer(null);
+			dataManager.registerScheduleServer(server);
+			dataManagers.add(dataManager);
+			servers.add(server);
+		}
+		HeartbeatBatcher batcher = HeartbeatBatcher.getBatcher(dataSource, "UPDATE "
+				+ ScheduleDataManager4JDBC.DEFAULT_TABLE_PREFIX
+				+ "server SET heartbeat = ?, version = version + 1 WHERE uuid = ?");
+		final AtomicInteger failures = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++) {
+			final int index = i;
+			threads.add(new Thread() {
+				public void run() {
+					try {
+						if (!dataManagers.get(index).refreshScheduleServer(servers.get(index))) {
+							failures.incrementAndGet();
+						}
+					} catch (Exception e) {
+						failures.incrementAndGet();
+					}
+				}
+			});
+		}
+		// 第一个心跳取得提交锁后阻塞在获取连接，其余心跳全部在提交锁上排队后放行
+		blocking.set(true);
+		threads.get(0).start();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (blocking.get() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		for (int i = 1; i < threads.size(); i++) {
+			threads.get(i).start();
+		}
+		for (int i = 1; i < threads.size(); i++) {
+			waitForState(threads.get(i), Thread.State.BLOCKED);
+		}
+		release.countDown();
+		for (Thread thread : threads) {
+			thread.join(10000);
+		}
+		assertEquals(0, failures.get());
+		// 第一批只有一个心跳，其余7个心跳合并为一批
+		assertEquals(2, batcher.getBatches());
+		assertEquals(8, batcher.getRequests());
+		for (int i = 0; i < 8; i++) {
+			assertEquals(1, dataManagers.get(i).loadScheduleServer(servers.get(i).getUuid()).getVersion());
+		}
+	}
+
+	private static void waitForState(Thread thread, Thread.State state) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (thread.getState() != state && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	public static class CountingJob {
+		final AtomicInteger count = new AtomicInteger();
+
+		public void run() {
+			this.count.incrementAndGet();
+		}
+	}
+
+	@Test
+	public void testScheduleWithJdbcRegistry() throws Exception {
+		GenericApplicationContext context = new GenericApplicationContext();
+		CountingJob job = new CountingJob();
+		context.getBeanFactory().registerSingleton("countingJob", job);
+		context.refresh();
+		ZKScheduleManager scheduleManager = new ZKScheduleManager();
+		Map<String, String> config = new HashMap<String, String>();
+		config.put(ScheduleDataManagerFactory.KEY_REGISTRY, ScheduleDataManagerFactory.JDBC);
+		config.put(ScheduleDataManagerFactory.KEY_JDBC_URL, "jdbc:h2:mem:schedule" + System.nanoTime()
+				+ ";DB_CLOSE_DELAY=-1");
+		config.put(ScheduleDataManagerFactory.KEY_JDBC_USER, "sa");
+		config.put(ScheduleDataManagerFactory.KEY_JDBC_PASSWORD, "");
+		scheduleManager.setZkConfig(config);
+		scheduleManager.setApplicationContext(context);
+		scheduleManager.initialize();
+		try {
+			scheduleManager.init();
+			assertTrue(scheduleManager.getScheduleDataManager() instanceof ScheduleDataManager4JDBC);
+			scheduleManager.schedule(new ScheduledMethodRunnable(job, "run"), new CronTrigger("* * * * * ?"));
+			long deadline = System.currentTimeMillis() + 10000;
+			while (job.count.get() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(100);
+			}
+			assertTrue(job.count.get() > 0);
+		} finally {
+			scheduleManager.shutdown();
+			context.close();
+		}
+	}
+
+}
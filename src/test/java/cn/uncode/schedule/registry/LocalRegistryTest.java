@@ -0,0 +1,197 @@
+package cn.uncode.schedule.registry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+
+import cn.uncode.schedule.ZKScheduleManager;
+import cn.uncode.schedule.assign.LeastLoadedAssignStrategy;
+import cn.uncode.schedule.sim.VirtualClock;
+import cn.uncode.schedule.zk.LeaderListener;
+import cn.uncode.schedule.zk.ScheduleServer;
+import cn.uncode.schedule.zk.TaskDefine;
+
+/**
+ * @author juny.ye
+ */
+public class LocalRegistryTest {
+
+	public static class CountingJob {
+		final AtomicInteger count = new AtomicInteger();
+
+		public void run() {
+			this.count.incrementAndGet();
+		}
+	}
+
+	@Test
+	public void testMemoryAssignAndFailover() throws Exception {
+		MemoryRegistry registry = new MemoryRegistry();
+		ScheduleDataManager4Memory first = new ScheduleDataManager4Memory(registry);
+		ScheduleDataManager4Memory second = new ScheduleDataManager4Memory(registry);
+		final AtomicInteger acquired = new AtomicInteger();
+		second.setLeaderListener(new LeaderListener() {
+			public void leadershipAcquired() {
+				acquired.incrementAndGet();
+			}
+
+			public void leadershipLost() {
+			}
+		});
+		ScheduleServer server1 = ScheduleServer.createScheduleServer(null);
+		ScheduleServer server2 = ScheduleServer.createScheduleServer(null);
+		first.registerScheduleServer(server1);
+		second.registerScheduleServer(server2);
+		assertTrue(first.hasLeadership());
+		assertFalse(second.hasLeadership());
+
+		for (int i = 0; i < 4; i++) {
+			assertFalse(first.isOwner("job" + i + "#run", server1.getUuid()));
+		}
+		List<String> servers = first.loadScheduleServerNames();
+		assertEquals(Arrays.asList(server1.getUuid(), server2.getUuid()), servers);
+		first.assignTask(server1.getUuid(), servers, new LeastLoadedAssignStrategy(0));
+		int owned1 = 0;
+		int owned2 = 0;
+		for (int i = 0; i < 4; i++) {
+			String name = "job" + i + "#run";
+			boolean owner1 = first.isOwner(name, server1.getUuid());
+			boolean owner2 = second.isOwner(name, server2.getUuid());
+			assertTrue(owner1 != owner2);
+			owned1 += owner1 ? 1 : 0;
+			owned2 += owner2 ? 1 : 0;
+			assertEquals(owner1 ? 1 : -1, first.getFencingToken(name, server1.getUuid()));
+		}
+		assertEquals(2, owned1);
+		assertEquals(2, owned2);
+
+		// Leader退出后第二台服务器立即成为Leader，接管所有任务并进入新纪元
+		first.close();
+		assertTrue(second.hasLeadership());
+		assertEquals(1, acquired.get());
+		servers = second.loadScheduleServerNames();
+		second.assignTask(server2.getUuid(), servers, new LeastLoadedAssignStrategy(0));
+		for (int i = 0; i < 4; i++) {
+			assertEquals(2, second.getFencingToken("job" + i + "#run", server2.getUuid()));
+		}
+	}
+
+	@Test
+	public void testMemoryExpire() throws Exception {
+		VirtualClock clock = new VirtualClock(0);
+		MemoryRegistry registry = new MemoryRegistry();
+		ScheduleDataManager4Memory first = new ScheduleDataManager4Memory(registry, clock);
+		ScheduleDataManager4Memory second = new ScheduleDataManager4Memory(registry, clock);
+		ScheduleServer server1 = ScheduleServer.createScheduleServer(null);
+		ScheduleServer server2 = ScheduleServer.createScheduleServer(null);
+		first.registerScheduleServer(server1);
+		second.registerScheduleServer(server2);
+		clock.advance(10000);
+		assertTrue(second.refreshScheduleServer(server2));
+		clock.advance(10000);
+		second.clearExpireScheduleServer();
+		assertTrue(second.hasLeadership());
+		assertNull(second.loadScheduleServer(server1.getUuid()));
+		// 过期的服务器心跳失败，重新注册
+		assertFalse(first.refreshScheduleServer(server1));
+		assertFalse(server1.isRegister());
+	}
+
+	@Test
+	public void testFilePersistence() throws Exception {
+		File file = File.createTempFile("uncode-schedule", ".registry");
+		file.delete();
+		try {
+			ScheduleDataManager4File dataManager = new ScheduleDataManager4File(file);
+			try {
+				new ScheduleDataManager4File(file);
+				fail("file is locked");
+			} catch (IOException e) {
+				// 同一文件只能被一个数据管理器使用
+			}
+			ScheduleServer server = ScheduleServer.createScheduleServer(null);
+			dataManager.registerScheduleServer(server);
+			TaskDefine taskDefine = new TaskDefine();
+			taskDefine.setTargetBean("dynamicJob");
+			taskDefine.setTargetMethod("run");
+			taskDefine.setCronExpression("0/5 * * * * ?");
+			dataManager.addTask(taskDefine);
+			dataManager.isOwner("job#run", server.getUuid());
+			Map<String, String> fireKeys = new HashMap<String, String>();
+			fireKeys.put("job#run", "0/5");
+			dataManager.publishFireKeys(fireKeys);
+			dataManager.assignTask(server.getUuid(), dataManager.loadScheduleServerNames(),
+					new LeastLoadedAssignStrategy(0));
+			long token = dataManager.getFencingToken("job#run", server.getUuid());
+			assertTrue(token > 0);
+			dataManager.close();
+
+			ScheduleDataManager4File reopened = new ScheduleDataManager4File(file);
+			try {
+				Map<String, TaskDefine> tasks = new HashMap<String, TaskDefine>();
+				for (TaskDefine task : reopened.selectTask()) {
+					tasks.put(task.getTargetBean() + "#" + task.getTargetMethod(), task);
+					// 服务器和任务归属不持久化
+					assertNull(task.getCurrentServer());
+				}
+				assertEquals(2, tasks.size());
+				assertEquals("0/5 * * * * ?", tasks.get("dynamicJob#run").getCronExpression());
+				assertEquals("0/5", reopened.getRegistry().fireKeys.get("job#run"));
+				ScheduleServer restarted = ScheduleServer.createScheduleServer(null);
+				reopened.registerScheduleServer(restarted);
+				reopened.assignTask(restarted.getUuid(), reopened.loadScheduleServerNames(),
+						new LeastLoadedAssignStrategy(0));
+				// 重启后的防护令牌大于重启前发放的令牌
+				assertTrue(reopened.getFencingToken("job#run", restarted.getUuid()) > token);
+			} finally {
+				reopened.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testScheduleWithMemoryRegistry() throws Exception {
+		GenericApplicationContext context = new GenericApplicationContext();
+		CountingJob job = new CountingJob();
+		context.getBeanFactory().registerSingleton("countingJob", job);
+		context.refresh();
+		ZKScheduleManager scheduleManager = new ZKScheduleManager();
+		Map<String, String> config = new HashMap<String, String>();
+		config.put(ScheduleDataManagerFactory.KEY_REGISTRY, ScheduleDataManagerFactory.MEMORY);
+		config.put("rootPath", "/uncode/schedule/test-" + System.nanoTime());
+		scheduleManager.setZkConfig(config);
+		scheduleManager.setApplicationContext(context);
+		scheduleManager.initialize();
+		try {
+			scheduleManager.init();
+			assertTrue(scheduleManager.getScheduleDataManager() instanceof ScheduleDataManager4Memory);
+			scheduleManager.schedule(new ScheduledMethodRunnable(job, "run"), new CronTrigger("* * * * * ?"));
+			long deadline = System.currentTimeMillis() + 10000;
+			while (job.count.get() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(100);
+			}
+			assertTrue(job.count.get() > 0);
+		} finally {
+			scheduleManager.shutdown();
+			context.close();
+		}
+	}
+
+}
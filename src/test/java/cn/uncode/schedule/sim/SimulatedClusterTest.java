@@ -0,0 +1,146 @@
+package cn.uncode.schedule.sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+
+import cn.uncode.schedule.ZKScheduleManager;
+
+/**
+ * @author juny.ye
+ */
+public class SimulatedClusterTest {
+
+	private static final long START_TIME = 1600000000000L;
+
+	private static final int TASKS = 20;
+
+	private static final long PERIOD = 5000;
+
+	public static class Job {
+		public void run() {
+		}
+	}
+
+	/**
+	 * 记录触发节点的任务，不做方法句柄绑定，保持run()可被覆盖
+	 */
+	static class RecordingRunnable extends ScheduledMethodRunnable {
+		private final String task;
+		private final int node;
+		private final VirtualClock clock;
+		private final List<String> fires;
+
+		RecordingRunnable(Object bean, String task, int node, VirtualClock clock, List<String> fires) throws Exception {
+			super(bean, "run");
+			this.task = task;
+			this.node = node;
+			this.clock = clock;
+			this.fires = fires;
+		}
+
+		@Override
+		public void run() {
+			this.fires.add(this.clock.currentTimeMillis() + " " + this.task + " " + this.node);
+		}
+	}
+
+	@Test
+	public void testLeaderFailover() throws Exception {
+		List<String> fires = simulate(42);
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (String fire : fires) {
+			String slot = fire.substring(0, fire.lastIndexOf(' '));
+			Integer count = counts.get(slot);
+			counts.put(slot, count == null ? 1 : count + 1);
+		}
+		// 强一致的注册中心下任何时刻都不会重复执行
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			assertEquals(entry.getKey(), Integer.valueOf(1), entry.getValue());
+		}
+		// 杀掉Leader后，过期清除加上重新分配的时间之内恢复全部任务
+		for (long time = START_TIME + 90000; time < START_TIME + 120000; time += PERIOD) {
+			int slotFires = 0;
+			for (String key : counts.keySet()) {
+				if (key.startsWith(time + " ")) {
+					slotFires++;
+				}
+			}
+			assertEquals("slot " + (time - START_TIME), TASKS, slotFires);
+		}
+		Set<String> nodes = new HashSet<String>();
+		for (String fire : fires) {
+			if (Long.parseLong(fire.substring(0, fire.indexOf(' '))) >= START_TIME + 90000) {
+				nodes.add(fire.substring(fire.lastIndexOf(' ') + 1));
+			}
+		}
+		assertFalse(nodes.contains("0"));
+	}
+
+	@Test
+	public void testDeterministic() throws Exception {
+		List<String> first = simulate(7);
+		assertTrue(first.size() > 0);
+		assertEquals(first, simulate(7));
+	}
+
+	/**
+	 * 5个节点依次加入，60秒时杀掉Leader（第一个节点），模拟运行120秒
+	 */
+	private List<String> simulate(long seed) throws Exception {
+		GenericApplicationContext context = new GenericApplicationContext();
+		for (int i = 0; i < TASKS; i++) {
+			context.getBeanFactory().registerSingleton("job" + i, new Job());
+		}
+		context.refresh();
+		new ZKScheduleManager().setApplicationContext(context);
+		final VirtualClock clock = new VirtualClock(START_TIME);
+		final SimulatedStore store = new SimulatedStore(clock);
+		final List<String> fires = new ArrayList<String>();
+		final List<SimulatedNode> nodes = new ArrayList<SimulatedNode>();
+		Random random = new Random(seed);
+		for (int i = 0; i < 5; i++) {
+			final SimulatedNode node = new SimulatedNode(i, store, clock);
+			nodes.add(node);
+			clock.schedule(START_TIME + i * 1000 + random.nextInt(1000), new Runnable() {
+				public void run() {
+					try {
+						node.start(null);
+						for (int t = 0; t < TASKS; t++) {
+							Object bean = ZKScheduleManager.getApplicationcontext().getBean("job" + t);
+							node.schedule(new RecordingRunnable(bean, "job" + t + "#run", node.getId(), clock, fires),
+									new CronTrigger("*/5 * * * * ?"));
+						}
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			});
+		}
+		clock.runUntil(START_TIME + 60000);
+		assertTrue(nodes.get(0).isLeader());
+		nodes.get(0).kill();
+		clock.runUntil(START_TIME + 120000);
+		for (SimulatedNode node : nodes) {
+			if (node.isAlive()) {
+				node.kill();
+			}
+		}
+		context.close();
+		return fires;
+	}
+
+}
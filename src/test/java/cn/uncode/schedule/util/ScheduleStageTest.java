@@ -0,0 +1,60 @@
+package cn.uncode.schedule.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * @author juny.ye
+ */
+public class ScheduleStageTest {
+
+	@Test
+	public void testSkipWhileHungRunIgnoresInterrupt() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger calls = new AtomicInteger();
+		ScheduleStage stage = new ScheduleStage("HungStage", 20, 50, Thread.NORM_PRIORITY, new Callable<Object>() {
+			public Object call() throws Exception {
+				calls.incrementAndGet();
+				// 模拟不响应中断的阻塞调用
+				boolean released = false;
+				while (!released) {
+					try {
+						release.await();
+						released = true;
+					} catch (InterruptedException e) {
+						// 忽略中断
+					}
+				}
+				return null;
+			}
+		});
+		stage.start(0);
+		try {
+			long deadline = System.currentTimeMillis() + 10000;
+			while (stage.getSkipCount() < 5 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(20);
+			}
+			// 超时取消后执行仍未结束，后续周期全部跳过，不在执行线程上排队
+			assertEquals(1, calls.get());
+			assertEquals(1, stage.getTimeoutCount());
+			assertTrue(stage.getSkipCount() >= 5);
+
+			release.countDown();
+			deadline = System.currentTimeMillis() + 10000;
+			while (calls.get() < 2 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(20);
+			}
+			assertTrue(calls.get() >= 2);
+		} finally {
+			release.countDown();
+			stage.stop();
+		}
+	}
+
+}
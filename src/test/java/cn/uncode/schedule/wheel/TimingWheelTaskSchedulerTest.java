@@ -0,0 +1,113 @@
+package cn.uncode.schedule.wheel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.scheduling.support.CronTrigger;
+
+/**
+ * @author juny.ye
+ */
+public class TimingWheelTaskSchedulerTest {
+
+	private TimingWheelTaskScheduler scheduler;
+
+	@Before
+	public void setUp() {
+		// 小时间轮，覆盖跨层降级
+		this.scheduler = new TimingWheelTaskScheduler(5, 8, 4);
+	}
+
+	@After
+	public void tearDown() {
+		this.scheduler.shutdown();
+	}
+
+	@Test
+	public void testOneShotAcrossLevels() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicLong firedAt = new AtomicLong();
+		long start = System.currentTimeMillis();
+		// 500ms超过前两层的跨度（40ms、320ms）
+		ScheduledFuture<?> future = this.scheduler.schedule(new Runnable() {
+			public void run() {
+				firedAt.set(System.currentTimeMillis());
+				latch.countDown();
+			}
+		}, new Date(start + 500));
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		long delay = firedAt.get() - start;
+		assertTrue("delay " + delay, delay >= 495 && delay < 600);
+		future.get(1, TimeUnit.SECONDS);
+		assertTrue(future.isDone());
+	}
+
+	@Test
+	public void testFixedRateAndCancel() throws Exception {
+		final AtomicInteger count = new AtomicInteger();
+		ScheduledFuture<?> future = this.scheduler.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				count.incrementAndGet();
+			}
+		}, 20);
+		Thread.sleep(230);
+		assertTrue(future.cancel(false));
+		int fired = count.get();
+		assertTrue("fired " + fired, fired >= 9 && fired <= 13);
+		Thread.sleep(100);
+		assertEquals(fired, count.get());
+	}
+
+	@Test
+	public void testCancelBeforeFire() throws Exception {
+		final AtomicInteger count = new AtomicInteger();
+		ScheduledFuture<?> future = this.scheduler.schedule(new Runnable() {
+			public void run() {
+				count.incrementAndGet();
+			}
+		}, new Date(System.currentTimeMillis() + 100));
+		assertTrue(future.cancel(true));
+		Thread.sleep(200);
+		assertEquals(0, count.get());
+		assertTrue(future.isCancelled());
+	}
+
+	@Test
+	public void testManyTasks() throws Exception {
+		int num = 100000;
+		final CountDownLatch latch = new CountDownLatch(num);
+		Runnable task = new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		};
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < num; i++) {
+			this.scheduler.schedule(task, new Date(now + 50 + i % 500));
+		}
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCronTrigger() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(2);
+		ScheduledFuture<?> future = this.scheduler.schedule(new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		}, new CronTrigger("* * * * * ?"));
+		assertTrue(latch.await(3, TimeUnit.SECONDS));
+		future.cancel(false);
+	}
+
+}
@@ -0,0 +1,90 @@
+package cn.uncode.schedule.zk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+/**
+ * @author juny.ye
+ */
+public class AssignmentDocumentStoreTest {
+
+	private static EmbeddedZooKeeper zooKeeper;
+
+	@BeforeClass
+	public static void startZooKeeper() throws Exception {
+		zooKeeper = new EmbeddedZooKeeper();
+	}
+
+	@AfterClass
+	public static void stopZooKeeper() {
+		zooKeeper.close();
+	}
+
+	private static AssignmentDocument newDocument(int tasks, String server) {
+		AssignmentDocument document = new AssignmentDocument();
+		for (int i = 0; i < tasks; i++) {
+			document.addTask(String.format("documentJob%05d#runWithAVeryLongMethodName", i), 0, server);
+		}
+		return document;
+	}
+
+	private static int awaitAppliedVersion(AssignmentDocumentStore store, int previous) throws Exception {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (store.getAppliedVersion() <= previous && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertTrue(store.getAppliedVersion() > previous);
+		return store.getAppliedVersion();
+	}
+
+	private void publishAndApply(int tasks, boolean chunked) throws Exception {
+		String rootPath = zooKeeper.newRootPath();
+		ZKManager leaderManager = zooKeeper.newZKManager(rootPath, new HashMap<String, String>());
+		ZKManager followerManager = zooKeeper.newZKManager(rootPath, new HashMap<String, String>());
+		try {
+			String path = rootPath + "/assignment";
+			AssignmentDocumentStore publisher = new AssignmentDocumentStore(leaderManager, path, new Gson(), null);
+			assertTrue(publisher.publish(newDocument(tasks, "server1")) > 0);
+			assertEquals(0, publisher.publish(newDocument(tasks, "server1")));
+			byte[] header = leaderManager.getZooKeeper().getData(path, false, null);
+			assertEquals(chunked, new String(header, "UTF-8").startsWith("chunks:"));
+
+			TaskOwnerCache cache = new TaskOwnerCache(followerManager, rootPath + "/task", rootPath + "/epoch", false);
+			AssignmentDocumentStore follower = new AssignmentDocumentStore(followerManager, path, new Gson(), cache);
+			follower.ensureWatching();
+			String last = String.format("documentJob%05d#runWithAVeryLongMethodName", tasks - 1);
+			int applied = awaitAppliedVersion(follower, -1);
+			assertEquals(Boolean.TRUE, cache.isOwner(last, "server1"));
+
+			// 文档更新后通过watch重新读取并整体应用
+			publisher.publish(newDocument(tasks, "server2"));
+			awaitAppliedVersion(follower, applied);
+			assertEquals(Boolean.TRUE, cache.isOwner(last, "server2"));
+			assertEquals(Boolean.FALSE, cache.isOwner(last, "server1"));
+			assertEquals(tasks, cache.size());
+		} finally {
+			leaderManager.close();
+			followerManager.close();
+		}
+	}
+
+	@Test
+	public void testSmallDocument() throws Exception {
+		publishAndApply(10, false);
+	}
+
+	@Test
+	public void testChunkedDocument() throws Exception {
+		// 任务足够多，分配文档超过单个节点的大小，分块写入
+		publishAndApply(12000, true);
+	}
+
+}
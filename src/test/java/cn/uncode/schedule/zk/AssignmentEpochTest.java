@@ -0,0 +1,89 @@
+package cn.uncode.schedule.zk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @author juny.ye
+ */
+public class AssignmentEpochTest {
+
+	private static EmbeddedZooKeeper zooKeeper;
+
+	@BeforeClass
+	public static void startZooKeeper() throws Exception {
+		zooKeeper = new EmbeddedZooKeeper();
+	}
+
+	@AfterClass
+	public static void stopZooKeeper() {
+		zooKeeper.close();
+	}
+
+	@Test
+	public void testDeposedLeaderIsRejected() throws Exception {
+		String rootPath = zooKeeper.newRootPath();
+		ZKManager staleManager = zooKeeper.newZKManager(rootPath, new HashMap<String, String>());
+		ZKManager currentManager = zooKeeper.newZKManager(rootPath, new HashMap<String, String>());
+		try {
+			ZooKeeper staleZk = staleManager.getZooKeeper();
+			ZooKeeper currentZk = currentManager.getZooKeeper();
+			String epochPath = rootPath + "/epoch";
+			String staleLeader = rootPath + "/server/stale";
+			String currentLeader = rootPath + "/server/current";
+			ZKTools.createPath(currentZk, staleLeader, CreateMode.PERSISTENT, currentManager.getAcl());
+			ZKTools.createPath(currentZk, currentLeader, CreateMode.PERSISTENT, currentManager.getAcl());
+			AssignmentEpoch stale = new AssignmentEpoch(staleManager, epochPath);
+			AssignmentEpoch current = new AssignmentEpoch(currentManager, epochPath);
+			stale.initial();
+			current.initial();
+
+			// 两个服务器读取同一纪元，先提交的一方成功，另一方的版本检查失败，分配操作不生效
+			stale.read(staleZk);
+			current.read(currentZk);
+			current.commit(currentZk, Arrays.asList(create(currentManager, rootPath + "/current")), 10, currentLeader);
+			assertEquals(1, current.getEpoch());
+			try {
+				stale.commit(staleZk, Arrays.asList(create(staleManager, rootPath + "/stale")), 10, staleLeader);
+				fail();
+			} catch (KeeperException.BadVersionException e) {
+				// 纪元已被修改
+			}
+			assertNotNull(currentZk.exists(rootPath + "/current", false));
+			assertNull(currentZk.exists(rootPath + "/stale", false));
+
+			// 纪元最新但自身服务器节点已被清除，Leader节点检查失败
+			stale.read(staleZk);
+			currentZk.delete(staleLeader, -1);
+			try {
+				stale.commit(staleZk, Arrays.asList(create(staleManager, rootPath + "/stale")), 10, staleLeader);
+				fail();
+			} catch (KeeperException.NoNodeException e) {
+				// Leader节点不存在
+			}
+			assertNull(currentZk.exists(rootPath + "/stale", false));
+			assertEquals(1, AssignmentEpoch.decode(currentZk.getData(epochPath, false, null)));
+		} finally {
+			staleManager.close();
+			currentManager.close();
+		}
+	}
+
+	private static Op create(ZKManager zkManager, String path) {
+		return Op.create(path, null, zkManager.getAcl(), CreateMode.PERSISTENT);
+	}
+
+}
@@ -0,0 +1,308 @@
+package cn.uncode.schedule.zk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.Op;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.GenericApplicationContext;
+
+import cn.uncode.schedule.ZKScheduleManager;
+import cn.uncode.schedule.assign.LeastLoadedAssignStrategy;
+
+/**
+ * @author juny.ye
+ */
+public class ScheduleDataManager4ZKTest {
+
+	private static final String TASK_NAME = "dynamicJob#run";
+
+	public static class CountingJob {
+		final AtomicInteger count = new AtomicInteger();
+
+		public void run() {
+			this.count.incrementAndGet();
+		}
+	}
+
+	private static EmbeddedZooKeeper zooKeeper;
+
+	private final List<ZKManager> zkManagers = new ArrayList<ZKManager>();
+
+	@BeforeClass
+	public static void startZooKeeper() throws Exception {
+		zooKeeper = new EmbeddedZooKeeper();
+	}
+
+	@AfterClass
+	public static void stopZooKeeper() {
+		zooKeeper.close();
+	}
+
+	@After
+	public void closeZKManagers() throws Exception {
+		for (ZKManager zkManager : this.zkManagers) {
+			zkManager.close();
+		}
+	}
+
+	private ZKManager newZKManager(String rootPath, Map<String, String> config) throws Exception {
+		ZKManager zkManager = zooKeeper.newZKManager(rootPath, config);
+		this.zkManagers.add(zkManager);
+		return zkManager;
+	}
+
+	private static TaskDefine newTask() {
+		TaskDefine taskDefine = new TaskDefine();
+		taskDefine.setTargetBean("dynamicJob");
+		taskDefine.setTargetMethod("run");
+		taskDefine.setCronExpression("0/5 * * * * ?");
+		return taskDefine;
+	}
+
+	/**
+	 * 等待防护令牌满足条件：expected为-1时等待失去归属，否则等待令牌不小于expected
+	 */
+	private static long awaitToken(ScheduleDataManager4ZK dataManager, String uuid, long expected) throws Exception {
+		long deadline = System.currentTimeMillis() + 10000;
+		long token = dataManager.getFencingToken(TASK_NAME, uuid);
+		while ((expected < 0 ? token >= 0 : token < expected) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+			token = dataManager.getFencingToken(TASK_NAME, uuid);
+		}
+		return token;
+	}
+
+	private static void awaitLeadership(ScheduleDataManager4ZK dataManager) throws Exception {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!dataManager.hasLeadership() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertTrue(dataManager.hasLeadership());
+	}
+
+	@Test
+	public void testStaleOwnerStopsAfterEpochBump() throws Exception {
+		String rootPath = zooKeeper.newRootPath();
+		Map<String, String> config = new HashMap<String, String>();
+		ScheduleDataManager4ZK first = new ScheduleDataManager4ZK(newZKManager(rootPath, config));
+		ScheduleDataManager4ZK second = new ScheduleDataManager4ZK(newZKManager(rootPath, config));
+		ScheduleServer server1 = ScheduleServer.createScheduleServer(null);
+		ScheduleServer server2 = ScheduleServer.createScheduleServer(null);
+		first.registerScheduleServer(server1);
+		second.registerScheduleServer(server2);
+		awaitLeadership(first);
+		first.addTask(newTask());
+
+		first.assignTask(server1.getUuid(), Arrays.asList(server2.getUuid()), new LeastLoadedAssignStrategy(0));
+		long token = awaitToken(second, server2.getUuid(), 1);
+		assertEquals(1, token);
+		assertEquals(-1, first.getFencingToken(TASK_NAME, server1.getUuid()));
+
+		// 任务转移到第一台服务器后纪元加一，旧的归属者确认新纪元后不再执行
+		first.assignTask(server1.getUuid(), Arrays.asList(server1.getUuid()), new LeastLoadedAssignStrategy(0));
+		assertEquals(-1, awaitToken(second, server2.getUuid(), -1));
+		assertEquals(token + 1, awaitToken(first, server1.getUuid(), token + 1));
+	}
+
+	@Test
+	public void testUnconfirmedEpochSkipsWithoutWaiting() throws Exception {
+		String rootPath = zooKeeper.newRootPath();
+		Map<String, String> config = new HashMap<String, String>();
+		ZKManager zkManager = newZKManager(rootPath, config);
+		ScheduleDataManager4ZK dataManager = new ScheduleDataManager4ZK(zkManager);
+		ScheduleServer server = ScheduleServer.createScheduleServer(null);
+		dataManager.registerScheduleServer(server);
+		awaitLeadership(dataManager);
+		dataManager.addTask(newTask());
+		dataManager.assignTask(server.getUuid(), Arrays.asList(server.getUuid()), new LeastLoadedAssignStrategy(0));
+		assertEquals(1, awaitToken(dataManager, server.getUuid(), 1));
+
+		// 其他客户端修改纪元节点，变化通知到达后在确认之前直接跳过，不阻塞调用线程
+		ZKManager other = newZKManager(rootPath, config);
+		other.getZooKeeper().setData(rootPath + "/epoch", AssignmentEpoch.encode(5), -1);
+		long deadline = System.currentTimeMillis() + 10000;
+		long token = dataManager.getFencingToken(TASK_NAME, server.getUuid());
+		while (token != 5 && System.currentTimeMillis() < deadline) {
+			long start = System.currentTimeMillis();
+			token = dataManager.getFencingToken(TASK_NAME, server.getUuid());
+			assertTrue(System.currentTimeMillis() - start < 1000);
+			assertTrue(token == -1 || token == 1 || token == 5);
+		}
+		assertEquals(5, token);
+	}
+
+	@Test
+	public void testDocumentModeConfirmation() throws Exception {
+		String rootPath = zooKeeper.newRootPath();
+		Map<String, String> config = new HashMap<String, String>();
+		config.put(ZKManager.keys.assignmentDocument.toString(), "true");
+		ScheduleDataManager4ZK first = new ScheduleDataManager4ZK(newZKManager(rootPath, config));
+		ScheduleDataManager4ZK second = new ScheduleDataManager4ZK(newZKManager(rootPath, config));
+		ScheduleServer server1 = ScheduleServer.createScheduleServer(null);
+		ScheduleServer server2 = ScheduleServer.createScheduleServer(null);
+		first.registerScheduleServer(server1);
+		second.registerScheduleServer(server2);
+		awaitLeadership(first);
+		first.addTask(newTask());
+
+		// 纪元只有在对应的分配文档应用后才确认
+		first.assignTask(server1.getUuid(), Arrays.asList(server2.getUuid()), new LeastLoadedAssignStrategy(0));
+		assertEquals(1, awaitToken(second, server2.getUuid(), 1));
+		first.assignTask(server1.getUuid(), Arrays.asList(server1.getUuid()), new LeastLoadedAssignStrategy(0));
+		assertEquals(-1, awaitToken(second, server2.getUuid(), -1));
+		assertEquals(2, awaitToken(first, server1.getUuid(), 2));
+	}
+
+	@Test
+	public void testFailoverAfterLeaderSessionDies() throws Exception {
+		String rootPath = zooKeeper.newRootPath();
+		Map<String, String> config = new HashMap<String, String>();
+		ZKManager leaderManager = newZKManager(rootPath, config);
+		ScheduleDataManager4ZK first = new ScheduleDataManager4ZK(leaderManager);
+		ScheduleDataManager4ZK second = new ScheduleDataManager4ZK(newZKManager(rootPath, config));
+		second.setServerExpireTime(500);
+		ScheduleServer server1 = ScheduleServer.createScheduleServer(null);
+		ScheduleServer server2 = ScheduleServer.createScheduleServer(null);
+		first.registerScheduleServer(server1);
+		second.registerScheduleServer(server2);
+		awaitLeadership(first);
+		assertFalse(second.hasLeadership());
+		first.addTask(newTask());
+		first.assignTask(server1.getUuid(), first.loadScheduleServerNames(), new LeastLoadedAssignStrategy(0));
+
+		// Leader的心跳修改节点数据，触发后继服务器的watch，watch重新注册后仍能感知节点删除
+		assertTrue(first.refreshScheduleServer(server1));
+		assertTrue(first.refreshScheduleServer(server1));
+		leaderManager.close();
+		this.zkManagers.remove(leaderManager);
+		Thread.sleep(600);
+		assertTrue(second.refreshScheduleServer(server2));
+		second.clearExpireScheduleServer();
+		awaitLeadership(second);
+		assertEquals(Arrays.asList(server2.getUuid()), second.loadScheduleServerNames());
+		second.assignTask(server2.getUuid(), second.loadScheduleServerNames(), new LeastLoadedAssignStrategy(0));
+		assertTrue(awaitToken(second, server2.getUuid(), 1) >= 1);
+	}
+
+	@Test
+	public void testEphemeralMembership() throws Exception {
+		String rootPath = zooKeeper.newRootPath();
+		Map<String, String> config = new HashMap<String, String>();
+		config.put(ZKManager.keys.ephemeralServer.toString(), "true");
+		ZKManager leaderManager = newZKManager(rootPath, config);
+		ScheduleDataManager4ZK first = new ScheduleDataManager4ZK(leaderManager);
+		ScheduleDataManager4ZK second = new ScheduleDataManager4ZK(newZKManager(rootPath, config));
+		ScheduleServer server1 = ScheduleServer.createScheduleServer(null);
+		ScheduleServer server2 = ScheduleServer.createScheduleServer(null);
+		first.registerScheduleServer(server1);
+		second.registerScheduleServer(server2);
+		awaitLeadership(first);
+		long deadline = System.currentTimeMillis() + 10000;
+		while (second.loadScheduleServerNames().size() < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(Arrays.asList(server1.getUuid(), server2.getUuid()), second.loadScheduleServerNames());
+
+		// 会话关闭后临时节点随即删除，watch维护的服务器列表不需要过期清除
+		leaderManager.close();
+		this.zkManagers.remove(leaderManager);
+		awaitLeadership(second);
+		deadline = System.currentTimeMillis() + 10000;
+		while (second.loadScheduleServerNames().size() > 1 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(Arrays.asList(server2.getUuid()), second.loadScheduleServerNames());
+	}
+
+	@Test
+	public void testChunkedDocument() throws Exception {
+		String rootPath = zooKeeper.newRootPath();
+		Map<String, String> config = new HashMap<String, String>();
+		config.put(ZKManager.keys.assignmentDocument.toString(), "true");
+		ZKManager leaderManager = newZKManager(rootPath, config);
+		ScheduleDataManager4ZK first = new ScheduleDataManager4ZK(leaderManager);
+		ScheduleDataManager4ZK second = new ScheduleDataManager4ZK(newZKManager(rootPath, config));
+		ScheduleServer server1 = ScheduleServer.createScheduleServer(null);
+		ScheduleServer server2 = ScheduleServer.createScheduleServer(null);
+		first.registerScheduleServer(server1);
+		second.registerScheduleServer(server2);
+		awaitLeadership(first);
+		first.addTask(newTask());
+		// 任务足够多，分配文档超过单个节点的大小，分块写入
+		List<Op> ops = new ArrayList<Op>();
+		for (int i = 0; i < 5000; i++) {
+			ops.add(Op.create(String.format("%s/task/chunkedDocumentJob%05d#runWithAVeryLongMethodName", rootPath, i),
+					null, leaderManager.getAcl(), CreateMode.PERSISTENT));
+		}
+		ZKTools.multiInBatches(leaderManager.getZooKeeper(), ops, 500);
+
+		first.assignTask(server1.getUuid(), Arrays.asList(server2.getUuid()), new LeastLoadedAssignStrategy(0));
+		byte[] header = leaderManager.getZooKeeper().getData(rootPath + "/assignment", false, null);
+		assertTrue(new String(header, "UTF-8").startsWith("chunks:"));
+		long token = awaitToken(second, server2.getUuid(), 1);
+		assertTrue(token >= 1);
+		assertTrue(second.isOwner("chunkedDocumentJob04999#runWithAVeryLongMethodName", server2.getUuid()));
+
+		// 分块文档更新后，旧的归属者在新文档应用后失去归属
+		first.assignTask(server1.getUuid(), Arrays.asList(server1.getUuid()), new LeastLoadedAssignStrategy(0));
+		assertEquals(-1, awaitToken(second, server2.getUuid(), -1));
+		assertTrue(awaitToken(first, server1.getUuid(), token + 1) > token);
+	}
+
+	@Test
+	public void testReconcileRetriesUntilBeanExists() throws Exception {
+		GenericApplicationContext context = new GenericApplicationContext();
+		ZKScheduleManager scheduleManager = new ZKScheduleManager();
+		scheduleManager.setZkConfig(zooKeeper.zkConfig(zooKeeper.newRootPath()));
+		scheduleManager.setTimerInterval(200);
+		scheduleManager.setAssignInterval(200);
+		scheduleManager.setCheckInterval(200);
+		scheduleManager.setApplicationContext(context);
+		context.getBeanFactory().registerSingleton("zkScheduleManager", scheduleManager);
+		context.refresh();
+		scheduleManager.initialize();
+		try {
+			scheduleManager.init();
+			long deadline = System.currentTimeMillis() + 10000;
+			while (scheduleManager.getScheduleDataManager() == null && System.currentTimeMillis() < deadline) {
+				Thread.sleep(20);
+			}
+			TaskDefine taskDefine = new TaskDefine();
+			taskDefine.setTargetBean("lateJob");
+			taskDefine.setTargetMethod("run");
+			taskDefine.setCronExpression("* * * * * ?");
+			scheduleManager.getScheduleDataManager().addTask(taskDefine);
+			while (!scheduleManager.isOwner("lateJob#run") && System.currentTimeMillis() < deadline) {
+				Thread.sleep(20);
+			}
+			assertTrue(scheduleManager.isOwner("lateJob#run"));
+			Thread.sleep(600);
+
+			// 目标bean在第一次核对之后才创建，未能调度的任务不记录版本，下次核对时重试
+			CountingJob job = new CountingJob();
+			context.getBeanFactory().registerSingleton("lateJob", job);
+			deadline = System.currentTimeMillis() + 10000;
+			while (job.count.get() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(100);
+			}
+			assertTrue(job.count.get() > 0);
+		} finally {
+			scheduleManager.shutdown();
+			context.close();
+		}
+	}
+
+}
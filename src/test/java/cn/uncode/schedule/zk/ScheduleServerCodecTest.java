@@ -0,0 +1,66 @@
+package cn.uncode.schedule.zk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Timestamp;
+
+import org.junit.Test;
+
+/**
+ * @author juny.ye
+ */
+public class ScheduleServerCodecTest {
+
+	@Test
+	public void testRoundTrip() {
+		ScheduleServer server = new ScheduleServer();
+		server.setVersion(7);
+		server.setHeartBeatTime(new Timestamp(1600000000000L));
+		server.setLastFetchDataTime(new Timestamp(1600000001000L));
+		server.setDealInfoDesc("处理中");
+		byte[] data = ScheduleServerCodec.encodeHeartBeat(server);
+		assertTrue(ScheduleServerCodec.isHeartBeat(data));
+
+		ScheduleServer decoded = new ScheduleServer();
+		assertTrue(ScheduleServerCodec.decodeHeartBeat(data, decoded));
+		assertEquals(7, decoded.getVersion());
+		assertEquals(1600000000000L, decoded.getHeartBeatTime().getTime());
+		assertEquals(1600000001000L, decoded.getLastFetchDataTime().getTime());
+		assertEquals("处理中", decoded.getDealInfoDesc());
+
+		server.setLastFetchDataTime(null);
+		server.setDealInfoDesc(null);
+		assertTrue(ScheduleServerCodec.decodeHeartBeat(ScheduleServerCodec.encodeHeartBeat(server), decoded));
+		assertNull(decoded.getLastFetchDataTime());
+		assertNull(decoded.getDealInfoDesc());
+	}
+
+	@Test
+	public void testSameStateIgnoresVersionAndHeartBeatTime() {
+		ScheduleServer server = new ScheduleServer();
+		server.setVersion(1);
+		server.setHeartBeatTime(new Timestamp(1000));
+		byte[] first = ScheduleServerCodec.encodeHeartBeat(server);
+		server.setVersion(2);
+		server.setHeartBeatTime(new Timestamp(2000));
+		byte[] second = ScheduleServerCodec.encodeHeartBeat(server);
+		assertTrue(ScheduleServerCodec.isSameState(first, second));
+
+		server.setDealInfoDesc("changed");
+		assertFalse(ScheduleServerCodec.isSameState(first, ScheduleServerCodec.encodeHeartBeat(server)));
+		assertFalse(ScheduleServerCodec.isSameState(first, null));
+	}
+
+	@Test
+	public void testLegacyJsonIsNotHeartBeat() {
+		// 旧版本写入的json数据不按心跳格式解码
+		byte[] json = "{\"uuid\":\"127.0.0.1$ABC$0000000001\",\"version\":3}".getBytes();
+		assertFalse(ScheduleServerCodec.isHeartBeat(json));
+		assertFalse(ScheduleServerCodec.decodeHeartBeat(json, new ScheduleServer()));
+		assertFalse(ScheduleServerCodec.isHeartBeat(null));
+	}
+
+}
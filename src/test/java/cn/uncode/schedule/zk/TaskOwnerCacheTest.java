@@ -0,0 +1,117 @@
+package cn.uncode.schedule.zk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @author juny.ye
+ */
+public class TaskOwnerCacheTest {
+
+	private static EmbeddedZooKeeper zooKeeper;
+
+	@BeforeClass
+	public static void startZooKeeper() throws Exception {
+		zooKeeper = new EmbeddedZooKeeper();
+	}
+
+	@AfterClass
+	public static void stopZooKeeper() {
+		zooKeeper.close();
+	}
+
+	private static void awaitOwner(TaskOwnerCache cache, String name, String uuid, Boolean expected) throws Exception {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!equals(expected, cache.isOwner(name, uuid)) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(expected, cache.isOwner(name, uuid));
+	}
+
+	private static boolean equals(Boolean expected, Boolean actual) {
+		return expected == null ? actual == null : expected.equals(actual);
+	}
+
+	@Test
+	public void testWatchKeepsOwnersCurrent() throws Exception {
+		String rootPath = zooKeeper.newRootPath();
+		ZKManager zkManager = zooKeeper.newZKManager(rootPath, new HashMap<String, String>());
+		try {
+			ZooKeeper zk = zkManager.getZooKeeper();
+			String pathTask = rootPath + "/task";
+			ZKTools.createPath(zk, pathTask + "/job#run/server1", CreateMode.PERSISTENT, zkManager.getAcl());
+			new AssignmentEpoch(zkManager, rootPath + "/epoch").initial();
+			TaskOwnerCache cache = new TaskOwnerCache(zkManager, pathTask, rootPath + "/epoch");
+			cache.ensureWatching();
+			awaitOwner(cache, "job#run", "server1", true);
+			assertTrue(cache.isLive());
+			assertEquals(0, cache.getStaleness());
+			assertNull(cache.isOwner("other#run", "server1"));
+
+			// 归属变化和任务增删通过watch反映到本地视图，不需要再次读取
+			zk.delete(pathTask + "/job#run/server1", -1);
+			zk.create(pathTask + "/job#run/server2", null, zkManager.getAcl(), CreateMode.PERSISTENT);
+			awaitOwner(cache, "job#run", "server2", true);
+			assertEquals(Boolean.FALSE, cache.isOwner("job#run", "server1"));
+			zk.create(pathTask + "/other#run", null, zkManager.getAcl(), CreateMode.PERSISTENT);
+			zk.create(pathTask + "/other#run/server1#0", null, zkManager.getAcl(), CreateMode.PERSISTENT);
+			awaitOwner(cache, "other#run", "server1", true);
+			ZKTools.deleteTree(zk, pathTask + "/other#run");
+			awaitOwner(cache, "other#run", "server1", null);
+			assertEquals(1, cache.size());
+		} finally {
+			zkManager.close();
+		}
+	}
+
+	@Test
+	public void testDirtyTasksForIncrementalReconcile() throws Exception {
+		String rootPath = zooKeeper.newRootPath();
+		ZKManager zkManager = zooKeeper.newZKManager(rootPath, new HashMap<String, String>());
+		try {
+			ZooKeeper zk = zkManager.getZooKeeper();
+			String pathTask = rootPath + "/task";
+			ZKTools.createPath(zk, pathTask + "/job#run/server1", CreateMode.PERSISTENT, zkManager.getAcl());
+			ZKTools.createPath(zk, pathTask + "/idle#run/server1", CreateMode.PERSISTENT, zkManager.getAcl());
+			new AssignmentEpoch(zkManager, rootPath + "/epoch").initial();
+			TaskOwnerCache cache = new TaskOwnerCache(zkManager, pathTask, rootPath + "/epoch");
+			cache.ensureWatching();
+			awaitDataVersion(cache, "job#run", 0);
+			awaitDataVersion(cache, "idle#run", 0);
+			List<String> dirty = cache.drainDirtyTasks();
+			Collections.sort(dirty);
+			assertEquals(Arrays.asList("idle#run", "job#run"), dirty);
+			assertTrue(cache.drainDirtyTasks().isEmpty());
+
+			// 只有定义版本或归属变化的任务进入变更集合，其他任务不需要核对
+			zk.setData(pathTask + "/job#run", "{}".getBytes(), -1);
+			awaitDataVersion(cache, "job#run", 1);
+			assertEquals(Arrays.asList("job#run"), cache.drainDirtyTasks());
+			cache.markAllDirty();
+			assertEquals(2, cache.drainDirtyTasks().size());
+		} finally {
+			zkManager.close();
+		}
+	}
+
+	private static void awaitDataVersion(TaskOwnerCache cache, String name, int version) throws Exception {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!Integer.valueOf(version).equals(cache.getDataVersion(name)) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(Integer.valueOf(version), cache.getDataVersion(name));
+	}
+
+}
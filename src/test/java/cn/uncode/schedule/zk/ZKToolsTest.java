@@ -0,0 +1,81 @@
+package cn.uncode.schedule.zk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @author juny.ye
+ */
+public class ZKToolsTest {
+
+	private static EmbeddedZooKeeper zooKeeper;
+
+	@BeforeClass
+	public static void startZooKeeper() throws Exception {
+		zooKeeper = new EmbeddedZooKeeper();
+	}
+
+	@AfterClass
+	public static void stopZooKeeper() {
+		zooKeeper.close();
+	}
+
+	@Test
+	public void testPipelinedReadAndBatchedWrite() throws Exception {
+		String rootPath = zooKeeper.newRootPath();
+		ZKManager zkManager = zooKeeper.newZKManager(rootPath, new HashMap<String, String>());
+		try {
+			ZooKeeper zk = zkManager.getZooKeeper();
+			List<Op> ops = new ArrayList<Op>();
+			List<String> paths = new ArrayList<String>();
+			for (int i = 0; i < 10; i++) {
+				String path = rootPath + "/task" + i;
+				paths.add(path);
+				ops.add(Op.create(path, ("data" + i).getBytes(), zkManager.getAcl(), CreateMode.PERSISTENT));
+				ops.add(Op.create(path + "/server", null, zkManager.getAcl(), CreateMode.PERSISTENT));
+			}
+			assertEquals(5, ZKTools.multiInBatches(zk, ops, 4));
+
+			// 已删除的节点不出现在结果中
+			paths.add(rootPath + "/missing");
+			Map<String, Stat> stats = new HashMap<String, Stat>();
+			Map<String, List<String>> children = ZKTools.getChildrenPipelined(zk, paths, 10000, stats);
+			assertEquals(10, children.size());
+			assertEquals(Arrays.asList("server"), children.get(rootPath + "/task3"));
+			assertEquals(1, stats.get(rootPath + "/task3").getNumChildren());
+			assertFalse(children.containsKey(rootPath + "/missing"));
+			Map<String, byte[]> data = ZKTools.getDataPipelined(zk, paths, 10000);
+			assertEquals(10, data.size());
+			assertEquals("data7", new String(data.get(rootPath + "/task7")));
+			Map<String, Stat> existing = ZKTools.existsPipelined(zk, paths, 10000);
+			assertEquals(10, existing.size());
+			assertEquals(1, existing.get(rootPath + "/task5").getCversion());
+
+			// 批内部分节点已存在时逐条提交，忽略已存在的节点
+			ops.clear();
+			ops.add(Op.create(rootPath + "/task0", null, zkManager.getAcl(), CreateMode.PERSISTENT));
+			ops.add(Op.create(rootPath + "/task10", null, zkManager.getAcl(), CreateMode.PERSISTENT));
+			ops.add(Op.delete(rootPath + "/missing", -1));
+			assertEquals(4, ZKTools.multiInBatches(zk, ops, 3));
+			assertNotNull(zk.exists(rootPath + "/task10", false));
+		} finally {
+			zkManager.close();
+		}
+	}
+
+}